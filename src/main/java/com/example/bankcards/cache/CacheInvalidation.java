@@ -0,0 +1,57 @@
+package com.example.bankcards.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Сообщение шины инвалидации: узел-источник, его порядковый номер сообщения и измененные сущности
+ * одного типа (несколько id, если изменение затронуло пачку карт).
+ * Пульс ({@link Entity#HEARTBEAT}) несет последний отправленный номер без увеличения и без id, чтобы получатель
+ * обнаружил пропуск, даже если после потерянного сообщения узел больше ничего не менял.
+ * Формат в канале: {@code node|sequence|entity|id,id,...}.
+ */
+public record CacheInvalidation(String node, long sequence, Entity entity, List<Long> ids) {
+
+    /**
+     * Изменение баланса и удаление карты отделены от прочих изменений карты: кэшам, которые хранят
+     * только неизменяемые поля карты (владельца), не нужно сбрасываться при каждом переводе.
+     */
+    public enum Entity {
+        CARD,
+        CARD_BALANCE,
+        CARD_DELETED,
+        USER,
+        HEARTBEAT;
+
+        public boolean isCard() {
+            return this == CARD || this == CARD_BALANCE || this == CARD_DELETED;
+        }
+    }
+
+    private static final String SEPARATOR = "|";
+    private static final String ID_SEPARATOR = ",";
+
+    public CacheInvalidation {
+        ids = ids == null ? List.of() : List.copyOf(ids);
+    }
+
+    public String encode() {
+        return node + SEPARATOR + sequence + SEPARATOR + entity + SEPARATOR
+                + ids.stream().map(String::valueOf).collect(Collectors.joining(ID_SEPARATOR));
+    }
+
+    public static CacheInvalidation decode(String payload) {
+        String[] parts = payload.split("\\|", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Неверное сообщение инвалидации: " + payload);
+        }
+        List<Long> ids = new ArrayList<>();
+        if (!parts[3].isEmpty()) {
+            for (String id : parts[3].split(ID_SEPARATOR)) {
+                ids.add(Long.valueOf(id));
+            }
+        }
+        return new CacheInvalidation(parts[0], Long.parseLong(parts[1]), Entity.valueOf(parts[2]), ids);
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.event.UserChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Рассылает другим узлам изменения карт и пользователей после фиксации транзакции и сбрасывает
+ * по их сообщениям локальные кэши ({@link InvalidatableCache}).
+ * <p>
+ * Каждый узел нумерует свои сообщения подряд; идентификатор узла новый при каждом запуске,
+ * поэтому перезапуск не путается с пропуском. Если номер от узла перескочил через ожидаемый
+ * или подписка переподключилась, сообщения потеряны, и все кэши сбрасываются целиком.
+ * <p>
+ * Отправка идет из ограниченной очереди в одном потоке ({@code publishExecutor}), поэтому поток,
+ * зафиксировавший изменение, не ждет БД. Полный сброс выполняется в отдельном потоке
+ * ({@code flushExecutor}): пересборка индексов не задерживает чтение следующих сообщений.
+ */
+public class CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    // NOTIFY ограничивает сообщение 8000 байтами: id до 20 символов с разделителем
+    static final int IDS_PER_MESSAGE = 300;
+
+    private final String node = UUID.randomUUID().toString();
+    private final InvalidationTransport transport;
+    private final List<InvalidatableCache> caches;
+    private final long nodeTimeoutMs;
+    private final Executor publishExecutor;
+    private final Executor flushExecutor;
+    private final Counter published;
+    private final Counter received;
+    private final Counter dropped;
+    private final Counter gaps;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private long sequence;
+
+    private static final class Peer {
+        private volatile long sequence;
+        private volatile long lastSeenMs;
+
+        private Peer(long sequence, long lastSeenMs) {
+            this.sequence = sequence;
+            this.lastSeenMs = lastSeenMs;
+        }
+    }
+
+    /**
+     * @param publishExecutor однопоточный исполнитель с ограниченной очередью: порядок отправки = порядок номеров
+     * @param flushExecutor   исполнитель полного сброса кэшей
+     */
+    public CacheInvalidationBus(InvalidationTransport transport, List<InvalidatableCache> caches,
+                                long nodeTimeoutMs, Executor publishExecutor, Executor flushExecutor,
+                                MeterRegistry meterRegistry) {
+        this.transport = transport;
+        this.caches = caches;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.publishExecutor = publishExecutor;
+        this.flushExecutor = flushExecutor;
+        this.published = messageCounter(meterRegistry, "published", "Отправленные сообщения инвалидации");
+        this.received = messageCounter(meterRegistry, "received", "Полученные от других узлов сообщения инвалидации");
+        this.dropped = messageCounter(meterRegistry, "dropped", "Сообщения инвалидации, не поместившиеся в очередь отправки");
+        this.gaps = Counter.builder("bankcards.cache.invalidation.gaps")
+                .description("Пропуски сообщений, после которых кэши сброшены целиком")
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        transport.start(this::receive, () -> flush("переподключение подписки"));
+    }
+
+    public void close() {
+        transport.close();
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        send(event.getType() == CardChangedEvent.Type.DELETED
+                ? CacheInvalidation.Entity.CARD_DELETED : CacheInvalidation.Entity.CARD, event.getCardId());
+    }
+
+    /**
+     * Пачка карт (массовый перевод) уходит несколькими сообщениями по {@value #IDS_PER_MESSAGE} id,
+     * а не сообщением на карту.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardBalanceChanged(CardBalanceChangedEvent event) {
+        send(CacheInvalidation.Entity.CARD_BALANCE, event.getCardIds());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        send(CacheInvalidation.Entity.USER, event.getUserId());
+    }
+
+    /**
+     * Пульс с последним номером: без него узел, пропустивший последнее сообщение,
+     * не узнал бы об этом до следующего изменения.
+     */
+    @Scheduled(fixedDelayString = "${app.cache.invalidation.heartbeat-ms:5000}")
+    public void heartbeat() {
+        send(CacheInvalidation.Entity.HEARTBEAT, List.of());
+        long now = System.currentTimeMillis();
+        peers.entrySet().removeIf(peer -> now - peer.getValue().lastSeenMs > nodeTimeoutMs);
+    }
+
+    private void send(CacheInvalidation.Entity entity, Long id) {
+        if (id != null) {
+            send(entity, List.of(id));
+        }
+    }
+
+    /**
+     * Номер выдается и сообщение ставится в очередь под одной блокировкой, иначе сообщения одного узла
+     * могли бы уйти не по порядку и выглядеть как пропуск. Сама отправка в БД идет вне блокировки.
+     * Переполнение очереди или ошибка отправки не отменяют зафиксированное изменение:
+     * получатели увидят пропуск номера и сбросят кэши.
+     */
+    private void send(CacheInvalidation.Entity entity, List<Long> ids) {
+        boolean heartbeat = entity == CacheInvalidation.Entity.HEARTBEAT;
+        if (!heartbeat && ids.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            int from = 0;
+            do {
+                List<Long> chunk = ids.subList(from, Math.min(from + IDS_PER_MESSAGE, ids.size()));
+                CacheInvalidation message = new CacheInvalidation(node, heartbeat ? sequence : ++sequence, entity, chunk);
+                try {
+                    publishExecutor.execute(() -> publish(message));
+                } catch (RejectedExecutionException e) {
+                    dropped.increment();
+                    log.warn("Очередь отправки инвалидаций переполнена, пропущено {} {}", entity, chunk);
+                }
+                from += IDS_PER_MESSAGE;
+            } while (from < ids.size());
+        }
+    }
+
+    private void publish(CacheInvalidation message) {
+        try {
+            transport.publish(message.encode());
+            if (message.entity() != CacheInvalidation.Entity.HEARTBEAT) {
+                published.increment();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить инвалидацию {} {}: {}", message.entity(), message.ids(), e.getMessage());
+        }
+    }
+
+    void receive(String payload) {
+        CacheInvalidation message;
+        try {
+            message = CacheInvalidation.decode(payload);
+        } catch (IllegalArgumentException e) {
+            log.warn("Пропущено сообщение инвалидации: {}", e.getMessage());
+            return;
+        }
+        if (node.equals(message.node())) {
+            return;
+        }
+        boolean heartbeat = message.entity() == CacheInvalidation.Entity.HEARTBEAT;
+        if (advance(message.node(), message.sequence(), heartbeat)) {
+            flush("пропуск сообщений от узла " + message.node());
+        } else if (!heartbeat) {
+            received.increment();
+            caches.forEach(cache -> message.ids().forEach(id -> cache.invalidate(message.entity(), id)));
+        }
+    }
+
+    /**
+     * @return true, если от узла пропущены сообщения
+     */
+    private boolean advance(String origin, long number, boolean heartbeat) {
+        long now = System.currentTimeMillis();
+        Peer peer = peers.get(origin);
+        if (peer == null) {
+            peers.put(origin, new Peer(number, now));
+            return false;
+        }
+        peer.lastSeenMs = now;
+        long expected = heartbeat ? peer.sequence : peer.sequence + 1;
+        if (number > peer.sequence) {
+            peer.sequence = number;
+        }
+        return number > expected;
+    }
+
+    /**
+     * Сбросы, пришедшие, пока предыдущий ждет в очереди, объединяются с ним: он и так
+     * выполнится после них. Пришедший во время выполнения сброс ставится заново.
+     */
+    private void flush(String reason) {
+        gaps.increment();
+        log.warn("Кэши сбрасываются целиком: {}", reason);
+        if (!flushQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flushExecutor.execute(() -> {
+                flushQueued.set(false);
+                for (InvalidatableCache cache : caches) {
+                    try {
+                        cache.invalidateAll();
+                    } catch (RuntimeException e) {
+                        log.warn("Не удалось сбросить кэш {}: {}", cache.getClass().getSimpleName(), e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            flushQueued.set(false);
+            log.warn("Сброс кэшей не поставлен в очередь: {}", e.getMessage());
+        }
+    }
+
+    private static Counter messageCounter(MeterRegistry meterRegistry, String direction, String description) {
+        return Counter.builder("bankcards.cache.invalidation.messages")
+                .description(description)
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+}
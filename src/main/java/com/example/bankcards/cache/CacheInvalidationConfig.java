@@ -0,0 +1,86 @@
+package com.example.bankcards.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+
+/**
+ * Шина инвалидации кэшей между узлами ({@code app.cache.invalidation}). Включается, когда
+ * приложение запущено в нескольких экземплярах; канал {@code postgres} или {@code in-memory}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.cache.invalidation.enabled", havingValue = "true")
+public class CacheInvalidationConfig {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.cache.invalidation.transport:postgres}")
+    private String transport;
+
+    @Value("${app.cache.invalidation.node-timeout-ms:30000}")
+    private long nodeTimeoutMs;
+
+    @Value("${app.cache.invalidation.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Bean(destroyMethod = "close")
+    public InvalidationTransport cacheInvalidationTransport(JdbcTemplate jdbcTemplate,
+                                                            DataSourceProperties properties) {
+        return switch (transport) {
+            case "postgres" -> new PostgresInvalidationTransport(jdbcTemplate, properties.determineUrl(),
+                    properties.determineUsername(), properties.determinePassword());
+            case "in-memory" -> new InMemoryInvalidationTransport();
+            default -> throw new IllegalStateException("Неизвестный канал инвалидации кэшей: " + transport);
+        };
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor cacheInvalidationPublishExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("cache-invalidation-publish-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor cacheInvalidationFlushExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("cache-invalidation-flush-");
+        return executor;
+    }
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(@Qualifier("cacheInvalidationTransport")
+                                                     InvalidationTransport cacheInvalidationTransport,
+                                                     List<InvalidatableCache> caches,
+                                                     ThreadPoolTaskExecutor cacheInvalidationPublishExecutor,
+                                                     ThreadPoolTaskExecutor cacheInvalidationFlushExecutor) {
+        return new CacheInvalidationBus(cacheInvalidationTransport, caches, nodeTimeoutMs,
+                cacheInvalidationPublishExecutor, cacheInvalidationFlushExecutor, meterRegistry);
+    }
+
+    /**
+     * Подписка после старта: к этому моменту кэши и поисковый индекс уже созданы.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startCacheInvalidation(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBean(CacheInvalidationBus.class).start();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Неизменяемый снимок карты для кэша: номер и CVV уже расшифрованы, связь с пользователем
+ * сведена к идентификатору, поэтому снимок можно отдавать из разных потоков без сессии Hibernate.
+ */
+public record CardSnapshot(Long id, Long userId, String cardNumber, String cardHolderName,
+                           LocalDate expiryDate, String cvv, CardType cardType, BigDecimal balance,
+                           Boolean isActive, LocalDateTime createdAt, LocalDateTime updatedAt) {
+
+    public static CardSnapshot of(Card card) {
+        return new CardSnapshot(card.getId(), card.getUser().getId(), card.getCardNumber(),
+                card.getCardHolderName(), card.getExpiryDate(), card.getCvv(), card.getCardType(),
+                card.getBalance(), card.getIsActive(), card.getCreatedAt(), card.getUpdatedAt());
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш снимков карт с коротким временем жизни для частых опросов карты и баланса.
+ * Размер ограничен, запись удаляется после фиксации любой транзакции, изменившей карту
+ * или ее баланс. Одновременные промахи по одной карте объединяются: БД читает один поток,
+ * остальные ждут его результат. Отсутствующая карта не кэшируется.
+ * <p>
+ * Снимки читаются в пишущей транзакции, то есть с основной БД: снимок с отстающей реплики
+ * пережил бы удаление после фиксации и отдавался бы всем клиентам до истечения срока,
+ * в том числе клиентам с токеном согласованности.
+ */
+@Service
+public class CardSnapshotCache implements InvalidatableCache {
+
+    public static final String CACHE_NAME = "card-snapshots";
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.cards.snapshot-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cards.snapshot-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.cards.snapshot-cache.ttl-ms:3000}")
+    private long ttlMs;
+
+    private Cache<Long, CardSnapshot> snapshots;
+    private TransactionTemplate primaryRead;
+    /** Число удалений из кэша; см. {@link #getAll(Collection)}. */
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        primaryRead = new TransactionTemplate(transactionManager);
+        snapshots = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, CACHE_NAME);
+    }
+
+    public Optional<CardSnapshot> get(Long cardId) {
+        if (!enabled) {
+            return load(cardId);
+        }
+        return Optional.ofNullable(snapshots.get(cardId, id -> load(id).orElse(null)));
+    }
+
+    /**
+     * Снимки нескольких карт: найденные в кэше отдаются из него, остальные читаются одним запросом
+     * {@code IN} на шард. Пакетное чтение не блокирует ключи, поэтому прочитанное кладется в кэш,
+     * только если за время чтения не было ни одного удаления: удаление, пришедшее во время чтения,
+     * могло относиться к прочитанной карте. Отсутствующих карт в результате нет.
+     */
+    public Map<Long, CardSnapshot> getAll(Collection<Long> cardIds) {
+        if (!enabled) {
+            return loadAll(cardIds);
+        }
+        Map<Long, CardSnapshot> found = new HashMap<>(snapshots.getAllPresent(cardIds));
+        List<Long> missing = cardIds.stream().filter(id -> !found.containsKey(id)).distinct().toList();
+        if (missing.isEmpty()) {
+            return found;
+        }
+        long evictionsBeforeRead = evictions.get();
+        loadAll(missing).forEach((cardId, snapshot) -> {
+            // проверка под блокировкой ключа: удаление сначала увеличивает счетчик, затем удаляет ключ,
+            // поэтому устаревший снимок либо не запишется, либо будет удален после записи
+            CardSnapshot cached = snapshots.asMap().computeIfAbsent(cardId,
+                    id -> evictions.get() == evictionsBeforeRead ? snapshot : null);
+            found.put(cardId, cached != null ? cached : snapshot);
+        });
+        return found;
+    }
+
+    private Optional<CardSnapshot> load(Long cardId) {
+        return primaryRead.execute(status -> cardRepository.findById(cardId).map(CardSnapshot::of));
+    }
+
+    private Map<Long, CardSnapshot> loadAll(Collection<? extends Long> cardIds) {
+        Map<Integer, List<Long>> byShard = cardIds.stream()
+                .collect(Collectors.groupingBy(id -> shardMap.shardOf(id)));
+        Map<Long, CardSnapshot> loaded = new HashMap<>();
+        byShard.forEach((shard, ids) -> ShardContext.call(shard,
+                        () -> primaryRead.execute(status -> cardRepository.findAllById(ids)))
+                .forEach(card -> loaded.put(card.getId(), CardSnapshot.of(card))));
+        return loaded;
+    }
+
+    public void evict(Long cardId) {
+        evictions.incrementAndGet();
+        snapshots.invalidate(cardId);
+    }
+
+    @Override
+    public void invalidate(CacheInvalidation.Entity entity, Long id) {
+        if (entity.isCard()) {
+            evict(id);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        evictions.incrementAndGet();
+        snapshots.invalidateAll();
+    }
+
+    /**
+     * Загрузка, начатая до фиксации, могла прочитать старое состояние; удаление ключа
+     * ждет завершения такой загрузки, поэтому ее результат в кэше не останется.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        evict(event.getCardId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardBalanceChanged(CardBalanceChangedEvent event) {
+        event.getCardIds().forEach(this::evict);
+    }
+}
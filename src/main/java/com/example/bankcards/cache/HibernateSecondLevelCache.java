@@ -0,0 +1,36 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.entity.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш второго уровня Hibernate ({@link com.example.bankcards.config.HibernateCacheConfig}):
+ * изменение пользователя на другом узле сбрасывает закэшированный набор его ролей.
+ */
+@Component
+public class HibernateSecondLevelCache implements InvalidatableCache {
+
+    private static final String USER_ROLES_ROLE = User.class.getName() + ".roles";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public void invalidate(CacheInvalidation.Entity entity, Long id) {
+        if (entity == CacheInvalidation.Entity.USER) {
+            cache().evictCollectionData(USER_ROLES_ROLE, id);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache().evictAllRegions();
+    }
+
+    private Cache cache() {
+        return entityManagerFactory.getCache().unwrap(Cache.class);
+    }
+}
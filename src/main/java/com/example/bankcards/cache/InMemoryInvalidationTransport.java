@@ -0,0 +1,29 @@
+package com.example.bankcards.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Канал в пределах одной JVM: сообщения синхронно доставляются всем подписчикам того же экземпляра.
+ * Для тестов и одиночного узла, где рассылать инвалидацию некому.
+ */
+public class InMemoryInvalidationTransport implements InvalidationTransport {
+
+    private final List<Consumer<String>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String payload) {
+        subscribers.forEach(subscriber -> subscriber.accept(payload));
+    }
+
+    @Override
+    public void start(Consumer<String> onMessage, Runnable onResubscribed) {
+        subscribers.add(onMessage);
+    }
+
+    @Override
+    public void close() {
+        subscribers.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bankcards.cache;
+
+/**
+ * Кэш в памяти узла, который сбрасывается по сообщениям {@link CacheInvalidationBus} об изменениях
+ * на других узлах. Изменения своего узла кэш обрабатывает сам по событиям после фиксации.
+ */
+public interface InvalidatableCache {
+
+    void invalidate(CacheInvalidation.Entity entity, Long id);
+
+    /**
+     * Сброс целиком: узел пропустил сообщения и не знает, какие записи устарели.
+     */
+    void invalidateAll();
+}
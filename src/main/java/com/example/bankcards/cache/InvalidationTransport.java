@@ -0,0 +1,19 @@
+package com.example.bankcards.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Канал доставки сообщений инвалидации всем узлам, включая отправителя.
+ */
+public interface InvalidationTransport {
+
+    void publish(String payload);
+
+    /**
+     * @param onMessage      получатель сообщений
+     * @param onResubscribed вызывается после восстановления подписки, когда сообщения могли быть потеряны
+     */
+    void start(Consumer<String> onMessage, Runnable onResubscribed);
+
+    void close();
+}
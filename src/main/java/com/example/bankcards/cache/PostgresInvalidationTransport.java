@@ -0,0 +1,112 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.sharding.ShardContext;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+/**
+ * Канал через PostgreSQL {@code LISTEN/NOTIFY} основной БД (шард 0): дополнительной инфраструктуры
+ * не требуется. Подписка держит отдельное соединение вне пула; при его потере переподключается
+ * и сообщает о возможном пропуске. Отправка идет через пул, вне транзакции. Тот же канал используется
+ * для рассылки событий пользователей между узлами, каждый потребитель слушает свой канал.
+ */
+public class PostgresInvalidationTransport implements InvalidationTransport {
+
+    public static final String CHANNEL = "bankcards_cache_invalidation";
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresInvalidationTransport.class);
+
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final long RECONNECT_DELAY_MS = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String channel;
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public PostgresInvalidationTransport(JdbcTemplate jdbcTemplate, String url, String username, String password) {
+        this(jdbcTemplate, CHANNEL, url, username, password);
+    }
+
+    public PostgresInvalidationTransport(JdbcTemplate jdbcTemplate, String channel, String url, String username,
+                                         String password) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.channel = channel;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public void publish(String payload) {
+        ShardContext.run(0, () -> jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", channel, payload));
+    }
+
+    @Override
+    public void start(Consumer<String> onMessage, Runnable onResubscribed) {
+        running = true;
+        listener = new Thread(() -> listen(onMessage, onResubscribed), channel.replace('_', '-') + "-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    private void listen(Consumer<String> onMessage, Runnable onResubscribed) {
+        boolean missed = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (missed) {
+                    log.info("Подписка на канал {} восстановлена", channel);
+                    onResubscribed.run();
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        onMessage.accept(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                if (!missed) {
+                    log.warn("Подписка на канал {} потеряна, переподключение: {}", channel, e.getMessage());
+                }
+                missed = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+}
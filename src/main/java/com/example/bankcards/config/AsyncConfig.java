@@ -0,0 +1,103 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.sharding.ShardMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor bulkDeletionExecutor(
+            @Value("${app.bulk-delete.max-concurrent-jobs:2}") int maxConcurrentJobs) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentJobs);
+        executor.setMaxPoolSize(maxConcurrentJobs);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("bulk-delete-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor shardQueryExecutor(
+            @Value("${app.sharding.fan-out-threads:8}") int fanOutThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(fanOutThreads);
+        executor.setMaxPoolSize(fanOutThreads);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("shard-query-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor dashboardExecutor(
+            @Value("${app.dashboard.threads:16}") int threads,
+            @Value("${app.dashboard.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("dashboard-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor readModelExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("read-model-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor outboxRelayExecutor(
+            @Value("${app.outbox.workers:2}") int workers, ShardMap shardMap) {
+        int threads = workers * shardMap.shardCount();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("outbox-relay-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor sseExecutor(@Value("${app.sse.queue-capacity:10000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("sse-");
+        return executor;
+    }
+
+    /**
+     * Разбор очередей отправки соединений SSE: у соединения в очереди не больше одной задачи.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor sseSendExecutor(@Value("${app.sse.send-threads:4}") int threads,
+                                                  @Value("${app.sse.max-connections:10000}") int maxConnections) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(maxConnections);
+        executor.setThreadNamePrefix("sse-send-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor transferQueueExecutor(
+            @Value("${app.transfers.async.workers:4}") int workers, ShardMap shardMap) {
+        int threads = workers * shardMap.shardCount();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("transfer-queue-");
+        return executor;
+    }
+}
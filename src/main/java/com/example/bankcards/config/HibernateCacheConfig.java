@@ -0,0 +1,61 @@
+package com.example.bankcards.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.util.OptionalLong;
+
+/**
+ * Кэш второго уровня Hibernate (JCache, провайдер Caffeine) для справочных данных:
+ * роли, наборы ролей пользователей и результаты запросов ролей по имени.
+ * Регионы создаются здесь с ограничением размера, отсутствующий регион - ошибка старта.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    public static final String ROLES_REGION = "roles";
+    public static final String USER_ROLES_REGION = "user-roles";
+
+    @Value("${app.cache.hibernate.user-roles-max-size:10000}")
+    private long userRolesMaxSize;
+
+    @Value("${app.cache.hibernate.query-results-max-size:1000}")
+    private long queryResultsMaxSize;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager();
+        createRegion(cacheManager, ROLES_REGION, OptionalLong.of(100));
+        createRegion(cacheManager, USER_ROLES_REGION, OptionalLong.of(userRolesMaxSize));
+        createRegion(cacheManager, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                OptionalLong.of(queryResultsMaxSize));
+        // метки времени изменения таблиц не вытесняются: иначе запрос из кэша мог бы вернуть устаревший результат
+        createRegion(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                OptionalLong.empty());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheManager(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static void createRegion(CacheManager cacheManager, String name, OptionalLong maximumSize) {
+        if (cacheManager.getCache(name) != null) {
+            return;
+        }
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(maximumSize);
+        configuration.setStatisticsEnabled(true);
+        cacheManager.createCache(name, configuration);
+    }
+}
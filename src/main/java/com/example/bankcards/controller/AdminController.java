@@ -1,5 +1,6 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.BulkDeletionJobDto;
 import com.example.bankcards.dto.CardDto;
 import com.example.bankcards.dto.MessageResponse;
 import com.example.bankcards.dto.UserDto;
@@ -7,8 +8,13 @@ import com.example.bankcards.dto.UserCreateRequest;
 import com.example.bankcards.dto.UserUpdateRequest;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.readmodel.CardSummaryProjector;
+import com.example.bankcards.service.BulkDeletionJobService;
 import com.example.bankcards.service.CardService;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardKey;
+import com.example.bankcards.sharding.ShardMap;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -43,6 +49,15 @@ public class AdminController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private BulkDeletionJobService bulkDeletionJobService;
+
+    @Autowired
+    private CardSummaryProjector cardSummaryProjector;
+
+    @Autowired
+    private ShardMap shardMap;
+
 
     @PostMapping("/cards")
     @Operation(summary = "Создать карту (администратор)", description = "Создает новую банковскую карту")
@@ -71,7 +86,7 @@ public class AdminController {
             
             System.out.println("Card balance before service: " + card.getBalance());
             System.out.println("Card user: " + (card.getUser() != null ? card.getUser().getId() : "null"));
-            Card createdCard = cardService.createCard(card);
+            Card createdCard = ShardContext.call(shardMap.shardOf(user.getId()), () -> cardService.createCard(card));
             return ResponseEntity.status(HttpStatus.CREATED).body(convertCardToDto(createdCard));
         } catch (IllegalArgumentException e) {
             System.err.println("IllegalArgumentException: " + e.getMessage());
@@ -84,6 +99,7 @@ public class AdminController {
     }
 
     @DeleteMapping("/cards/{id}")
+    @ShardKey("id")
     @Operation(summary = "Удалить карту (администратор)", description = "Удаляет карту из системы")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Карта успешно удалена"),
@@ -100,6 +116,7 @@ public class AdminController {
     }
 
     @PatchMapping("/cards/{id}/block")
+    @ShardKey("id")
     @Operation(summary = "Заблокировать карту (администратор)", description = "Блокирует карту")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Карта успешно заблокирована"),
@@ -116,6 +133,7 @@ public class AdminController {
     }
 
     @PatchMapping("/cards/{id}/activate")
+    @ShardKey("id")
     @Operation(summary = "Активировать карту (администратор)", description = "Активирует карту")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Карта успешно активирована"),
@@ -141,12 +159,15 @@ public class AdminController {
             @Parameter(description = "Номер страницы (начиная с 0)") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Размер страницы") @RequestParam(defaultValue = "10") int size,
             @Parameter(description = "Поле для сортировки") @RequestParam(defaultValue = "createdAt") String sortBy,
-            @Parameter(description = "Направление сортировки") @RequestParam(defaultValue = "desc") String sortDir) {
+            @Parameter(description = "Направление сортировки") @RequestParam(defaultValue = "desc") String sortDir,
+            @Parameter(description = "Поиск по имени держателя или полному номеру карты") @RequestParam(required = false) String search) {
 
         Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
-        Page<Card> cards = cardService.findAllCardsWithPaging(pageable);
+        Page<Card> cards = search != null && !search.trim().isEmpty()
+                ? cardService.searchAllCardsWithPaging(search, pageable)
+                : cardService.findAllCardsWithPaging(pageable);
         Page<CardDto> cardDtos = cards.map(this::convertCardToDto);
         return ResponseEntity.ok(cardDtos);
     }
@@ -203,6 +224,7 @@ public class AdminController {
     }
 
     @DeleteMapping("/users/{id}")
+    @ShardKey("id")
     @Operation(summary = "Удалить пользователя (администратор)", description = "Удаляет пользователя из системы")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Пользователь успешно удален"),
@@ -219,6 +241,54 @@ public class AdminController {
     }
 
 
+    @PostMapping("/cards/{id}/purge")
+    @Operation(summary = "Фоновое удаление карты (администратор)", description = "Удаляет карту и всю её историю транзакций пачками в фоновом задании")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Задание удаления поставлено в очередь"),
+        @ApiResponse(responseCode = "503", description = "Очередь заданий переполнена"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<BulkDeletionJobDto> purgeCard(@Parameter(description = "ID карты") @PathVariable Long id) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(bulkDeletionJobService.submitCardDeletion(id));
+    }
+
+    @PostMapping("/users/{id}/purge")
+    @Operation(summary = "Фоновое удаление пользователя (администратор)", description = "Удаляет пользователя, его карты и историю транзакций пачками в фоновом задании")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Задание удаления поставлено в очередь"),
+        @ApiResponse(responseCode = "503", description = "Очередь заданий переполнена"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<BulkDeletionJobDto> purgeUser(@Parameter(description = "ID пользователя") @PathVariable Long id) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(bulkDeletionJobService.submitUserDeletion(id));
+    }
+
+    @PostMapping("/read-model/card-summary/rebuild")
+    @Operation(summary = "Пересобрать модель чтения карт (администратор)", description = "Заново заполняет user_card_summary по всем картам и удаляет строки удаленных карт")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Модель чтения пересобрана"),
+        @ApiResponse(responseCode = "409", description = "Пересборка уже выполняется"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<MessageResponse> rebuildCardSummary() {
+        int cards = cardSummaryProjector.rebuild();
+        return ResponseEntity.ok(new MessageResponse("Модель чтения карт пересобрана: " + cards + " карт"));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "Статус фонового задания (администратор)", description = "Возвращает состояние задания удаления")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Статус задания получен"),
+        @ApiResponse(responseCode = "404", description = "Задание не найдено"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<BulkDeletionJobDto> getJob(@Parameter(description = "ID задания") @PathVariable String jobId) {
+        return bulkDeletionJobService.findJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+
     private CardDto convertCardToDto(Card card) {
         CardDto dto = new CardDto();
         dto.setId(card.getId());
@@ -273,6 +343,8 @@ public class AdminController {
         dto.setRoles(user.getRoles().stream()
                 .map(role -> role.getName())
                 .collect(Collectors.toSet()));
+        dto.setCardCount(user.getCardCount());
+        dto.setActiveCardCount(user.getActiveCardCount());
         return dto;
     }
 
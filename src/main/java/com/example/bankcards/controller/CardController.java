@@ -1,15 +1,27 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.cache.CardSnapshot;
+import com.example.bankcards.cache.CardSnapshotCache;
+import com.example.bankcards.dto.CardBatchRequest;
+import com.example.bankcards.dto.CardBatchResponse;
 import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.CardSummaryDto;
 import com.example.bankcards.dto.MessageResponse;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.readmodel.CardSummaryReader;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.CardBatchService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardKey;
+import com.example.bankcards.sharding.ShardMap;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -17,6 +29,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
@@ -34,6 +48,18 @@ public class CardController {
     @Autowired
     private CardService cardService;
 
+    @Autowired
+    private CardSnapshotCache cardSnapshotCache;
+
+    @Autowired
+    private CardBatchService cardBatchService;
+
+    @Autowired
+    private CardSummaryReader cardSummaryReader;
+
+    @Autowired
+    private ShardMap shardMap;
+
     @GetMapping
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
     @Operation(summary = "Получить свои карты с пагинацией", description = "Возвращает карты текущего пользователя с поддержкой пагинации и поиска")
@@ -48,18 +74,18 @@ public class CardController {
             @Parameter(description = "Направление сортировки") @RequestParam(defaultValue = "desc") String sortDir,
             @Parameter(description = "Поисковый запрос (по номеру карты или имени держателя)") @RequestParam(required = false) String search) {
 
-        String username = org.springframework.security.core.context.SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = currentUserId();
 
         Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
         try {
-            Page<Card> cards;
-            if (search != null && !search.trim().isEmpty()) {
-                cards = cardService.searchActiveUserCardsWithPaging(1L, search, pageable); // Заглушка для userId
-            } else {
-                cards = cardService.findActiveUserCardsWithPaging(1L, pageable); // Заглушка для userId
-            }
+            Page<Card> cards = ShardContext.call(shardMap.shardOf(userId), () -> {
+                if (search != null && !search.trim().isEmpty()) {
+                    return cardService.searchActiveUserCardsWithPaging(userId, search, pageable);
+                }
+                return cardService.findActiveUserCardsWithPaging(userId, pageable);
+            });
 
             Page<CardDto> cardDtos = cards.map(this::convertToDto);
             return ResponseEntity.ok(cardDtos);
@@ -68,8 +94,26 @@ public class CardController {
         }
     }
 
-    @GetMapping("/{id}")
+    @GetMapping("/summaries")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Получить список своих карт", description = "Возвращает карты текущего пользователя из модели чтения: маскированные номера, новые карты первыми; данные могут отставать на несколько секунд")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Список карт успешно получен"),
+        @ApiResponse(responseCode = "400", description = "Неверные параметры запроса")
+    })
+    public ResponseEntity<Page<CardSummaryDto>> getMyCardSummaries(
+            @Parameter(description = "Номер страницы (начиная с 0)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Размер страницы") @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Только активные карты") @RequestParam(defaultValue = "true") boolean activeOnly) {
+        if (page < 0 || size < 1 || size > 100) {
+            throw new IllegalArgumentException("Номер страницы должен быть >= 0, размер страницы от 1 до 100");
+        }
+        return ResponseEntity.ok(cardSummaryReader.findByUser(currentUserId(), activeOnly, PageRequest.of(page, size)));
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER') and ownsCard(#id)")
+    @ShardKey("id")
     @Operation(summary = "Получить карту по ID", description = "Возвращает карту по её идентификатору")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Карта успешно найдена"),
@@ -77,7 +121,7 @@ public class CardController {
         @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
     })
     public ResponseEntity<CardDto> getCardById(@Parameter(description = "ID карты") @PathVariable Long id) {
-        Optional<Card> card = cardService.findById(id);
+        Optional<CardSnapshot> card = cardSnapshotCache.get(id);
         if (card.isPresent()) {
             return ResponseEntity.ok(convertToDto(card.get()));
         }
@@ -85,7 +129,8 @@ public class CardController {
     }
 
     @GetMapping("/{id}/balance")
-    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER') and ownsCard(#id)")
+    @ShardKey("id")
     @Operation(summary = "Получить баланс карты", description = "Возвращает баланс карты")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Баланс успешно получен"),
@@ -93,15 +138,38 @@ public class CardController {
         @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
     })
     public ResponseEntity<BigDecimal> getCardBalance(@Parameter(description = "ID карты") @PathVariable Long id) {
-        Optional<Card> card = cardService.findById(id);
+        Optional<CardSnapshot> card = cardSnapshotCache.get(id);
         if (card.isPresent()) {
-            return ResponseEntity.ok(card.get().getBalance());
+            return ResponseEntity.ok(card.get().balance());
         }
         return ResponseEntity.notFound().build();
     }
 
-    @PostMapping("/{id}/block-request")
+    @PostMapping("/batch")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Получить несколько карт", description = "Возвращает карты по списку id одним запросом; для каждого id - карта или ошибка")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Результаты по каждому id"),
+        @ApiResponse(responseCode = "400", description = "Пустой список или слишком много id")
+    })
+    public ResponseEntity<CardBatchResponse<CardDto>> getCardsBatch(@Valid @RequestBody CardBatchRequest request) {
+        return ResponseEntity.ok(cardBatchService.resolve(request.getIds(), currentUserId(), isAdmin(), this::convertToDto));
+    }
+
+    @PostMapping("/balances")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Получить балансы нескольких карт", description = "Возвращает балансы по списку id одним запросом; для каждого id - баланс или ошибка")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Результаты по каждому id"),
+        @ApiResponse(responseCode = "400", description = "Пустой список или слишком много id")
+    })
+    public ResponseEntity<CardBatchResponse<BigDecimal>> getCardBalances(@Valid @RequestBody CardBatchRequest request) {
+        return ResponseEntity.ok(cardBatchService.resolve(request.getIds(), currentUserId(), isAdmin(), CardSnapshot::balance));
+    }
+
+    @PostMapping("/{id}/block-request")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER') and ownsCard(#id)")
+    @ShardKey("id")
     @Operation(summary = "Запросить блокировку карты", description = "Пользователь может запросить блокировку своей карты")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Запрос на блокировку отправлен"),
@@ -111,14 +179,23 @@ public class CardController {
     })
     public ResponseEntity<CardDto> requestCardBlock(@Parameter(description = "ID карты") @PathVariable Long id) {
         try {
-            String username = org.springframework.security.core.context.SecurityContextHolder.getContext().getAuthentication().getName();
-            Card card = cardService.requestCardBlock(id, 1L); // Заглушка для userId
+            Card card = cardService.requestCardBlock(id, currentUserId());
             return ResponseEntity.ok(convertToDto(card));
         } catch (IllegalArgumentException | IllegalStateException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    private Long currentUserId() {
+        UserPrincipal principal = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return principal.getId();
+    }
+
+    private boolean isAdmin() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+    }
+
     private CardDto convertToDto(Card card) {
         CardDto dto = new CardDto();
         dto.setId(card.getId());
@@ -135,6 +212,22 @@ public class CardController {
         return dto;
     }
 
+    private CardDto convertToDto(CardSnapshot card) {
+        CardDto dto = new CardDto();
+        dto.setId(card.id());
+        dto.setUserId(card.userId());
+        dto.setCardNumber(card.cardNumber());
+        dto.setCardHolderName(card.cardHolderName());
+        dto.setExpiryDate(card.expiryDate());
+        dto.setCvv(card.cvv());
+        dto.setCardType(card.cardType());
+        dto.setBalance(card.balance());
+        dto.setIsActive(card.isActive());
+        dto.setCreatedAt(card.createdAt());
+        dto.setUpdatedAt(card.updatedAt());
+        return dto;
+    }
+
     private Card convertToEntity(CardDto dto) {
         Card card = new Card();
         card.setCardNumber(dto.getCardNumber());
@@ -0,0 +1,37 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.DashboardDto;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.DashboardService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/me")
+@Tag(name = "Dashboard", description = "API главного экрана текущего пользователя")
+@SecurityRequirement(name = "bearerAuth")
+@CrossOrigin(origins = "*", maxAge = 3600)
+public class DashboardController {
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    @GetMapping("/dashboard")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Главный экран", description = "Профиль, карты с балансами, счетчики карт и последние операции по каждой карте одним ответом; части, не загруженные вовремя, описаны в parts")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Данные главного экрана, возможно неполные (complete = false)")
+    })
+    public ResponseEntity<DashboardDto> getDashboard() {
+        UserPrincipal principal = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return ResponseEntity.ok(dashboardService.getDashboard(principal.getId()));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.sse.UserEventHub;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/me")
+@Tag(name = "Event Stream", description = "Поток событий текущего пользователя")
+@SecurityRequirement(name = "bearerAuth")
+@CrossOrigin(origins = "*", maxAge = 3600)
+public class EventStreamController {
+
+    @Autowired
+    private UserEventHub userEventHub;
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Поток событий", description = "text/event-stream с изменениями балансов своих карт (balance) и завершенными операциями (transaction) вместо опроса баланса и последних операций; при переподключении с Last-Event-ID пропущенные события досылаются или приходит resync")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Поток открыт"),
+        @ApiResponse(responseCode = "429", description = "У пользователя открыто максимальное число потоков"),
+        @ApiResponse(responseCode = "503", description = "Узел обслуживает максимальное число потоков")
+    })
+    public ResponseEntity<SseEmitter> streamEvents(
+            @Parameter(description = "Id последнего полученного события (заголовок браузера при переподключении)")
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @Parameter(description = "Id последнего полученного события, если заголовок задать нельзя")
+            @RequestParam(required = false) String lastEventId) {
+        UserPrincipal principal = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        SseEmitter emitter = userEventHub.subscribe(principal.getId(),
+                lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+}
@@ -1,11 +1,22 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.BulkTransferLine;
+import com.example.bankcards.dto.BulkTransferResponse;
 import com.example.bankcards.dto.MessageResponse;
 import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransactionPageDto;
+import com.example.bankcards.dto.TransactionReportBucketDto;
 import com.example.bankcards.entity.Transaction;
 import com.example.bankcards.entity.TransactionStatus;
 import com.example.bankcards.entity.TransactionType;
+import com.example.bankcards.monitoring.QueryBudget;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.BulkTransferService;
+import com.example.bankcards.service.CardHistoryService;
+import com.example.bankcards.service.TransactionReportService;
 import com.example.bankcards.service.TransactionService;
+import com.example.bankcards.service.TransferService;
+import com.example.bankcards.sharding.ShardKey;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -14,13 +25,19 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -36,11 +53,28 @@ public class TransactionController {
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private CardHistoryService cardHistoryService;
+
+    @Autowired
+    private TransactionReportService transactionReportService;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private AsyncTransferService asyncTransferService;
+
+    @Autowired
+    private BulkTransferService bulkTransferService;
+
     @PostMapping("/transfer")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#fromCardId).get().fromCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#fromCardId)")
+    @ShardKey("fromCardId")
     @Operation(summary = "Перевести средства между картами", description = "Выполняет перевод средств между двумя картами")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "201", description = "Перевод выполнен успешно"),
+        @ApiResponse(responseCode = "202", description = "Перевод между шардами принят и будет завершен позже"),
         @ApiResponse(responseCode = "400", description = "Ошибка при переводе (недостаточно средств, неактивные карты и т.д.)"),
         @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
     })
@@ -50,8 +84,9 @@ public class TransactionController {
             @Parameter(description = "Сумма перевода") @RequestParam BigDecimal amount,
             @Parameter(description = "Описание перевода") @RequestParam(required = false) String description) {
         try {
-            Transaction transaction = transactionService.createTransferTransaction(fromCardId, toCardId, amount, description);
-            return ResponseEntity.status(HttpStatus.CREATED).body(convertToDto(transaction));
+            Transaction transaction = transferService.transfer(fromCardId, toCardId, amount, description);
+            HttpStatus status = transaction.getStatus() == TransactionStatus.PENDING ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+            return ResponseEntity.status(status).body(convertToDto(transaction));
         } catch (IllegalArgumentException | IllegalStateException e) {
             return ResponseEntity.badRequest().build();
         } catch (RuntimeException e) {
@@ -59,11 +94,69 @@ public class TransactionController {
         }
     }
 
+    @PostMapping("/transfer:async")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#fromCardId)")
+    @ShardKey("fromCardId")
+    @Operation(summary = "Принять перевод в очередь",
+            description = "Проверяет запрос и ставит перевод в очередь; статус операции - GET /api/transactions/{id}")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Перевод принят, операция в статусе PENDING"),
+        @ApiResponse(responseCode = "400", description = "Некорректная сумма, карта не найдена или карты на разных шардах"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа"),
+        @ApiResponse(responseCode = "503", description = "Очередь переводов переполнена")
+    })
+    public ResponseEntity<TransactionDto> transferAsync(
+            @Parameter(description = "ID карты отправителя") @RequestParam Long fromCardId,
+            @Parameter(description = "ID карты получателя") @RequestParam Long toCardId,
+            @Parameter(description = "Сумма перевода") @RequestParam BigDecimal amount,
+            @Parameter(description = "Описание перевода") @RequestParam(required = false) String description) {
+        Transaction transaction = asyncTransferService.submit(fromCardId, toCardId, amount, description);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/transactions/" + transaction.getId()))
+                .body(convertToDto(transaction));
+    }
+
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#fromCardId)")
+    @ShardKey("fromCardId")
+    @Operation(summary = "Массовый перевод с одной карты",
+            description = "Переводы с карты отправителя по массиву строк {toCardId, amount, description}; строки с ошибками отклоняются по отдельности")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Перевод выполнен, отклоненные строки - в errors"),
+        @ApiResponse(responseCode = "400", description = "Пустой или слишком большой список, карта отправителя не найдена или не активна, недостаточно средств"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<BulkTransferResponse> bulkTransfer(
+            @Parameter(description = "ID карты отправителя") @RequestParam Long fromCardId,
+            @Parameter(description = "Описание для строк без собственного описания") @RequestParam(required = false) String description,
+            @RequestBody List<BulkTransferLine> lines) {
+        return ResponseEntity.ok(bulkTransferService.transfer(fromCardId, lines, description));
+    }
+
+    @PostMapping(value = "/bulk", consumes = "text/csv")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#fromCardId)")
+    @ShardKey("fromCardId")
+    @Operation(summary = "Массовый перевод с одной карты из CSV",
+            description = "Файл CSV со строками toCardId,amount[,description]; первая строка может быть заголовком toCardId,amount[,description]")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Перевод выполнен, отклоненные строки - в errors"),
+        @ApiResponse(responseCode = "400", description = "Пустой или слишком большой файл, карта отправителя не найдена или не активна, недостаточно средств"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<BulkTransferResponse> bulkTransferCsv(
+            @Parameter(description = "ID карты отправителя") @RequestParam Long fromCardId,
+            @Parameter(description = "Описание для строк без собственного описания") @RequestParam(required = false) String description,
+            @RequestBody String csv) {
+        return ResponseEntity.ok(bulkTransferService.transferCsv(fromCardId, csv, description));
+    }
+
     @PostMapping
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @ShardKey("fromCardId")
     @Operation(summary = "Перевести средства между своими картами", description = "Выполняет перевод средств между картами пользователя")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "201", description = "Перевод выполнен успешно"),
+        @ApiResponse(responseCode = "202", description = "Перевод между шардами принят и будет завершен позже"),
         @ApiResponse(responseCode = "400", description = "Ошибка при переводе (недостаточно средств, неактивные карты и т.д.)"),
         @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
     })
@@ -73,8 +166,9 @@ public class TransactionController {
             @Parameter(description = "Сумма перевода") @RequestParam BigDecimal amount,
             @Parameter(description = "Описание перевода") @RequestParam(required = false) String description) {
         try {
-            Transaction transaction = transactionService.createTransferTransaction(fromCardId, toCardId, amount, description);
-            return ResponseEntity.status(HttpStatus.CREATED).body(convertToDto(transaction));
+            Transaction transaction = transferService.transfer(fromCardId, toCardId, amount, description);
+            HttpStatus status = transaction.getStatus() == TransactionStatus.PENDING ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+            return ResponseEntity.status(status).body(convertToDto(transaction));
         } catch (IllegalArgumentException | IllegalStateException e) {
             return ResponseEntity.badRequest().build();
         } catch (RuntimeException e) {
@@ -83,7 +177,8 @@ public class TransactionController {
     }
 
     @PostMapping("/payment")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#fromCardId).get().fromCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#fromCardId)")
+    @ShardKey("fromCardId")
     @Operation(summary = "Выполнить платеж", description = "Выполняет платеж с карты")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "201", description = "Платеж выполнен успешно"),
@@ -106,6 +201,7 @@ public class TransactionController {
 
     @PostMapping("/{id}/confirm")
     @PreAuthorize("hasRole('ADMIN')")
+    @ShardKey("id")
     @Operation(summary = "Подтвердить транзакцию", description = "Подтверждает ожидающую транзакцию")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Транзакция подтверждена успешно"),
@@ -125,7 +221,8 @@ public class TransactionController {
     }
 
     @PostMapping("/{id}/cancel")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#id).get().fromCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsOutgoingTransaction(#id)")
+    @ShardKey("id")
     @Operation(summary = "Отменить транзакцию", description = "Отменяет ожидающую транзакцию")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Транзакция отменена успешно"),
@@ -145,7 +242,8 @@ public class TransactionController {
     }
 
     @PostMapping("/refund/{originalTransactionId}")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#originalTransactionId).get().fromCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsOutgoingTransaction(#originalTransactionId)")
+    @ShardKey("originalTransactionId")
     @Operation(summary = "Выполнить возврат средств", description = "Выполняет возврат средств по выполненной транзакции")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "201", description = "Возврат выполнен успешно"),
@@ -166,7 +264,8 @@ public class TransactionController {
     }
 
     @GetMapping("/{id}")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#id).get().fromCard.user.username == authentication.name or @transactionService.findById(#id).get().toCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsTransaction(#id)")
+    @ShardKey("id")
     @Operation(summary = "Получить транзакцию по ID", description = "Возвращает транзакцию по её идентификатору")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Транзакция успешно найдена"),
@@ -182,7 +281,8 @@ public class TransactionController {
     }
 
     @GetMapping("/card/{cardId}")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#cardId).get().fromCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#cardId)")
+    @ShardKey("cardId")
     @Operation(summary = "Получить транзакции по карте", description = "Возвращает все транзакции для указанной карты")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Список транзакций успешно получен"),
@@ -197,7 +297,8 @@ public class TransactionController {
     }
 
     @GetMapping("/card/{cardId}/recent")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findById(#cardId).get().fromCard.user.username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#cardId)")
+    @ShardKey("cardId")
     @Operation(summary = "Получить последние транзакции по карте", description = "Возвращает последние N транзакций для указанной карты")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Список транзакций успешно получен"),
@@ -213,8 +314,52 @@ public class TransactionController {
         return ResponseEntity.ok(transactionDtos);
     }
 
+    @GetMapping("/card/{cardId}/history")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#cardId)")
+    @ShardKey("cardId")
+    @Operation(summary = "История операций по карте", description = "Возвращает страницу транзакций карты от новых к старым; следующая страница запрашивается по nextCursor")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Страница транзакций успешно получена"),
+        @ApiResponse(responseCode = "400", description = "Некорректный курсор или размер страницы"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<TransactionPageDto> getCardHistory(
+            @Parameter(description = "ID карты") @PathVariable Long cardId,
+            @Parameter(description = "Курсор из предыдущего ответа") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Размер страницы") @RequestParam(required = false) Integer limit) {
+        CardHistoryService.Page page = cardHistoryService.getHistory(cardId, cursor, limit);
+        List<TransactionDto> items = page.items().stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(new TransactionPageDto(items, page.nextCursor()));
+    }
+
+    @GetMapping("/search")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @ShardKey("cardId")
+    @Operation(summary = "Поиск операций по описанию", description = "Полнотекстовый поиск по описаниям операций своих карт (или указанной карты), по убыванию релевантности")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Поиск выполнен успешно"),
+        @ApiResponse(responseCode = "400", description = "Слишком короткий поисковый запрос"),
+        @ApiResponse(responseCode = "403", description = "Нет доступа к указанной карте")
+    })
+    public ResponseEntity<Page<TransactionDto>> searchTransactions(
+            @Parameter(description = "Поисковый запрос") @RequestParam String query,
+            @Parameter(description = "ID карты (по умолчанию все свои карты)") @RequestParam(required = false) Long cardId,
+            @Parameter(description = "Номер страницы (начиная с 0)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Размер страницы") @RequestParam(defaultValue = "20") int size) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        boolean admin = authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+
+        List<Long> cardIds = transactionService.resolveSearchScope(authentication.getName(), cardId, admin);
+        Page<Transaction> transactions = transactionService.searchByDescription(cardIds, query, PageRequest.of(page, size));
+        return ResponseEntity.ok(transactions.map(this::convertToDto));
+    }
+
     @GetMapping("/user/{userId}")
-    @PreAuthorize("hasRole('ADMIN') or #userId.toString() == authentication.principal.id.toString()")
+    @PreAuthorize("hasRole('ADMIN') or isCurrentUser(#userId)")
+    @ShardKey("userId")
     @Operation(summary = "Получить транзакции пользователя", description = "Возвращает все транзакции для указанного пользователя")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Список транзакций успешно получен"),
@@ -275,6 +420,22 @@ public class TransactionController {
         return ResponseEntity.ok(transactionDtos);
     }
 
+    @GetMapping("/report")
+    @PreAuthorize("hasRole('ADMIN')")
+    @QueryBudget(0)
+    @Operation(summary = "Отчет по транзакциям за период", description = "Возвращает количество и сумму транзакций по часовым или суточным интервалам")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Отчет успешно построен"),
+        @ApiResponse(responseCode = "400", description = "Некорректный или слишком длинный период"),
+        @ApiResponse(responseCode = "403", description = "Недостаточно прав доступа")
+    })
+    public ResponseEntity<List<TransactionReportBucketDto>> getTransactionReport(
+            @Parameter(description = "Дата начала периода") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @Parameter(description = "Дата окончания периода") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @Parameter(description = "Размер интервала") @RequestParam(defaultValue = "DAY") TransactionReportService.Bucket bucket) {
+        return ResponseEntity.ok(transactionReportService.buildReport(startDate, endDate, bucket));
+    }
+
     @GetMapping("/failed-recent")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Получить неудачные транзакции", description = "Возвращает неудачные транзакции за последние N дней")
@@ -305,7 +466,8 @@ public class TransactionController {
     }
 
     @GetMapping("/between-cards")
-    @PreAuthorize("hasRole('ADMIN') or @transactionService.findByCards(#fromCardId, #toCardId).stream().anyMatch(t -> t.fromCard.user.username == authentication.name or t.toCard.user.username == authentication.name)")
+    @PreAuthorize("hasRole('ADMIN') or ownsCard(#fromCardId) or ownsCard(#toCardId)")
+    @ShardKey("fromCardId")
     @Operation(summary = "Получить транзакции между картами", description = "Возвращает транзакции между двумя указанными картами")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Список транзакций успешно получен"),
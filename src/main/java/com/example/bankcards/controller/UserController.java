@@ -8,6 +8,7 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BusinessException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.sharding.ShardKey;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -55,7 +56,7 @@ public class UserController {
     }
 
     @GetMapping("/{id}")
-    @PreAuthorize("hasRole('ADMIN') or @userService.findById(#id).get().username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or isCurrentUser(#id)")
     @Operation(summary = "Получить пользователя по ID", description = "Возвращает пользователя по его идентификатору")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Пользователь успешно найден"),
@@ -105,7 +106,7 @@ public class UserController {
     }
 
     @PutMapping("/{id}")
-    @PreAuthorize("hasRole('ADMIN') or @userService.findById(#id).get().username == authentication.name")
+    @PreAuthorize("hasRole('ADMIN') or isCurrentUser(#id)")
     @Operation(summary = "Обновить пользователя", description = "Обновляет данные пользователя")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Пользователь успешно обновлен"),
@@ -123,6 +124,7 @@ public class UserController {
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
+    @ShardKey("id")
     @Operation(summary = "Удалить пользователя", description = "Удаляет пользователя из системы")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Пользователь успешно удален"),
@@ -212,7 +214,8 @@ public class UserController {
     
 
     @GetMapping("/{id}/cards-count")
-    @PreAuthorize("hasRole('ADMIN') or #id.toString() == authentication.principal.id.toString()")
+    @PreAuthorize("hasRole('ADMIN') or isCurrentUser(#id)")
+    @ShardKey("id")
     @Operation(summary = "Получить количество карт пользователя", description = "Возвращает количество карт у пользователя")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Количество карт успешно получено"),
@@ -237,6 +240,8 @@ public class UserController {
         dto.setRoles(user.getRoles().stream()
                 .map(role -> role.getName())
                 .collect(Collectors.toSet()));
+        dto.setCardCount(user.getCardCount());
+        dto.setActiveCardCount(user.getActiveCardCount());
         return dto;
     }
 
@@ -0,0 +1,9 @@
+package com.example.bankcards.datasource;
+
+/**
+ * Пул соединений, на который направляется транзакция.
+ */
+public enum DataSourceRole {
+    PRIMARY,
+    REPLICA
+}
@@ -0,0 +1,92 @@
+package com.example.bankcards.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Требования к свежести чтения в рамках одного HTTP-запроса.
+ * Токен согласованности - позиция WAL основной БД (LSN) после записи клиента:
+ * чтение идет на реплику, только если она применила WAL до этой позиции.
+ * Если в самом запросе была пишущая транзакция, все последующее чтение идет на основную БД.
+ */
+public final class ReadConsistency {
+
+    private static final ThreadLocal<ReadConsistency> CURRENT = new ThreadLocal<>();
+
+    private final long requiredLsn;
+    private boolean primaryWrite;
+
+    private ReadConsistency(long requiredLsn) {
+        this.requiredLsn = requiredLsn;
+    }
+
+    /**
+     * @param token токен из заголовка запроса или null
+     */
+    public static ReadConsistency begin(String token) {
+        ReadConsistency consistency = new ReadConsistency(token == null ? 0 : parseToken(token));
+        CURRENT.set(consistency);
+        return consistency;
+    }
+
+    public static ReadConsistency current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Выполняет действие на другом потоке с требованиями исходного запроса
+     * (например, подзапросы, запущенные параллельно), затем восстанавливает прежние.
+     */
+    public static <T> T callWith(ReadConsistency consistency, Supplier<T> action) {
+        ReadConsistency previous = CURRENT.get();
+        if (consistency == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(consistency);
+        }
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * LSN вида {@code 16/B374D848} как число; некорректный токен требует чтения
+     * с основной БД, а не ошибки запроса.
+     */
+    static long parseToken(String token) {
+        int slash = token.indexOf('/');
+        try {
+            if (slash > 0) {
+                long high = Long.parseLong(token.substring(0, slash).trim(), 16);
+                long low = Long.parseLong(token.substring(slash + 1).trim(), 16);
+                if (high >= 0 && high <= 0xFFFFFFFFL && low >= 0 && low <= 0xFFFFFFFFL) {
+                    return (high << 32) | low;
+                }
+            }
+        } catch (NumberFormatException ignored) {
+            // ниже
+        }
+        return Long.MAX_VALUE;
+    }
+
+    void markPrimaryWrite() {
+        primaryWrite = true;
+    }
+
+    public boolean hasPrimaryWrite() {
+        return primaryWrite;
+    }
+
+    public long getRequiredLsn() {
+        return requiredLsn;
+    }
+}
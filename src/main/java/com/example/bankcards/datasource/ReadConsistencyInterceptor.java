@@ -0,0 +1,25 @@
+package com.example.bankcards.datasource;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Привязывает к запросу токен согласованности из заголовка {@code X-Consistency-Token}.
+ */
+public class ReadConsistencyInterceptor implements HandlerInterceptor {
+
+    public static final String CONSISTENCY_TOKEN_HEADER = "X-Consistency-Token";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadConsistency.begin(request.getHeader(CONSISTENCY_TOKEN_HEADER));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                Object handler, Exception ex) {
+        ReadConsistency.end();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bankcards.datasource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * После запроса с пишущей транзакцией возвращает клиенту текущую позицию WAL основной БД
+ * в заголовке {@code X-Consistency-Token}. Клиент передает токен в следующих запросах,
+ * и чтение идет на реплику, только когда она догнала эту позицию.
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+public class ReadConsistencyResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    private static final String CURRENT_LSN_QUERY = "SELECT pg_current_wal_lsn()::text";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        ReadConsistency consistency = ReadConsistency.current();
+        if (consistency != null && consistency.hasPrimaryWrite()) {
+            String lsn = jdbcTemplate.queryForObject(CURRENT_LSN_QUERY, String.class);
+            response.getHeaders().set(ReadConsistencyInterceptor.CONSISTENCY_TOKEN_HEADER, lsn);
+        }
+        return body;
+    }
+}
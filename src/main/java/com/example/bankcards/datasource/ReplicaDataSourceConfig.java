@@ -0,0 +1,126 @@
+package com.example.bankcards.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Основной пул ({@code spring.datasource}) и пул реплики ({@code app.datasource.replica})
+ * за одним бином {@link DataSource}. Пулы не регистрируются бинами, чтобы JPA, Liquibase
+ * и учет запросов видели единственный источник. Запросы к API получают токен согласованности
+ * чтения ({@link ReadConsistency}). При включенном шардировании бин {@link DataSource} объявляет
+ * {@code ShardingConfig}, который отказывается стартовать вместе с репликой.
+ */
+@Configuration
+@ConditionalOnExpression("${app.datasource.replica.enabled:false} and !${app.sharding.enabled:false}")
+public class ReplicaDataSourceConfig implements DisposableBean, WebMvcConfigurer {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.datasource.replica.url}")
+    private String replicaUrl;
+
+    @Value("${app.datasource.replica.username:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica.max-lag-seconds:5}")
+    private long maxLagSeconds;
+
+    private HikariDataSource primaryPool;
+    private HikariDataSource replicaPool;
+    private ReplicaLagMonitor lagMonitor;
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties) {
+        primaryPool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primaryPool));
+        primaryPool.setPoolName("primary");
+        primaryPool.setMetricRegistry(meterRegistry);
+
+        replicaPool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        Binder.get(environment).bind("app.datasource.replica.hikari", Bindable.ofInstance(replicaPool));
+        replicaPool.setPoolName("replica");
+        replicaPool.setReadOnly(true);
+        replicaPool.setMetricRegistry(meterRegistry);
+
+        lagMonitor = new ReplicaLagMonitor(replicaPool, ReplicaLagMonitor.POSTGRES_LAG_QUERY,
+                Duration.ofSeconds(maxLagSeconds));
+        Gauge.builder("bankcards.datasource.replica.lag", lagMonitor, ReplicaLagMonitor::getLagSeconds)
+                .description("Отставание реплики по последней проверке")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("bankcards.datasource.replica.usable", lagMonitor, m -> m.isUsable() ? 1 : 0)
+                .description("1, если чтение направляется на реплику")
+                .register(meterRegistry);
+
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primaryPool, replicaPool, lagMonitor, meterRegistry));
+    }
+
+    /**
+     * Spring по умолчанию удерживает соединение до закрытия EntityManager, а при open-in-view
+     * он живет весь HTTP-запрос: после читающей транзакции запись ушла бы в соединение реплики.
+     * Соединение освобождается после каждой транзакции, и следующая выбирает пул заново.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadConsistencyInterceptor()).addPathPatterns("/api/**");
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replica.lag-check-interval-ms:1000}")
+    public void checkReplicaLag() {
+        if (lagMonitor != null) {
+            lagMonitor.refresh();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (replicaPool != null) {
+            replicaPool.close();
+        }
+        if (primaryPool != null) {
+            primaryPool.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.bankcards.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Периодически измеряет отставание реплики. Реплика считается пригодной для чтения,
+ * только если последняя проверка прошла успешно и отставание не больше {@code maxLag}.
+ */
+public class ReplicaLagMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    /**
+     * Отставание реплики PostgreSQL в секундах и примененная позиция WAL. Если реплика применила
+     * все полученные записи WAL, отставание 0 (иначе при простое мастера время последней транзакции
+     * росло бы); сервер не в режиме восстановления (отдельный экземпляр) тоже считается без отставания.
+     */
+    public static final String POSTGRES_LAG_QUERY =
+            "SELECT CASE " +
+            "WHEN NOT pg_is_in_recovery() THEN 0 " +
+            "WHEN pg_last_wal_receive_lsn() IS NOT DISTINCT FROM pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END, " +
+            "CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn() ELSE pg_current_wal_lsn() END::text";
+
+    private static final int QUERY_TIMEOUT_SECONDS = 2;
+
+    private final DataSource replica;
+    private final String lagQuery;
+    private final Duration maxLag;
+
+    private volatile double lagSeconds = Double.NaN;
+    private volatile boolean usable;
+    private volatile long replayedLsn = -1;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration maxLag) {
+        this.replica = replica;
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+    }
+
+    public void refresh() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                rs.next();
+                String lsn = rs.getString(2);
+                replayedLsn = lsn == null ? -1 : ReadConsistency.parseToken(lsn);
+                update(rs.getDouble(1));
+            }
+        } catch (SQLException e) {
+            if (usable || !Double.isNaN(lagSeconds)) {
+                log.warn("Реплика недоступна, чтение переключено на основную БД: {}", e.getMessage());
+            }
+            lagSeconds = Double.NaN;
+            replayedLsn = -1;
+            usable = false;
+        }
+    }
+
+    private void update(double lag) {
+        boolean nowUsable = lag <= maxLag.toMillis() / 1000.0;
+        if (usable && !nowUsable) {
+            log.warn("Отставание реплики {} с больше допустимого {}, чтение переключено на основную БД", lag, maxLag);
+        } else if (!usable && nowUsable) {
+            log.info("Реплика доступна, отставание {} с", lag);
+        }
+        lagSeconds = lag;
+        usable = nowUsable;
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * Применила ли реплика WAL до указанной позиции по последней проверке.
+     */
+    public boolean hasReplayed(long lsn) {
+        return lsn <= replayedLsn;
+    }
+
+    /**
+     * Отставание по последней проверке в секундах, NaN если реплика недоступна.
+     */
+    public double getLagSeconds() {
+        return lagSeconds;
+    }
+}
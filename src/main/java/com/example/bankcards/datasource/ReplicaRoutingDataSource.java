@@ -0,0 +1,73 @@
+package com.example.bankcards.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Направляет транзакции {@code readOnly = true} на реплику, остальные - на основную БД.
+ * Если реплика отстает больше допустимого или недоступна, чтение тоже идет на основную БД,
+ * как и чтение, требующее позиции WAL, которую реплика еще не применила ({@link ReadConsistency}).
+ * <p>
+ * Флаг readOnly известен только после начала транзакции, поэтому источник должен
+ * использоваться через {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * физическое соединение берется при первом запросе, когда решение уже можно принять.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+    private final Counter staleReplicaReads;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+                                    ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.lagMonitor = lagMonitor;
+        this.primaryConnections = routedCounter(meterRegistry, DataSourceRole.PRIMARY);
+        this.replicaConnections = routedCounter(meterRegistry, DataSourceRole.REPLICA);
+        this.staleReplicaReads = Counter.builder("bankcards.datasource.read-your-writes.fallbacks")
+                .description("Чтения на основной БД, потому что реплика не применила запись клиента")
+                .register(meterRegistry);
+        setTargetDataSources(Map.of(DataSourceRole.PRIMARY, primary, DataSourceRole.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        DataSourceRole role = route();
+        (role == DataSourceRole.REPLICA ? replicaConnections : primaryConnections).increment();
+        return role;
+    }
+
+    private DataSourceRole route() {
+        ReadConsistency consistency = ReadConsistency.current();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (consistency != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                consistency.markPrimaryWrite();
+            }
+            return DataSourceRole.PRIMARY;
+        }
+        if (!lagMonitor.isUsable()) {
+            return DataSourceRole.PRIMARY;
+        }
+        if (consistency != null && (consistency.hasPrimaryWrite()
+                || (consistency.getRequiredLsn() > 0 && !lagMonitor.hasReplayed(consistency.getRequiredLsn())))) {
+            staleReplicaReads.increment();
+            return DataSourceRole.PRIMARY;
+        }
+        return DataSourceRole.REPLICA;
+    }
+
+    private static Counter routedCounter(MeterRegistry meterRegistry, DataSourceRole role) {
+        return Counter.builder("bankcards.datasource.connections")
+                .description("Соединения, выданные пулом после маршрутизации")
+                .tag("pool", role.name().toLowerCase())
+                .register(meterRegistry);
+    }
+}
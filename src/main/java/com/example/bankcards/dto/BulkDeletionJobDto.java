@@ -0,0 +1,96 @@
+package com.example.bankcards.dto;
+
+import java.time.LocalDateTime;
+
+public class BulkDeletionJobDto {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String id;
+    private String targetType;
+    private Long targetId;
+    private volatile Status status;
+    private volatile long deletedTransactions;
+    private volatile String error;
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+
+    public BulkDeletionJobDto() {}
+
+    public BulkDeletionJobDto(String id, String targetType, Long targetId) {
+        this.id = id;
+        this.targetType = targetType;
+        this.targetId = targetId;
+        this.status = Status.QUEUED;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTargetType() {
+        return targetType;
+    }
+
+    public void setTargetType(String targetType) {
+        this.targetType = targetType;
+    }
+
+    public Long getTargetId() {
+        return targetId;
+    }
+
+    public void setTargetId(Long targetId) {
+        this.targetId = targetId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public long getDeletedTransactions() {
+        return deletedTransactions;
+    }
+
+    public void setDeletedTransactions(long deletedTransactions) {
+        this.deletedTransactions = deletedTransactions;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
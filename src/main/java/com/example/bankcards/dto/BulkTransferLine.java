@@ -0,0 +1,45 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Строка массового перевода: получатель, сумма и необязательное описание.
+ */
+public class BulkTransferLine {
+
+    private Long toCardId;
+    private BigDecimal amount;
+    private String description;
+
+    public BulkTransferLine() {}
+
+    public BulkTransferLine(Long toCardId, BigDecimal amount, String description) {
+        this.toCardId = toCardId;
+        this.amount = amount;
+        this.description = description;
+    }
+
+    public Long getToCardId() {
+        return toCardId;
+    }
+
+    public void setToCardId(Long toCardId) {
+        this.toCardId = toCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+}
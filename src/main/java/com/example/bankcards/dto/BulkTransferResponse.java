@@ -0,0 +1,129 @@
+package com.example.bankcards.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Итог массового перевода: число выполненных и отклоненных строк, списанная сумма
+ * и по элементу на каждую отклоненную строку. Отклоненная строка не мешает остальным.
+ */
+public class BulkTransferResponse {
+
+    public enum Status {
+        INVALID_LINE,
+        INVALID_AMOUNT,
+        SAME_CARD,
+        CROSS_SHARD,
+        CARD_NOT_FOUND,
+        CARD_INACTIVE
+    }
+
+    private Long fromCardId;
+    private int completed;
+    private int rejected;
+    private BigDecimal totalAmount;
+    private List<LineError> errors;
+
+    public BulkTransferResponse() {}
+
+    public BulkTransferResponse(Long fromCardId, int completed, int rejected, BigDecimal totalAmount,
+                                List<LineError> errors) {
+        this.fromCardId = fromCardId;
+        this.completed = completed;
+        this.rejected = rejected;
+        this.totalAmount = totalAmount;
+        this.errors = errors;
+    }
+
+    public Long getFromCardId() {
+        return fromCardId;
+    }
+
+    public void setFromCardId(Long fromCardId) {
+        this.fromCardId = fromCardId;
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(int completed) {
+        this.completed = completed;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(int rejected) {
+        this.rejected = rejected;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public List<LineError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<LineError> errors) {
+        this.errors = errors;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class LineError {
+
+        private int line;
+        private Long toCardId;
+        private Status status;
+        private String error;
+
+        public LineError() {}
+
+        public LineError(int line, Long toCardId, Status status, String error) {
+            this.line = line;
+            this.toCardId = toCardId;
+            this.status = status;
+            this.error = error;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public void setLine(int line) {
+            this.line = line;
+        }
+
+        public Long getToCardId() {
+            return toCardId;
+        }
+
+        public void setToCardId(Long toCardId) {
+            this.toCardId = toCardId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
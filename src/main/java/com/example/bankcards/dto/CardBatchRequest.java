@@ -0,0 +1,25 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public class CardBatchRequest {
+
+    @NotEmpty(message = "Список id карт не должен быть пустым")
+    private List<Long> ids;
+
+    public CardBatchRequest() {}
+
+    public CardBatchRequest(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bankcards.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Ответ пакетного запроса карт: по элементу на каждый уникальный id в порядке запроса.
+ * Ошибка по одному id не мешает остальным - она возвращается в его элементе.
+ */
+public class CardBatchResponse<T> {
+
+    public enum Status {
+        OK,
+        NOT_FOUND,
+        FORBIDDEN,
+        INVALID_ID
+    }
+
+    private List<Item<T>> results;
+
+    public CardBatchResponse() {}
+
+    public CardBatchResponse(List<Item<T>> results) {
+        this.results = results;
+    }
+
+    public List<Item<T>> getResults() {
+        return results;
+    }
+
+    public void setResults(List<Item<T>> results) {
+        this.results = results;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item<T> {
+
+        private Long id;
+        private Status status;
+        private T data;
+        private String error;
+
+        public Item() {}
+
+        public Item(Long id, Status status, T data, String error) {
+            this.id = id;
+            this.status = status;
+            this.data = data;
+            this.error = error;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public T getData() {
+            return data;
+        }
+
+        public void setData(T data) {
+            this.data = data;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
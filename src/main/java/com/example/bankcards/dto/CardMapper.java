@@ -20,16 +20,12 @@ public abstract class CardMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "updatedAt", ignore = true)
-    @Mapping(target = "outgoingTransactions", ignore = true)
-    @Mapping(target = "incomingTransactions", ignore = true)
     @Mapping(target = "user", expression = "java(getUserById(cardDto.getUserId()))")
     public abstract Card toEntity(CardDto cardDto);
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "updatedAt", ignore = true)
-    @Mapping(target = "outgoingTransactions", ignore = true)
-    @Mapping(target = "incomingTransactions", ignore = true)
     @Mapping(target = "user", expression = "java(getUserById(cardDto.getUserId()))")
     public abstract void updateCardFromDto(CardDto cardDto, @MappingTarget Card card);
 
@@ -0,0 +1,149 @@
+package com.example.bankcards.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Данные главного экрана одним ответом. Части загружаются параллельно; часть, которая не уложилась
+ * в свой бюджет времени или завершилась ошибкой, остается пустой, а ее состояние описано в {@code parts}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DashboardDto {
+
+    public enum PartStatus {
+        OK,
+        PARTIAL,
+        TIMEOUT,
+        FAILED,
+        REJECTED,
+        SKIPPED
+    }
+
+    private UserDto profile;
+    private List<CardSummaryDto> cards;
+    private CardCounts cardCounts;
+    private Map<Long, List<TransactionDto>> recentTransactions;
+    private Map<String, Part> parts;
+    private boolean complete;
+
+    public DashboardDto() {}
+
+    public UserDto getProfile() {
+        return profile;
+    }
+
+    public void setProfile(UserDto profile) {
+        this.profile = profile;
+    }
+
+    public List<CardSummaryDto> getCards() {
+        return cards;
+    }
+
+    public void setCards(List<CardSummaryDto> cards) {
+        this.cards = cards;
+    }
+
+    public CardCounts getCardCounts() {
+        return cardCounts;
+    }
+
+    public void setCardCounts(CardCounts cardCounts) {
+        this.cardCounts = cardCounts;
+    }
+
+    public Map<Long, List<TransactionDto>> getRecentTransactions() {
+        return recentTransactions;
+    }
+
+    public void setRecentTransactions(Map<Long, List<TransactionDto>> recentTransactions) {
+        this.recentTransactions = recentTransactions;
+    }
+
+    public Map<String, Part> getParts() {
+        return parts;
+    }
+
+    public void setParts(Map<String, Part> parts) {
+        this.parts = parts;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public static class CardCounts {
+
+        private long total;
+        private long active;
+
+        public CardCounts() {}
+
+        public CardCounts(long total, long active) {
+            this.total = total;
+            this.active = active;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public long getActive() {
+            return active;
+        }
+
+        public void setActive(long active) {
+            this.active = active;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Part {
+
+        private PartStatus status;
+        private long elapsedMs;
+        private String error;
+
+        public Part() {}
+
+        public Part(PartStatus status, long elapsedMs, String error) {
+            this.status = status;
+            this.elapsedMs = elapsedMs;
+            this.error = error;
+        }
+
+        public PartStatus getStatus() {
+            return status;
+        }
+
+        public void setStatus(PartStatus status) {
+            this.status = status;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public void setElapsedMs(long elapsedMs) {
+            this.elapsedMs = elapsedMs;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
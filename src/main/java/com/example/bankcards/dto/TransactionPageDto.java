@@ -0,0 +1,42 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public class TransactionPageDto {
+
+    private List<TransactionDto> items;
+    private String nextCursor;
+    private boolean hasMore;
+
+    public TransactionPageDto() {}
+
+    public TransactionPageDto(List<TransactionDto> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.hasMore = nextCursor != null;
+    }
+
+    public List<TransactionDto> getItems() {
+        return items;
+    }
+
+    public void setItems(List<TransactionDto> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public class TransactionReportBucketDto {
+
+    private LocalDateTime bucketStart;
+    private LocalDateTime bucketEnd;
+    private long totalCount;
+    private long completedCount;
+    private long failedCount;
+    private BigDecimal completedAmount;
+
+    public TransactionReportBucketDto() {}
+
+    public TransactionReportBucketDto(LocalDateTime bucketStart, LocalDateTime bucketEnd, long totalCount,
+                                      long completedCount, long failedCount, BigDecimal completedAmount) {
+        this.bucketStart = bucketStart;
+        this.bucketEnd = bucketEnd;
+        this.totalCount = totalCount;
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.completedAmount = completedAmount;
+    }
+
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public LocalDateTime getBucketEnd() {
+        return bucketEnd;
+    }
+
+    public void setBucketEnd(LocalDateTime bucketEnd) {
+        this.bucketEnd = bucketEnd;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    public void setCompletedCount(long completedCount) {
+        this.completedCount = completedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public void setFailedCount(long failedCount) {
+        this.failedCount = failedCount;
+    }
+
+    public BigDecimal getCompletedAmount() {
+        return completedAmount;
+    }
+
+    public void setCompletedAmount(BigDecimal completedAmount) {
+        this.completedAmount = completedAmount;
+    }
+}
@@ -36,6 +36,8 @@ public class UserDto {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private Set<String> roles;
+    private Integer cardCount;
+    private Integer activeCardCount;
 
     public UserDto() {}
 
@@ -126,4 +128,20 @@ public class UserDto {
     public void setRoles(Set<String> roles) {
         this.roles = roles;
     }
+
+    public Integer getCardCount() {
+        return cardCount;
+    }
+
+    public void setCardCount(Integer cardCount) {
+        this.cardCount = cardCount;
+    }
+
+    public Integer getActiveCardCount() {
+        return activeCardCount;
+    }
+
+    public void setActiveCardCount(Integer activeCardCount) {
+        this.activeCardCount = activeCardCount;
+    }
 }
@@ -22,6 +22,8 @@ public interface UserMapper {
     @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "roles", ignore = true)
     @Mapping(target = "cards", ignore = true)
+    @Mapping(target = "cardCount", ignore = true)
+    @Mapping(target = "activeCardCount", ignore = true)
     User toEntity(UserCreateRequest request);
 
     @Mapping(target = "username", ignore = true)
@@ -31,6 +33,8 @@ public interface UserMapper {
     @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "roles", ignore = true)
     @Mapping(target = "cards", ignore = true)
+    @Mapping(target = "cardCount", ignore = true)
+    @Mapping(target = "activeCardCount", ignore = true)
     void updateUserFromDto(UserUpdateRequest request, @MappingTarget User user);
 
     @Named("mapRolesToStrings")
@@ -8,8 +8,6 @@ import com.example.bankcards.util.CardNumberAttributeConverter;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.HashSet;
-import java.util.Set;
 
 @Entity
 @Table(name = "cards")
@@ -58,12 +56,6 @@ public class Card {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
-    @OneToMany(mappedBy = "fromCard", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
-    private Set<Transaction> outgoingTransactions = new HashSet<>();
-
-    @OneToMany(mappedBy = "toCard", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
-    private Set<Transaction> incomingTransactions = new HashSet<>();
-
     public Card() {}
 
     public Card(User user, String cardNumber, String cardHolderName, LocalDate expiryDate,
@@ -196,22 +188,6 @@ public class Card {
         this.updatedAt = updatedAt;
     }
 
-    public Set<Transaction> getOutgoingTransactions() {
-        return outgoingTransactions;
-    }
-
-    public void setOutgoingTransactions(Set<Transaction> outgoingTransactions) {
-        this.outgoingTransactions = outgoingTransactions;
-    }
-
-    public Set<Transaction> getIncomingTransactions() {
-        return incomingTransactions;
-    }
-
-    public void setIncomingTransactions(Set<Transaction> incomingTransactions) {
-        this.incomingTransactions = incomingTransactions;
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
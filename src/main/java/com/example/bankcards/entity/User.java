@@ -1,6 +1,9 @@
 package com.example.bankcards.entity;
 
+import com.example.bankcards.config.HibernateCacheConfig;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -37,6 +40,12 @@ public class User {
     @Column(name = "enabled", nullable = false)
     private Boolean enabled = true;
 
+    @Column(name = "card_count", nullable = false, insertable = false, updatable = false)
+    private Integer cardCount = 0;
+
+    @Column(name = "active_card_count", nullable = false, insertable = false, updatable = false)
+    private Integer activeCardCount = 0;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -51,6 +60,7 @@ public class User {
         joinColumns = @JoinColumn(name = "user_id"),
         inverseJoinColumns = @JoinColumn(name = "role_id")
     )
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = HibernateCacheConfig.USER_ROLES_REGION)
     private Set<Role> roles = new HashSet<>();
 
     @OneToMany(mappedBy = "user", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
@@ -130,6 +140,22 @@ public class User {
         this.enabled = enabled;
     }
 
+    public Integer getCardCount() {
+        return cardCount;
+    }
+
+    public void setCardCount(Integer cardCount) {
+        this.cardCount = cardCount;
+    }
+
+    public Integer getActiveCardCount() {
+        return activeCardCount;
+    }
+
+    public void setActiveCardCount(Integer activeCardCount) {
+        this.activeCardCount = activeCardCount;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
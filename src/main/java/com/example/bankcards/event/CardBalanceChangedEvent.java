@@ -0,0 +1,26 @@
+package com.example.bankcards.event;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Изменился баланс карты (перевод, платеж, пополнение, списание) или сразу нескольких карт
+ * (массовый перевод - одно событие на всю пачку). Публикуется внутри транзакции записи;
+ * слушатели обрабатывают его после фиксации транзакции.
+ */
+public class CardBalanceChangedEvent {
+
+    private final List<Long> cardIds;
+
+    public CardBalanceChangedEvent(Long cardId) {
+        this.cardIds = List.of(cardId);
+    }
+
+    public CardBalanceChangedEvent(Collection<Long> cardIds) {
+        this.cardIds = List.copyOf(cardIds);
+    }
+
+    public List<Long> getCardIds() {
+        return cardIds;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.bankcards.event;
+
+/**
+ * Карта создана, изменена или удалена. Публикуется сервисами внутри транзакции записи;
+ * слушатели обрабатывают его после фиксации транзакции.
+ */
+public class CardChangedEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+    private final Long cardId;
+    private final Long userId;
+    private final String cardHolderName;
+
+    public CardChangedEvent(Type type, Long cardId, Long userId, String cardHolderName) {
+        this.type = type;
+        this.cardId = cardId;
+        this.userId = userId;
+        this.cardHolderName = cardHolderName;
+    }
+
+    public static CardChangedEvent deleted(Long cardId, Long userId) {
+        return new CardChangedEvent(Type.DELETED, cardId, userId, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getCardHolderName() {
+        return cardHolderName;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.event;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Завершена пачка операций (массовый перевод) - одно событие на всю пачку вместо события на операцию.
+ * Публикуется внутри транзакции записи; слушатели обрабатывают его после фиксации транзакции.
+ */
+public class TransactionBatchCompletedEvent {
+
+    private final List<TransactionCompletedEvent> transactions;
+
+    public TransactionBatchCompletedEvent(Collection<TransactionCompletedEvent> transactions) {
+        this.transactions = List.copyOf(transactions);
+    }
+
+    public List<TransactionCompletedEvent> getTransactions() {
+        return transactions;
+    }
+}
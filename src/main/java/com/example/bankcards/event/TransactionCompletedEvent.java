@@ -0,0 +1,98 @@
+package com.example.bankcards.event;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Операция завершена (COMPLETED). Публикуется {@code TransactionService} внутри транзакции записи;
+ * слушатели обрабатывают его после фиксации. Карта и владелец отправителя или получателя могут быть null.
+ */
+public class TransactionCompletedEvent {
+
+    private final Long transactionId;
+    private final String type;
+    private final Long fromCardId;
+    private final Long fromUserId;
+    private final Long toCardId;
+    private final Long toUserId;
+    private final BigDecimal amount;
+    private final String currency;
+    private final String description;
+    private final LocalDateTime createdAt;
+
+    public TransactionCompletedEvent(Transaction transaction) {
+        Card from = transaction.getFromCard();
+        Card to = transaction.getToCard();
+        this.transactionId = transaction.getId();
+        this.type = transaction.getTransactionType().name();
+        this.fromCardId = from != null ? from.getId() : null;
+        this.fromUserId = from != null ? from.getUser().getId() : null;
+        this.toCardId = to != null ? to.getId() : null;
+        this.toUserId = to != null ? to.getUser().getId() : null;
+        this.amount = transaction.getAmount();
+        this.currency = transaction.getCurrency();
+        this.description = transaction.getDescription();
+        this.createdAt = transaction.getCreatedAt();
+    }
+
+    /**
+     * Операция, вставленная без сущности {@link Transaction} (массовый перевод).
+     */
+    public TransactionCompletedEvent(Long transactionId, String type, Long fromCardId, Long fromUserId,
+                                     Long toCardId, Long toUserId, BigDecimal amount, String currency,
+                                     String description, LocalDateTime createdAt) {
+        this.transactionId = transactionId;
+        this.type = type;
+        this.fromCardId = fromCardId;
+        this.fromUserId = fromUserId;
+        this.toCardId = toCardId;
+        this.toUserId = toUserId;
+        this.amount = amount;
+        this.currency = currency;
+        this.description = description;
+        this.createdAt = createdAt;
+    }
+
+    public Long getTransactionId() {
+        return transactionId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getFromCardId() {
+        return fromCardId;
+    }
+
+    public Long getFromUserId() {
+        return fromUserId;
+    }
+
+    public Long getToCardId() {
+        return toCardId;
+    }
+
+    public Long getToUserId() {
+        return toUserId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.bankcards.event;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Операция из очереди асинхронных переводов отклонена (FAILED). Публикуется {@code TransactionService}
+ * внутри транзакции записи; слушатели обрабатывают его после фиксации. Об отказе сообщается только
+ * отправителю: получатель операцию не видит.
+ */
+public class TransactionFailedEvent {
+
+    private final Long transactionId;
+    private final String type;
+    private final Long fromCardId;
+    private final Long fromUserId;
+    private final Long toCardId;
+    private final BigDecimal amount;
+    private final String currency;
+    private final String description;
+    private final LocalDateTime createdAt;
+
+    public TransactionFailedEvent(Transaction transaction) {
+        Card from = transaction.getFromCard();
+        Card to = transaction.getToCard();
+        this.transactionId = transaction.getId();
+        this.type = transaction.getTransactionType().name();
+        this.fromCardId = from != null ? from.getId() : null;
+        this.fromUserId = from != null ? from.getUser().getId() : null;
+        this.toCardId = to != null ? to.getId() : null;
+        this.amount = transaction.getAmount();
+        this.currency = transaction.getCurrency();
+        this.description = transaction.getDescription();
+        this.createdAt = transaction.getCreatedAt();
+    }
+
+    public Long getTransactionId() {
+        return transactionId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getFromCardId() {
+        return fromCardId;
+    }
+
+    public Long getFromUserId() {
+        return fromUserId;
+    }
+
+    public Long getToCardId() {
+        return toCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
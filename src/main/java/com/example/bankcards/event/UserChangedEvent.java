@@ -0,0 +1,59 @@
+package com.example.bankcards.event;
+
+/**
+ * Пользователь создан, изменен или удален. Публикуется сервисами внутри транзакции записи;
+ * слушатели обрабатывают его после фиксации транзакции.
+ */
+public class UserChangedEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+    private final Long userId;
+    private final String username;
+    private final String email;
+    private final String firstName;
+    private final String lastName;
+
+    public UserChangedEvent(Type type, Long userId, String username, String email,
+                            String firstName, String lastName) {
+        this.type = type;
+        this.userId = userId;
+        this.username = username;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public static UserChangedEvent deleted(Long userId) {
+        return new UserChangedEvent(Type.DELETED, userId, null, null, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+}
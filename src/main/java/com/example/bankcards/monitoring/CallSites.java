@@ -0,0 +1,29 @@
+package com.example.bankcards.monitoring;
+
+import java.util.Optional;
+import java.util.Set;
+
+final class CallSites {
+
+    private static final String APPLICATION_PACKAGE = "com.example.bankcards.";
+    private static final Set<String> INSTRUMENTATION_CLASSES = Set.of(
+            CallSites.class.getName(), QueryStats.class.getName(), QueryCountingDataSource.class.getName());
+
+    private CallSites() {}
+
+    static String firstApplicationFrame() {
+        Optional<StackWalker.StackFrame> frame = StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith(APPLICATION_PACKAGE))
+                .filter(f -> !INSTRUMENTATION_CLASSES.contains(outerClassName(f.getClassName())))
+                .filter(f -> !f.getClassName().contains("$$"))
+                .findFirst());
+        return frame
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse("unknown");
+    }
+
+    private static String outerClassName(String className) {
+        int nested = className.indexOf('$');
+        return nested < 0 ? className : className.substring(0, nested);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bankcards.monitoring;
+
+/**
+ * Счетчики SQL-запросов, строк и времени БД в рамках одного HTTP-запроса.
+ * Привязаны к потоку обработки запроса; вне запроса ничего не считается.
+ */
+public final class QueryStats {
+
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private final int budget;
+    private int queries;
+    private long rows;
+    private long nanos;
+    private String budgetExceededSql;
+    private String budgetExceededCallSite;
+
+    private QueryStats(int budget) {
+        this.budget = budget;
+    }
+
+    public static QueryStats begin(int budget) {
+        QueryStats stats = new QueryStats(budget);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    void recordQuery(String sql, long elapsedNanos) {
+        queries++;
+        nanos += elapsedNanos;
+        if (budget > 0 && queries == budget + 1) {
+            budgetExceededSql = sql;
+            budgetExceededCallSite = CallSites.firstApplicationFrame();
+        }
+    }
+
+    void recordRows(long count) {
+        rows += count;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getMillis() {
+        return nanos / 1_000_000;
+    }
+
+    public boolean isBudgetExceeded() {
+        return budget > 0 && queries > budget;
+    }
+
+    public String getBudgetExceededSql() {
+        return budgetExceededSql;
+    }
+
+    public String getBudgetExceededCallSite() {
+        return budgetExceededCallSite;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.bankcards.monitoring;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+public class QueryStatsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryStatsInterceptor.class);
+
+    private final MeterRegistry meterRegistry;
+    private final int defaultBudget;
+
+    public QueryStatsInterceptor(MeterRegistry meterRegistry, int defaultBudget) {
+        this.meterRegistry = meterRegistry;
+        this.defaultBudget = defaultBudget;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod handlerMethod) {
+            QueryStats.begin(resolveBudget(handlerMethod));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                Object handler, Exception ex) {
+        QueryStats stats = QueryStats.current();
+        if (stats == null || !(handler instanceof HandlerMethod handlerMethod)) {
+            return;
+        }
+        try {
+            String endpoint = handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+
+            DistributionSummary.builder("bankcards.db.queries")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry)
+                    .record(stats.getQueries());
+            DistributionSummary.builder("bankcards.db.rows")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry)
+                    .record(stats.getRows());
+            Timer.builder("bankcards.db.time")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry)
+                    .record(stats.getNanos(), TimeUnit.NANOSECONDS);
+
+            if (stats.isBudgetExceeded()) {
+                logger.warn("{} {} ({}) выполнил {} SQL-запросов при бюджете {}; первый лишний запрос из {}: {}",
+                        request.getMethod(), request.getRequestURI(), endpoint,
+                        stats.getQueries(), stats.getBudget(),
+                        stats.getBudgetExceededCallSite(), stats.getBudgetExceededSql());
+            }
+        } finally {
+            QueryStats.end();
+        }
+    }
+
+    /**
+     * Асинхронный обработчик (SSE, {@code DeferredResult}, {@code Callable}) освобождает поток запроса
+     * без {@link #afterCompletion}: счетчики снимаются здесь, иначе их получил бы следующий запрос этого
+     * потока. Асинхронная часть при повторной диспетчеризации считается заново.
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        QueryStats.end();
+    }
+
+    private int resolveBudget(HandlerMethod handlerMethod) {
+        QueryBudget budget = handlerMethod.getMethodAnnotation(QueryBudget.class);
+        if (budget == null) {
+            budget = handlerMethod.getBeanType().getAnnotation(QueryBudget.class);
+        }
+        return budget != null ? budget.value() : defaultBudget;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.bankcards.outbox;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+
+/**
+ * Публикует события внутри приложения как события Spring {@link OutboxEvent}; исключение
+ * слушателя {@code @EventListener} возвращает пачку на повтор.
+ */
+public class InJvmOutboxSink implements OutboxSink {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public InJvmOutboxSink(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void publish(List<OutboxEvent> events) {
+        events.forEach(eventPublisher::publishEvent);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bankcards.outbox;
+
+import com.example.bankcards.sharding.ShardMap;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Доставка событий outbox ({@code app.outbox}): получатель {@code in-jvm}, {@code file} или {@code webhook}.
+ * При {@code app.outbox.enabled: false} события не записываются и не доставляются.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxConfig {
+
+    @Value("${app.outbox.sink:in-jvm}")
+    private String sink;
+
+    @Value("${app.outbox.file.path:logs/outbox.jsonl}")
+    private String filePath;
+
+    @Value("${app.outbox.webhook.url:http://localhost:9000/outbox}")
+    private String webhookUrl;
+
+    @Value("${app.outbox.webhook.timeout-ms:5000}")
+    private long webhookTimeoutMs;
+
+    @Bean
+    public OutboxSink outboxSink(ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher) {
+        return switch (sink) {
+            case "in-jvm" -> new InJvmOutboxSink(eventPublisher);
+            case "file" -> new FileOutboxSink(Path.of(filePath), objectMapper);
+            case "webhook" -> new WebhookOutboxSink(URI.create(webhookUrl), Duration.ofMillis(webhookTimeoutMs),
+                    objectMapper);
+            default -> throw new IllegalStateException("Неизвестный получатель outbox: " + sink);
+        };
+    }
+
+    @Bean
+    public OutboxRelay outboxRelay(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                                   ShardMap shardMap, OutboxSink outboxSink,
+                                   @Qualifier("outboxRelayExecutor") TaskExecutor outboxRelayExecutor,
+                                   PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        return new OutboxRelay(jdbcTemplate, namedJdbcTemplate, shardMap, outboxSink, outboxRelayExecutor,
+                transactionManager, meterRegistry);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bankcards.outbox;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.LocalDateTime;
+
+/**
+ * Событие из {@code outbox_events}. {@code id} растет в порядке записи на шарде и служит ключом
+ * идемпотентности у получателя: доставка не реже одного раза, повторы возможны.
+ *
+ * @param payload JSON-документ события
+ */
+public record OutboxEvent(long id, String aggregateType, long aggregateId, String eventType,
+                          @JsonRawValue String payload, LocalDateTime createdAt) {
+}
@@ -0,0 +1,179 @@
+package com.example.bankcards.outbox;
+
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Доставляет события из {@code outbox_events} в {@link OutboxSink} пачками.
+ * <p>
+ * На каждом шарде работают до {@code app.outbox.workers} обработчиков. Обработчик в одной транзакции
+ * захватывает до {@code batch-size} готовых строк ({@code FOR UPDATE SKIP LOCKED}) в порядке индекса
+ * {@code (next_attempt_at, id)}, читая только его начало, отдает их получателю одним вызовом и удаляет
+ * одним запросом; захваченные строки другие обработчики и узлы пропускают, поэтому очередь разбирается
+ * параллельно без двойной доставки в штатном режиме. Пачка, которую получатель не принял, откладывается
+ * с экспоненциальной задержкой от {@code retry-delay-ms}.
+ * Порядок между пачками разных обработчиков не гарантируется.
+ */
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final RowMapper<OutboxEvent> EVENT_MAPPER = (rs, row) -> new OutboxEvent(
+            rs.getLong("id"), rs.getString("aggregate_type"), rs.getLong("aggregate_id"),
+            rs.getString("event_type"), rs.getString("payload"), rs.getTimestamp("created_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ShardMap shardMap;
+    private final OutboxSink sink;
+    private final TaskExecutor executor;
+    private final TransactionTemplate relayTransaction;
+
+    @Value("${app.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.outbox.workers:2}")
+    private int workers;
+
+    @Value("${app.outbox.max-batches-per-poll:100}")
+    private int maxBatchesPerPoll;
+
+    @Value("${app.outbox.retry-delay-ms:5000}")
+    private long retryDelayMs;
+
+    // шард -> число работающих обработчиков
+    private final Map<Integer, AtomicInteger> active = new ConcurrentHashMap<>();
+    private final Counter published;
+    private final Counter failures;
+    private final DistributionSummary batchSizes;
+    private final Timer deliveryLag;
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate, ShardMap shardMap,
+                       OutboxSink sink, @Qualifier("outboxRelayExecutor") TaskExecutor executor,
+                       PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.shardMap = shardMap;
+        this.sink = sink;
+        this.executor = executor;
+        this.relayTransaction = new TransactionTemplate(transactionManager);
+        String sinkName = sink.getClass().getSimpleName();
+        this.published = Counter.builder("bankcards.outbox.published")
+                .description("События, доставленные получателю outbox")
+                .tag("sink", sinkName)
+                .register(meterRegistry);
+        this.failures = Counter.builder("bankcards.outbox.failures")
+                .description("Пачки, не принятые получателем и отложенные на повтор")
+                .tag("sink", sinkName)
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("bankcards.outbox.batch-size")
+                .description("Размер доставленных пачек")
+                .register(meterRegistry);
+        this.deliveryLag = Timer.builder("bankcards.outbox.delivery-lag")
+                .description("Время от записи события до доставки")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Запускает недостающих обработчиков на каждом шарде; обработчик работает, пока находит полные пачки.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:200}")
+    public void poll() {
+        for (int shard : shardMap.shards()) {
+            AtomicInteger running = active.computeIfAbsent(shard, s -> new AtomicInteger());
+            while (running.get() < workers) {
+                running.incrementAndGet();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            drain(shard);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    });
+                } catch (TaskRejectedException e) {
+                    running.decrementAndGet();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void drain(int shard) {
+        for (int i = 0; i < maxBatchesPerPoll; i++) {
+            int delivered;
+            try {
+                delivered = ShardContext.call(shard, this::deliverBatch);
+            } catch (RuntimeException e) {
+                log.warn("Шард {} недоступен, доставка outbox отложена: {}", shard, e.getMessage());
+                return;
+            }
+            if (delivered < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return число доставленных событий; -1, если получатель не принял пачку
+     */
+    private int deliverBatch() {
+        Integer delivered = relayTransaction.execute(status -> {
+            List<OutboxEvent> batch = jdbcTemplate.query("SELECT id, aggregate_type, aggregate_id, event_type, " +
+                    "payload, created_at FROM outbox_events WHERE next_attempt_at <= localtimestamp " +
+                    "ORDER BY next_attempt_at, id LIMIT ? FOR UPDATE SKIP LOCKED", EVENT_MAPPER, batchSize);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            List<Long> ids = batch.stream().map(OutboxEvent::id).toList();
+            try {
+                sink.publish(batch);
+            } catch (RuntimeException e) {
+                namedJdbcTemplate.update("UPDATE outbox_events SET attempts = attempts + 1, last_error = :error, " +
+                        "next_attempt_at = localtimestamp + make_interval(secs => :delay * power(2, least(attempts, 6))) " +
+                        "WHERE id IN (:ids)", Map.of("error", truncate(e.getMessage()),
+                        "delay", retryDelayMs / 1000.0, "ids", ids));
+                failures.increment();
+                log.warn("Получатель outbox не принял пачку из {} событий: {}", batch.size(), e.getMessage());
+                return -1;
+            }
+            namedJdbcTemplate.update("DELETE FROM outbox_events WHERE id IN (:ids)", Map.of("ids", ids));
+            published.increment(batch.size());
+            batchSizes.record(batch.size());
+            LocalDateTime now = LocalDateTime.now();
+            batch.forEach(event -> deliveryLag.record(Duration.between(event.createdAt(), now)));
+            return batch.size();
+        });
+        return delivered != null ? delivered : 0;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "";
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.bankcards.outbox;
+
+import java.util.List;
+
+/**
+ * Получатель событий outbox. Пачка публикуется целиком: исключение означает, что вся пачка
+ * будет отправлена повторно, поэтому получатель должен быть готов к повторам.
+ */
+public interface OutboxSink {
+
+    void publish(List<OutboxEvent> events);
+}
@@ -0,0 +1,122 @@
+package com.example.bankcards.outbox;
+
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запись событий в {@code outbox_events} в текущей транзакции записи: событие фиксируется
+ * вместе с изменением, которое оно описывает, или не фиксируется вовсе. Вне транзакции вызов запрещен.
+ */
+@Component
+public class OutboxWriter {
+
+    public static final String TRANSACTION = "TRANSACTION";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.outbox.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Операция завершена: {@code <TYPE>_COMPLETED}, например TRANSFER_COMPLETED, PAYMENT_COMPLETED, REFUND_COMPLETED.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void transactionCompleted(Transaction transaction) {
+        transactionCompleted(transaction.getId(), transaction.getTransactionType(),
+                transaction.getFromCard() != null ? transaction.getFromCard().getId() : null,
+                transaction.getToCard() != null ? transaction.getToCard().getId() : null,
+                transaction.getAmount(), transaction.getCurrency(), transaction.getDescription());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void transactionCompleted(Long transactionId, TransactionType type, Long fromCardId, Long toCardId,
+                                     BigDecimal amount, String currency, String description) {
+        append(TRANSACTION, transactionId, type.name() + "_COMPLETED",
+                payload(transactionId, type, "COMPLETED", fromCardId, toCardId, amount, currency, description));
+    }
+
+    /**
+     * Операция отклонена при выполнении из очереди: {@code <TYPE>_FAILED}, например TRANSFER_FAILED.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void transactionFailed(Transaction transaction) {
+        append(TRANSACTION, transaction.getId(), transaction.getTransactionType().name() + "_FAILED",
+                payload(transaction.getId(), transaction.getTransactionType(), "FAILED",
+                        transaction.getFromCard() != null ? transaction.getFromCard().getId() : null,
+                        transaction.getToCard() != null ? transaction.getToCard().getId() : null,
+                        transaction.getAmount(), transaction.getCurrency(), transaction.getDescription()));
+    }
+
+    /**
+     * Вставляет пачку завершенных операций и в том же запросе пишет по событию {@code <TYPE>_COMPLETED}
+     * на каждую строку: поля события собираются в БД. Вставленные строки возвращаются вызывающему,
+     * который публикует по ним события приложения.
+     *
+     * @param insertReturning INSERT в {@code transactions} с
+     *                        {@code RETURNING id, transaction_type, from_card_id, to_card_id, amount, currency, description}
+     *                        и любыми другими нужными {@code rowMapper} столбцами
+     * @return вставленные операции
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public <T> List<T> insertCompleted(String insertReturning, PreparedStatementSetter params, RowMapper<T> rowMapper) {
+        if (!enabled) {
+            return jdbcTemplate.query(insertReturning, params, rowMapper);
+        }
+        // те же поля, что в transactionCompleted; запрос в WITH выполняется, хотя его результат не читается
+        return jdbcTemplate.query("WITH t AS (" + insertReturning + "), o AS (" +
+                "INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload) " +
+                "SELECT '" + TRANSACTION + "', t.id, t.transaction_type || '_COMPLETED', jsonb_build_object(" +
+                "'transactionId', t.id, 'type', t.transaction_type, 'status', 'COMPLETED', " +
+                "'fromCardId', t.from_card_id, 'toCardId', t.to_card_id, 'amount', t.amount, " +
+                "'currency', t.currency, 'description', t.description) FROM t) SELECT * FROM t", params, rowMapper);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(String aggregateType, Long aggregateId, String eventType, Object payload) {
+        if (!enabled) {
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать событие " + eventType, e);
+        }
+        jdbcTemplate.update("INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload) " +
+                "VALUES (?, ?, ?, ?::jsonb)", aggregateType, aggregateId, eventType, json);
+    }
+
+    private static Map<String, Object> payload(Long transactionId, TransactionType type, String status,
+                                               Long fromCardId, Long toCardId, BigDecimal amount,
+                                               String currency, String description) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("transactionId", transactionId);
+        payload.put("type", type.name());
+        payload.put("status", status);
+        payload.put("fromCardId", fromCardId);
+        payload.put("toCardId", toCardId);
+        payload.put("amount", amount);
+        payload.put("currency", currency);
+        payload.put("description", description);
+        return payload;
+    }
+}
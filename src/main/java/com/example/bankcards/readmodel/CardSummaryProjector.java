@@ -0,0 +1,351 @@
+package com.example.bankcards.readmodel;
+
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import com.example.bankcards.util.CardNumberAttributeConverter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Поддерживает модель чтения {@code user_card_summary}: по строке на карту, номер только маскированный.
+ * <p>
+ * События {@link CardChangedEvent} и {@link CardBalanceChangedEvent} после фиксации только ставят id карты
+ * в очередь; один поток {@code readModelExecutor} забирает очередь пачками, перечитывает карты из {@code cards}
+ * на их шардах и записывает строки целиком (upsert), строки удаленных карт удаляет. Несколько событий
+ * по одной карте до применения схлопываются в одно перечитывание, поэтому порядок событий не важен.
+ * Карты читаются {@code FOR SHARE} в одной транзакции с записью: изменение карты ждет, пока прочитанное
+ * до него состояние будет записано, поэтому старое состояние не перезапишет новое, даже если
+ * одну карту проецируют несколько узлов.
+ * <p>
+ * Отставание - возраст самого старого непримененного события. {@link #rebuild()} пересобирает модель
+ * по всем картам; при старте выполняется, если включено {@code app.read-model.card-summary.rebuild-on-startup}.
+ */
+@Component
+public class CardSummaryProjector {
+
+    private static final Logger log = LoggerFactory.getLogger(CardSummaryProjector.class);
+
+    private static final String CARD_COLUMNS = "id, user_id, card_number, card_holder_name, expiry_date, card_type, "
+            + "balance, is_active, status, created_at, updated_at";
+
+    private static final String UPSERT = "INSERT INTO user_card_summary (card_id, user_id, masked_number, "
+            + "card_holder_name, expiry_date, card_type, balance, is_active, status, card_created_at, card_updated_at, "
+            + "projected_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, localtimestamp) "
+            + "ON CONFLICT (card_id) DO UPDATE SET user_id = EXCLUDED.user_id, masked_number = EXCLUDED.masked_number, "
+            + "card_holder_name = EXCLUDED.card_holder_name, expiry_date = EXCLUDED.expiry_date, "
+            + "card_type = EXCLUDED.card_type, balance = EXCLUDED.balance, is_active = EXCLUDED.is_active, "
+            + "status = EXCLUDED.status, card_created_at = EXCLUDED.card_created_at, "
+            + "card_updated_at = EXCLUDED.card_updated_at, projected_at = localtimestamp";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("readModelExecutor")
+    private TaskExecutor readModelExecutor;
+
+    @Value("${app.read-model.card-summary.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.read-model.card-summary.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.read-model.card-summary.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    private final CardNumberAttributeConverter cardNumbers = new CardNumberAttributeConverter();
+
+    // id карты -> время первого непримененного события, мс
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // карты, изменившиеся во время пересборки: пересборка могла записать их старое состояние
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private TransactionTemplate projection;
+    private Timer applyLag;
+    private Counter failures;
+
+    @PostConstruct
+    void init() {
+        projection = new TransactionTemplate(transactionManager);
+        applyLag = Timer.builder("bankcards.read-model.card-summary.apply-lag")
+                .description("Время от события до записи строки модели чтения")
+                .register(meterRegistry);
+        failures = Counter.builder("bankcards.read-model.card-summary.failures")
+                .description("Неудачные применения пачек событий, пачка повторяется позже")
+                .register(meterRegistry);
+        Gauge.builder("bankcards.read-model.card-summary.lag", this, CardSummaryProjector::lagSeconds)
+                .description("Возраст самого старого непримененного события, секунды")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("bankcards.read-model.card-summary.pending", pending, Map::size)
+                .description("Карты, ожидающие обновления в модели чтения")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (enabled && rebuildOnStartup) {
+            readModelExecutor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.warn("Пересборка модели чтения карт при старте не выполнена", e);
+                }
+            });
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        enqueue(event.getCardId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardBalanceChanged(CardBalanceChangedEvent event) {
+        event.getCardIds().forEach(this::enqueue);
+    }
+
+    /**
+     * Повтор пачек, не примененных из-за ошибки, и очереди, оставшейся после отказа пула.
+     */
+    @Scheduled(fixedDelayString = "${app.read-model.card-summary.retry-interval-ms:5000}")
+    public void retryPending() {
+        if (enabled) {
+            schedule();
+        }
+    }
+
+    public double lagSeconds() {
+        long oldest = Long.MAX_VALUE;
+        for (Long enqueuedAt : pending.values()) {
+            oldest = Math.min(oldest, enqueuedAt);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : (System.currentTimeMillis() - oldest) / 1000.0;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Пересобирает модель по всем картам всех шардов: записывает строку каждой карты и удаляет строки,
+     * которых пересборка не коснулась (карты удалены). События во время пересборки продолжают применяться.
+     *
+     * @return число карт в модели
+     */
+    public int rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new BusinessException("READ_MODEL_REBUILD_IN_PROGRESS",
+                    "Пересборка модели чтения карт уже выполняется", HttpStatus.CONFLICT);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            int total = 0;
+            for (int shard : shardMap.shards()) {
+                total += ShardContext.call(shard, this::rebuildShard);
+            }
+            log.info("Модель чтения карт пересобрана: {} карт за {} мс", total, System.currentTimeMillis() - start);
+            return total;
+        } finally {
+            rebuilding.set(false);
+            List<Long> changed = new ArrayList<>(changedDuringRebuild);
+            changedDuringRebuild.removeAll(changed);
+            changed.forEach(this::enqueue);
+        }
+    }
+
+    private int rebuildShard() {
+        Timestamp startedAt = jdbcTemplate.queryForObject("SELECT localtimestamp", Timestamp.class);
+        int total = 0;
+        long lastId = 0;
+        while (true) {
+            long after = lastId;
+            List<Object[]> rows = projection.execute(tx -> {
+                List<Object[]> batch = jdbcTemplate.query("SELECT " + CARD_COLUMNS + " FROM cards WHERE id > ? " +
+                        "ORDER BY id LIMIT ? FOR SHARE", (rs, row) -> toRow(rs), after, batchSize);
+                if (!batch.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPSERT, batch);
+                }
+                return batch;
+            });
+            if (rows.isEmpty()) {
+                break;
+            }
+            total += rows.size();
+            lastId = (Long) rows.get(rows.size() - 1)[0];
+        }
+        jdbcTemplate.update("DELETE FROM user_card_summary WHERE projected_at < ?", startedAt);
+        return total;
+    }
+
+    private void enqueue(Long cardId) {
+        if (!enabled || cardId == null) {
+            return;
+        }
+        pending.putIfAbsent(cardId, System.currentTimeMillis());
+        if (rebuilding.get()) {
+            changedDuringRebuild.add(cardId);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (pending.isEmpty() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            readModelExecutor.execute(this::drain);
+        } catch (TaskRejectedException e) {
+            draining.set(false);
+            log.warn("Очередь модели чтения карт не принята пулом, повтор по расписанию");
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!pending.isEmpty()) {
+                Map<Long, Long> batch = take();
+                try {
+                    apply(batch.keySet());
+                } catch (RuntimeException e) {
+                    // вернуть пачку с исходным временем событий, чтобы отставание продолжало расти
+                    batch.forEach(pending::putIfAbsent);
+                    failures.increment();
+                    log.warn("Не удалось обновить модель чтения для {} карт, повтор позже", batch.size(), e);
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                batch.values().forEach(enqueuedAt -> applyLag.record(now - enqueuedAt, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Забирает из очереди до {@code batchSize} карт; id удаляются до чтения карт, поэтому событие,
+     * пришедшее во время применения, снова поставит карту в очередь.
+     */
+    private Map<Long, Long> take() {
+        Map<Long, Long> batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<Long, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < batchSize) {
+            Map.Entry<Long, Long> entry = it.next();
+            it.remove();
+            batch.put(entry.getKey(), entry.getValue());
+        }
+        return batch;
+    }
+
+    private void apply(Set<Long> cardIds) {
+        Map<Integer, List<Long>> byShard = new TreeMap<>();
+        cardIds.forEach(id -> byShard.computeIfAbsent(shardMap.shardOf(id), shard -> new ArrayList<>()).add(id));
+        byShard.forEach((shard, ids) -> ShardContext.run(shard, () -> project(ids)));
+    }
+
+    private void project(List<Long> cardIds) {
+        projection.executeWithoutResult(tx -> {
+            List<Object[]> rows = namedJdbcTemplate.query("SELECT " + CARD_COLUMNS + " FROM cards WHERE id IN (:ids) " +
+                    "ORDER BY id FOR SHARE", Map.of("ids", cardIds), (rs, row) -> toRow(rs));
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPSERT, rows);
+            }
+            Set<Long> missing = new HashSet<>(cardIds);
+            rows.forEach(row -> missing.remove((Long) row[0]));
+            if (!missing.isEmpty()) {
+                namedJdbcTemplate.update("DELETE FROM user_card_summary WHERE card_id IN (:ids)", Map.of("ids", missing));
+            }
+        });
+    }
+
+    private Object[] toRow(ResultSet rs) throws SQLException {
+        return new Object[]{
+                rs.getLong("id"),
+                rs.getLong("user_id"),
+                maskedNumber(rs.getLong("id"), rs.getString("card_number")),
+                rs.getString("card_holder_name"),
+                rs.getDate("expiry_date"),
+                rs.getString("card_type"),
+                rs.getBigDecimal("balance"),
+                rs.getBoolean("is_active"),
+                rs.getString("status"),
+                rs.getTimestamp("created_at"),
+                rs.getTimestamp("updated_at")
+        };
+    }
+
+    private String maskedNumber(long cardId, String encrypted) {
+        try {
+            return mask(cardNumbers.convertToEntityAttribute(encrypted));
+        } catch (IllegalStateException e) {
+            log.warn("Не удалось расшифровать номер карты {}, в модель чтения записан без номера", cardId);
+            return null;
+        }
+    }
+
+    /**
+     * Маска вида {@code **** **** **** 1234}: в модели чтения хранятся только последние 4 цифры.
+     */
+    public static String mask(String cardNumber) {
+        if (cardNumber == null || cardNumber.length() < 4) {
+            return null;
+        }
+        return "**** **** **** " + cardNumber.substring(cardNumber.length() - 4);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.bankcards.readmodel;
+
+import com.example.bankcards.dto.CardSummaryDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.CardType;
+import com.example.bankcards.service.CardService;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Пользовательский список карт из модели чтения {@code user_card_summary}: один запрос по индексу
+ * (user_id, card_created_at) без соединений и расшифровки номеров. Данные отстают от {@code cards}
+ * на время применения событий (см. {@link CardSummaryProjector}).
+ * <p>
+ * Если модель отключена ({@code app.read-model.card-summary.enabled}), карты читаются из {@code cards}.
+ */
+@Service
+public class CardSummaryReader {
+
+    private static final String COLUMNS = "card_id, user_id, masked_number, card_holder_name, expiry_date, card_type, "
+            + "balance, is_active, status, card_created_at, card_updated_at, projected_at";
+
+    private static final RowMapper<CardSummaryDto> ROW_MAPPER = (rs, row) -> {
+        CardSummaryDto dto = new CardSummaryDto();
+        dto.setId(rs.getLong("card_id"));
+        dto.setUserId(rs.getLong("user_id"));
+        dto.setMaskedNumber(rs.getString("masked_number"));
+        dto.setCardHolderName(rs.getString("card_holder_name"));
+        dto.setExpiryDate(rs.getDate("expiry_date").toLocalDate());
+        dto.setCardType(CardType.valueOf(rs.getString("card_type")));
+        dto.setBalance(rs.getBigDecimal("balance"));
+        dto.setIsActive(rs.getBoolean("is_active"));
+        dto.setStatus(CardStatus.valueOf(rs.getString("status")));
+        dto.setCreatedAt(rs.getTimestamp("card_created_at").toLocalDateTime());
+        dto.setUpdatedAt(rs.getTimestamp("card_updated_at").toLocalDateTime());
+        Timestamp projectedAt = rs.getTimestamp("projected_at");
+        dto.setProjectedAt(projectedAt != null ? projectedAt.toLocalDateTime() : null);
+        return dto;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardSummaryProjector projector;
+
+    /**
+     * Все карты пользователя, новые первыми.
+     */
+    public List<CardSummaryDto> findByUser(Long userId) {
+        return ShardContext.call(shardMap.shardOf(userId), () -> {
+            if (!projector.isEnabled()) {
+                return cardService.findUserCards(userId).stream().map(CardSummaryReader::toDto).toList();
+            }
+            return jdbcTemplate.query("SELECT " + COLUMNS + " FROM user_card_summary WHERE user_id = ? "
+                    + "ORDER BY card_created_at DESC, card_id DESC", ROW_MAPPER, userId);
+        });
+    }
+
+    /**
+     * Страница карт пользователя, новые первыми; сортировка из {@code pageable} не используется.
+     */
+    public Page<CardSummaryDto> findByUser(Long userId, boolean activeOnly, Pageable pageable) {
+        return ShardContext.call(shardMap.shardOf(userId), () -> {
+            if (!projector.isEnabled()) {
+                Pageable byCreated = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                        Sort.by("createdAt").descending().and(Sort.by("id").descending()));
+                Page<Card> cards = activeOnly ? cardService.findActiveUserCardsWithPaging(userId, byCreated)
+                        : cardService.findUserCardsWithPaging(userId, byCreated);
+                return cards.map(CardSummaryReader::toDto);
+            }
+            String filter = activeOnly ? " AND is_active" : "";
+            List<CardSummaryDto> content = jdbcTemplate.query("SELECT " + COLUMNS + " FROM user_card_summary "
+                    + "WHERE user_id = ?" + filter + " ORDER BY card_created_at DESC, card_id DESC LIMIT ? OFFSET ?",
+                    ROW_MAPPER, userId, pageable.getPageSize(), pageable.getOffset());
+            Long total = jdbcTemplate.queryForObject("SELECT count(*) FROM user_card_summary WHERE user_id = ?" + filter,
+                    Long.class, userId);
+            return new PageImpl<>(content, pageable, total != null ? total : 0);
+        });
+    }
+
+    private static CardSummaryDto toDto(Card card) {
+        CardSummaryDto dto = new CardSummaryDto();
+        dto.setId(card.getId());
+        dto.setUserId(card.getUser().getId());
+        dto.setMaskedNumber(CardSummaryProjector.mask(card.getCardNumber()));
+        dto.setCardHolderName(card.getCardHolderName());
+        dto.setExpiryDate(card.getExpiryDate());
+        dto.setCardType(card.getCardType());
+        dto.setBalance(card.getBalance());
+        dto.setIsActive(card.getIsActive());
+        dto.setStatus(card.getStatus());
+        dto.setCreatedAt(card.getCreatedAt());
+        dto.setUpdatedAt(card.getUpdatedAt());
+        return dto;
+    }
+}
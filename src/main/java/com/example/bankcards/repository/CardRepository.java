@@ -3,6 +3,7 @@ package com.example.bankcards.repository;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,12 +12,21 @@ import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CardRepository extends JpaRepository<Card, Long> {
 
+    interface CardOwnerView {
+        Long getId();
+
+        Long getUserId();
+
+        Boolean getIsActive();
+    }
+
     Optional<Card> findByCardNumber(String cardNumber);
 
     List<Card> findByUserId(Long userId);
@@ -36,8 +46,8 @@ public interface CardRepository extends JpaRepository<Card, Long> {
     @Query("SELECT c FROM Card c WHERE YEAR(c.expiryDate) = :year AND MONTH(c.expiryDate) = :month")
     List<Card> findByExpiryDateYearAndMonth(@Param("year") int year, @Param("month") int month);
 
-    @Query("SELECT c FROM Card c WHERE LOWER(c.cardHolderName) LIKE LOWER(CONCAT('%', :name, '%'))")
-    List<Card> findByCardHolderNameContaining(@Param("name") String name);
+    @Query("SELECT c FROM Card c WHERE LOWER(c.cardHolderName) LIKE :pattern")
+    List<Card> findByCardHolderNameContaining(@Param("pattern") String pattern, Pageable pageable);
 
     long countByUserId(Long userId);
 
@@ -45,6 +55,24 @@ public interface CardRepository extends JpaRepository<Card, Long> {
 
     boolean existsByCardNumber(String cardNumber);
 
+    boolean existsByIdAndIsActiveTrueAndBalanceGreaterThan(Long id, BigDecimal balance);
+
+    @Query("SELECT c.id FROM Card c WHERE c.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT c.id FROM Card c WHERE c.user.username = :username")
+    List<Long> findIdsByUserUsername(@Param("username") String username);
+
+    @Query("SELECT c.id AS id, c.user.id AS userId, c.isActive AS isActive FROM Card c WHERE c.id = :id")
+    Optional<CardOwnerView> findOwnerViewById(@Param("id") Long id);
+
+    /**
+     * Блокирует строки карт до конца транзакции в порядке id, чтобы встречные переводы не взаимоблокировались.
+     * {@code FOR NO KEY UPDATE} не конфликтует с проверками внешних ключей при вставке операций по этим картам.
+     */
+    @Query(value = "SELECT id FROM cards WHERE id IN (:ids) ORDER BY id FOR NO KEY UPDATE", nativeQuery = true)
+    List<Long> lockByIds(@Param("ids") Collection<Long> ids);
+
     @Query("SELECT c FROM Card c WHERE c.isActive = true AND c.balance >= :minBalance")
     List<Card> findActiveCardsForTransfer(@Param("minBalance") BigDecimal minBalance);
 
@@ -53,29 +81,39 @@ public interface CardRepository extends JpaRepository<Card, Long> {
     Page<Card> findByUserIdAndIsActiveTrue(Long userId, Pageable pageable);
 
     @Query("SELECT c FROM Card c WHERE c.user.id = :userId AND " +
-           "(LOWER(c.cardNumber) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-           "LOWER(c.cardHolderName) LIKE LOWER(CONCAT('%', :searchTerm, '%')))")
+           "(c.cardNumber = :cardNumber OR LOWER(c.cardHolderName) LIKE :pattern)")
     Page<Card> findByUserIdAndSearchTerm(@Param("userId") Long userId,
-                                        @Param("searchTerm") String searchTerm,
+                                        @Param("cardNumber") String cardNumber,
+                                        @Param("pattern") String pattern,
                                         Pageable pageable);
 
     @Query("SELECT c FROM Card c WHERE c.user.id = :userId AND c.isActive = true AND " +
-           "(LOWER(c.cardNumber) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-           "LOWER(c.cardHolderName) LIKE LOWER(CONCAT('%', :searchTerm, '%')))")
+           "(c.cardNumber = :cardNumber OR LOWER(c.cardHolderName) LIKE :pattern)")
     Page<Card> findByUserIdAndIsActiveTrueAndSearchTerm(@Param("userId") Long userId,
-                                                       @Param("searchTerm") String searchTerm,
+                                                       @Param("cardNumber") String cardNumber,
+                                                       @Param("pattern") String pattern,
                                                        Pageable pageable);
 
     Page<Card> findAll(Pageable pageable);
 
-    @Query("SELECT c FROM Card c WHERE " +
-           "LOWER(c.cardNumber) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
-           "LOWER(c.cardHolderName) LIKE LOWER(CONCAT('%', :searchTerm, '%'))")
-    Page<Card> findAllBySearchTerm(@Param("searchTerm") String searchTerm, Pageable pageable);
+    Page<Card> findByIdIn(Collection<Long> ids, Pageable pageable);
+
+    @Query("SELECT c FROM Card c WHERE c.cardNumber = :cardNumber OR LOWER(c.cardHolderName) LIKE :pattern")
+    Page<Card> findAllBySearchTerm(@Param("cardNumber") String cardNumber,
+                                   @Param("pattern") String pattern,
+                                   Pageable pageable);
 
     @Query("SELECT c FROM Card c WHERE c.user.username = :username")
     List<Card> findByUserUsername(@Param("username") String username);
 
     @Query("SELECT c FROM Card c WHERE c.user.username = :username AND c.isActive = true")
     List<Card> findByUserUsernameAndIsActiveTrue(@Param("username") String username);
+
+    @Modifying
+    @Query(value = "DELETE FROM cards WHERE id = :id", nativeQuery = true)
+    int deleteRowById(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "DELETE FROM cards WHERE user_id = :userId", nativeQuery = true)
+    int deleteRowsByUserId(@Param("userId") Long userId);
 }
@@ -3,20 +3,67 @@ package com.example.bankcards.repository;
 import com.example.bankcards.entity.Transaction;
 import com.example.bankcards.entity.TransactionStatus;
 import com.example.bankcards.entity.TransactionType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
 
-
-        List<Transaction> findByFromCardId(Long fromCardId);
+    /** Колонки сущности Transaction для native-запросов (без служебной description_tsv). */
+    String COLUMNS = "id, from_card_id, to_card_id, amount, currency, transaction_type, description, " +
+                     "status, created_at, updated_at";
+
+    /**
+     * Последние операции по карте. Вместо {@code from_card_id = ? OR to_card_id = ?} два
+     * ограниченных прохода по индексам (card, created_at DESC, id DESC), объединенные через UNION ALL:
+     * каждая ветвь останавливается после :limit строк, сортируется не более 2 * :limit строк.
+     * Перевод карты самой себе попадает только в первую ветвь.
+     */
+    String RECENT_BY_CARD_SQL =
+            "SELECT * FROM (" +
+            "(SELECT " + COLUMNS + " FROM transactions WHERE from_card_id = :cardId " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT " + COLUMNS + " FROM transactions WHERE to_card_id = :cardId AND from_card_id <> :cardId " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit)" +
+            ") t ORDER BY created_at DESC, id DESC LIMIT :limit";
+
+    /** Та же выборка, что {@link #RECENT_BY_CARD_SQL}, начиная после позиции (created_at, id). */
+    String HISTORY_PAGE_BEFORE_SQL =
+            "SELECT * FROM (" +
+            "(SELECT " + COLUMNS + " FROM transactions WHERE from_card_id = :cardId AND (created_at, id) < (:createdAt, :id) " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT " + COLUMNS + " FROM transactions WHERE to_card_id = :cardId AND from_card_id <> :cardId " +
+            "AND (created_at, id) < (:createdAt, :id) " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit)" +
+            ") t ORDER BY created_at DESC, id DESC LIMIT :limit";
+
+
+    /**
+     * Пачка операций по картам пользователя. Ветви объединяются через UNION, а не UNION ALL:
+     * перевод между картами одного пользователя попадает в обе ветви и без удаления дублей
+     * занимал бы два места из :batchSize.
+     */
+    String DELETE_BATCH_BY_USER_SQL =
+            "DELETE FROM transactions WHERE id IN (" +
+            "SELECT id FROM transactions WHERE from_card_id IN (SELECT id FROM cards WHERE user_id = :userId) " +
+            "UNION " +
+            "SELECT id FROM transactions WHERE to_card_id IN (SELECT id FROM cards WHERE user_id = :userId) " +
+            "LIMIT :batchSize)";
+
+
+    List<Transaction> findByFromCardId(Long fromCardId);
 
     List<Transaction> findByToCardId(Long toCardId);
 
@@ -50,18 +97,68 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     long countByStatus(TransactionStatus status);
 
 
-    @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.transactionType = :type AND t.status = 'COMPLETED'")
+    @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.transactionType = :type AND t.status IN ('COMPLETED', 'REFUNDED')")
     BigDecimal sumAmountByTransactionTypeAndStatusCompleted(@Param("type") TransactionType type);
 
 
-    @Query(value = "SELECT * FROM transactions WHERE from_card_id = :cardId OR to_card_id = :cardId ORDER BY created_at DESC LIMIT :limit", nativeQuery = true)
+    @Query(value = RECENT_BY_CARD_SQL, nativeQuery = true)
     List<Transaction> findTopNByCardIdOrderByCreatedAtDesc(@Param("cardId") Long cardId, @Param("limit") int limit);
 
 
-    @Query("SELECT t FROM Transaction t WHERE LOWER(t.description) LIKE LOWER(CONCAT('%', :description, '%'))")
-    List<Transaction> findByDescriptionContaining(@Param("description") String description);
+    @Query(value = HISTORY_PAGE_BEFORE_SQL, nativeQuery = true)
+    List<Transaction> findHistoryPageBefore(@Param("cardId") Long cardId,
+                                            @Param("createdAt") LocalDateTime createdAt,
+                                            @Param("id") Long id,
+                                            @Param("limit") int limit);
+
+
+    /**
+     * Полнотекстовый поиск по описаниям в пределах указанных карт, по убыванию релевантности.
+     * Составные GIN-индексы (card, description_tsv) читают только записи этих карт.
+     */
+    @Query(value = "SELECT " + COLUMNS + " FROM transactions " +
+                   "WHERE (from_card_id IN (:cardIds) OR to_card_id IN (:cardIds)) " +
+                   "AND description_tsv @@ websearch_to_tsquery('russian', :query) " +
+                   "ORDER BY ts_rank(description_tsv, websearch_to_tsquery('russian', :query)) DESC, " +
+                   "created_at DESC, id DESC",
+           countQuery = "SELECT count(*) FROM transactions " +
+                        "WHERE (from_card_id IN (:cardIds) OR to_card_id IN (:cardIds)) " +
+                        "AND description_tsv @@ websearch_to_tsquery('russian', :query)",
+           nativeQuery = true)
+    Page<Transaction> searchByDescription(@Param("cardIds") Collection<Long> cardIds,
+                                          @Param("query") String query,
+                                          Pageable pageable);
+
+
+    @Query("SELECT t FROM Transaction t WHERE LOWER(t.description) LIKE :pattern ORDER BY t.createdAt DESC")
+    List<Transaction> findByDescriptionContaining(@Param("pattern") String pattern, Pageable pageable);
 
 
     @Query("SELECT t FROM Transaction t WHERE t.status IN ('FAILED', 'CANCELLED') AND t.createdAt >= :since")
     List<Transaction> findFailedTransactionsSince(@Param("since") LocalDateTime since);
+
+
+    /**
+     * Переводит выполненную операцию в REFUNDED. Строка остается заблокированной до конца транзакции:
+     * одновременный возврат той же операции ждет ее и после фиксации уже не находит статус COMPLETED.
+     *
+     * @return 1, если операция была выполненной, иначе 0
+     */
+    @Modifying
+    @Query(value = "UPDATE transactions SET status = 'REFUNDED', updated_at = now() " +
+                   "WHERE id = :id AND status = 'COMPLETED'",
+           nativeQuery = true)
+    int markRefunded(@Param("id") Long id);
+
+
+    @Modifying
+    @Query(value = "DELETE FROM transactions WHERE id IN (" +
+                   "SELECT id FROM transactions WHERE from_card_id = :cardId OR to_card_id = :cardId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByCardId(@Param("cardId") Long cardId, @Param("batchSize") int batchSize);
+
+
+    @Modifying
+    @Query(value = DELETE_BATCH_BY_USER_SQL, nativeQuery = true)
+    int deleteBatchByUserId(@Param("userId") Long userId, @Param("batchSize") int batchSize);
 }
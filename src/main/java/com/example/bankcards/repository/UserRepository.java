@@ -1,11 +1,14 @@
 package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,9 +27,32 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     List<User> findByEnabledTrue();
 
-    @Query("SELECT u FROM User u WHERE u.firstName LIKE %:name% OR u.lastName LIKE %:name%")
-    List<User> findByNameContaining(@Param("name") String name);
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.roles WHERE u.id IN :ids")
+    List<User> findAllWithRolesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT u FROM User u WHERE LOWER(u.firstName) LIKE :pattern OR LOWER(u.lastName) LIKE :pattern")
+    List<User> findByNameContaining(@Param("pattern") String pattern, Pageable pageable);
 
     @Query("SELECT u FROM User u JOIN u.roles r WHERE r.name = :roleName")
     List<User> findByRoleName(@Param("roleName") String roleName);
+
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.roles")
+    List<User> findAllWithRoles();
+
+    @Query("SELECT u.cardCount FROM User u WHERE u.id = :userId")
+    Optional<Integer> findCardCountById(@Param("userId") Long userId);
+
+    @Query("SELECT u.activeCardCount FROM User u WHERE u.id = :userId")
+    Optional<Integer> findActiveCardCountById(@Param("userId") Long userId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.cardCount = u.cardCount + :cardDelta, " +
+           "u.activeCardCount = u.activeCardCount + :activeDelta WHERE u.id = :userId")
+    int adjustCardCounters(@Param("userId") Long userId,
+                           @Param("cardDelta") int cardDelta,
+                           @Param("activeDelta") int activeDelta);
+
+    @Modifying
+    @Query(value = "DELETE FROM users WHERE id = :id", nativeQuery = true)
+    int deleteRowById(@Param("id") Long id);
 }
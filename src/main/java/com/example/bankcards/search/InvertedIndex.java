@@ -0,0 +1,209 @@
+package com.example.bankcards.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Инвертированный индекс для подстрочного поиска: триграмма -> отсортированный массив id.
+ * Кандидаты получаются пересечением списков всех триграмм запроса и затем проверяются
+ * по нормализованному тексту документа, поэтому ложных совпадений нет.
+ * <p>
+ * Чтение без блокировок: списки не изменяются на месте, а заменяются новыми массивами.
+ * Запись синхронизирована.
+ */
+public class InvertedIndex {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int GRAM = 3;
+
+    private final Map<String, long[]> postings = new ConcurrentHashMap<>();
+    private final Map<Long, String> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Строит индекс сразу по всем документам: списки собираются целиком и сортируются один раз.
+     */
+    public static InvertedIndex build(Map<Long, String> texts) {
+        InvertedIndex index = new InvertedIndex();
+        Map<String, LongList> lists = new HashMap<>();
+        texts.forEach((id, text) -> {
+            String normalized = normalize(text);
+            index.documents.put(id, normalized);
+            for (String gram : grams(normalized)) {
+                lists.computeIfAbsent(gram, g -> new LongList()).add(id);
+            }
+        });
+        lists.forEach((gram, list) -> index.postings.put(gram, list.toSortedArray()));
+        return index;
+    }
+
+    public synchronized void put(long id, String text) {
+        String normalized = normalize(text);
+        String previous = documents.put(id, normalized);
+        Set<String> oldGrams = previous == null ? Set.of() : grams(previous);
+        Set<String> newGrams = grams(normalized);
+        for (String gram : oldGrams) {
+            if (!newGrams.contains(gram)) {
+                removePosting(gram, id);
+            }
+        }
+        for (String gram : newGrams) {
+            if (!oldGrams.contains(gram)) {
+                addPosting(gram, id);
+            }
+        }
+    }
+
+    public synchronized void remove(long id) {
+        String previous = documents.remove(id);
+        if (previous != null) {
+            for (String gram : grams(previous)) {
+                removePosting(gram, id);
+            }
+        }
+    }
+
+    /**
+     * Id документов, содержащих строку запроса, от больших к меньшим.
+     */
+    public long[] search(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return EMPTY;
+        }
+        Set<String> grams = grams(normalized);
+
+        long[] candidates;
+        if (grams.isEmpty()) {
+            candidates = documents.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        } else {
+            long[][] lists = grams.stream()
+                    .map(gram -> postings.getOrDefault(gram, EMPTY))
+                    .sorted(Comparator.comparingInt(list -> list.length))
+                    .toArray(long[][]::new);
+            candidates = lists[0];
+            for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+                candidates = intersect(candidates, lists[i]);
+            }
+        }
+
+        long[] matches = new long[candidates.length];
+        int count = 0;
+        for (int i = candidates.length - 1; i >= 0; i--) {
+            String text = documents.get(candidates[i]);
+            if (text != null && text.contains(normalized)) {
+                matches[count++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    static long[] intersect(long[] left, long[] right) {
+        long[] result = new long[Math.min(left.length, right.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = true;
+        for (char c : text.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+                space = false;
+            } else if (!space) {
+                normalized.append(' ');
+                space = true;
+            }
+        }
+        int length = normalized.length();
+        return space && length > 0 ? normalized.substring(0, length - 1) : normalized.toString();
+    }
+
+    private static Set<String> grams(String normalized) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String word : normalized.split(" ")) {
+            for (int i = 0; i + GRAM <= word.length(); i++) {
+                grams.add(word.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+
+    private void addPosting(String gram, long id) {
+        long[] current = postings.getOrDefault(gram, EMPTY);
+        int position = Arrays.binarySearch(current, id);
+        if (position >= 0) {
+            return;
+        }
+        int insertAt = -position - 1;
+        long[] updated = new long[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = id;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        postings.put(gram, updated);
+    }
+
+    private void removePosting(String gram, long id) {
+        long[] current = postings.get(gram);
+        if (current == null) {
+            return;
+        }
+        int position = Arrays.binarySearch(current, id);
+        if (position < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            postings.remove(gram);
+            return;
+        }
+        long[] updated = new long[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+        postings.put(gram, updated);
+    }
+
+    private static final class LongList {
+
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
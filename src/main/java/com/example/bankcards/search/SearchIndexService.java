@@ -0,0 +1,238 @@
+package com.example.bankcards.search;
+
+import com.example.bankcards.cache.CacheInvalidation;
+import com.example.bankcards.cache.InvalidatableCache;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.event.UserChangedEvent;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardFanOut;
+import com.example.bankcards.sharding.ShardMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Индексы в памяти для административного поиска карт (по имени держателя) и пользователей
+ * (по логину, email, имени и фамилии). Строятся при старте и обновляются по событиям
+ * после фиксации транзакций. Пока индекс не построен, поиск выполняется в БД.
+ */
+@Service
+public class SearchIndexService implements InvalidatableCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardFanOut shardFanOut;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Value("${app.search.in-memory-index.enabled:true}")
+    private boolean enabled;
+
+    private final Object lock = new Object();
+    private volatile InvertedIndex cardIndex;
+    private volatile InvertedIndex userIndex;
+    private List<Runnable> pendingDuringBuild;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile boolean rebuildRequested;
+
+    /**
+     * Пересобирает индексы. Одновременно выполняется одна пересборка; запрос во время нее
+     * не ждет, а повторяет пересборку после текущей: та могла прочитать данные до изменения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        rebuildRequested = true;
+        while (rebuildRequested && rebuilding.compareAndSet(false, true)) {
+            try {
+                rebuildRequested = false;
+                build();
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    private void build() {
+        synchronized (lock) {
+            pendingDuringBuild = new ArrayList<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Map<Long, String> cards = new HashMap<>();
+            shardFanOut.collect(() -> {
+                Map<Long, String> shardCards = new HashMap<>();
+                jdbcTemplate.query("SELECT id, card_holder_name FROM cards",
+                        rs -> { shardCards.put(rs.getLong("id"), rs.getString("card_holder_name")); });
+                return shardCards;
+            }).forEach(cards::putAll);
+            Map<Long, String> users = new HashMap<>();
+            jdbcTemplate.query("SELECT id, username, email, first_name, last_name FROM users",
+                    rs -> { users.put(rs.getLong("id"), userText(rs.getString("username"), rs.getString("email"),
+                            rs.getString("first_name"), rs.getString("last_name"))); });
+            InvertedIndex builtCards = InvertedIndex.build(cards);
+            InvertedIndex builtUsers = InvertedIndex.build(users);
+
+            synchronized (lock) {
+                cardIndex = builtCards;
+                userIndex = builtUsers;
+            }
+            log.info("Поисковые индексы построены: карт {}, пользователей {} за {} мс",
+                    builtCards.size(), builtUsers.size(), System.currentTimeMillis() - start);
+        } finally {
+            synchronized (lock) {
+                // если пересборка не удалась, изменения применяются к прежним индексам
+                if (isReady()) {
+                    pendingDuringBuild.forEach(Runnable::run);
+                }
+                pendingDuringBuild = null;
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return cardIndex != null && userIndex != null;
+    }
+
+    public Optional<long[]> searchCards(String term) {
+        InvertedIndex index = cardIndex;
+        return index == null ? Optional.empty() : Optional.of(index.search(term));
+    }
+
+    public Optional<long[]> searchUsers(String term) {
+        InvertedIndex index = userIndex;
+        return index == null ? Optional.empty() : Optional.of(index.search(term));
+    }
+
+    /**
+     * Страница найденных id, загруженная из БД одним запросом в порядке индекса.
+     * Сортировка страницы не поддерживается: для нее id передаются в запрос к БД.
+     */
+    public static <T> Page<T> loadPage(long[] ids, Pageable pageable,
+                                       Function<List<Long>, List<T>> loader, Function<T, Long> idOf) {
+        if (pageable.getSort().isSorted()) {
+            throw new IllegalArgumentException("Страница из поискового индекса не сортируется: " + pageable.getSort());
+        }
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + pageable.getPageSize(), ids.length);
+        List<Long> pageIds = Arrays.stream(ids, from, to).boxed().toList();
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, ids.length);
+        }
+        Map<Long, T> loaded = loader.apply(pageIds).stream()
+                .collect(Collectors.toMap(idOf, Function.identity()));
+        List<T> content = pageIds.stream()
+                .map(loaded::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return new PageImpl<>(content, pageable, ids.length);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        apply(() -> {
+            if (event.getType() == CardChangedEvent.Type.DELETED) {
+                cardIndex.remove(event.getCardId());
+            } else {
+                cardIndex.put(event.getCardId(), event.getCardHolderName());
+            }
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        apply(() -> {
+            if (event.getType() == UserChangedEvent.Type.DELETED) {
+                userIndex.remove(event.getUserId());
+            } else {
+                userIndex.put(event.getUserId(), userText(event.getUsername(), event.getEmail(),
+                        event.getFirstName(), event.getLastName()));
+            }
+        });
+    }
+
+    /**
+     * Изменение на другом узле: событие там несет данные, сюда приходит только id,
+     * поэтому запись перечитывается из БД.
+     */
+    @Override
+    public void invalidate(CacheInvalidation.Entity entity, Long id) {
+        if (!enabled) {
+            return;
+        }
+        if (entity == CacheInvalidation.Entity.CARD || entity == CacheInvalidation.Entity.CARD_DELETED) {
+            List<String> names = ShardContext.call(shardMap.shardOf(id), () -> jdbcTemplate.queryForList(
+                    "SELECT card_holder_name FROM cards WHERE id = ?", String.class, id));
+            apply(() -> {
+                if (names.isEmpty()) {
+                    cardIndex.remove(id);
+                } else {
+                    cardIndex.put(id, names.get(0));
+                }
+            });
+        } else if (entity == CacheInvalidation.Entity.USER) {
+            List<String> texts = jdbcTemplate.query(
+                    "SELECT username, email, first_name, last_name FROM users WHERE id = ?",
+                    (rs, row) -> userText(rs.getString("username"), rs.getString("email"),
+                            rs.getString("first_name"), rs.getString("last_name")), id);
+            apply(() -> {
+                if (texts.isEmpty()) {
+                    userIndex.remove(id);
+                } else {
+                    userIndex.put(id, texts.get(0));
+                }
+            });
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        rebuild();
+    }
+
+    private void apply(Runnable update) {
+        synchronized (lock) {
+            if (pendingDuringBuild != null) {
+                pendingDuringBuild.add(update);
+            } else if (isReady()) {
+                update.run();
+            }
+        }
+    }
+
+    private static String userText(String username, String email, String firstName, String lastName) {
+        return String.join(" ",
+                username == null ? "" : username,
+                email == null ? "" : email,
+                firstName == null ? "" : firstName,
+                lastName == null ? "" : lastName);
+    }
+}
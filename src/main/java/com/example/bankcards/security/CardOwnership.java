@@ -0,0 +1,256 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.cache.CacheInvalidation;
+import com.example.bankcards.cache.InvalidatableCache;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardFanOut;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Владельцы карт для проверок доступа в {@code @PreAuthorize}:
+ * {@code @cardOwnership.owns(#cardId, authentication)} - поиск в отображении id карты -> id пользователя
+ * в памяти вместо запросов к БД и ленивых загрузок.
+ * <p>
+ * Отображение строится при старте по всем шардам и обновляется событиями {@link CardChangedEvent}
+ * после фиксации. Карта, которой еще нет в отображении, читается из БД по первичному ключу и добавляется,
+ * если за время чтения ни одна карта не была удалена из отображения.
+ */
+@Component("cardOwnership")
+public class CardOwnership implements InvalidatableCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CardOwnership.class);
+
+    private static final long NO_OWNER = -1;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardFanOut shardFanOut;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private LongLongHashMap owners = new LongLongHashMap();
+    private List<Runnable> pendingDuringBuild;
+    /** Число удалений из отображения; под блокировкой {@link #lock}. */
+    private long removals;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile boolean rebuildRequested;
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        hits = lookupCounter("hit");
+        misses = lookupCounter("miss");
+        Gauge.builder("bankcards.card-ownership.size", this, CardOwnership::size)
+                .description("Карты в отображении владельцев")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Перестраивает отображение. Одновременно выполняется одна перестройка; запрос во время нее
+     * не ждет, а повторяет перестройку после текущей: та могла прочитать данные до изменения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        rebuildRequested = true;
+        while (rebuildRequested && rebuilding.compareAndSet(false, true)) {
+            try {
+                rebuildRequested = false;
+                build();
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    /**
+     * Изменения, пришедшие во время чтения, применяются и к текущему отображению, и к новому после замены.
+     * Если чтение упало, остается текущее отображение - изменения в нем уже есть.
+     */
+    private void build() {
+        write(() -> pendingDuringBuild = new ArrayList<>());
+        try {
+            long start = System.currentTimeMillis();
+            List<List<long[]>> shards = shardFanOut.collect(() -> jdbcTemplate.query(
+                    "SELECT id, user_id FROM cards", (rs, row) -> new long[]{rs.getLong(1), rs.getLong(2)}));
+            int total = shards.stream().mapToInt(List::size).sum();
+            LongLongHashMap built = new LongLongHashMap(total);
+            shards.forEach(rows -> rows.forEach(row -> built.put(row[0], row[1])));
+            write(() -> {
+                owners = built;
+                pendingDuringBuild.forEach(Runnable::run);
+            });
+            log.info("Отображение владельцев карт построено: {} карт за {} мс", total, System.currentTimeMillis() - start);
+        } finally {
+            write(() -> pendingDuringBuild = null);
+        }
+    }
+
+    public boolean owns(Long cardId, Authentication authentication) {
+        Long userId = userIdOf(authentication);
+        return userId != null && cardId != null && cardId > 0 && ownerOf(cardId) == userId;
+    }
+
+    /**
+     * Операция принадлежит пользователю, если ему принадлежит карта отправителя или получателя.
+     */
+    public boolean ownsTransaction(Long transactionId, Authentication authentication) {
+        List<Long> cards = transactionCards(transactionId);
+        return cards.stream().anyMatch(cardId -> owns(cardId, authentication));
+    }
+
+    /**
+     * Операцией распоряжается (отмена, возврат) владелец карты отправителя.
+     */
+    public boolean ownsOutgoingTransaction(Long transactionId, Authentication authentication) {
+        List<Long> cards = transactionCards(transactionId);
+        return !cards.isEmpty() && owns(cards.get(0), authentication);
+    }
+
+    /**
+     * @return id владельца или -1, если карты нет
+     */
+    public long ownerOf(long cardId) {
+        long removalsBeforeRead;
+        lock.readLock().lock();
+        try {
+            long owner = owners.get(cardId, NO_OWNER);
+            if (owner != NO_OWNER) {
+                hits.increment();
+                return owner;
+            }
+            removalsBeforeRead = removals;
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        List<Long> loaded = ShardContext.call(shardMap.shardOf(cardId), () -> jdbcTemplate.queryForList(
+                "SELECT user_id FROM cards WHERE id = ?", Long.class, cardId));
+        if (loaded.isEmpty()) {
+            return NO_OWNER;
+        }
+        write(() -> {
+            // удаление во время чтения могло относиться к этой карте: прочитанная строка уже удалена,
+            // и ее запись вернула бы карту в отображение
+            if (removals == removalsBeforeRead) {
+                // не перезаписываем владельца, если событие успело записать более новое значение
+                owners.putIfAbsent(cardId, loaded.get(0));
+            }
+        });
+        return loaded.get(0);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return owners.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        if (event.getType() == CardChangedEvent.Type.DELETED) {
+            remove(event.getCardId());
+        } else if (event.getUserId() != null) {
+            apply(map -> map.put(event.getCardId(), event.getUserId()));
+        }
+    }
+
+    /**
+     * Владелец карты не меняется, поэтому запись удаляется только при удалении карты,
+     * а изменения баланса и других полей ее не касаются.
+     */
+    @Override
+    public void invalidate(CacheInvalidation.Entity entity, Long id) {
+        if (entity == CacheInvalidation.Entity.CARD_DELETED) {
+            remove(id);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        rebuild();
+    }
+
+    /**
+     * @return [карта отправителя, карта получателя], любая может быть null; пустой список, если операции нет
+     */
+    private List<Long> transactionCards(Long transactionId) {
+        if (transactionId == null) {
+            return List.of();
+        }
+        List<Long[]> rows = jdbcTemplate.query("SELECT from_card_id, to_card_id FROM transactions WHERE id = ?",
+                (rs, row) -> new Long[]{rs.getObject(1, Long.class), rs.getObject(2, Long.class)}, transactionId);
+        return rows.isEmpty() ? List.of() : Arrays.asList(rows.get(0));
+    }
+
+    private static Long userIdOf(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return principal.getId();
+        }
+        return null;
+    }
+
+    private void apply(Consumer<LongLongHashMap> update) {
+        write(() -> {
+            update.accept(owners);
+            if (pendingDuringBuild != null) {
+                pendingDuringBuild.add(() -> update.accept(owners));
+            }
+        });
+    }
+
+    private void remove(Long cardId) {
+        write(() -> {
+            removals++;
+            apply(map -> map.remove(cardId));
+        });
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Counter lookupCounter(String result) {
+        return Counter.builder("bankcards.card-ownership.lookups")
+                .description("Проверки владельца карты: найден в памяти или прочитан из БД")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.bankcards.security;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Обработчик выражений {@code @PreAuthorize} с корнем {@link CardSecurityExpressionRoot} и настраиваемым
+ * режимом компиляции SpEL. Выражения разбираются один раз на метод, поэтому в режиме
+ * {@link SpelCompilerMode#IMMEDIATE} или {@link SpelCompilerMode#MIXED} каждый вызов после компиляции
+ * выполняет сгенерированный байткод вместо обхода дерева выражения.
+ * <p>
+ * Имена параметров для {@code #id} запоминаются по методу: стандартный поиск разбирает аннотации
+ * параметров ({@code @P}, {@code @Param}) при каждой проверке, и это дороже самого выражения.
+ */
+public class CardSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    private final ObjectProvider<CardOwnership> cardOwnershipProvider;
+    private volatile CardOwnership cardOwnership;
+
+    public CardSecurityExpressionHandler(ObjectProvider<CardOwnership> cardOwnershipProvider, SpelCompilerMode compilerMode) {
+        this.cardOwnershipProvider = cardOwnershipProvider;
+        setParameterNameDiscoverer(new CachingParameterNameDiscoverer(getParameterNameDiscoverer()));
+        setExpressionParser(new SpelExpressionParser(
+                new SpelParserConfiguration(compilerMode, CardSecurityExpressionRoot.class.getClassLoader())));
+    }
+
+    @Override
+    public EvaluationContext createEvaluationContext(Supplier<Authentication> authentication, MethodInvocation mi) {
+        StandardEvaluationContext context = (StandardEvaluationContext) super.createEvaluationContext(authentication, mi);
+        context.setRootObject(createRoot(authentication, mi));
+        return context;
+    }
+
+    @Override
+    protected MethodSecurityExpressionOperations createSecurityExpressionRoot(Authentication authentication,
+                                                                              MethodInvocation mi) {
+        return createRoot(() -> authentication, mi);
+    }
+
+    private CardSecurityExpressionRoot createRoot(Supplier<Authentication> authentication, MethodInvocation mi) {
+        CardSecurityExpressionRoot root = new CardSecurityExpressionRoot(authentication, cardOwnership());
+        root.setThis(mi.getThis());
+        root.setPermissionEvaluator(getPermissionEvaluator());
+        root.setTrustResolver(getTrustResolver());
+        root.setRoleHierarchy(getRoleHierarchy());
+        root.setDefaultRolePrefix(getDefaultRolePrefix());
+        return root;
+    }
+
+    // бин владельцев зависит от JDBC и метрик, поэтому берется при первой проверке, а не при создании обработчика
+    private CardOwnership cardOwnership() {
+        CardOwnership resolved = cardOwnership;
+        if (resolved == null) {
+            resolved = cardOwnershipProvider.getObject();
+            cardOwnership = resolved;
+        }
+        return resolved;
+    }
+
+    private static class CachingParameterNameDiscoverer implements ParameterNameDiscoverer {
+
+        private static final String[] UNKNOWN = new String[0];
+
+        private final ParameterNameDiscoverer delegate;
+        private final Map<Method, String[]> names = new ConcurrentHashMap<>();
+
+        CachingParameterNameDiscoverer(ParameterNameDiscoverer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getParameterNames(Method method) {
+            String[] cached = names.computeIfAbsent(method, m -> {
+                String[] discovered = delegate.getParameterNames(m);
+                return discovered != null ? discovered : UNKNOWN;
+            });
+            return cached == UNKNOWN ? null : cached;
+        }
+
+        @Override
+        public String[] getParameterNames(Constructor<?> ctor) {
+            return delegate.getParameterNames(ctor);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.security;
+
+import org.springframework.security.access.expression.SecurityExpressionRoot;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+import java.util.function.Supplier;
+
+/**
+ * Корень выражений {@code @PreAuthorize}: к стандартным {@code hasRole(...)} добавлены типизированные
+ * проверки владельца ({@code ownsCard(#id)}, {@code isCurrentUser(#userId)}).
+ * <p>
+ * В отличие от ссылок на бины ({@code @cardOwnership...}) и обращений к {@code authentication.principal.id}
+ * вызовы методов корня компилируются SpEL в байткод - см. {@code app.security.spel-compiler-mode}.
+ * Класс и методы должны оставаться public, иначе скомпилированное выражение не сможет их вызвать.
+ */
+public class CardSecurityExpressionRoot extends SecurityExpressionRoot implements MethodSecurityExpressionOperations {
+
+    private final CardOwnership cardOwnership;
+    private Object filterObject;
+    private Object returnObject;
+    private Object target;
+
+    public CardSecurityExpressionRoot(Supplier<Authentication> authentication, CardOwnership cardOwnership) {
+        super(authentication);
+        this.cardOwnership = cardOwnership;
+    }
+
+    /**
+     * Карта принадлежит текущему пользователю.
+     */
+    public boolean ownsCard(Long cardId) {
+        return cardOwnership.owns(cardId, getAuthentication());
+    }
+
+    /**
+     * Текущему пользователю принадлежит карта отправителя или получателя операции.
+     */
+    public boolean ownsTransaction(Long transactionId) {
+        return cardOwnership.ownsTransaction(transactionId, getAuthentication());
+    }
+
+    /**
+     * Текущему пользователю принадлежит карта отправителя операции (отмена, возврат).
+     */
+    public boolean ownsOutgoingTransaction(Long transactionId) {
+        return cardOwnership.ownsOutgoingTransaction(transactionId, getAuthentication());
+    }
+
+    /**
+     * id совпадает с id текущего пользователя.
+     */
+    public boolean isCurrentUser(Long userId) {
+        return userId != null && getAuthentication().getPrincipal() instanceof UserPrincipal principal
+                && userId.equals(principal.getId());
+    }
+
+    @Override
+    public void setFilterObject(Object filterObject) {
+        this.filterObject = filterObject;
+    }
+
+    @Override
+    public Object getFilterObject() {
+        return filterObject;
+    }
+
+    @Override
+    public void setReturnObject(Object returnObject) {
+        this.returnObject = returnObject;
+    }
+
+    @Override
+    public Object getReturnObject() {
+        return returnObject;
+    }
+
+    void setThis(Object target) {
+        this.target = target;
+    }
+
+    @Override
+    public Object getThis() {
+        return target;
+    }
+}
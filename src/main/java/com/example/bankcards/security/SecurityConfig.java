@@ -1,9 +1,14 @@
 package com.example.bankcards.security;
 
 import com.example.bankcards.service.UserDetailsServiceImpl;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -33,6 +38,20 @@ public class SecurityConfig {
         return new BCryptPasswordEncoder();
     }
 
+    /**
+     * Выражения {@code @PreAuthorize} с проверками владельца; {@code app.security.spel-compiler-mode}
+     * (off | immediate | mixed) включает компиляцию выражений SpEL в байткод.
+     */
+    @Bean
+    static MethodSecurityExpressionHandler methodSecurityExpressionHandler(
+            ObjectProvider<CardOwnership> cardOwnership,
+            @Value("${app.security.spel-compiler-mode:off}") SpelCompilerMode compilerMode,
+            ApplicationContext applicationContext) {
+        CardSecurityExpressionHandler handler = new CardSecurityExpressionHandler(cardOwnership, compilerMode);
+        handler.setApplicationContext(applicationContext);
+        return handler;
+    }
+
     @Bean
     public DaoAuthenticationProvider authenticationProvider() {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
@@ -59,6 +78,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
 
                 .requestMatchers("/api/user/**").hasAnyRole("USER", "ADMIN")
+                .requestMatchers("/api/me/**").hasAnyRole("USER", "ADMIN")
                 .requestMatchers("/api/cards/**").hasAnyRole("USER", "ADMIN")
                 .requestMatchers("/api/transactions/**").hasAnyRole("USER", "ADMIN")
 
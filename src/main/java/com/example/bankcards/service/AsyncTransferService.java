@@ -0,0 +1,292 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.entity.TransactionType;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.security.CardOwnership;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Асинхронные переводы: запрос проверяется без блокировок, перевод сохраняется операцией PENDING
+ * вместе со строкой очереди {@code transfer_queue} (changeset 017) и выполняется обработчиками в фоне.
+ * <p>
+ * На каждом шарде работают до {@code app.transfers.async.workers} обработчиков. Шаг обработчика - одна
+ * транзакция: захват строки ({@code FOR UPDATE SKIP LOCKED}), {@link TransactionService#executeQueuedTransfer}
+ * и удаление строки, поэтому перевод выполняется не более одного раза. Отказ по бизнес-правилам
+ * (неактивная карта, недостаточно средств) завершает операцию статусом FAILED; прочие ошибки откладывают
+ * строку с экспоненциальной задержкой, после {@code max-attempts} операция помечается FAILED.
+ * <p>
+ * Очередь ограничена {@code max-queue-depth} строк на шард: сверх лимита прием отклоняется с 503.
+ * Переводы между шардами в очередь не принимаются - для них есть синхронный {@link TransferService}.
+ */
+@Service
+public class AsyncTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncTransferService.class);
+
+    private static final String DEFAULT_DESCRIPTION = "Перевод между картами";
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private CardOwnership cardOwnership;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("transferQueueExecutor")
+    private TaskExecutor executor;
+
+    @Value("${app.transfers.async.workers:4}")
+    private int workers;
+
+    @Value("${app.transfers.async.max-queue-depth:10000}")
+    private long maxQueueDepth;
+
+    @Value("${app.transfers.async.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.transfers.async.retry-delay-ms:1000}")
+    private long retryDelayMs;
+
+    @Value("${app.transfers.async.max-transfers-per-poll:1000}")
+    private int maxTransfersPerPoll;
+
+    private final TransactionTemplate queueTransaction;
+    // шард -> число работающих обработчиков
+    private final Map<Integer, AtomicInteger> active = new ConcurrentHashMap<>();
+    // шард -> глубина очереди: уточняется запросом при опросе, между опросами растет при приеме
+    private final Map<Integer, AtomicLong> depth = new ConcurrentHashMap<>();
+    private final Counter completed;
+    private final Counter failed;
+    private final Counter retried;
+    private final Timer latency;
+
+    public AsyncTransferService(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.queueTransaction = new TransactionTemplate(transactionManager);
+        this.completed = processedCounter(meterRegistry, TransactionStatus.COMPLETED);
+        this.failed = processedCounter(meterRegistry, TransactionStatus.FAILED);
+        this.retried = Counter.builder("bankcards.transfers.async.retries")
+                .description("Переводы, отложенные на повтор из-за ошибки выполнения")
+                .register(meterRegistry);
+        this.latency = Timer.builder("bankcards.transfers.async.latency")
+                .description("Время от приема перевода до завершения")
+                .register(meterRegistry);
+        Gauge.builder("bankcards.transfers.async.queue-depth", depth,
+                        d -> d.values().stream().mapToLong(AtomicLong::get).sum())
+                .description("Переводы в очереди")
+                .register(meterRegistry);
+    }
+
+    private static Counter processedCounter(MeterRegistry meterRegistry, TransactionStatus status) {
+        return Counter.builder("bankcards.transfers.async.processed")
+                .description("Выполненные асинхронные переводы")
+                .tag("status", status.name())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Принимает перевод в очередь. Проверяются только сумма, карты и шард; активность карт и остаток
+     * проверяет обработчик под блокировкой.
+     *
+     * @return операция в статусе PENDING
+     */
+    public Transaction submit(Long fromCardId, Long toCardId, BigDecimal amount, String description) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма перевода должна быть положительной");
+        }
+        if (fromCardId.equals(toCardId)) {
+            throw new IllegalArgumentException("Нельзя переводить средства на ту же карту");
+        }
+        int shard = shardMap.shardOf(fromCardId);
+        if (shard != shardMap.shardOf(toCardId)) {
+            throw new IllegalArgumentException("Перевод между шардами выполняется через /api/transactions/transfer");
+        }
+        if (cardOwnership.ownerOf(fromCardId) < 0) {
+            throw new IllegalArgumentException("Карта отправителя не найдена");
+        }
+        if (cardOwnership.ownerOf(toCardId) < 0) {
+            throw new IllegalArgumentException("Карта получателя не найдена");
+        }
+        AtomicLong queued = depth.computeIfAbsent(shard, s -> new AtomicLong());
+        if (queued.get() >= maxQueueDepth) {
+            throw new BusinessException("TRANSFER_QUEUE_FULL",
+                    "Очередь переводов переполнена, повторите позже", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        Transaction saved = ShardContext.call(shard, () -> queueTransaction.execute(status -> {
+            Transaction transaction = new Transaction();
+            transaction.setFromCard(cardRepository.getReferenceById(fromCardId));
+            transaction.setToCard(cardRepository.getReferenceById(toCardId));
+            transaction.setAmount(amount);
+            transaction.setTransactionType(TransactionType.TRANSFER);
+            transaction.setDescription(description != null ? description : DEFAULT_DESCRIPTION);
+            transaction.setStatus(TransactionStatus.PENDING);
+            Transaction pending = transactionRepository.save(transaction);
+            jdbcTemplate.update("INSERT INTO transfer_queue (transaction_id) VALUES (?)", pending.getId());
+            return pending;
+        }));
+        queued.incrementAndGet();
+        startWorkers(shard);
+        return saved;
+    }
+
+    /**
+     * Уточняет глубину очередей и запускает недостающих обработчиков на каждом шарде.
+     */
+    @Scheduled(fixedDelayString = "${app.transfers.async.poll-interval-ms:100}")
+    public void poll() {
+        for (int shard : shardMap.shards()) {
+            try {
+                Long rows = ShardContext.call(shard, () ->
+                        jdbcTemplate.queryForObject("SELECT count(*) FROM transfer_queue", Long.class));
+                depth.computeIfAbsent(shard, s -> new AtomicLong()).set(rows != null ? rows : 0);
+            } catch (RuntimeException e) {
+                log.warn("Шард {} недоступен, очередь переводов не обработана: {}", shard, e.getMessage());
+                continue;
+            }
+            startWorkers(shard);
+        }
+    }
+
+    private void startWorkers(int shard) {
+        AtomicInteger running = active.computeIfAbsent(shard, s -> new AtomicInteger());
+        while (running.get() < workers) {
+            running.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        drain(shard);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                running.decrementAndGet();
+                break;
+            }
+        }
+    }
+
+    private void drain(int shard) {
+        AtomicLong queued = depth.computeIfAbsent(shard, s -> new AtomicLong());
+        for (int i = 0; i < maxTransfersPerPoll; i++) {
+            boolean processed;
+            try {
+                processed = ShardContext.call(shard, this::processNext);
+            } catch (RuntimeException e) {
+                log.warn("Шард {} недоступен, очередь переводов не обработана: {}", shard, e.getMessage());
+                return;
+            }
+            if (!processed) {
+                return;
+            }
+            queued.updateAndGet(d -> Math.max(0, d - 1));
+        }
+    }
+
+    /**
+     * @return false, если готовых к выполнению переводов нет
+     */
+    private boolean processNext() {
+        Long[] claimed = new Long[1];
+        try {
+            Boolean processed = queueTransaction.execute(status -> {
+                // ожидание в очереди считает БД: created_at записан ее часами, а не часами JVM
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT transaction_id, " +
+                        "extract(epoch FROM localtimestamp - created_at) * 1000 AS waited_ms FROM transfer_queue WHERE next_attempt_at <= localtimestamp " +
+                        "ORDER BY next_attempt_at, transaction_id LIMIT 1 FOR UPDATE SKIP LOCKED");
+                if (rows.isEmpty()) {
+                    return false;
+                }
+                Long transactionId = ((Number) rows.get(0).get("transaction_id")).longValue();
+                claimed[0] = transactionId;
+                long startedAt = System.nanoTime();
+                TransactionStatus result = transactionService.executeQueuedTransfer(transactionId);
+                jdbcTemplate.update("DELETE FROM transfer_queue WHERE transaction_id = ?", transactionId);
+                (result == TransactionStatus.COMPLETED ? completed : failed).increment();
+                long waitedMs = Math.max(0, ((Number) rows.get(0).get("waited_ms")).longValue());
+                latency.record(Duration.ofMillis(waitedMs).plusNanos(System.nanoTime() - startedAt));
+                return true;
+            });
+            return Boolean.TRUE.equals(processed);
+        } catch (RuntimeException e) {
+            if (claimed[0] == null) {
+                throw e;
+            }
+            postpone(claimed[0], e);
+            return true;
+        }
+    }
+
+    /**
+     * Откладывает перевод после ошибки выполнения; после {@code max-attempts} попыток операция FAILED.
+     */
+    private void postpone(Long transactionId, RuntimeException error) {
+        String message = truncate(String.valueOf(error));
+        queueTransaction.executeWithoutResult(status -> {
+            // строку мог уже выполнить другой обработчик после отката
+            List<Integer> updated = jdbcTemplate.queryForList("UPDATE transfer_queue SET attempts = attempts + 1, " +
+                    "last_error = ?, next_attempt_at = localtimestamp + make_interval(secs => ? * power(2, least(attempts, 6))) " +
+                    "WHERE transaction_id = ? RETURNING attempts", Integer.class, message, retryDelayMs / 1000.0,
+                    transactionId);
+            if (updated.isEmpty()) {
+                return;
+            }
+            int attempts = updated.get(0);
+            if (attempts >= maxAttempts) {
+                transactionService.failQueuedTransfer(transactionId);
+                jdbcTemplate.update("DELETE FROM transfer_queue WHERE transaction_id = ?", transactionId);
+                failed.increment();
+                log.warn("Перевод {} не выполнен после {} попыток: {}", transactionId, attempts, message);
+            } else {
+                retried.increment();
+                log.warn("Перевод {} отложен: {}", transactionId, message);
+            }
+        });
+    }
+
+    private static String truncate(String message) {
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
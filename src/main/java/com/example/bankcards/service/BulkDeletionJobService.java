@@ -0,0 +1,87 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BulkDeletionJobDto;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.LongConsumer;
+
+/**
+ * Фоновые задания удаления больших аккаунтов. Состояние заданий хранится в памяти узла.
+ */
+@Service
+public class BulkDeletionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkDeletionJobService.class);
+
+    @Autowired
+    private BulkDeletionService bulkDeletionService;
+
+    @Autowired
+    @Qualifier("bulkDeletionExecutor")
+    private TaskExecutor bulkDeletionExecutor;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    private final Map<String, BulkDeletionJobDto> jobs = new ConcurrentHashMap<>();
+
+    public BulkDeletionJobDto submitCardDeletion(Long cardId) {
+        return submit("CARD", cardId, bulkDeletionService::purgeCard);
+    }
+
+    public BulkDeletionJobDto submitUserDeletion(Long userId) {
+        return submit("USER", userId, bulkDeletionService::purgeUser);
+    }
+
+    public Optional<BulkDeletionJobDto> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private BulkDeletionJobDto submit(String targetType, Long targetId,
+                                      BiFunction<Long, LongConsumer, Long> purge) {
+        BulkDeletionJobDto job = new BulkDeletionJobDto(UUID.randomUUID().toString(), targetType, targetId);
+        jobs.put(job.getId(), job);
+        try {
+            bulkDeletionExecutor.execute(() -> run(job, purge));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getId());
+            throw new BusinessException("TOO_MANY_JOBS",
+                "Слишком много заданий удаления в очереди, повторите позже", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return job;
+    }
+
+    private void run(BulkDeletionJobDto job, BiFunction<Long, LongConsumer, Long> purge) {
+        String targetType = job.getTargetType();
+        Long targetId = job.getTargetId();
+        job.setStatus(BulkDeletionJobDto.Status.RUNNING);
+        try {
+            long deleted = ShardContext.call(shardMap.shardOf(targetId),
+                    () -> purge.apply(targetId, job::setDeletedTransactions));
+            job.setDeletedTransactions(deleted);
+            job.setStatus(BulkDeletionJobDto.Status.COMPLETED);
+        } catch (RuntimeException e) {
+            logger.error("Bulk deletion job {} for {} {} failed", job.getId(), targetType, targetId, e);
+            job.setError(e.getMessage());
+            job.setStatus(BulkDeletionJobDto.Status.FAILED);
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.event.UserChangedEvent;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Удаление карт и пользователей set-based SQL-операторами, без загрузки связанных
+ * транзакций и карт в контекст персистентности. Транзакции удаляются пачками
+ * по {@code app.bulk-delete.batch-size} строк.
+ */
+@Service
+public class BulkDeletionService {
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${app.bulk-delete.batch-size:5000}")
+    private int batchSize;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private TransactionTemplate chunkTransaction;
+
+    @PostConstruct
+    void init() {
+        chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+
+    @Transactional
+    public long deleteCard(Long cardId) {
+        CardRepository.CardOwnerView owner = cardRepository.findOwnerViewById(cardId)
+                .orElseThrow(() -> new IllegalArgumentException("Карта не найдена"));
+
+        long deleted = deleteInChunks(() -> transactionRepository.deleteBatchByCardId(cardId, batchSize), null);
+        cardRepository.deleteRowById(cardId);
+        userRepository.adjustCardCounters(owner.getUserId(), -1, owner.getIsActive() ? -1 : 0);
+        eventPublisher.publishEvent(CardChangedEvent.deleted(cardId, owner.getUserId()));
+        return deleted;
+    }
+
+
+    @Transactional
+    public long deleteUser(Long userId) {
+        long deleted = deleteInChunks(() -> transactionRepository.deleteBatchByUserId(userId, batchSize), null);
+        List<Long> cardIds = cardRepository.findIdsByUserId(userId);
+        cardRepository.deleteRowsByUserId(userId);
+        userRepository.deleteRowById(userId);
+        publishUserDeleted(userId, cardIds);
+        return deleted;
+    }
+
+
+    /**
+     * Вариант для фоновых заданий: каждая пачка фиксируется в отдельной транзакции,
+     * поэтому блокировки и объем WAL не растут вместе с историей карты.
+     */
+    public long purgeCard(Long cardId, LongConsumer progress) {
+        if (!cardRepository.existsById(cardId)) {
+            throw new IllegalArgumentException("Карта не найдена");
+        }
+        long deleted = deleteInChunks(() -> chunkTransaction.execute(
+                status -> transactionRepository.deleteBatchByCardId(cardId, batchSize)), progress);
+        chunkTransaction.executeWithoutResult(status -> {
+            cardRepository.findOwnerViewById(cardId).ifPresent(owner -> {
+                transactionRepository.deleteBatchByCardId(cardId, Integer.MAX_VALUE);
+                cardRepository.deleteRowById(cardId);
+                userRepository.adjustCardCounters(owner.getUserId(), -1, owner.getIsActive() ? -1 : 0);
+                eventPublisher.publishEvent(CardChangedEvent.deleted(cardId, owner.getUserId()));
+            });
+        });
+        return deleted;
+    }
+
+
+    public long purgeUser(Long userId, LongConsumer progress) {
+        if (!userRepository.existsById(userId)) {
+            throw new IllegalArgumentException("Пользователь не найден с ID: " + userId);
+        }
+        long deleted = deleteInChunks(() -> chunkTransaction.execute(
+                status -> transactionRepository.deleteBatchByUserId(userId, batchSize)), progress);
+        chunkTransaction.executeWithoutResult(status -> {
+            transactionRepository.deleteBatchByUserId(userId, Integer.MAX_VALUE);
+            List<Long> cardIds = cardRepository.findIdsByUserId(userId);
+            cardRepository.deleteRowsByUserId(userId);
+            userRepository.deleteRowById(userId);
+            publishUserDeleted(userId, cardIds);
+        });
+        return deleted;
+    }
+
+
+    private void publishUserDeleted(Long userId, List<Long> cardIds) {
+        cardIds.forEach(cardId -> eventPublisher.publishEvent(CardChangedEvent.deleted(cardId, userId)));
+        eventPublisher.publishEvent(UserChangedEvent.deleted(userId));
+    }
+
+
+    /**
+     * Пачки удаляются, пока очередная не окажется пустой: неполная пачка не значит, что строк
+     * больше нет (например, если между пачками добавились новые операции по карте).
+     */
+    private long deleteInChunks(IntSupplier chunk, LongConsumer progress) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = chunk.getAsInt();
+            total += deleted;
+            if (progress != null) {
+                progress.accept(total);
+            }
+        } while (deleted > 0);
+        return total;
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BulkTransferLine;
+import com.example.bankcards.dto.BulkTransferResponse;
+import com.example.bankcards.dto.BulkTransferResponse.LineError;
+import com.example.bankcards.dto.BulkTransferResponse.Status;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.TransactionBatchCompletedEvent;
+import com.example.bankcards.event.TransactionCompletedEvent;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.outbox.OutboxWriter;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Массовые переводы с одной карты на много карт (зарплатные ведомости) одной транзакцией на шарде
+ * отправителя и постоянным числом запросов независимо от числа строк:
+ * <ol>
+ *   <li>карты отправителя и получателей блокируются одним запросом в порядке id - в том же порядке,
+ *       что и при обычных переводах ({@code CardRepository.lockByIds}), и заодно проверяются;</li>
+ *   <li>отправитель списывается один раз на сумму принятых строк;</li>
+ *   <li>получатели зачисляются одним UPDATE по массивам (строки на одну карту суммируются);</li>
+ *   <li>операции COMPLETED и их события outbox вставляются одним запросом по массивам;</li>
+ *   <li>после фиксации публикуются одно {@link CardBalanceChangedEvent} и одно
+ *       {@link TransactionBatchCompletedEvent} на всю пачку.</li>
+ * </ol>
+ * Строки с ошибками (сумма, карта не найдена, неактивна, на другом шарде) отклоняются по отдельности
+ * и возвращаются в ответе с номером строки: позицией в списке с 1 или номером строки файла CSV.
+ * Если средств не хватает на все принятые строки, не выполняется ни одна.
+ */
+@Service
+public class BulkTransferService {
+
+    private static final String DEFAULT_DESCRIPTION = "Массовый перевод";
+
+    private static final int MAX_DESCRIPTION_LENGTH = 255;
+
+    private static final List<String> CSV_HEADER = List.of("tocardid", "amount", "description");
+
+    private static final char BOM = '\uFEFF';
+
+    // decimal(15,2)
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("10000000000000");
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OutboxWriter outboxWriter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.transfers.bulk.max-lines:100000}")
+    private int maxLines;
+
+    private final TransactionTemplate bulkTransaction;
+    private final Timer duration;
+
+    public BulkTransferService(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.bulkTransaction = new TransactionTemplate(transactionManager);
+        this.duration = Timer.builder("bankcards.transfers.bulk.duration")
+                .description("Время выполнения массового перевода")
+                .register(meterRegistry);
+    }
+
+    record CardState(Long userId, BigDecimal balance, boolean active) {
+    }
+
+    /**
+     * Строки CSV и номер строки файла, с которой они начинаются (2, если первая строка - заголовок).
+     */
+    record CsvLines(List<BulkTransferLine> lines, int firstLine) {
+    }
+
+    public BulkTransferResponse transfer(Long fromCardId, List<BulkTransferLine> lines, String description) {
+        return transfer(fromCardId, lines, description, 1);
+    }
+
+    /**
+     * Перевод по файлу CSV: ошибки возвращаются с номерами строк файла.
+     */
+    public BulkTransferResponse transferCsv(Long fromCardId, String csv, String description) {
+        CsvLines parsed = parseCsv(csv);
+        return transfer(fromCardId, parsed.lines(), description, parsed.firstLine());
+    }
+
+    private BulkTransferResponse transfer(Long fromCardId, List<BulkTransferLine> lines, String description,
+                                          int firstLine) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("Список строк перевода не должен быть пустым");
+        }
+        if (lines.size() > maxLines) {
+            throw new IllegalArgumentException("За один запрос можно выполнить не больше " + maxLines + " переводов");
+        }
+        String defaultDescription = description != null ? description : DEFAULT_DESCRIPTION;
+        if (defaultDescription.length() > MAX_DESCRIPTION_LENGTH) {
+            throw new IllegalArgumentException("Описание длиннее " + MAX_DESCRIPTION_LENGTH + " символов");
+        }
+        int shard = shardMap.shardOf(fromCardId);
+
+        List<LineError> errors = new ArrayList<>();
+        List<Integer> candidates = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            BulkTransferLine line = lines.get(i);
+            Status status = checkLine(line, fromCardId, shard);
+            if (status != null) {
+                errors.add(lineError(firstLine + i, line, status));
+            } else {
+                candidates.add(i);
+            }
+        }
+
+        return duration.record(() -> ShardContext.call(shard, () -> bulkTransaction.execute(tx -> {
+            Set<Long> cardIds = new LinkedHashSet<>();
+            cardIds.add(fromCardId);
+            candidates.forEach(i -> cardIds.add(lines.get(i).getToCardId()));
+            Map<Long, CardState> cards = lockCards(cardIds);
+
+            CardState source = cards.get(fromCardId);
+            if (source == null) {
+                throw new IllegalArgumentException("Карта отправителя не найдена");
+            }
+            if (!source.active()) {
+                throw new IllegalArgumentException("Карта отправителя не активна");
+            }
+
+            List<Integer> accepted = new ArrayList<>(candidates.size());
+            BigDecimal total = BigDecimal.ZERO;
+            for (int i : candidates) {
+                BulkTransferLine line = lines.get(i);
+                CardState target = cards.get(line.getToCardId());
+                if (target == null) {
+                    errors.add(lineError(firstLine + i, line, Status.CARD_NOT_FOUND));
+                } else if (!target.active()) {
+                    errors.add(lineError(firstLine + i, line, Status.CARD_INACTIVE));
+                } else {
+                    accepted.add(i);
+                    total = total.add(line.getAmount());
+                }
+            }
+            if (source.balance().compareTo(total) < 0) {
+                throw new BusinessException("INSUFFICIENT_FUNDS",
+                        "Недостаточно средств на карте отправителя: нужно " + total + ", доступно " + source.balance(),
+                        HttpStatus.BAD_REQUEST);
+            }
+            errors.sort((a, b) -> Integer.compare(a.getLine(), b.getLine()));
+            if (accepted.isEmpty()) {
+                return new BulkTransferResponse(fromCardId, 0, errors.size(), BigDecimal.ZERO, errors);
+            }
+
+            jdbcTemplate.update("UPDATE cards SET balance = balance - ?, updated_at = now() WHERE id = ?",
+                    total, fromCardId);
+            Map<Long, BigDecimal> credits = credit(lines, accepted);
+            List<TransactionCompletedEvent> completed = insertTransactions(fromCardId, lines, accepted,
+                    defaultDescription, cards);
+
+            List<Long> changed = new ArrayList<>(credits.size() + 1);
+            changed.add(fromCardId);
+            changed.addAll(credits.keySet());
+            eventPublisher.publishEvent(new CardBalanceChangedEvent(changed));
+            eventPublisher.publishEvent(new TransactionBatchCompletedEvent(completed));
+            return new BulkTransferResponse(fromCardId, accepted.size(), errors.size(), total, errors);
+        })));
+    }
+
+    /**
+     * Разбирает CSV {@code toCardId,amount[,description]}; первая строка может быть заголовком с этими
+     * именами столбцов (без учета регистра). Строка, которую не удалось разобрать, в том числе первая
+     * строка, не являющаяся заголовком, возвращается с пустыми полями и будет отклонена как INVALID_LINE.
+     * Метка порядка байтов UTF-8 в начале файла пропускается.
+     */
+    CsvLines parseCsv(String csv) {
+        if (csv != null && !csv.isEmpty() && csv.charAt(0) == BOM) {
+            csv = csv.substring(1);
+        }
+        if (csv == null || csv.isBlank()) {
+            return new CsvLines(List.of(), 1);
+        }
+        String[] rows = csv.split("\r?\n");
+        int last = rows.length;
+        while (last > 0 && rows[last - 1].isBlank()) {
+            last--;
+        }
+        List<BulkTransferLine> lines = new ArrayList<>(last);
+        int firstLine = 1;
+        for (int r = 0; r < last; r++) {
+            String[] fields = rows[r].split(",", 3);
+            if (r == 0 && isHeader(fields)) {
+                firstLine = 2;
+                continue;
+            }
+            BulkTransferLine line = new BulkTransferLine();
+            try {
+                line.setToCardId(Long.parseLong(fields[0].strip()));
+                line.setAmount(fields.length > 1 ? new BigDecimal(fields[1].strip()) : null);
+            } catch (NumberFormatException e) {
+                line.setToCardId(null);
+                line.setAmount(null);
+            }
+            if (fields.length > 2 && !fields[2].isBlank()) {
+                line.setDescription(unquote(fields[2].strip()));
+            }
+            lines.add(line);
+        }
+        return new CsvLines(lines, firstLine);
+    }
+
+    private Status checkLine(BulkTransferLine line, Long fromCardId, int shard) {
+        if (line == null || line.getToCardId() == null) {
+            return Status.INVALID_LINE;
+        }
+        if (line.getDescription() != null && line.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            return Status.INVALID_LINE;
+        }
+        BigDecimal amount = line.getAmount();
+        if (amount == null || amount.signum() <= 0 || amount.stripTrailingZeros().scale() > 2
+                || amount.compareTo(MAX_AMOUNT) >= 0) {
+            return Status.INVALID_AMOUNT;
+        }
+        if (line.getToCardId().equals(fromCardId)) {
+            return Status.SAME_CARD;
+        }
+        if (shardMap.shardOf(line.getToCardId()) != shard) {
+            return Status.CROSS_SHARD;
+        }
+        return null;
+    }
+
+    private Map<Long, CardState> lockCards(Set<Long> cardIds) {
+        Long[] ids = cardIds.toArray(Long[]::new);
+        Map<Long, CardState> cards = new HashMap<>(ids.length * 2);
+        jdbcTemplate.query("SELECT id, user_id, balance, is_active FROM cards WHERE id = ANY(?) ORDER BY id " +
+                        "FOR NO KEY UPDATE",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                rs -> {
+                    cards.put(rs.getLong("id"), new CardState(rs.getLong("user_id"), rs.getBigDecimal("balance"),
+                            rs.getBoolean("is_active")));
+                });
+        return cards;
+    }
+
+    private Map<Long, BigDecimal> credit(List<BulkTransferLine> lines, List<Integer> accepted) {
+        Map<Long, BigDecimal> credits = new LinkedHashMap<>();
+        accepted.forEach(i -> credits.merge(lines.get(i).getToCardId(), lines.get(i).getAmount(), BigDecimal::add));
+        Long[] ids = credits.keySet().toArray(Long[]::new);
+        BigDecimal[] amounts = credits.values().toArray(BigDecimal[]::new);
+        jdbcTemplate.update("UPDATE cards c SET balance = c.balance + v.amount, updated_at = now() " +
+                "FROM unnest(?::bigint[], ?::numeric[]) AS v(id, amount) WHERE c.id = v.id", ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids));
+            ps.setArray(2, ps.getConnection().createArrayOf("numeric", amounts));
+        });
+        return credits;
+    }
+
+    private List<TransactionCompletedEvent> insertTransactions(Long fromCardId, List<BulkTransferLine> lines,
+                                                               List<Integer> accepted, String defaultDescription,
+                                                               Map<Long, CardState> cards) {
+        Long[] toCardIds = new Long[accepted.size()];
+        BigDecimal[] amounts = new BigDecimal[accepted.size()];
+        String[] descriptions = new String[accepted.size()];
+        for (int k = 0; k < accepted.size(); k++) {
+            BulkTransferLine line = lines.get(accepted.get(k));
+            toCardIds[k] = line.getToCardId();
+            amounts[k] = line.getAmount();
+            descriptions[k] = line.getDescription() != null ? line.getDescription() : defaultDescription;
+        }
+        Long fromUserId = cards.get(fromCardId).userId();
+        return outboxWriter.insertCompleted("INSERT INTO transactions (from_card_id, to_card_id, amount, " +
+                        "transaction_type, description, status) " +
+                        "SELECT ?, v.to_card_id, v.amount, 'TRANSFER', v.description, 'COMPLETED' " +
+                        "FROM unnest(?::bigint[], ?::numeric[], ?::varchar[]) AS v(to_card_id, amount, description) " +
+                        "RETURNING id, transaction_type, from_card_id, to_card_id, amount, currency, description, created_at",
+                ps -> {
+                    ps.setLong(1, fromCardId);
+                    ps.setArray(2, ps.getConnection().createArrayOf("bigint", toCardIds));
+                    ps.setArray(3, ps.getConnection().createArrayOf("numeric", amounts));
+                    ps.setArray(4, ps.getConnection().createArrayOf("varchar", descriptions));
+                },
+                (rs, row) -> {
+                    Long toCardId = rs.getLong("to_card_id");
+                    return new TransactionCompletedEvent(rs.getLong("id"), rs.getString("transaction_type"),
+                            fromCardId, fromUserId, toCardId, cards.get(toCardId).userId(), rs.getBigDecimal("amount"),
+                            rs.getString("currency"), rs.getString("description"),
+                            rs.getObject("created_at", LocalDateTime.class));
+                });
+    }
+
+    private static LineError lineError(int number, BulkTransferLine line, Status status) {
+        String message = switch (status) {
+            case INVALID_LINE -> "Не указана карта получателя или строка некорректна";
+            case INVALID_AMOUNT -> "Сумма должна быть положительной, не больше двух знаков после запятой";
+            case SAME_CARD -> "Нельзя переводить средства на ту же карту";
+            case CROSS_SHARD -> "Карта получателя на другом шарде, используйте /api/transactions/transfer";
+            case CARD_NOT_FOUND -> "Карта получателя не найдена";
+            case CARD_INACTIVE -> "Карта получателя не активна";
+        };
+        return new LineError(number, line != null ? line.getToCardId() : null, status, message);
+    }
+
+    private static boolean isHeader(String[] fields) {
+        if (fields.length < 2) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (!CSV_HEADER.get(i).equals(unquote(fields[i].strip()).toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+}
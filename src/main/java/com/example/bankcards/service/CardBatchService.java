@@ -0,0 +1,63 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.cache.CardSnapshot;
+import com.example.bankcards.cache.CardSnapshotCache;
+import com.example.bankcards.dto.CardBatchResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Пакетное чтение карт через кэш снимков ({@link CardSnapshotCache#getAll}),
+ * владелец проверяется по загруженным снимкам без отдельных запросов.
+ * <p>
+ * Для пользователя отсутствующая и чужая карта неразличимы (FORBIDDEN), как у {@code GET /api/cards/{id}}.
+ */
+@Service
+public class CardBatchService {
+
+    @Autowired
+    private CardSnapshotCache cardSnapshotCache;
+
+    @Value("${app.cards.batch.max-ids:100}")
+    private int maxIds;
+
+    public <T> CardBatchResponse<T> resolve(List<Long> ids, Long userId, boolean admin, Function<CardSnapshot, T> mapper) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("Список id карт не должен быть пустым");
+        }
+        Set<Long> unique = new LinkedHashSet<>(ids);
+        if (unique.size() > maxIds) {
+            throw new IllegalArgumentException("За один запрос можно получить не больше " + maxIds + " карт");
+        }
+
+        List<Long> valid = unique.stream().filter(id -> id != null && id > 0).toList();
+        Map<Long, CardSnapshot> cards = valid.isEmpty() ? Map.of() : cardSnapshotCache.getAll(valid);
+
+        List<CardBatchResponse.Item<T>> results = new ArrayList<>(unique.size());
+        for (Long id : unique) {
+            CardSnapshot card = id != null && id > 0 ? cards.get(id) : null;
+            if (id == null || id <= 0) {
+                results.add(error(id, CardBatchResponse.Status.INVALID_ID, "Некорректный id карты"));
+            } else if (!admin && (card == null || !card.userId().equals(userId))) {
+                results.add(error(id, CardBatchResponse.Status.FORBIDDEN, "Недостаточно прав доступа"));
+            } else if (card == null) {
+                results.add(error(id, CardBatchResponse.Status.NOT_FOUND, "Карта не найдена"));
+            } else {
+                results.add(new CardBatchResponse.Item<>(id, CardBatchResponse.Status.OK, mapper.apply(card), null));
+            }
+        }
+        return new CardBatchResponse<>(results);
+    }
+
+    private static <T> CardBatchResponse.Item<T> error(Long id, CardBatchResponse.Status status, String message) {
+        return new CardBatchResponse.Item<>(id, status, null, message);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * История операций по карте с keyset-пагинацией по (created_at, id).
+ * Вместо коллекций в сущности Card: за один вызов читается не больше одной страницы.
+ */
+@Service
+@Transactional(readOnly = true)
+public class CardHistoryService {
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Value("${app.card-history.default-page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.card-history.max-page-size:100}")
+    private int maxPageSize;
+
+    public Page getHistory(Long cardId, String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : limit;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + maxPageSize);
+        }
+
+        List<Transaction> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = transactionRepository.findTopNByCardIdOrderByCreatedAtDesc(cardId, pageSize + 1);
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            rows = transactionRepository.findHistoryPageBefore(cardId, position.createdAt(), position.id(), pageSize + 1);
+        }
+
+        if (rows.size() <= pageSize) {
+            return new Page(rows, null);
+        }
+        List<Transaction> items = rows.subList(0, pageSize);
+        Transaction last = items.get(items.size() - 1);
+        return new Page(items, new Cursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    public record Page(List<Transaction> items, String nextCursor) {
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+
+    record Cursor(LocalDateTime createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Некорректный курсор страницы");
+            }
+        }
+    }
+}
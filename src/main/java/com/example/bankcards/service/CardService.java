@@ -4,9 +4,16 @@ import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardType;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.search.SearchIndexService;
+import com.example.bankcards.sharding.ShardFanOut;
+import com.example.bankcards.util.SearchPolicy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.data.domain.Page;
@@ -14,6 +21,7 @@ import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,6 +36,27 @@ public class CardService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private BulkDeletionService bulkDeletionService;
+
+    @Autowired
+    private SearchPolicy searchPolicy;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private ShardFanOut shardFanOut;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.cards.denormalized-counters:true}")
+    private boolean denormalizedCounters;
+
+    @Value("${app.search.in-memory-index.max-sorted-ids:1000}")
+    private int maxSortedIds;
+
 
     @Transactional
     public Card createCard(Card card) {
@@ -61,7 +90,10 @@ public class CardService {
         
         System.out.println("CardService: final balance before save = " + card.getBalance());
 
-        return cardRepository.save(card);
+        Card savedCard = cardRepository.save(card);
+        userRepository.adjustCardCounters(savedCard.getUser().getId(), 1, savedCard.getIsActive() ? 1 : 0);
+        publishCardChanged(CardChangedEvent.Type.CREATED, savedCard);
+        return savedCard;
     }
 
 
@@ -111,7 +143,8 @@ public class CardService {
 
 
     public List<Card> findByCardHolderName(String name) {
-        return cardRepository.findByCardHolderNameContaining(name);
+        return cardRepository.findByCardHolderNameContaining(
+                searchPolicy.toContainsPattern(name), searchPolicy.firstResults());
     }
 
 
@@ -125,7 +158,10 @@ public class CardService {
         }
 
         card.setIsActive(true);
-        return cardRepository.save(card);
+        userRepository.adjustCardCounters(card.getUser().getId(), 0, 1);
+        Card saved = cardRepository.save(card);
+        publishCardChanged(CardChangedEvent.Type.UPDATED, saved);
+        return saved;
     }
 
 
@@ -139,7 +175,10 @@ public class CardService {
         }
 
         card.setIsActive(false);
-        return cardRepository.save(card);
+        userRepository.adjustCardCounters(card.getUser().getId(), 0, -1);
+        Card saved = cardRepository.save(card);
+        publishCardChanged(CardChangedEvent.Type.UPDATED, saved);
+        return saved;
     }
 
 
@@ -149,6 +188,8 @@ public class CardService {
             throw new IllegalArgumentException("Сумма должна быть положительной");
         }
 
+        // остаток читается под блокировкой карты, как при переводах, иначе параллельное списание потеряется
+        cardRepository.lockByIds(List.of(cardId));
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new IllegalArgumentException("Карта не найдена"));
 
@@ -157,6 +198,7 @@ public class CardService {
         }
 
         card.setBalance(card.getBalance().add(amount));
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(cardId));
         return cardRepository.save(card);
     }
 
@@ -167,6 +209,7 @@ public class CardService {
             throw new IllegalArgumentException("Сумма должна быть положительной");
         }
 
+        cardRepository.lockByIds(List.of(cardId));
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new IllegalArgumentException("Карта не найдена"));
 
@@ -179,6 +222,7 @@ public class CardService {
         }
 
         card.setBalance(card.getBalance().subtract(amount));
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(cardId));
         return cardRepository.save(card);
     }
 
@@ -189,6 +233,7 @@ public class CardService {
                 .orElseThrow(() -> new IllegalArgumentException("Карта не найдена"));
 
         card.setBalance(newBalance);
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(cardId));
         return cardRepository.save(card);
     }
 
@@ -203,16 +248,25 @@ public class CardService {
             throw new IllegalArgumentException("Карта с таким номером уже существует");
         }
 
-        return cardRepository.save(card);
+        Long previousUserId = existingCard.getUser().getId();
+        boolean wasActive = existingCard.getIsActive();
+        Card savedCard = cardRepository.save(card);
+        Long userId = savedCard.getUser().getId();
+        boolean isActive = savedCard.getIsActive();
+        if (!previousUserId.equals(userId)) {
+            userRepository.adjustCardCounters(previousUserId, -1, wasActive ? -1 : 0);
+            userRepository.adjustCardCounters(userId, 1, isActive ? 1 : 0);
+        } else if (wasActive != isActive) {
+            userRepository.adjustCardCounters(userId, 0, isActive ? 1 : -1);
+        }
+        publishCardChanged(CardChangedEvent.Type.UPDATED, savedCard);
+        return savedCard;
     }
 
 
     @Transactional
     public void deleteCard(Long id) {
-        if (!cardRepository.existsById(id)) {
-            throw new IllegalArgumentException("Карта не найдена");
-        }
-        cardRepository.deleteById(id);
+        bulkDeletionService.deleteCard(id);
     }
 
 
@@ -222,19 +276,23 @@ public class CardService {
 
 
     public long getUserCardsCount(Long userId) {
+        if (denormalizedCounters) {
+            return userRepository.findCardCountById(userId).orElse(0);
+        }
         return cardRepository.countByUserId(userId);
     }
 
 
     public long getActiveUserCardsCount(Long userId) {
+        if (denormalizedCounters) {
+            return userRepository.findActiveCardCountById(userId).orElse(0);
+        }
         return cardRepository.countByUserIdAndIsActiveTrue(userId);
     }
 
 
     public boolean isCardActiveForTransfer(Long cardId) {
-        return cardRepository.findById(cardId)
-                .map(card -> card.getIsActive() && card.getBalance().compareTo(BigDecimal.ZERO) > 0)
-                .orElse(false);
+        return cardRepository.existsByIdAndIsActiveTrueAndBalanceGreaterThan(cardId, BigDecimal.ZERO);
     }
 
 
@@ -254,22 +312,41 @@ public class CardService {
 
 
     public Page<Card> searchUserCardsWithPaging(Long userId, String searchTerm, Pageable pageable) {
-        return cardRepository.findByUserIdAndSearchTerm(userId, searchTerm, pageable);
+        return cardRepository.findByUserIdAndSearchTerm(userId,
+                searchPolicy.toExactCardNumber(searchTerm), searchPolicy.toContainsPattern(searchTerm),
+                searchPolicy.limit(pageable));
     }
 
 
     public Page<Card> searchActiveUserCardsWithPaging(Long userId, String searchTerm, Pageable pageable) {
-        return cardRepository.findByUserIdAndIsActiveTrueAndSearchTerm(userId, searchTerm, pageable);
+        return cardRepository.findByUserIdAndIsActiveTrueAndSearchTerm(userId,
+                searchPolicy.toExactCardNumber(searchTerm), searchPolicy.toContainsPattern(searchTerm),
+                searchPolicy.limit(pageable));
     }
 
 
     public Page<Card> findAllCardsWithPaging(Pageable pageable) {
-        return cardRepository.findAll(pageable);
+        return shardFanOut.page(pageable, cardRepository::findAll);
     }
 
 
     public Page<Card> searchAllCardsWithPaging(String searchTerm, Pageable pageable) {
-        return cardRepository.findAllBySearchTerm(searchTerm, pageable);
+        Pageable limited = searchPolicy.limit(pageable);
+        String cardNumber = searchPolicy.toExactCardNumber(searchTerm);
+        if (cardNumber == null) {
+            Optional<long[]> ids = searchIndexService.searchCards(searchPolicy.requireTerm(searchTerm));
+            if (ids.isPresent() && limited.getSort().isUnsorted()) {
+                return SearchIndexService.loadPage(ids.get(), limited,
+                        pageIds -> shardFanOut.byIds(pageIds, cardRepository::findAllById), Card::getId);
+            }
+            // индекс находит id, сортирует и режет страницу БД; при большом числе совпадений - поиск в БД
+            if (ids.isPresent() && ids.get().length <= maxSortedIds) {
+                List<Long> matched = Arrays.stream(ids.get()).boxed().toList();
+                return shardFanOut.page(limited, page -> cardRepository.findByIdIn(matched, page));
+            }
+        }
+        String pattern = searchPolicy.toContainsPattern(searchTerm);
+        return shardFanOut.page(limited, page -> cardRepository.findAllBySearchTerm(cardNumber, pattern, page));
     }
 
 
@@ -308,8 +385,11 @@ public class CardService {
 
         card.setIsActive(false);
         card.setStatus(CardStatus.BLOCKED);
+        userRepository.adjustCardCounters(card.getUser().getId(), 0, -1);
 
-        return cardRepository.save(card);
+        Card saved = cardRepository.save(card);
+        publishCardChanged(CardChangedEvent.Type.UPDATED, saved);
+        return saved;
     }
 
 
@@ -328,7 +408,15 @@ public class CardService {
 
         card.setIsActive(true);
         card.setStatus(CardStatus.ACTIVE);
+        userRepository.adjustCardCounters(card.getUser().getId(), 0, 1);
 
-        return cardRepository.save(card);
+        Card saved = cardRepository.save(card);
+        publishCardChanged(CardChangedEvent.Type.UPDATED, saved);
+        return saved;
+    }
+
+
+    private void publishCardChanged(CardChangedEvent.Type type, Card card) {
+        eventPublisher.publishEvent(new CardChangedEvent(type, card.getId(), card.getUser().getId(), card.getCardHolderName()));
     }
 }
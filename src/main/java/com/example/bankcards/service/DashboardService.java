@@ -0,0 +1,263 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.datasource.ReadConsistency;
+import com.example.bankcards.dto.CardSummaryDto;
+import com.example.bankcards.dto.DashboardDto;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransactionMapper;
+import com.example.bankcards.dto.UserDto;
+import com.example.bankcards.dto.UserMapper;
+import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.readmodel.CardSummaryReader;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Главный экран пользователя: профиль, карты, счетчики карт и последние операции по каждой карте.
+ * <p>
+ * Части загружаются параллельно на ограниченном пуле {@code dashboardExecutor}, каждая в своей читающей
+ * транзакции на шарде пользователя. У каждой части свой бюджет времени от начала запроса: часть, не
+ * уложившаяся в него, отдается пустой со статусом TIMEOUT, остальные возвращаются как есть.
+ * Список карт берется из модели чтения {@code user_card_summary} (маскированные номера, без расшифровки).
+ * Последние операции запрашиваются после списка карт, по одному запросу на карту.
+ */
+@Service
+public class DashboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardService.class);
+
+    static final String PROFILE = "profile";
+    static final String CARDS = "cards";
+    static final String CARD_COUNTS = "cardCounts";
+    static final String RECENT_TRANSACTIONS = "recentTransactions";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private CardSummaryReader cardSummaryReader;
+
+    @Autowired
+    private TransactionMapper transactionMapper;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("dashboardExecutor")
+    private TaskExecutor dashboardExecutor;
+
+    @Value("${app.dashboard.recent-transactions:5}")
+    private int recentTransactions;
+
+    @Value("${app.dashboard.budget-ms.profile:300}")
+    private long profileBudgetMs;
+
+    @Value("${app.dashboard.budget-ms.cards:500}")
+    private long cardsBudgetMs;
+
+    @Value("${app.dashboard.budget-ms.card-counts:300}")
+    private long cardCountsBudgetMs;
+
+    @Value("${app.dashboard.budget-ms.recent-transactions:1000}")
+    private long recentTransactionsBudgetMs;
+
+    private final PlatformTransactionManager transactionManager;
+
+    public DashboardService(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public DashboardDto getDashboard(Long userId) {
+        long start = System.nanoTime();
+        int shard = shardMap.shardOf(userId);
+
+        Part<UserDto> profile = submit(PROFILE, profileBudgetMs, start, shard, () -> userService.findById(userId)
+                .map(userMapper::toDto)
+                .orElseThrow(() -> new ResourceNotFoundException("Пользователь не найден с ID: " + userId)));
+        Part<List<CardSummaryDto>> cards = submit(CARDS, cardsBudgetMs, start, shard,
+                () -> cardSummaryReader.findByUser(userId));
+        Part<DashboardDto.CardCounts> cardCounts = submit(CARD_COUNTS, cardCountsBudgetMs, start, shard,
+                () -> new DashboardDto.CardCounts(cardService.getUserCardsCount(userId),
+                        cardService.getActiveUserCardsCount(userId)));
+
+        Map<String, DashboardDto.Part> parts = new LinkedHashMap<>();
+        DashboardDto dashboard = new DashboardDto();
+        dashboard.setProfile(profile.await(parts));
+        dashboard.setCards(cards.await(parts));
+        dashboard.setCardCounts(cardCounts.await(parts));
+        dashboard.setRecentTransactions(recentTransactions(dashboard.getCards(), start, parts));
+        dashboard.setParts(parts);
+        parts.forEach((name, part) -> meterRegistry.counter("bankcards.dashboard.parts",
+                "part", name, "status", part.getStatus().name()).increment());
+        dashboard.setComplete(parts.values().stream().allMatch(part -> part.getStatus() == DashboardDto.PartStatus.OK));
+        return dashboard;
+    }
+
+    /**
+     * Последние операции по каждой карте; карты, по которым ответ не пришел к сроку, в ответ не попадают (PARTIAL).
+     */
+    private Map<Long, List<TransactionDto>> recentTransactions(List<CardSummaryDto> cards, long start,
+                                                               Map<String, DashboardDto.Part> parts) {
+        if (cards == null) {
+            parts.put(RECENT_TRANSACTIONS,
+                    new DashboardDto.Part(DashboardDto.PartStatus.SKIPPED, elapsedMs(start), "Список карт не загружен"));
+            return null;
+        }
+        Map<Long, Part<List<TransactionDto>>> perCard = new LinkedHashMap<>();
+        for (CardSummaryDto card : cards) {
+            perCard.put(card.getId(), submit(RECENT_TRANSACTIONS, recentTransactionsBudgetMs, start,
+                    shardMap.shardOf(card.getId()), () -> transactionService
+                            .findLastTransactionsByCard(card.getId(), recentTransactions)
+                            .stream().map(transactionMapper::toDto).toList()));
+        }
+
+        Map<Long, List<TransactionDto>> result = new LinkedHashMap<>();
+        List<DashboardDto.Part> failures = new ArrayList<>();
+        perCard.forEach((cardId, part) -> {
+            Map<String, DashboardDto.Part> outcome = new LinkedHashMap<>();
+            List<TransactionDto> transactions = part.await(outcome);
+            if (transactions != null) {
+                result.put(cardId, transactions);
+            } else {
+                failures.add(outcome.get(RECENT_TRANSACTIONS));
+            }
+        });
+
+        DashboardDto.PartStatus status;
+        if (failures.isEmpty()) {
+            status = DashboardDto.PartStatus.OK;
+        } else if (!result.isEmpty()) {
+            status = DashboardDto.PartStatus.PARTIAL;
+        } else {
+            status = failures.get(0).getStatus();
+        }
+        String error = failures.isEmpty() ? null
+                : "Нет данных по " + failures.size() + " из " + perCard.size() + " карт: " + failures.get(0).getError();
+        parts.put(RECENT_TRANSACTIONS, new DashboardDto.Part(status, elapsedMs(start), error));
+        return result;
+    }
+
+    private <T> Part<T> submit(String name, long budgetMs, long start, int shard, Supplier<T> query) {
+        ReadConsistency consistency = ReadConsistency.current();
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        try {
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> ReadConsistency.callWith(consistency,
+                    () -> ShardContext.call(shard, () -> readTransaction.execute(status -> {
+                        // запрос, результат которого уже никто не ждет, не должен занимать поток пула дольше бюджета;
+                        // таймаут транзакции Hibernate считает в целых секундах и для бюджетов меньше секунды не годится.
+                        // Бюджет отсчитывается от начала запроса главного экрана, а часть могла ждать в очереди пула
+                        // или начаться после карт: таймаут - только остаток до срока. cancel(true) поток не прерывает,
+                        // поэтому остановить запрос после срока может только БД
+                        long remainingMs = budgetMs - elapsedMs(start);
+                        if (remainingMs <= 0) {
+                            throw new QueryTimeoutException("Бюджет части " + name + " исчерпан до начала запроса");
+                        }
+                        jdbcTemplate.execute("SET LOCAL statement_timeout = " + remainingMs);
+                        return query.get();
+                    }))),
+                    dashboardExecutor);
+            return new Part<>(name, budgetMs, start, future);
+        } catch (TaskRejectedException e) {
+            return new Part<>(name, budgetMs, start, null);
+        }
+    }
+
+    private static long elapsedMs(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static class Part<T> {
+
+        private final String name;
+        private final long budgetMs;
+        private final long start;
+        private final CompletableFuture<T> future;
+
+        Part(String name, long budgetMs, long start, CompletableFuture<T> future) {
+            this.name = name;
+            this.budgetMs = budgetMs;
+            this.start = start;
+            this.future = future;
+        }
+
+        /**
+         * Ждет результат до конца бюджета части и записывает ее состояние в {@code parts}.
+         *
+         * @return результат или null, если его нет
+         */
+        T await(Map<String, DashboardDto.Part> parts) {
+            if (future == null) {
+                parts.put(name, new DashboardDto.Part(DashboardDto.PartStatus.REJECTED, elapsedMs(start),
+                        "Сервер перегружен, часть не загружалась"));
+                return null;
+            }
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs) - (System.nanoTime() - start);
+            try {
+                T value = future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+                parts.put(name, new DashboardDto.Part(DashboardDto.PartStatus.OK, elapsedMs(start), null));
+                return value;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                parts.put(name, new DashboardDto.Part(DashboardDto.PartStatus.TIMEOUT, elapsedMs(start),
+                        "Не уложились в " + budgetMs + " мс"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                parts.put(name, new DashboardDto.Part(DashboardDto.PartStatus.FAILED, elapsedMs(start),
+                        "Запрос прерван"));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof QueryTimeoutException) {
+                    parts.put(name, new DashboardDto.Part(DashboardDto.PartStatus.TIMEOUT, elapsedMs(start),
+                            "Не уложились в " + budgetMs + " мс"));
+                    return null;
+                }
+                String message = cause instanceof ResourceNotFoundException ? cause.getMessage() : "Ошибка загрузки";
+                if (!(cause instanceof ResourceNotFoundException)) {
+                    log.warn("Часть главного экрана {} не загружена", name, cause);
+                }
+                parts.put(name, new DashboardDto.Part(DashboardDto.PartStatus.FAILED, elapsedMs(start), message));
+            }
+            return null;
+        }
+    }
+}
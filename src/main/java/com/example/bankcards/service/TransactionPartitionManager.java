@@ -0,0 +1,177 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Обслуживание месячных секций таблицы transactions (см. changeset 009):
+ * заранее создает секции на ближайшие месяцы и отсоединяет секции старше срока хранения,
+ * перенося их в архивную схему.
+ */
+@Service
+@ConditionalOnProperty(name = "app.transactions.partitioning.enabled", havingValue = "true")
+public class TransactionPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionPartitionManager.class);
+
+    private static final String PARENT_TABLE = "transactions";
+    private static final String DEFAULT_PARTITION = "transactions_default";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final String MAINTENANCE_LOCK = "transactions-partition-maintenance";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Value("${app.transactions.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${app.transactions.partitioning.retention-months:0}")
+    private int retentionMonths;
+
+    @Value("${app.transactions.partitioning.archive-schema:transactions_archive}")
+    private String archiveSchema;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${app.transactions.partitioning.cron:0 0 3 * * *}")
+    public void maintain() {
+        for (int shard : shardMap.shards()) {
+            ShardContext.run(shard, this::maintainShard);
+        }
+    }
+
+    /**
+     * Обслуживание выполняется в одной транзакции под advisory-блокировкой: при нескольких узлах
+     * задание по расписанию запускается на каждом, но секции создает и отсоединяет только один.
+     */
+    private void maintainShard() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(hashtext(?))",
+                    Boolean.class, MAINTENANCE_LOCK);
+            if (!Boolean.TRUE.equals(locked)) {
+                log.info("Обслуживание секций на шарде {} уже выполняет другой узел", ShardContext.current());
+                return;
+            }
+            if (!isPartitioned()) {
+                log.warn("Таблица {} не секционирована на шарде {}, обслуживание секций пропущено",
+                        PARENT_TABLE, ShardContext.current());
+                return;
+            }
+            YearMonth current = YearMonth.now();
+            for (int i = 0; i <= monthsAhead; i++) {
+                ensurePartition(current.plusMonths(i));
+            }
+            if (retentionMonths > 0) {
+                archivePartitionsBefore(current.minusMonths(retentionMonths));
+            }
+        });
+    }
+
+    /**
+     * Создает секцию за месяц, если ее еще нет. Строки этого месяца, успевшие попасть
+     * в секцию по умолчанию, переносятся в новую секцию в той же транзакции.
+     */
+    public void ensurePartition(YearMonth month) {
+        String name = partitionName(month);
+        if (tableExists("public", name)) {
+            return;
+        }
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        transactionTemplate.executeWithoutResult(status -> {
+            Long misplaced = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ?",
+                    Long.class, from, to);
+            if (misplaced == null || misplaced == 0) {
+                jdbcTemplate.execute(String.format(
+                        "CREATE TABLE %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                        name, PARENT_TABLE, from, to));
+            } else {
+                log.warn("В секции по умолчанию {} строк за {}, переносим в {}", misplaced, month, name);
+                jdbcTemplate.execute(String.format(
+                        "CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING GENERATED)",
+                        name, PARENT_TABLE));
+                jdbcTemplate.update(String.format(
+                        "WITH moved AS (DELETE FROM %s WHERE created_at >= ? AND created_at < ? RETURNING %s) " +
+                        "INSERT INTO %s (%s) SELECT %s FROM moved",
+                        DEFAULT_PARTITION, TransactionRepository.COLUMNS, name,
+                        TransactionRepository.COLUMNS, TransactionRepository.COLUMNS), from, to);
+                jdbcTemplate.execute(String.format(
+                        "ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')",
+                        PARENT_TABLE, name, from, to));
+            }
+        });
+        log.info("Создана секция {} [{}, {})", name, from, to);
+    }
+
+    /**
+     * Отсоединяет месячные секции, которые целиком старше указанного месяца,
+     * и переносит их в архивную схему. Данные не удаляются.
+     */
+    public void archivePartitionsBefore(YearMonth boundary) {
+        String cutoff = partitionName(boundary);
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = ? AND c.relname ~ '^transactions_[0-9]{4}_[0-9]{2}$' " +
+                "ORDER BY c.relname",
+                String.class, PARENT_TABLE);
+        for (String partition : partitions) {
+            if (partition.compareTo(cutoff) >= 0) {
+                continue;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+                jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + partition);
+                jdbcTemplate.execute("ALTER TABLE " + partition + " SET SCHEMA " + archiveSchema);
+            });
+            log.info("Секция {} отсоединена и перенесена в схему {}", partition, archiveSchema);
+        }
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARENT_TABLE + "_" + month.format(SUFFIX);
+    }
+
+    private boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt " +
+                "JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?)",
+                Boolean.class, PARENT_TABLE);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private boolean tableExists(String schema, String table) {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_tables WHERE schemaname = ? AND tablename = ?)",
+                Boolean.class, schema, table);
+        return Boolean.TRUE.equals(exists);
+    }
+}
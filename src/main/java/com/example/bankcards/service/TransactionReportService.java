@@ -0,0 +1,75 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionReportBucketDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Отчет по транзакциям за период, собранный по временным интервалам.
+ * Каждый интервал - отдельный агрегирующий запрос без общей транзакции: он читает
+ * одну секцию через BRIN-индекс по created_at, возвращает одну строку и не держит
+ * снимок данных на все время построения отчета.
+ */
+@Service
+public class TransactionReportService {
+
+    public enum Bucket {
+        HOUR(Duration.ofHours(1)),
+        DAY(Duration.ofDays(1));
+
+        private final Duration length;
+
+        Bucket(Duration length) {
+            this.length = length;
+        }
+
+        public Duration getLength() {
+            return length;
+        }
+    }
+
+    private static final String BUCKET_SQL =
+            "SELECT count(*) AS total, " +
+            "count(*) FILTER (WHERE status IN ('COMPLETED', 'REFUNDED')) AS completed, " +
+            "count(*) FILTER (WHERE status IN ('FAILED', 'CANCELLED')) AS failed, " +
+            "COALESCE(sum(amount) FILTER (WHERE status IN ('COMPLETED', 'REFUNDED')), 0) AS completed_amount " +
+            "FROM transactions WHERE created_at >= ? AND created_at < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.reports.max-buckets:744}")
+    private int maxBuckets;
+
+    public List<TransactionReportBucketDto> buildReport(LocalDateTime start, LocalDateTime end, Bucket bucket) {
+        if (start == null || end == null || !start.isBefore(end)) {
+            throw new IllegalArgumentException("Начало периода должно быть раньше окончания");
+        }
+        long buckets = (Duration.between(start, end).toMillis() + bucket.getLength().toMillis() - 1)
+                / bucket.getLength().toMillis();
+        if (buckets > maxBuckets) {
+            throw new IllegalArgumentException("Слишком длинный период: не более " + maxBuckets + " интервалов");
+        }
+
+        List<TransactionReportBucketDto> report = new ArrayList<>((int) buckets);
+        for (LocalDateTime from = start; from.isBefore(end); from = from.plus(bucket.getLength())) {
+            LocalDateTime bucketStart = from;
+            LocalDateTime bucketEnd = from.plus(bucket.getLength()).isBefore(end) ? from.plus(bucket.getLength()) : end;
+            report.add(jdbcTemplate.queryForObject(BUCKET_SQL, (rs, rowNum) -> new TransactionReportBucketDto(
+                    bucketStart,
+                    bucketEnd,
+                    rs.getLong("total"),
+                    rs.getLong("completed"),
+                    rs.getLong("failed"),
+                    rs.getBigDecimal("completed_amount")), bucketStart, bucketEnd));
+        }
+        return report;
+    }
+}
@@ -1,16 +1,28 @@
 package com.example.bankcards.service;
 
 import com.example.bankcards.entity.*;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.TransactionCompletedEvent;
+import com.example.bankcards.event.TransactionFailedEvent;
+import com.example.bankcards.outbox.OutboxWriter;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.util.SearchPolicy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 @Service
@@ -23,6 +35,15 @@ public class TransactionService {
     @Autowired
     private CardRepository cardRepository;
 
+    @Autowired
+    private SearchPolicy searchPolicy;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private OutboxWriter outboxWriter;
+
 
     @Transactional
     public Transaction createTransferTransaction(Long fromCardId, Long toCardId,
@@ -35,6 +56,8 @@ public class TransactionService {
             throw new IllegalArgumentException("Нельзя переводить средства на ту же карту");
         }
 
+        // тот же порядок блокировок, что у очереди переводов, иначе остаток может быть перезаписан
+        cardRepository.lockByIds(List.of(fromCardId, toCardId));
         Card fromCard = cardRepository.findById(fromCardId)
                 .orElseThrow(() -> new IllegalArgumentException("Карта отправителя не найдена"));
 
@@ -87,12 +110,61 @@ public class TransactionService {
 
         fromCard.setBalance(fromCard.getBalance().subtract(amount));
         cardRepository.save(fromCard);
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(fromCard.getId()));
 
         toCard.setBalance(toCard.getBalance().add(amount));
         cardRepository.save(toCard);
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(toCard.getId()));
 
         transaction.setStatus(TransactionStatus.COMPLETED);
         transactionRepository.save(transaction);
+        outboxWriter.transactionCompleted(transaction);
+        eventPublisher.publishEvent(new TransactionCompletedEvent(transaction));
+    }
+
+
+    /**
+     * Выполняет перевод, принятый в очередь асинхронных переводов ({@link AsyncTransferService}):
+     * карты блокируются, проверяются активность и остаток; отказ фиксируется статусом FAILED без исключения
+     * и сообщается отправителю так же, как в {@link #failQueuedTransfer(Long)}.
+     *
+     * @return итоговый статус операции
+     */
+    @Transactional
+    public TransactionStatus executeQueuedTransfer(Long transactionId) {
+        Transaction transaction = transactionRepository.findById(transactionId)
+                .orElseThrow(() -> new IllegalArgumentException("Транзакция не найдена"));
+        if (transaction.getStatus() != TransactionStatus.PENDING) {
+            return transaction.getStatus();
+        }
+
+        Card fromCard = transaction.getFromCard();
+        Card toCard = transaction.getToCard();
+        cardRepository.lockByIds(List.of(fromCard.getId(), toCard.getId()));
+
+        if (!fromCard.getIsActive() || !toCard.getIsActive()
+                || fromCard.getBalance().compareTo(transaction.getAmount()) < 0) {
+            failTransfer(transaction);
+            return TransactionStatus.FAILED;
+        }
+
+        executeTransfer(transaction);
+        return TransactionStatus.COMPLETED;
+    }
+
+
+    /**
+     * Отклоняет перевод из очереди, который так и не удалось выполнить. Отправитель узнает об отказе
+     * из потока событий ({@link TransactionFailedEvent}) или outbox ({@code TRANSFER_FAILED}), не опрашивая операцию.
+     *
+     * @return false, если операции нет или она уже не ожидает выполнения
+     */
+    @Transactional
+    public boolean failQueuedTransfer(Long transactionId) {
+        Optional<Transaction> transaction = transactionRepository.findById(transactionId)
+                .filter(t -> t.getStatus() == TransactionStatus.PENDING);
+        transaction.ifPresent(this::failTransfer);
+        return transaction.isPresent();
     }
 
 
@@ -103,6 +175,8 @@ public class TransactionService {
             throw new IllegalArgumentException("Сумма платежа должна быть положительной");
         }
 
+        // остаток читается и списывается под блокировкой карты, как при переводах
+        cardRepository.lockByIds(List.of(fromCardId));
         Card fromCard = cardRepository.findById(fromCardId)
                 .orElseThrow(() -> new IllegalArgumentException("Карта не найдена"));
 
@@ -144,9 +218,12 @@ public class TransactionService {
 
         fromCard.setBalance(fromCard.getBalance().subtract(amount));
         cardRepository.save(fromCard);
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(fromCard.getId()));
 
         transaction.setStatus(TransactionStatus.COMPLETED);
         transactionRepository.save(transaction);
+        outboxWriter.transactionCompleted(transaction);
+        eventPublisher.publishEvent(new TransactionCompletedEvent(transaction));
     }
 
 
@@ -159,6 +236,7 @@ public class TransactionService {
             throw new IllegalStateException("Транзакция не может быть подтверждена в текущем статусе");
         }
 
+        lockCards(transaction);
         switch (transaction.getTransactionType()) {
             case TRANSFER:
                 executeTransfer(transaction);
@@ -204,8 +282,10 @@ public class TransactionService {
             throw new IllegalArgumentException("Возврат возможен только для переводов и платежей");
         }
 
-        if (originalTransaction.getStatus() != TransactionStatus.COMPLETED) {
-            throw new IllegalStateException("Возврат возможен только для выполненных транзакций");
+        // статус проверяется и меняется одним UPDATE под блокировкой строки: два одновременных
+        // возврата одной операции не пройдут проверку оба
+        if (transactionRepository.markRefunded(originalTransactionId) == 0) {
+            throw new IllegalStateException("Возврат возможен только для выполненных и еще не возвращенных транзакций");
         }
 
         Card fromCard = originalTransaction.getToCard();
@@ -222,6 +302,7 @@ public class TransactionService {
         refundTransaction.setStatus(TransactionStatus.PENDING);
 
         Transaction savedRefund = transactionRepository.save(refundTransaction);
+        lockCards(savedRefund);
 
         try {
             executeTransfer(savedRefund);
@@ -280,6 +361,38 @@ public class TransactionService {
     }
 
 
+    public List<Transaction> findByDescription(String term) {
+        return transactionRepository.findByDescriptionContaining(
+                searchPolicy.toContainsPattern(term), searchPolicy.firstResults());
+    }
+
+
+    /**
+     * Карты, по которым пользователь может искать операции: все его карты или одна указанная.
+     * Чужую карту может указать только администратор.
+     */
+    public List<Long> resolveSearchScope(String username, Long cardId, boolean admin) {
+        List<Long> ownCardIds = cardRepository.findIdsByUserUsername(username);
+        if (cardId == null) {
+            return ownCardIds;
+        }
+        if (!admin && !ownCardIds.contains(cardId)) {
+            throw new AccessDeniedException("Нет доступа к операциям по карте");
+        }
+        return List.of(cardId);
+    }
+
+
+    public Page<Transaction> searchByDescription(List<Long> cardIds, String query, Pageable pageable) {
+        String term = searchPolicy.requireTerm(query);
+        Pageable limited = searchPolicy.limit(PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+        if (cardIds.isEmpty()) {
+            return Page.empty(limited);
+        }
+        return transactionRepository.searchByDescription(cardIds, term, limited);
+    }
+
+
     public List<Transaction> findLastTransactionsByCard(Long cardId, int limit) {
         return transactionRepository.findTopNByCardIdOrderByCreatedAtDesc(cardId, limit);
     }
@@ -295,6 +408,27 @@ public class TransactionService {
     }
 
 
+    private void failTransfer(Transaction transaction) {
+        transaction.setStatus(TransactionStatus.FAILED);
+        transactionRepository.save(transaction);
+        outboxWriter.transactionFailed(transaction);
+        eventPublisher.publishEvent(new TransactionFailedEvent(transaction));
+    }
+
+
+    /**
+     * Блокирует карты операции в порядке id до изменения остатков. Карты операции еще не загружены
+     * (ленивые ссылки), поэтому остатки читаются уже под блокировкой.
+     */
+    private void lockCards(Transaction transaction) {
+        List<Long> cardIds = Stream.of(transaction.getFromCard(), transaction.getToCard())
+                .filter(Objects::nonNull)
+                .map(Card::getId)
+                .toList();
+        cardRepository.lockByIds(cardIds);
+    }
+
+
     @Transactional
     private void executeDeposit(Transaction transaction) {
         Card toCard = transaction.getToCard();
@@ -302,9 +436,12 @@ public class TransactionService {
 
         toCard.setBalance(toCard.getBalance().add(amount));
         cardRepository.save(toCard);
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(toCard.getId()));
 
         transaction.setStatus(TransactionStatus.COMPLETED);
         transactionRepository.save(transaction);
+        outboxWriter.transactionCompleted(transaction);
+        eventPublisher.publishEvent(new TransactionCompletedEvent(transaction));
     }
 
     @Transactional
@@ -318,8 +455,11 @@ public class TransactionService {
 
         fromCard.setBalance(fromCard.getBalance().subtract(amount));
         cardRepository.save(fromCard);
+        eventPublisher.publishEvent(new CardBalanceChangedEvent(fromCard.getId()));
 
         transaction.setStatus(TransactionStatus.COMPLETED);
         transactionRepository.save(transaction);
+        outboxWriter.transactionCompleted(transaction);
+        eventPublisher.publishEvent(new TransactionCompletedEvent(transaction));
     }
 }
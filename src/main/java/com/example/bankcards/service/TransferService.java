@@ -0,0 +1,278 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionType;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.outbox.OutboxWriter;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Переводы между картами. Если обе карты на одном шарде, перевод - одна локальная транзакция
+ * {@link TransactionService#createTransferTransaction}. Между шардами перевод выполняется сагой
+ * (таблицы transfer_sagas и transfer_saga_credits, changeset 014):
+ * <ol>
+ *   <li>шард отправителя: списание, исходящая операция PENDING и запись саги DEBITED;</li>
+ *   <li>шард получателя: зачисление и входящая операция COMPLETED, не более одного раза на сагу;</li>
+ *   <li>шард отправителя: исходящая операция и сага COMPLETED, событие TRANSFER_COMPLETED в outbox.</li>
+ * </ol>
+ * Если получатель отклоняет зачисление, списание компенсируется: деньги возвращаются,
+ * операция FAILED, сага COMPENSATED. Если шард недоступен, сага остается DEBITED,
+ * клиент получает операцию PENDING, и перевод завершает {@link #recoverStuckSagas()}.
+ */
+@Service
+public class TransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferService.class);
+
+    private static final String DEFAULT_DESCRIPTION = "Перевод между картами";
+
+    private static final RowMapper<Saga> SAGA_MAPPER = (rs, row) -> new Saga(
+            rs.getObject("id", UUID.class), rs.getLong("from_card_id"), rs.getLong("to_card_id"),
+            rs.getBigDecimal("amount"), rs.getString("description"), rs.getLong("outgoing_transaction_id"));
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private OutboxWriter outboxWriter;
+
+    @Value("${app.sharding.saga.recovery-delay-seconds:60}")
+    private long recoveryDelaySeconds;
+
+    @Value("${app.sharding.saga.recovery-batch-size:100}")
+    private int recoveryBatchSize;
+
+    private final TransactionTemplate shardTransaction;
+
+    public TransferService(PlatformTransactionManager transactionManager) {
+        this.shardTransaction = new TransactionTemplate(transactionManager);
+        this.shardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    record Saga(UUID id, long fromCardId, long toCardId, BigDecimal amount, String description,
+                long outgoingTransactionId) {
+    }
+
+    public Transaction transfer(Long fromCardId, Long toCardId, BigDecimal amount, String description) {
+        int fromShard = shardMap.shardOf(fromCardId);
+        if (fromShard == shardMap.shardOf(toCardId)) {
+            return ShardContext.call(fromShard,
+                    () -> transactionService.createTransferTransaction(fromCardId, toCardId, amount, description));
+        }
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма перевода должна быть положительной");
+        }
+        checkRecipient(toCardId);
+        Saga saga = debit(fromCardId, toCardId, amount, description != null ? description : DEFAULT_DESCRIPTION);
+        resume(saga);
+        return ShardContext.call(fromShard, () -> transactionService.findById(saga.outgoingTransactionId())
+                .orElseThrow(() -> new IllegalStateException("Операция перевода не найдена")));
+    }
+
+    /**
+     * Проверка до списания, чтобы не компенсировать заведомо отклоненный перевод.
+     * Окончательно получатель проверяется при зачислении.
+     */
+    private void checkRecipient(Long toCardId) {
+        List<Boolean> active = ShardContext.call(shardMap.shardOf(toCardId), () -> shardTransaction.execute(status ->
+                jdbcTemplate.queryForList("SELECT is_active FROM cards WHERE id = ?", Boolean.class, toCardId)));
+        if (active.isEmpty()) {
+            throw new IllegalArgumentException("Карта получателя не найдена");
+        }
+        if (!active.get(0)) {
+            throw new IllegalStateException("Карта получателя не активна");
+        }
+    }
+
+    private Saga debit(Long fromCardId, Long toCardId, BigDecimal amount, String description) {
+        return ShardContext.call(shardMap.shardOf(fromCardId), () -> shardTransaction.execute(status -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT balance, is_active FROM cards WHERE id = ? FOR UPDATE", fromCardId);
+            if (rows.isEmpty()) {
+                throw new IllegalArgumentException("Карта отправителя не найдена");
+            }
+            if (!Boolean.TRUE.equals(rows.get(0).get("is_active"))) {
+                throw new IllegalStateException("Карта отправителя не активна");
+            }
+            if (((BigDecimal) rows.get(0).get("balance")).compareTo(amount) < 0) {
+                throw new IllegalStateException("Недостаточно средств на карте отправителя");
+            }
+            jdbcTemplate.update("UPDATE cards SET balance = balance - ?, updated_at = now() WHERE id = ?",
+                    amount, fromCardId);
+            eventPublisher.publishEvent(new CardBalanceChangedEvent(fromCardId));
+            Long transactionId = insertTransaction(fromCardId, toCardId, amount, description, "PENDING");
+            Saga saga = new Saga(UUID.randomUUID(), fromCardId, toCardId, amount, description, transactionId);
+            jdbcTemplate.update("INSERT INTO transfer_sagas (id, from_card_id, to_card_id, amount, description, " +
+                            "outgoing_transaction_id, status) VALUES (?, ?, ?, ?, ?, ?, 'DEBITED')",
+                    saga.id(), fromCardId, toCardId, amount, description, transactionId);
+            return saga;
+        }));
+    }
+
+    /**
+     * Шаги 2 и 3. Отказ получателя компенсируется и пробрасывается вызывающему;
+     * при других ошибках сага остается DEBITED.
+     *
+     * @return true, если перевод завершен
+     */
+    boolean resume(Saga saga) {
+        try {
+            credit(saga);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            compensate(saga, e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            recordFailure(saga, e);
+            return false;
+        }
+        try {
+            complete(saga);
+            return true;
+        } catch (RuntimeException e) {
+            recordFailure(saga, e);
+            return false;
+        }
+    }
+
+    private void credit(Saga saga) {
+        ShardContext.run(shardMap.shardOf(saga.toCardId()), () -> shardTransaction.executeWithoutResult(status -> {
+            int claimed = jdbcTemplate.update(
+                    "INSERT INTO transfer_saga_credits (saga_id) VALUES (?) ON CONFLICT DO NOTHING", saga.id());
+            if (claimed == 0) {
+                return;
+            }
+            List<Boolean> active = jdbcTemplate.queryForList(
+                    "SELECT is_active FROM cards WHERE id = ? FOR UPDATE", Boolean.class, saga.toCardId());
+            if (active.isEmpty()) {
+                throw new IllegalArgumentException("Карта получателя не найдена");
+            }
+            if (!active.get(0)) {
+                throw new IllegalStateException("Карта получателя не активна");
+            }
+            jdbcTemplate.update("UPDATE cards SET balance = balance + ?, updated_at = now() WHERE id = ?",
+                    saga.amount(), saga.toCardId());
+            eventPublisher.publishEvent(new CardBalanceChangedEvent(saga.toCardId()));
+            Long transactionId = insertTransaction(saga.fromCardId(), saga.toCardId(), saga.amount(),
+                    saga.description(), "COMPLETED");
+            jdbcTemplate.update("UPDATE transfer_saga_credits SET transaction_id = ? WHERE saga_id = ?",
+                    transactionId, saga.id());
+        }));
+    }
+
+    private void complete(Saga saga) {
+        ShardContext.run(shardMap.shardOf(saga.fromCardId()), () -> shardTransaction.executeWithoutResult(status -> {
+            int updated = jdbcTemplate.update("UPDATE transfer_sagas SET status = 'COMPLETED', updated_at = now() " +
+                    "WHERE id = ? AND status = 'DEBITED'", saga.id());
+            if (updated == 1) {
+                String currency = jdbcTemplate.queryForObject("UPDATE transactions SET status = 'COMPLETED', " +
+                        "updated_at = now() WHERE id = ? RETURNING currency", String.class, saga.outgoingTransactionId());
+                outboxWriter.transactionCompleted(saga.outgoingTransactionId(), TransactionType.TRANSFER,
+                        saga.fromCardId(), saga.toCardId(), saga.amount(), currency, saga.description());
+            }
+        }));
+    }
+
+    private void compensate(Saga saga, String reason) {
+        ShardContext.run(shardMap.shardOf(saga.fromCardId()), () -> shardTransaction.executeWithoutResult(status -> {
+            int updated = jdbcTemplate.update("UPDATE transfer_sagas SET status = 'COMPENSATED', last_error = ?, " +
+                    "updated_at = now() WHERE id = ? AND status = 'DEBITED'", truncate(reason), saga.id());
+            if (updated == 1) {
+                jdbcTemplate.update("UPDATE cards SET balance = balance + ?, updated_at = now() WHERE id = ?",
+                        saga.amount(), saga.fromCardId());
+                eventPublisher.publishEvent(new CardBalanceChangedEvent(saga.fromCardId()));
+                jdbcTemplate.update("UPDATE transactions SET status = 'FAILED', updated_at = now() WHERE id = ?",
+                        saga.outgoingTransactionId());
+            }
+        }));
+        log.info("Перевод {} с карты {} на карту {} компенсирован: {}",
+                saga.id(), saga.fromCardId(), saga.toCardId(), reason);
+    }
+
+    private void recordFailure(Saga saga, RuntimeException error) {
+        log.warn("Перевод {} с карты {} на карту {} не завершен, будет повторен: {}",
+                saga.id(), saga.fromCardId(), saga.toCardId(), error.getMessage());
+        try {
+            ShardContext.run(shardMap.shardOf(saga.fromCardId()), () -> shardTransaction.executeWithoutResult(status ->
+                    jdbcTemplate.update("UPDATE transfer_sagas SET last_error = ?, updated_at = now() WHERE id = ?",
+                            truncate(error.getMessage()), saga.id())));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось записать ошибку перевода {}: {}", saga.id(), e.getMessage());
+        }
+    }
+
+    /**
+     * Завершает саги, оставшиеся в DEBITED дольше {@code recovery-delay-seconds}. Сага захватывается
+     * обновлением updated_at, поэтому другой узел не возьмет ее раньше, чем через ту же задержку.
+     */
+    @Scheduled(fixedDelayString = "${app.sharding.saga.recovery-interval-ms:30000}")
+    public void recoverStuckSagas() {
+        if (!shardMap.isSharded()) {
+            return;
+        }
+        for (int shard : shardMap.shards()) {
+            List<Saga> stuck;
+            try {
+                stuck = ShardContext.call(shard, () -> shardTransaction.execute(status -> jdbcTemplate.query(
+                        "UPDATE transfer_sagas SET attempts = attempts + 1, updated_at = now() WHERE id IN (" +
+                        "SELECT id FROM transfer_sagas WHERE status = 'DEBITED' " +
+                        "AND updated_at < now() - make_interval(secs => ?) " +
+                        "ORDER BY updated_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING id, from_card_id, to_card_id, amount, description, outgoing_transaction_id",
+                        SAGA_MAPPER, (double) recoveryDelaySeconds, recoveryBatchSize)));
+            } catch (RuntimeException e) {
+                log.warn("Шард {} недоступен, восстановление переводов отложено: {}", shard, e.getMessage());
+                continue;
+            }
+            for (Saga saga : stuck) {
+                try {
+                    if (resume(saga)) {
+                        log.info("Перевод {} завершен после сбоя", saga.id());
+                    }
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    // компенсирован в resume
+                }
+            }
+        }
+    }
+
+    private Long insertTransaction(long fromCardId, long toCardId, BigDecimal amount, String description,
+                                   String status) {
+        return jdbcTemplate.queryForObject("INSERT INTO transactions (from_card_id, to_card_id, amount, " +
+                        "transaction_type, description, status) VALUES (?, ?, ?, 'TRANSFER', ?, ?) RETURNING id",
+                Long.class, fromCardId, toCardId, amount, description, status);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
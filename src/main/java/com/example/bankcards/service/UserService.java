@@ -4,9 +4,15 @@ import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BusinessException;
 import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.event.UserChangedEvent;
+import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.RoleRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.search.SearchIndexService;
+import com.example.bankcards.util.SearchPolicy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,6 +30,24 @@ public class UserService {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private BulkDeletionService bulkDeletionService;
+
+    @Autowired
+    private SearchPolicy searchPolicy;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.cards.denormalized-counters:true}")
+    private boolean denormalizedCounters;
+
     @Transactional
     public User createUser(User user) {
         if (userRepository.existsByUsername(user.getUsername())) {
@@ -40,7 +64,9 @@ public class UserService {
                 "Роль USER не найдена в системе", HttpStatus.INTERNAL_SERVER_ERROR));
         user.getRoles().add(userRole);
         
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        publishUserChanged(UserChangedEvent.Type.CREATED, savedUser);
+        return savedUser;
     }
 
     public Optional<User> findById(Long id) {
@@ -60,7 +86,7 @@ public class UserService {
     }
 
     public List<User> findAll() {
-        return userRepository.findAll();
+        return userRepository.findAllWithRoles();
     }
 
     public List<User> findActiveUsers() {
@@ -68,7 +94,12 @@ public class UserService {
     }
 
     public List<User> findByName(String name) {
-        return userRepository.findByNameContaining(name);
+        Optional<long[]> ids = searchIndexService.searchUsers(searchPolicy.requireTerm(name));
+        if (ids.isPresent()) {
+            return SearchIndexService.loadPage(ids.get(), searchPolicy.firstResults(),
+                    userRepository::findAllWithRolesByIdIn, User::getId).getContent();
+        }
+        return userRepository.findByNameContaining(searchPolicy.toContainsPattern(name), searchPolicy.firstResults());
     }
 
     public List<User> findByRole(String roleName) {
@@ -92,7 +123,9 @@ public class UserService {
                 "Пользователь с таким email уже существует", HttpStatus.CONFLICT);
         }
 
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        publishUserChanged(UserChangedEvent.Type.UPDATED, savedUser);
+        return savedUser;
     }
 
     @Transactional
@@ -100,7 +133,7 @@ public class UserService {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Пользователь не найден с ID: " + id));
         user.setEnabled(false);
-        userRepository.save(user);
+        publishUserChanged(UserChangedEvent.Type.UPDATED, userRepository.save(user));
     }
 
     @Transactional
@@ -108,7 +141,7 @@ public class UserService {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Пользователь не найден с ID: " + id));
         user.setEnabled(true);
-        userRepository.save(user);
+        publishUserChanged(UserChangedEvent.Type.UPDATED, userRepository.save(user));
     }
 
     @Transactional
@@ -116,7 +149,7 @@ public class UserService {
         if (!userRepository.existsById(id)) {
             throw new ResourceNotFoundException("Пользователь не найден с ID: " + id);
         }
-        userRepository.deleteById(id);
+        bulkDeletionService.deleteUser(id);
     }
 
     public boolean existsByUsername(String username) {
@@ -128,8 +161,21 @@ public class UserService {
     }
 
     public long getUserCardsCount(Long userId) {
-        return userRepository.findById(userId)
-                .map(user -> (long) user.getCards().size())
-                .orElse(0L);
+        if (denormalizedCounters) {
+            return userRepository.findCardCountById(userId).orElse(0);
+        }
+        return cardRepository.countByUserId(userId);
+    }
+
+    public long getActiveUserCardsCount(Long userId) {
+        if (denormalizedCounters) {
+            return userRepository.findActiveCardCountById(userId).orElse(0);
+        }
+        return cardRepository.countByUserIdAndIsActiveTrue(userId);
+    }
+
+    private void publishUserChanged(UserChangedEvent.Type type, User user) {
+        eventPublisher.publishEvent(new UserChangedEvent(type, user.getId(), user.getUsername(), user.getEmail(),
+                user.getFirstName(), user.getLastName()));
     }
 }
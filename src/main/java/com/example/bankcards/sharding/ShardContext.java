@@ -0,0 +1,55 @@
+package com.example.bankcards.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * Шард, с которым работает текущий поток. По умолчанию 0: там же лежат справочники
+ * и основная копия профилей пользователей.
+ * <p>
+ * Соединение выбирается при первом запросе транзакции, поэтому шард переключается
+ * только вне транзакции: внутри нее запросы идут в уже полученное соединение.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard == null ? 0 : shard;
+    }
+
+    public static void set(int shard) {
+        CURRENT.set(shard);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Выполняет действие на указанном шарде и восстанавливает прежний.
+     */
+    public static <T> T call(int shard, Supplier<T> action) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void run(int shard, Runnable action) {
+        call(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+}
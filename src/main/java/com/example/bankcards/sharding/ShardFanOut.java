@@ -0,0 +1,162 @@
+package com.example.bankcards.sharding;
+
+import com.example.bankcards.exception.BusinessException;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Запросы ко всем шардам: параллельно, каждый в своей читающей транзакции на потоке
+ * {@code shardQueryExecutor}, с общим таймаутом. Без шардирования запрос выполняется
+ * в текущем потоке и текущей транзакции.
+ * <p>
+ * Сущности, загруженные на других потоках, возвращаются отсоединенными: ленивые связи
+ * после возврата не загрузить.
+ */
+@Component
+public class ShardFanOut {
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    @Qualifier("shardQueryExecutor")
+    private TaskExecutor shardQueryExecutor;
+
+    @Value("${app.sharding.fan-out-timeout-ms:10000}")
+    private long timeoutMs;
+
+    private final TransactionTemplate readTransaction;
+
+    public ShardFanOut(PlatformTransactionManager transactionManager) {
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Результаты запроса на каждом шарде в порядке номеров шардов.
+     */
+    public <T> List<T> collect(Supplier<T> query) {
+        if (!shardMap.isSharded()) {
+            return List.of(query.get());
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        try {
+            for (int shard : shardMap.shards()) {
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> ShardContext.call(shard, () -> readTransaction.execute(status -> query.get())),
+                        shardQueryExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TaskRejectedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new BusinessException("SHARD_QUERIES_REJECTED",
+                "Слишком много параллельных запросов к шардам, повторите позже", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (TimeoutException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new BusinessException("SHARD_TIMEOUT",
+                "Шард не ответил за " + timeoutMs + " мс", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("SHARD_TIMEOUT", "Запрос к шардам прерван", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Страница по всем шардам: с каждого берутся первые {@code offset + size} строк
+     * в порядке сортировки страницы, затем списки сливаются.
+     */
+    public <T> Page<T> page(Pageable pageable, Function<Pageable, Page<T>> query) {
+        if (!shardMap.isSharded()) {
+            return query.apply(pageable);
+        }
+        if (pageable.isUnpaged()) {
+            return merge(collect(() -> query.apply(pageable)), pageable);
+        }
+        Pageable head = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize(), pageable.getSort());
+        return merge(collect(() -> query.apply(head)), pageable);
+    }
+
+    /**
+     * Загрузка по id: каждый шард получает только свои id.
+     */
+    public <T> List<T> byIds(Collection<Long> ids, Function<List<Long>, List<T>> loader) {
+        if (!shardMap.isSharded()) {
+            return loader.apply(new ArrayList<>(ids));
+        }
+        Map<Integer, List<Long>> byShard = ids.stream().collect(Collectors.groupingBy(shardMap::shardOf));
+        return collect(() -> {
+            List<Long> part = byShard.getOrDefault(ShardContext.current(), List.of());
+            return part.isEmpty() ? List.<T>of() : loader.apply(part);
+        }).stream().flatMap(List::stream).toList();
+    }
+
+    static <T> Page<T> merge(List<Page<T>> pages, Pageable pageable) {
+        List<T> all = new ArrayList<>();
+        long total = 0;
+        for (Page<T> page : pages) {
+            all.addAll(page.getContent());
+            total += page.getTotalElements();
+        }
+        Comparator<T> order = comparator(pageable.getSort());
+        if (order != null) {
+            // каждый шард уже отсортирован: сортировка слиянием сводится к слиянию серий
+            all.sort(order);
+        }
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(all, pageable, total);
+        }
+        int from = (int) Math.min(pageable.getOffset(), all.size());
+        int to = Math.min(from + pageable.getPageSize(), all.size());
+        return new PageImpl<>(new ArrayList<>(all.subList(from, to)), pageable, total);
+    }
+
+    /**
+     * Порядок как в SQL PostgreSQL: null после значений по возрастанию и перед ними по убыванию.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Comparator<T> comparator(Sort sort) {
+        Comparator<T> result = null;
+        for (Sort.Order order : sort) {
+            Comparator<T> next = Comparator.comparing(
+                    item -> (Comparable<Object>) new BeanWrapperImpl(item).getPropertyValue(order.getProperty()),
+                    Comparator.nullsLast(Comparator.naturalOrder()));
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            result = result == null ? next : result.thenComparing(next);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.sharding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Переменная пути или параметр запроса с id пользователя, карты или транзакции,
+ * по которому метод контроллера выполняется на шарде {@link ShardMap#shardOf(long)}.
+ * Методы без аннотации работают с шардом 0.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+
+    String value();
+}
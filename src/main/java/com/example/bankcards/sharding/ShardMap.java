@@ -0,0 +1,49 @@
+package com.example.bankcards.sharding;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Соответствие ключа шарду. Ключ - id пользователя, карты или транзакции: id карт и транзакций
+ * выдаются так, что остаток от деления на число шардов равен номеру шарда, где лежит строка,
+ * а карты пользователя лежат на его домашнем шарде {@code shardOf(userId)}.
+ * Без шардирования шард один (номер 0).
+ */
+@Component
+public class ShardMap {
+
+    private final int shardCount;
+
+    @Autowired
+    public ShardMap(@Value("${app.sharding.enabled:false}") boolean enabled,
+                    @Value("${app.sharding.urls:}") List<String> urls) {
+        this(enabled ? 1 + urls.size() : 1);
+    }
+
+    public ShardMap(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Число шардов должно быть положительным");
+        }
+        this.shardCount = shardCount;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    public int shardOf(long key) {
+        return Math.floorMod(key, shardCount);
+    }
+
+    public List<Integer> shards() {
+        return IntStream.range(0, shardCount).boxed().toList();
+    }
+}
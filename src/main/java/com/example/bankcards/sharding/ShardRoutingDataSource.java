@@ -0,0 +1,46 @@
+package com.example.bankcards.sharding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Выдает соединение шарда из {@link ShardContext}. Используется через
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, чтобы шард
+ * определялся при первом запросе транзакции, а не при ее начале.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<Counter> connections = new ArrayList<>();
+
+    public ShardRoutingDataSource(List<? extends DataSource> shards, MeterRegistry meterRegistry) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+            connections.add(Counter.builder("bankcards.sharding.connections")
+                    .description("Соединения, выданные пулом шарда")
+                    .tag("shard", String.valueOf(shard))
+                    .register(meterRegistry));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        int shard = ShardContext.current();
+        if (shard < 0 || shard >= connections.size()) {
+            throw new IllegalStateException("Шард " + shard + " не настроен");
+        }
+        connections.get(shard).increment();
+        return shard;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.sharding;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Выбирает шард запроса по {@link ShardKey} метода контроллера.
+ */
+public class ShardRoutingInterceptor implements HandlerInterceptor {
+
+    private final ShardMap shardMap;
+
+    public ShardRoutingInterceptor(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod handlerMethod) {
+            ShardKey key = handlerMethod.getMethodAnnotation(ShardKey.class);
+            if (key != null) {
+                String value = resolve(request, key.value());
+                if (value != null) {
+                    try {
+                        ShardContext.set(shardMap.shardOf(Long.parseLong(value.trim())));
+                    } catch (NumberFormatException ignored) {
+                        // некорректный id отклонит сам контроллер
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                Object handler, Exception ex) {
+        ShardContext.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String resolve(HttpServletRequest request, String name) {
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (pathVariables != null && pathVariables.containsKey(name)) {
+            return pathVariables.get(name);
+        }
+        return request.getParameter(name);
+    }
+}
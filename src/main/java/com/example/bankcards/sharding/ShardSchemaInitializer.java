@@ -0,0 +1,148 @@
+package com.example.bankcards.sharding;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Подготовка шардов при старте:
+ * <ul>
+ *   <li>миграции Liquibase на шардах с 1 (шард 0 мигрирует Spring Boot) с теми же параметрами changelog;
+ *   внешние ключи transactions на карты снимает changeset 018;</li>
+ *   <li>проверка, что карты и транзакции лежат на своих шардах;</li>
+ *   <li>последовательности id карт и транзакций с шагом, равным числу шардов;</li>
+ *   <li>копирование ролей и профилей пользователей с шарда 0 и счетчиков карт на шард 0.</li>
+ * </ul>
+ */
+public class ShardSchemaInitializer implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+
+    private static final String USER_COLUMNS =
+            "id, username, email, password, first_name, last_name, phone_number, enabled, created_at, updated_at";
+
+    static final String UPSERT_USER = "INSERT INTO users (" + USER_COLUMNS + ") " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET " +
+            "username = EXCLUDED.username, email = EXCLUDED.email, password = EXCLUDED.password, " +
+            "first_name = EXCLUDED.first_name, last_name = EXCLUDED.last_name, " +
+            "phone_number = EXCLUDED.phone_number, enabled = EXCLUDED.enabled, updated_at = EXCLUDED.updated_at";
+
+    private final List<? extends DataSource> shards;
+    private final ShardMap shardMap;
+    private final String changeLog;
+    private final Map<String, String> changeLogParameters;
+    private final ResourceLoader resourceLoader;
+
+    public ShardSchemaInitializer(List<? extends DataSource> shards, ShardMap shardMap, String changeLog,
+                                  Map<String, String> changeLogParameters, ResourceLoader resourceLoader) {
+        this.shards = shards;
+        this.shardMap = shardMap;
+        this.changeLog = changeLog;
+        this.changeLogParameters = changeLogParameters;
+        this.resourceLoader = resourceLoader;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        JdbcTemplate reference = new JdbcTemplate(shards.get(0));
+        for (int shard = 0; shard < shards.size(); shard++) {
+            JdbcTemplate jdbc = new JdbcTemplate(shards.get(shard));
+            if (shard > 0) {
+                migrate(shards.get(shard));
+            }
+            verifyPlacement(jdbc, shard);
+            alignSequence(jdbc, "cards", shard);
+            alignSequence(jdbc, "transactions", shard);
+            if (shard > 0) {
+                copyReferenceData(reference, jdbc);
+                copyCardCounters(jdbc, reference, shard);
+            }
+        }
+        log.info("Шарды готовы: {}", shardMap.shardCount());
+    }
+
+    private void migrate(DataSource shard) throws Exception {
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(shard);
+        liquibase.setChangeLog(changeLog);
+        liquibase.setChangeLogParameters(changeLogParameters);
+        liquibase.setResourceLoader(resourceLoader);
+        liquibase.afterPropertiesSet();
+    }
+
+    private void verifyPlacement(JdbcTemplate jdbc, int shard) {
+        int count = shardMap.shardCount();
+        Long misplacedCards = jdbc.queryForObject(
+                "SELECT count(*) FROM cards WHERE mod(id, ?) <> ? OR mod(user_id, ?) <> ?",
+                Long.class, count, shard, count, shard);
+        Long misplacedTransactions = jdbc.queryForObject(
+                "SELECT count(*) FROM transactions WHERE mod(from_card_id, ?) <> ? AND mod(to_card_id, ?) <> ?",
+                Long.class, count, shard, count, shard);
+        if (misplacedCards > 0 || misplacedTransactions > 0) {
+            throw new IllegalStateException(String.format(
+                    "На шарде %d карт не на своем шарде: %d, транзакций: %d. " +
+                    "Перед включением шардирования данные нужно распределить по шардам",
+                    shard, misplacedCards, misplacedTransactions));
+        }
+    }
+
+    /**
+     * Следующий id таблицы должен давать остаток {@code shard} от деления на число шардов.
+     */
+    private void alignSequence(JdbcTemplate jdbc, String table, int shard) {
+        int count = shardMap.shardCount();
+        String sequence = jdbc.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, table);
+        Map<String, Object> state = jdbc.queryForMap(
+                "SELECT s.increment_by, s.last_value, (SELECT COALESCE(max(id), 0) FROM " + table + ") AS max_id " +
+                "FROM pg_sequences s WHERE s.schemaname || '.' || s.sequencename = ?", sequence);
+        long increment = ((Number) state.get("increment_by")).longValue();
+        Number lastValue = (Number) state.get("last_value");
+        if (increment == count && lastValue != null && shardMap.shardOf(lastValue.longValue()) == shard) {
+            return;
+        }
+        long highest = Math.max(((Number) state.get("max_id")).longValue(),
+                lastValue == null ? 0 : lastValue.longValue());
+        long start = alignedStart(highest, shard, count);
+        jdbc.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + count);
+        jdbc.queryForObject("SELECT setval(?, ?, false)", Long.class, sequence, start);
+        log.info("Последовательность {} шарда {}: шаг {}, следующее значение {}", sequence, shard, count, start);
+    }
+
+    /**
+     * Наименьшее значение больше {@code highest} с остатком {@code shard} от деления на {@code count}.
+     */
+    static long alignedStart(long highest, int shard, int count) {
+        long next = highest + 1;
+        return next + Math.floorMod(shard - next, count);
+    }
+
+    private void copyReferenceData(JdbcTemplate source, JdbcTemplate target) {
+        target.batchUpdate("INSERT INTO roles (id, name, description, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET " +
+                        "name = EXCLUDED.name, description = EXCLUDED.description, updated_at = EXCLUDED.updated_at",
+                source.query("SELECT id, name, description, created_at, updated_at FROM roles",
+                        (rs, row) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3),
+                                rs.getTimestamp(4), rs.getTimestamp(5)}));
+        target.batchUpdate(UPSERT_USER, source.query("SELECT " + USER_COLUMNS + " FROM users",
+                (rs, row) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getString(6), rs.getString(7), rs.getBoolean(8),
+                        rs.getTimestamp(9), rs.getTimestamp(10)}));
+        target.batchUpdate("INSERT INTO user_roles (user_id, role_id) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                source.query("SELECT user_id, role_id FROM user_roles",
+                        (rs, row) -> new Object[]{rs.getLong(1), rs.getLong(2)}));
+    }
+
+    private void copyCardCounters(JdbcTemplate home, JdbcTemplate reference, int shard) {
+        reference.batchUpdate("UPDATE users SET card_count = ?, active_card_count = ? WHERE id = ?",
+                home.query("SELECT card_count, active_card_count, id FROM users WHERE mod(id, ?) = ?",
+                        (rs, row) -> new Object[]{rs.getInt(1), rs.getInt(2), rs.getLong(3)},
+                        shardMap.shardCount(), shard));
+    }
+}
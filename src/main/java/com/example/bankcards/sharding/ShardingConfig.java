@@ -0,0 +1,122 @@
+package com.example.bankcards.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пулы шардов за одним бином {@link DataSource}: шард 0 - {@code spring.datasource},
+ * остальные - {@code app.sharding.urls} по порядку. Запросы к API выполняются на шарде
+ * из {@link ShardKey} метода контроллера.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardingConfig implements DisposableBean, WebMvcConfigurer {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Value("${app.sharding.urls}")
+    private List<String> urls;
+
+    @Value("${app.sharding.username:${spring.datasource.username}}")
+    private String username;
+
+    @Value("${app.sharding.password:${spring.datasource.password}}")
+    private String password;
+
+    @Value("${spring.liquibase.change-log}")
+    private String changeLog;
+
+    @Value("${app.datasource.replica.enabled:false}")
+    private boolean replicaEnabled;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties) {
+        if (replicaEnabled) {
+            throw new IllegalStateException("Шардирование (app.sharding.enabled) не поддерживает чтение с реплики: " +
+                    "выключите app.datasource.replica.enabled");
+        }
+        pools.add(configure(properties.initializeDataSourceBuilder().type(HikariDataSource.class).build()));
+        for (String url : urls) {
+            pools.add(configure(DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(properties.determineDriverClassName())
+                    .url(url.trim())
+                    .username(username)
+                    .password(password)
+                    .build()));
+        }
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(pools, meterRegistry));
+    }
+
+    private HikariDataSource configure(HikariDataSource pool) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName("shard-" + pools.size());
+        pool.setMetricRegistry(meterRegistry);
+        return pool;
+    }
+
+    /**
+     * Шардам с 1 нужна та же схема, что и шарду 0 после Liquibase; инициализация
+     * завершается до приема запросов.
+     */
+    @Bean
+    @DependsOn("liquibase")
+    public ShardSchemaInitializer shardSchemaInitializer(ResourceLoader resourceLoader,
+                                                         LiquibaseProperties liquibaseProperties) {
+        return new ShardSchemaInitializer(pools, shardMap, changeLog, liquibaseProperties.getParameters(),
+                resourceLoader);
+    }
+
+    /**
+     * Как и при чтении с реплики: при open-in-view соединение иначе удерживалось бы
+     * весь запрос, и транзакция на другом шарде получила бы соединение первого.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseShardConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ShardRoutingInterceptor(shardMap)).addPathPatterns("/api/**");
+    }
+
+    @Override
+    public void destroy() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.bankcards.sharding;
+
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.event.UserChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Копирует профили пользователей с шарда 0 на остальные шарды, а счетчики карт
+ * с домашнего шарда пользователя на шард 0. Без шардирования ничего не делает.
+ * <p>
+ * Слушатели вызываются после фиксации транзакции, когда ее соединение еще привязано
+ * к потоку, поэтому каждый шард обрабатывается в новой транзакции.
+ */
+@Component
+public class UserShardReplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(UserShardReplicator.class);
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate shardTransaction;
+
+    public UserShardReplicator(PlatformTransactionManager transactionManager) {
+        this.shardTransaction = new TransactionTemplate(transactionManager);
+        this.shardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (!shardMap.isSharded()) {
+            return;
+        }
+        Long userId = event.getUserId();
+        if (event.getType() == UserChangedEvent.Type.DELETED) {
+            for (int shard : shardMap.shards()) {
+                inShard(shard, () -> {
+                    jdbcTemplate.update("DELETE FROM user_roles WHERE user_id = ?", userId);
+                    jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+                });
+            }
+            return;
+        }
+        Object[] profile = ShardContext.call(0, () -> shardTransaction.execute(status -> {
+            List<Object[]> rows = jdbcTemplate.query(
+                    "SELECT id, username, email, password, first_name, last_name, phone_number, enabled, " +
+                    "created_at, updated_at FROM users WHERE id = ?",
+                    (rs, row) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getString(6), rs.getString(7), rs.getBoolean(8),
+                            rs.getTimestamp(9), rs.getTimestamp(10)}, userId);
+            return rows.isEmpty() ? null : rows.get(0);
+        }));
+        if (profile == null) {
+            return;
+        }
+        List<Long> roleIds = ShardContext.call(0, () -> shardTransaction.execute(status ->
+                jdbcTemplate.queryForList("SELECT role_id FROM user_roles WHERE user_id = ?", Long.class, userId)));
+        for (int shard : shardMap.shards()) {
+            if (shard == 0) {
+                continue;
+            }
+            inShard(shard, () -> {
+                jdbcTemplate.update(ShardSchemaInitializer.UPSERT_USER, profile);
+                jdbcTemplate.update("DELETE FROM user_roles WHERE user_id = ?", userId);
+                roleIds.forEach(roleId -> jdbcTemplate.update(
+                        "INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)", userId, roleId));
+            });
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        Long userId = event.getUserId();
+        if (!shardMap.isSharded() || userId == null) {
+            return;
+        }
+        int home = shardMap.shardOf(userId);
+        if (home == 0) {
+            return;
+        }
+        List<int[]> counters = ShardContext.call(home, () -> shardTransaction.execute(status -> jdbcTemplate.query(
+                "SELECT card_count, active_card_count FROM users WHERE id = ?",
+                (rs, row) -> new int[]{rs.getInt(1), rs.getInt(2)}, userId)));
+        if (counters.isEmpty()) {
+            return;
+        }
+        inShard(0, () -> jdbcTemplate.update("UPDATE users SET card_count = ?, active_card_count = ? WHERE id = ?",
+                counters.get(0)[0], counters.get(0)[1], userId));
+    }
+
+    /**
+     * Ошибка копирования не отменяет уже зафиксированное изменение; расхождение
+     * исправится при следующем изменении пользователя или при перезапуске.
+     */
+    private void inShard(int shard, Runnable action) {
+        try {
+            ShardContext.run(shard, () -> shardTransaction.executeWithoutResult(status -> action.run()));
+        } catch (RuntimeException e) {
+            log.error("Не удалось обновить копию пользователя на шарде {}", shard, e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bankcards.sse;
+
+import com.example.bankcards.cache.InMemoryInvalidationTransport;
+import com.example.bankcards.cache.InvalidationTransport;
+import com.example.bankcards.cache.PostgresInvalidationTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Рассылка событий пользователей между узлами ({@code app.sse.fan-out}): без нее клиент, подключенный
+ * к одному узлу, не видит операций, выполненных на другом. По умолчанию включается вместе с шиной
+ * инвалидации кэшей; канал {@code postgres} или {@code in-memory}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sse.fan-out.enabled", havingValue = "true")
+public class UserEventFanOutConfig {
+
+    @Value("${app.sse.fan-out.transport:postgres}")
+    private String transport;
+
+    @Bean(destroyMethod = "close")
+    public InvalidationTransport userEventTransport(JdbcTemplate jdbcTemplate, DataSourceProperties properties) {
+        return switch (transport) {
+            case "postgres" -> new PostgresInvalidationTransport(jdbcTemplate, UserEventHub.CHANNEL,
+                    properties.determineUrl(), properties.determineUsername(), properties.determinePassword());
+            case "in-memory" -> new InMemoryInvalidationTransport();
+            default -> throw new IllegalStateException("Неизвестный канал рассылки событий: " + transport);
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startUserEventFanOut(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBean(UserEventHub.class).startFanOut();
+    }
+}
@@ -0,0 +1,577 @@
+package com.example.bankcards.sse;
+
+import com.example.bankcards.cache.InvalidationTransport;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.TransactionBatchCompletedEvent;
+import com.example.bankcards.event.TransactionCompletedEvent;
+import com.example.bankcards.event.TransactionFailedEvent;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.security.CardOwnership;
+import com.example.bankcards.sharding.ShardContext;
+import com.example.bankcards.sharding.ShardMap;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Потоки событий пользователей ({@code text/event-stream}): балансы карт, завершенные операции
+ * и отказы переводов из очереди.
+ * <p>
+ * Подписка - {@link SseEmitter} на асинхронном запросе сервлета, поток на соединение не занимается.
+ * События {@link TransactionCompletedEvent}, {@link TransactionFailedEvent}, {@link TransactionBatchCompletedEvent}
+ * и {@link CardBalanceChangedEvent} после фиксации передаются одному потоку {@code sseExecutor}, который
+ * раскладывает их по соединениям владельцев карт; владелец определяется по {@link CardOwnership} в памяти,
+ * баланс читается из БД только для подключенных пользователей.
+ * При {@code app.sse.fan-out.enabled} события сначала рассылаются всем узлам через {@link InvalidationTransport}
+ * (канал {@value #CHANNEL}), и каждый узел доставляет их своим соединениям.
+ * <p>
+ * У каждого соединения своя очередь отправки ({@code send-queue-size}), которую разбирает пул
+ * {@code sseSendExecutor}; медленный клиент задерживает только себя, а при переполнении его очереди
+ * соединение закрывается, и клиент переподключается с {@code Last-Event-ID}.
+ * <p>
+ * Последние {@code app.sse.replay-size} событий пользователя хранятся в памяти ещё {@code replay-ttl-ms}
+ * после закрытия последнего соединения: клиент, переподключившийся с {@code Last-Event-ID}, получает
+ * пропущенные события. Если они уже вытеснены, буфер создан после этого id или id выдан до перезапуска
+ * узла, приходит событие {@code resync}, и клиент перечитывает состояние запросами.
+ */
+@Component
+public class UserEventHub {
+
+    private static final Logger log = LoggerFactory.getLogger(UserEventHub.class);
+
+    public static final String BALANCE = "balance";
+    public static final String TRANSACTION = "transaction";
+    public static final String RESYNC = "resync";
+    public static final String CHANNEL = "bankcards_user_events";
+
+    // NOTIFY ограничивает сообщение 8000 байтами
+    private static final int CARD_IDS_PER_MESSAGE = 200;
+    static final int MAX_MESSAGE_BYTES = 7500;
+
+    @Autowired
+    private CardOwnership cardOwnership;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("sseExecutor")
+    private TaskExecutor sseExecutor;
+
+    @Autowired
+    @Qualifier("sseSendExecutor")
+    private TaskExecutor sseSendExecutor;
+
+    @Autowired(required = false)
+    @Qualifier("userEventTransport")
+    private InvalidationTransport fanOut;
+
+    @Value("${app.sse.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${app.sse.max-connections:10000}")
+    private int maxConnections;
+
+    @Value("${app.sse.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    @Value("${app.sse.replay-size:100}")
+    private int replaySize;
+
+    @Value("${app.sse.replay-ttl-ms:300000}")
+    private long replayTtlMs;
+
+    @Value("${app.sse.retry-ms:3000}")
+    private long retryMs;
+
+    @Value("${app.sse.send-queue-size:256}")
+    private int sendQueueSize;
+
+    // префикс id событий: id, выданные до перезапуска узла, не совпадут с текущими
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, UserStream> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private Counter resyncs;
+    private Counter dropped;
+    private Counter overflows;
+
+    @PostConstruct
+    void init() {
+        if (sendQueueSize <= replaySize + 1) {
+            throw new IllegalStateException("app.sse.send-queue-size должен быть больше app.sse.replay-size + 1: " +
+                    "при переподключении в очередь соединения ставятся все досылаемые события");
+        }
+        Gauge.builder("bankcards.sse.connections", connections, AtomicInteger::get)
+                .description("Открытые потоки событий")
+                .register(meterRegistry);
+        resyncs = Counter.builder("bankcards.sse.resyncs")
+                .description("Переподключения, для которых пропущенные события уже недоступны")
+                .register(meterRegistry);
+        dropped = Counter.builder("bankcards.sse.dropped")
+                .description("События, не принятые переполненной очередью рассылки")
+                .register(meterRegistry);
+        overflows = Counter.builder("bankcards.sse.overflows")
+                .description("Соединения, закрытые из-за переполненной очереди отправки")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Подписка на события других узлов; вызывается после старта при включенной рассылке.
+     */
+    public void startFanOut() {
+        if (fanOut != null) {
+            fanOut.start(this::receive, () -> dispatch(this::resyncAll));
+        }
+    }
+
+    /**
+     * Открывает поток событий пользователя.
+     *
+     * @param lastEventId id последнего полученного события или null для нового подключения
+     */
+    public SseEmitter subscribe(Long userId, String lastEventId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            throw new BusinessException("SSE_TOO_MANY_CONNECTIONS",
+                    "Слишком много открытых потоков событий, повторите позже", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        Connection connection = new Connection(createEmitter());
+        UserStream stream;
+        while (true) {
+            // буфер, созданный сейчас, не видел событий до текущего номера: более ранний id получит resync
+            stream = streams.computeIfAbsent(userId, id -> new UserStream(sequence.get()));
+            synchronized (stream) {
+                if (stream.closed) {
+                    continue;
+                }
+                if (stream.connections.size() >= maxConnectionsPerUser) {
+                    connections.decrementAndGet();
+                    throw new BusinessException("SSE_TOO_MANY_USER_CONNECTIONS",
+                            "Открыто максимальное число потоков событий: " + maxConnectionsPerUser,
+                            HttpStatus.TOO_MANY_REQUESTS);
+                }
+                stream.connections.add(connection);
+                enqueue(stream, connection, SseEmitter.event().reconnectTime(retryMs).comment("connected"));
+                replay(stream, connection, lastEventId);
+                break;
+            }
+        }
+        UserStream subscribed = stream;
+        connection.emitter.onCompletion(() -> remove(subscribed, connection));
+        connection.emitter.onTimeout(() -> remove(subscribed, connection));
+        connection.emitter.onError(e -> remove(subscribed, connection));
+        return connection.emitter;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTransactionCompleted(TransactionCompletedEvent event) {
+        sendTransaction(UserEventMessage.TransactionMessage.of(event));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTransactionFailed(TransactionFailedEvent event) {
+        sendTransaction(UserEventMessage.TransactionMessage.of(event));
+    }
+
+    private void sendTransaction(UserEventMessage.TransactionMessage transaction) {
+        if (fanOut != null) {
+            broadcast(new UserEventMessage(List.of(transaction), List.of()));
+        } else if (isSubscribed(transaction.fromUserId()) || isSubscribed(transaction.toUserId())) {
+            dispatch(() -> deliverTransactions(List.of(transaction)));
+        }
+    }
+
+    /**
+     * Пачка операций рассылается одной задачей: в канал - сообщениями до {@value #MAX_MESSAGE_BYTES} байт,
+     * без канала - сразу подключенным владельцам.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTransactionBatchCompleted(TransactionBatchCompletedEvent event) {
+        List<UserEventMessage.TransactionMessage> transactions = event.getTransactions().stream()
+                .map(UserEventMessage.TransactionMessage::of)
+                .toList();
+        if (fanOut != null) {
+            dispatch(() -> broadcastTransactions(transactions));
+        } else if (!streams.isEmpty()) {
+            dispatch(() -> deliverTransactions(transactions));
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardBalanceChanged(CardBalanceChangedEvent event) {
+        List<Long> cardIds = event.getCardIds();
+        if (fanOut != null) {
+            for (int from = 0; from < cardIds.size(); from += CARD_IDS_PER_MESSAGE) {
+                List<Long> chunk = List.copyOf(cardIds.subList(from, Math.min(from + CARD_IDS_PER_MESSAGE,
+                        cardIds.size())));
+                broadcast(new UserEventMessage(List.of(), chunk));
+            }
+        } else if (!streams.isEmpty()) {
+            dispatch(() -> deliverBalances(cardIds));
+        }
+    }
+
+    /**
+     * Комментарий-пульс во все соединения: прокси не закрывают простаивающие потоки, а закрытые клиентом
+     * соединения обнаруживаются и освобождаются. Заодно удаляются буферы, срок хранения которых истек.
+     */
+    @Scheduled(fixedDelayString = "${app.sse.heartbeat-ms:15000}")
+    public void heartbeat() {
+        dispatch(() -> {
+            long now = System.currentTimeMillis();
+            streams.forEach((userId, stream) -> {
+                synchronized (stream) {
+                    for (Connection connection : new ArrayList<>(stream.connections)) {
+                        enqueue(stream, connection, SseEmitter.event().comment("heartbeat"));
+                    }
+                    if (stream.connections.isEmpty() && now - stream.idleSince > replayTtlMs) {
+                        stream.closed = true;
+                        streams.remove(userId, stream);
+                    }
+                }
+            });
+        });
+    }
+
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeoutMs);
+    }
+
+    private boolean isSubscribed(Long userId) {
+        return userId != null && userId > 0 && streams.containsKey(userId);
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            sseExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось разослать события пользователям: {}", e.getMessage());
+                }
+            });
+        } catch (TaskRejectedException e) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Отправка в канал - запрос к БД, поэтому она идет в потоке рассылки, а не в потоке, зафиксировавшем
+     * изменение. Каждый узел, включая этот, получит сообщение в {@link #receive}.
+     */
+    private void broadcast(UserEventMessage message) {
+        dispatch(() -> fanOut.publish(toJson(message)));
+    }
+
+    private void broadcastTransactions(List<UserEventMessage.TransactionMessage> transactions) {
+        List<UserEventMessage.TransactionMessage> chunk = new ArrayList<>();
+        int chunkBytes = 0;
+        for (UserEventMessage.TransactionMessage transaction : transactions) {
+            int bytes = toJson(transaction).getBytes(StandardCharsets.UTF_8).length + 1;
+            if (!chunk.isEmpty() && chunkBytes + bytes > MAX_MESSAGE_BYTES) {
+                fanOut.publish(toJson(new UserEventMessage(chunk, List.of())));
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+            chunk.add(transaction);
+            chunkBytes += bytes;
+        }
+        if (!chunk.isEmpty()) {
+            fanOut.publish(toJson(new UserEventMessage(chunk, List.of())));
+        }
+    }
+
+    private String toJson(Object message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать событие пользователя", e);
+        }
+    }
+
+    private void receive(String payload) {
+        if (streams.isEmpty()) {
+            return;
+        }
+        UserEventMessage message;
+        try {
+            message = objectMapper.readValue(payload, UserEventMessage.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Пропущено сообщение рассылки событий: {}", e.getMessage());
+            return;
+        }
+        dispatch(() -> {
+            if (message.transactions() != null) {
+                deliverTransactions(message.transactions());
+            }
+            if (message.cardIds() != null) {
+                deliverBalances(message.cardIds());
+            }
+        });
+    }
+
+    private void deliverTransactions(List<UserEventMessage.TransactionMessage> transactions) {
+        for (UserEventMessage.TransactionMessage transaction : transactions) {
+            if (transaction.fromUserId() != null) {
+                publish(transaction.fromUserId(), TRANSACTION, transaction.data());
+            }
+            if (transaction.toUserId() != null && !transaction.toUserId().equals(transaction.fromUserId())) {
+                publish(transaction.toUserId(), TRANSACTION, transaction.data());
+            }
+        }
+    }
+
+    private void deliverBalances(List<Long> cardIds) {
+        cardIds.forEach(cardId -> {
+            long owner = cardOwnership.ownerOf(cardId);
+            if (!isSubscribed(owner)) {
+                return;
+            }
+            List<BigDecimal> balance = ShardContext.call(shardMap.shardOf(cardId), () -> jdbcTemplate.queryForList(
+                    "SELECT balance FROM cards WHERE id = ?", BigDecimal.class, cardId));
+            if (!balance.isEmpty()) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("cardId", cardId);
+                data.put("balance", balance.get(0));
+                publish(owner, BALANCE, data);
+            }
+        });
+    }
+
+    private void publish(Long userId, String name, Object data) {
+        UserStream stream = streams.get(userId);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            if (stream.closed) {
+                return;
+            }
+            UserEvent event = new UserEvent(sequence.incrementAndGet(), name, data);
+            stream.recent.addLast(event);
+            if (stream.recent.size() > replaySize) {
+                stream.evictedUpTo = stream.recent.removeFirst().seq();
+            }
+            for (Connection connection : new ArrayList<>(stream.connections)) {
+                enqueue(stream, connection, toSse(event));
+            }
+        }
+        meterRegistry.counter("bankcards.sse.events", "type", name).increment();
+    }
+
+    private void replay(UserStream stream, Connection connection, String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return;
+        }
+        long lastSeq = parseSequence(lastEventId);
+        if (lastSeq < 0 || lastSeq < stream.evictedUpTo) {
+            resyncs.increment();
+            enqueue(stream, connection, resyncEvent());
+            return;
+        }
+        for (UserEvent event : stream.recent) {
+            if (event.seq() > lastSeq) {
+                enqueue(stream, connection, toSse(event));
+            }
+        }
+    }
+
+    /**
+     * Подписка на канал восстановлена после разрыва: сообщения за это время потеряны, поэтому подключенные
+     * клиенты перечитывают состояние, а буферы не используются для досылки событий до этого момента.
+     */
+    private void resyncAll() {
+        streams.values().forEach(stream -> {
+            synchronized (stream) {
+                stream.recent.clear();
+                stream.evictedUpTo = sequence.get();
+                for (Connection connection : new ArrayList<>(stream.connections)) {
+                    resyncs.increment();
+                    enqueue(stream, connection, resyncEvent());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return номер события или -1, если id выдан не этим запуском узла
+     */
+    private long parseSequence(String lastEventId) {
+        int dash = lastEventId.lastIndexOf('-');
+        if (dash < 0 || !lastEventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private SseEmitter.SseEventBuilder toSse(UserEvent event) {
+        return SseEmitter.event().id(eventId(event.seq())).name(event.name()).data(event.data(), MediaType.APPLICATION_JSON);
+    }
+
+    private SseEmitter.SseEventBuilder resyncEvent() {
+        return SseEmitter.event().id(eventId(sequence.get())).name(RESYNC)
+                .data(Map.of("reason", "Пропущенные события недоступны, перечитайте состояние"),
+                        MediaType.APPLICATION_JSON);
+    }
+
+    private String eventId(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    /**
+     * Ставит событие в очередь соединения и, если она не разбирается, запускает ее разбор в {@code sseSendExecutor}.
+     * Вызывается под монитором потока пользователя, поэтому порядок событий в очереди совпадает с порядком номеров.
+     */
+    private void enqueue(UserStream stream, Connection connection, SseEmitter.SseEventBuilder event) {
+        boolean overflow;
+        boolean start = false;
+        synchronized (connection) {
+            if (connection.closed) {
+                return;
+            }
+            overflow = connection.pending.size() >= sendQueueSize;
+            if (!overflow) {
+                connection.pending.addLast(event);
+                start = !connection.sending;
+                connection.sending = true;
+            }
+        }
+        if (overflow) {
+            // клиент не успевает читать: переподключившись с Last-Event-ID, он получит пропущенное из буфера
+            overflows.increment();
+            close(stream, connection);
+            return;
+        }
+        if (start) {
+            try {
+                sseSendExecutor.execute(() -> drain(stream, connection));
+            } catch (TaskRejectedException e) {
+                overflows.increment();
+                close(stream, connection);
+            }
+        }
+    }
+
+    private void drain(UserStream stream, Connection connection) {
+        while (true) {
+            SseEmitter.SseEventBuilder event;
+            synchronized (connection) {
+                event = connection.closed ? null : connection.pending.pollFirst();
+                if (event == null) {
+                    connection.sending = false;
+                    return;
+                }
+            }
+            try {
+                connection.emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                // клиент отключился; контейнер завершит асинхронный запрос сам
+                remove(stream, connection);
+                return;
+            }
+        }
+    }
+
+    private void close(UserStream stream, Connection connection) {
+        remove(stream, connection);
+        connection.emitter.complete();
+    }
+
+    private void remove(UserStream stream, Connection connection) {
+        synchronized (stream) {
+            if (stream.connections.remove(connection)) {
+                connections.decrementAndGet();
+                if (stream.connections.isEmpty()) {
+                    stream.idleSince = System.currentTimeMillis();
+                }
+            }
+        }
+        synchronized (connection) {
+            connection.closed = true;
+            connection.pending.clear();
+        }
+    }
+
+    private record UserEvent(long seq, String name, Object data) {
+    }
+
+    /**
+     * Соединение и его очередь отправки; очередь меняется под монитором объекта.
+     */
+    private static class Connection {
+
+        private final SseEmitter emitter;
+        private final Deque<SseEmitter.SseEventBuilder> pending = new ArrayDeque<>();
+        private boolean sending;
+        private boolean closed;
+
+        private Connection(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    /**
+     * Соединения и буфер последних событий пользователя; все поля меняются под монитором объекта.
+     */
+    private static class UserStream {
+
+        private final List<Connection> connections = new ArrayList<>(1);
+        private final Deque<UserEvent> recent = new ArrayDeque<>();
+        private long evictedUpTo;
+        private long idleSince = System.currentTimeMillis();
+        private boolean closed;
+
+        private UserStream(long evictedUpTo) {
+            this.evictedUpTo = evictedUpTo;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.bankcards.sse;
+
+import com.example.bankcards.event.TransactionCompletedEvent;
+import com.example.bankcards.event.TransactionFailedEvent;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Сообщение рассылки событий между узлами ({@code app.sse.fan-out}): завершенные и отклоненные операции с их владельцами
+ * и карты, баланс которых изменился. Балансы не передаются - каждый узел читает их сам и только
+ * для своих подключенных пользователей.
+ */
+public record UserEventMessage(List<TransactionMessage> transactions, List<Long> cardIds) {
+
+    /**
+     * Операция и владельцы карт, которым она показывается; {@code data} уходит клиенту как есть.
+     */
+    public record TransactionMessage(Long fromUserId, Long toUserId, TransactionData data) {
+
+        public static TransactionMessage of(TransactionCompletedEvent event) {
+            return new TransactionMessage(event.getFromUserId(), event.getToUserId(), new TransactionData(
+                    event.getTransactionId(), event.getType(), "COMPLETED", event.getFromCardId(), event.getToCardId(),
+                    event.getAmount(), event.getCurrency(), event.getDescription(), event.getCreatedAt()));
+        }
+
+        /**
+         * Отказ показывается только отправителю.
+         */
+        public static TransactionMessage of(TransactionFailedEvent event) {
+            return new TransactionMessage(event.getFromUserId(), null, new TransactionData(
+                    event.getTransactionId(), event.getType(), "FAILED", event.getFromCardId(), event.getToCardId(),
+                    event.getAmount(), event.getCurrency(), event.getDescription(), event.getCreatedAt()));
+        }
+    }
+
+    /**
+     * Данные события {@code transaction}.
+     */
+    public record TransactionData(Long transactionId, String type, String status, Long fromCardId, Long toCardId,
+                                  BigDecimal amount, String currency, String description,
+                                  LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bankcards.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Правила подстрочного поиска по именам и описаниям.
+ * Строка поиска приводится к нижнему регистру заранее, чтобы запросы
+ * {@code LOWER(x) LIKE :pattern} использовали триграммные GIN-индексы по lower(x);
+ * короче {@code min-length} символов триграммный индекс не помогает, такие запросы отклоняются.
+ */
+@Component
+public class SearchPolicy {
+
+    private static final int MIN_CARD_NUMBER_LENGTH = 13;
+    private static final int MAX_CARD_NUMBER_LENGTH = 19;
+
+    @Value("${app.search.min-length:3}")
+    private int minLength;
+
+    @Value("${app.search.max-results:50}")
+    private int maxResults;
+
+    /**
+     * Строка поиска без крайних пробелов; короче {@code min-length} символов - ошибка.
+     */
+    public String requireTerm(String term) {
+        String normalized = term == null ? "" : term.trim();
+        if (normalized.length() < minLength) {
+            throw new IllegalArgumentException("Строка поиска должна содержать не менее " + minLength + " символов");
+        }
+        return normalized;
+    }
+
+    /**
+     * Шаблон для {@code LIKE}: нижний регистр, экранированные {@code % _ \}, обрамленный {@code %}.
+     */
+    public String toContainsPattern(String term) {
+        String escaped = requireTerm(term).toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /**
+     * Номер карты хранится зашифрованным, поэтому ищется только полным совпадением.
+     * Возвращает номер без пробелов и дефисов или null, если строка не похожа на номер карты.
+     */
+    public String toExactCardNumber(String term) {
+        if (term == null) {
+            return null;
+        }
+        String digits = term.replace(" ", "").replace("-", "");
+        if (digits.length() < MIN_CARD_NUMBER_LENGTH || digits.length() > MAX_CARD_NUMBER_LENGTH
+                || !digits.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return digits;
+    }
+
+    /**
+     * Ограничивает размер страницы значением {@code max-results}.
+     */
+    public Pageable limit(Pageable pageable) {
+        if (pageable.isPaged() && pageable.getPageSize() <= maxResults) {
+            return pageable;
+        }
+        int page = pageable.isPaged() ? pageable.getPageNumber() : 0;
+        return PageRequest.of(page, maxResults, pageable.getSort());
+    }
+
+    public Pageable firstResults() {
+        return PageRequest.of(0, maxResults);
+    }
+}
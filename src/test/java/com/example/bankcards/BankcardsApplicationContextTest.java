@@ -0,0 +1,98 @@
+package com.example.bankcards;
+
+import com.example.bankcards.cache.CacheInvalidationBus;
+import com.example.bankcards.cache.CardSnapshotCache;
+import com.example.bankcards.cache.HibernateSecondLevelCache;
+import com.example.bankcards.cache.InvalidatableCache;
+import com.example.bankcards.readmodel.CardSummaryProjector;
+import com.example.bankcards.search.SearchIndexService;
+import com.example.bankcards.security.CardOwnership;
+import com.example.bankcards.service.DashboardService;
+import com.example.bankcards.sse.UserEventHub;
+import com.example.bankcards.sharding.ShardMap;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Полный контекст приложения на реальной PostgreSQL: проверяет связывание кэшей, шины инвалидации,
+ * пулов и модели чтения. Запускается при заданной BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+@SpringBootTest(properties = {
+        "app.cache.invalidation.enabled=true",
+        "app.cache.invalidation.transport=in-memory",
+        "app.sse.fan-out.transport=in-memory",
+        "app.read-model.card-summary.rebuild-on-startup=false"
+})
+public class BankcardsApplicationContextTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("BANKCARDS_TEST_DB_URL"));
+        registry.add("spring.datasource.username",
+                () -> System.getenv().getOrDefault("BANKCARDS_TEST_DB_USER", "postgres"));
+        registry.add("spring.datasource.password",
+                () -> System.getenv().getOrDefault("BANKCARDS_TEST_DB_PASSWORD", ""));
+    }
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void testInvalidationBusReachesEveryLocalCache() {
+        CacheInvalidationBus bus = context.getBean(CacheInvalidationBus.class);
+
+        @SuppressWarnings("unchecked")
+        List<InvalidatableCache> caches = (List<InvalidatableCache>) ReflectionTestUtils.getField(bus, "caches");
+
+        assertEquals(Set.of(CardSnapshotCache.class, HibernateSecondLevelCache.class, SearchIndexService.class,
+                CardOwnership.class), caches.stream().map(Object::getClass).collect(Collectors.toSet()));
+        assertSame(context.getBean("cacheInvalidationPublishExecutor"),
+                ReflectionTestUtils.getField(bus, "publishExecutor"));
+        assertSame(context.getBean("cacheInvalidationFlushExecutor"),
+                ReflectionTestUtils.getField(bus, "flushExecutor"));
+    }
+
+    @Test
+    public void testServicesUseTheirOwnExecutors() {
+        assertSame(context.getBean("dashboardExecutor"),
+                ReflectionTestUtils.getField(context.getBean(DashboardService.class), "dashboardExecutor"));
+        assertSame(context.getBean("readModelExecutor"),
+                ReflectionTestUtils.getField(context.getBean(CardSummaryProjector.class), "readModelExecutor"));
+        assertSame(context.getBean("sseSendExecutor"),
+                ReflectionTestUtils.getField(context.getBean(UserEventHub.class), "sseSendExecutor"));
+    }
+
+    @Test
+    public void testUserEventsFanOutOverTheirOwnChannel() {
+        Object fanOut = ReflectionTestUtils.getField(context.getBean(UserEventHub.class), "fanOut");
+
+        assertSame(context.getBean("userEventTransport"), fanOut);
+        assertNotSame(context.getBean("cacheInvalidationTransport"), fanOut);
+        assertSame(context.getBean("cacheInvalidationTransport"),
+                ReflectionTestUtils.getField(context.getBean(CacheInvalidationBus.class), "transport"));
+    }
+
+    @Test
+    public void testDefaultsWithoutShardingOrReplica() {
+        assertFalse(context.getBean(ShardMap.class).isSharded());
+        assertEquals(1, context.getBeansOfType(DataSource.class).size());
+        assertTrue(context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class)
+                .getStatistics().isStatisticsEnabled());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.bankcards;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Подключение к PostgreSQL с примененными миграциями для тестов, которые проверяют SQL,
+ * недоступный в H2. Такие тесты помечаются
+ * {@code @EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")}
+ * (BANKCARDS_TEST_DB_USER / BANKCARDS_TEST_DB_PASSWORD - опционально).
+ */
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    public static Connection connect() throws SQLException {
+        return DriverManager.getConnection(url(), user(), password());
+    }
+
+    /** Источник данных с новым соединением на каждый запрос - для кода, который сам открывает транзакции. */
+    public static DriverManagerDataSource dataSource() {
+        return new DriverManagerDataSource(url(), user(), password());
+    }
+
+    private static String url() {
+        return System.getenv("BANKCARDS_TEST_DB_URL");
+    }
+
+    private static String user() {
+        return System.getenv().getOrDefault("BANKCARDS_TEST_DB_USER", "postgres");
+    }
+
+    private static String password() {
+        return System.getenv().getOrDefault("BANKCARDS_TEST_DB_PASSWORD", "");
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.event.UserChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheInvalidationBusTest {
+
+    private InMemoryInvalidationTransport transport;
+    private RecordingCache firstCache;
+    private RecordingCache secondCache;
+    private CacheInvalidationBus first;
+    private CacheInvalidationBus second;
+
+    @BeforeEach
+    public void setUp() {
+        transport = new InMemoryInvalidationTransport();
+        firstCache = new RecordingCache();
+        secondCache = new RecordingCache();
+        first = bus(transport, firstCache, Runnable::run, Runnable::run);
+        second = bus(transport, secondCache, Runnable::run, Runnable::run);
+        first.start();
+        second.start();
+    }
+
+    @Test
+    public void testChangeInvalidatesOtherNodesOnly() {
+        first.onCardBalanceChanged(new CardBalanceChangedEvent(7L));
+        first.onUserChanged(UserChangedEvent.deleted(3L));
+
+        assertEquals(List.of("CARD_BALANCE:7", "USER:3"), secondCache.invalidated);
+        assertTrue(firstCache.invalidated.isEmpty());
+        assertEquals(0, secondCache.flushes);
+    }
+
+    @Test
+    public void testCardChangesAreSentByKind() {
+        first.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.UPDATED, 7L, 3L, "IVAN PETROV"));
+        first.onCardChanged(CardChangedEvent.deleted(8L, 3L));
+
+        assertEquals(List.of("CARD:7", "CARD_DELETED:8"), secondCache.invalidated);
+    }
+
+    @Test
+    public void testSequenceGapFlushesCaches() {
+        first.onCardBalanceChanged(new CardBalanceChangedEvent(1L));
+        transport.publish(new CacheInvalidation(first.getNode(), 3, CacheInvalidation.Entity.CARD, List.of(2L)).encode());
+
+        assertEquals(1, secondCache.flushes);
+        assertEquals(List.of("CARD_BALANCE:1"), secondCache.invalidated);
+
+        first.onCardBalanceChanged(new CardBalanceChangedEvent(4L));
+        assertEquals(1, secondCache.flushes);
+    }
+
+    @Test
+    public void testHeartbeatRevealsLostTrailingMessage() {
+        first.onCardBalanceChanged(new CardBalanceChangedEvent(1L));
+        first.heartbeat();
+        assertEquals(0, secondCache.flushes);
+
+        transport.publish(new CacheInvalidation(first.getNode(), 5, CacheInvalidation.Entity.HEARTBEAT, List.of()).encode());
+        assertEquals(1, secondCache.flushes);
+    }
+
+    @Test
+    public void testFullPublishQueueShowsUpAsGap() {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor rejectsSecond = task -> {
+            if (submitted.incrementAndGet() == 2) {
+                throw new RejectedExecutionException("queue full");
+            }
+            task.run();
+        };
+        CacheInvalidationBus sender = bus(transport, new RecordingCache(), rejectsSecond, Runnable::run);
+        sender.start();
+
+        sender.onCardBalanceChanged(new CardBalanceChangedEvent(1L));
+        sender.onCardBalanceChanged(new CardBalanceChangedEvent(2L));
+        sender.onCardBalanceChanged(new CardBalanceChangedEvent(3L));
+
+        assertEquals(List.of("CARD_BALANCE:1"), secondCache.invalidated);
+        assertEquals(1, secondCache.flushes);
+    }
+
+    @Test
+    public void testSlowTransportDoesNotBlockSender() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryInvalidationTransport slow = new InMemoryInvalidationTransport() {
+            @Override
+            public void publish(String payload) {
+                try {
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.publish(payload);
+            }
+        };
+        ExecutorService publisher = Executors.newSingleThreadExecutor();
+        try {
+            RecordingCache receiverCache = new RecordingCache();
+            CacheInvalidationBus sender = bus(slow, new RecordingCache(), publisher, Runnable::run);
+            CacheInvalidationBus receiver = bus(slow, receiverCache, Runnable::run, Runnable::run);
+            sender.start();
+            receiver.start();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+                for (long cardId = 1; cardId <= 3; cardId++) {
+                    sender.onCardBalanceChanged(new CardBalanceChangedEvent(cardId));
+                }
+            });
+            assertTrue(receiverCache.invalidated.isEmpty());
+
+            release.countDown();
+            publisher.shutdown();
+            assertTrue(publisher.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(List.of("CARD_BALANCE:1", "CARD_BALANCE:2", "CARD_BALANCE:3"), receiverCache.invalidated);
+            assertEquals(0, receiverCache.flushes);
+        } finally {
+            publisher.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBalanceBatchIsSentAsFewMultiIdMessages() {
+        List<String> payloads = new ArrayList<>();
+        transport.start(payloads::add, () -> {
+        });
+        int cards = 2 * CacheInvalidationBus.IDS_PER_MESSAGE + 1;
+        List<Long> cardIds = LongStream.rangeClosed(1, cards).boxed().toList();
+
+        first.onCardBalanceChanged(new CardBalanceChangedEvent(cardIds));
+        first.heartbeat();
+
+        assertEquals(4, payloads.size());
+        assertTrue(payloads.stream().allMatch(payload -> payload.length() < 8000));
+        assertEquals(List.of(1L, 2L, 3L, 3L), payloads.stream().map(CacheInvalidation::decode)
+                .map(CacheInvalidation::sequence).toList());
+        assertEquals(cardIds.stream().map(id -> "CARD_BALANCE:" + id).toList(), secondCache.invalidated);
+        assertEquals(0, secondCache.flushes);
+    }
+
+    @Test
+    public void testMessageRoundTrip() {
+        CacheInvalidation batch = new CacheInvalidation("node", 12, CacheInvalidation.Entity.CARD, List.of(3L, 5L));
+        CacheInvalidation heartbeat = new CacheInvalidation("node", 12, CacheInvalidation.Entity.HEARTBEAT, null);
+
+        assertEquals("node|12|CARD|3,5", batch.encode());
+        assertEquals(batch, CacheInvalidation.decode(batch.encode()));
+        assertEquals("node|12|HEARTBEAT|", heartbeat.encode());
+        assertEquals(List.of(), CacheInvalidation.decode(heartbeat.encode()).ids());
+        assertThrows(IllegalArgumentException.class, () -> CacheInvalidation.decode("node|12|CARD|3,x"));
+    }
+
+    @Test
+    public void testFlushRunsOffListenerThreadAndCoalesces() {
+        List<Runnable> flushes = new ArrayList<>();
+        RecordingCache receiverCache = new RecordingCache();
+        CacheInvalidationBus receiver = bus(transport, receiverCache, Runnable::run, flushes::add);
+        receiver.start();
+
+        first.onCardBalanceChanged(new CardBalanceChangedEvent(1L));
+        transport.publish(new CacheInvalidation(first.getNode(), 3, CacheInvalidation.Entity.CARD, List.of(2L)).encode());
+        transport.publish(new CacheInvalidation(first.getNode(), 5, CacheInvalidation.Entity.CARD, List.of(4L)).encode());
+
+        assertEquals(1, flushes.size());
+        assertEquals(0, receiverCache.flushes);
+
+        flushes.get(0).run();
+        assertEquals(1, receiverCache.flushes);
+
+        transport.publish(new CacheInvalidation(first.getNode(), 7, CacheInvalidation.Entity.CARD, List.of(6L)).encode());
+        assertEquals(2, flushes.size());
+    }
+
+    private static CacheInvalidationBus bus(InvalidationTransport transport, RecordingCache cache,
+                                           Executor publishExecutor, Executor flushExecutor) {
+        return new CacheInvalidationBus(transport, List.of(cache), 30000, publishExecutor, flushExecutor,
+                new SimpleMeterRegistry());
+    }
+
+    private static class RecordingCache implements InvalidatableCache {
+
+        private final List<String> invalidated = new CopyOnWriteArrayList<>();
+        private int flushes;
+
+        @Override
+        public void invalidate(CacheInvalidation.Entity entity, Long id) {
+            invalidated.add(entity + ":" + id);
+        }
+
+        @Override
+        public void invalidateAll() {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.bankcards.cache;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CardSnapshotCacheTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private CardSnapshotCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(cache, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60000L);
+        cache.init();
+    }
+
+    @Test
+    public void testChangeEventsEvictSnapshot() {
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card(1L, "10.00")),
+                Optional.of(card(1L, "20.00")), Optional.of(card(1L, "30.00")));
+
+        assertEquals(new BigDecimal("10.00"), cache.get(1L).orElseThrow().balance());
+        assertEquals(new BigDecimal("10.00"), cache.get(1L).orElseThrow().balance());
+
+        cache.onCardBalanceChanged(new CardBalanceChangedEvent(List.of(1L, 2L)));
+        assertEquals(new BigDecimal("20.00"), cache.get(1L).orElseThrow().balance());
+
+        cache.onCardChanged(CardChangedEvent.deleted(1L, 1L));
+        assertEquals(new BigDecimal("30.00"), cache.get(1L).orElseThrow().balance());
+
+        verify(cardRepository, times(3)).findById(1L);
+    }
+
+    @Test
+    public void testInvalidationOfOtherEntityKeepsSnapshot() {
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card(1L, "10.00")));
+
+        cache.get(1L);
+        cache.invalidate(CacheInvalidation.Entity.USER, 1L);
+        cache.get(1L);
+        cache.invalidate(CacheInvalidation.Entity.CARD, 1L);
+        cache.get(1L);
+        cache.invalidate(CacheInvalidation.Entity.CARD_BALANCE, 1L);
+        cache.get(1L);
+
+        verify(cardRepository, times(3)).findById(1L);
+    }
+
+    @Test
+    public void testMissIsLoadedInWritingTransaction() {
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card(1L, "10.00")));
+
+        cache.get(1L);
+
+        // пишущая транзакция идет на основную БД, а не на реплику
+        verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testMissingCardIsNotCached() {
+        when(cardRepository.findById(1L)).thenReturn(Optional.empty(), Optional.of(card(1L, "10.00")));
+
+        assertTrue(cache.get(1L).isEmpty());
+        assertTrue(cache.get(1L).isPresent());
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        when(cardRepository.findById(1L)).thenAnswer(invocation -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return Optional.of(card(1L, "10.00"));
+        });
+
+        List<CompletableFuture<Optional<CardSnapshot>>> readers = new ArrayList<>();
+        readers.add(CompletableFuture.supplyAsync(() -> cache.get(1L)));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        List<Thread> waiting = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<Optional<CardSnapshot>> reader = new CompletableFuture<>();
+            Thread thread = new Thread(() -> reader.complete(cache.get(1L)));
+            thread.start();
+            waiting.add(thread);
+            readers.add(reader);
+        }
+        for (Thread thread : waiting) {
+            awaitBlocked(thread);
+        }
+        release.countDown();
+
+        for (CompletableFuture<Optional<CardSnapshot>> reader : readers) {
+            assertEquals(new BigDecimal("10.00"), reader.get(5, TimeUnit.SECONDS).orElseThrow().balance());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testEvictionDuringLoadDropsLoadedSnapshot() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        when(cardRepository.findById(1L)).thenAnswer(invocation -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+                return Optional.of(card(1L, "10.00"));
+            }
+            return Optional.of(card(1L, "20.00"));
+        });
+
+        CompletableFuture<Optional<CardSnapshot>> reader = CompletableFuture.supplyAsync(() -> cache.get(1L));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // изменение зафиксировано, пока загрузка читала старый баланс
+        Thread eviction = new Thread(() -> cache.onCardBalanceChanged(new CardBalanceChangedEvent(1L)));
+        eviction.start();
+        awaitBlocked(eviction);
+        release.countDown();
+        reader.get(5, TimeUnit.SECONDS);
+        eviction.join(5000);
+
+        assertEquals(new BigDecimal("20.00"), cache.get(1L).orElseThrow().balance());
+    }
+
+    @Test
+    public void testGetAllLoadsMissesInOneQuery() {
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card(1L, "10.00")));
+        when(cardRepository.findAllById(List.of(2L, 3L, 4L))).thenReturn(List.of(card(2L, "20.00"), card(4L, "40.00")));
+        cache.get(1L);
+
+        Map<Long, CardSnapshot> found = cache.getAll(List.of(1L, 2L, 3L, 4L));
+
+        assertEquals(Set.of(1L, 2L, 4L), found.keySet());
+        assertEquals(new BigDecimal("20.00"), found.get(2L).balance());
+        assertEquals(new BigDecimal("20.00"), cache.get(2L).orElseThrow().balance());
+        cache.getAll(List.of(1L, 2L, 4L));
+        verify(cardRepository, times(1)).findById(1L);
+        verify(cardRepository, times(1)).findAllById(any());
+        verify(cardRepository, never()).findById(2L);
+    }
+
+    @Test
+    public void testGetAllEvictionDuringLoadDropsLoadedSnapshot() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cardRepository.findAllById(List.of(2L))).thenAnswer(invocation -> {
+            loading.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return List.of(card(2L, "10.00"));
+        }).thenReturn(List.of(card(2L, "20.00")));
+
+        CompletableFuture<Map<Long, CardSnapshot>> reader = CompletableFuture.supplyAsync(() -> cache.getAll(List.of(2L)));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // изменение зафиксировано, пока пакетное чтение читало старый баланс
+        cache.onCardBalanceChanged(new CardBalanceChangedEvent(2L));
+        release.countDown();
+
+        assertEquals(new BigDecimal("10.00"), reader.get(5, TimeUnit.SECONDS).get(2L).balance());
+        assertEquals(new BigDecimal("20.00"), cache.getAll(List.of(2L)).get(2L).balance());
+    }
+
+    @Test
+    public void testDisabledCacheAlwaysReadsDatabase() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card(1L, "10.00")));
+
+        cache.get(1L);
+        cache.get(1L);
+
+        verify(cardRepository, times(2)).findById(1L);
+    }
+
+    /** Ждет, пока поток не встанет на блокировке загрузки того же ключа. */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() == Thread.State.RUNNABLE || thread.getState() == Thread.State.NEW) {
+            assertTrue(System.nanoTime() < deadline, "поток не дошел до блокировки");
+            Thread.sleep(1);
+        }
+    }
+
+    static Card card(Long id, String balance) {
+        User user = new User();
+        user.setId(id * 10);
+        Card card = new Card();
+        card.setId(id);
+        card.setUser(user);
+        card.setBalance(new BigDecimal(balance));
+        card.setIsActive(true);
+        return card;
+    }
+}
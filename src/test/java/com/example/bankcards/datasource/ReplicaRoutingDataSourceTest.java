@@ -0,0 +1,121 @@
+package com.example.bankcards.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private JdbcTemplate replicaAdmin;
+    private ReplicaLagMonitor lagMonitor;
+    private SimpleMeterRegistry meterRegistry;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    public void setUp() {
+        DataSource primary = database("routing-primary");
+        DataSource replica = database("routing-replica");
+        replicaAdmin = new JdbcTemplate(replica);
+        replicaAdmin.execute("DROP TABLE IF EXISTS lag_probe");
+        replicaAdmin.execute("CREATE TABLE lag_probe (lag_seconds DOUBLE, replayed_lsn VARCHAR(20))");
+        replicaAdmin.update("INSERT INTO lag_probe VALUES (0, '0/100')");
+
+        meterRegistry = new SimpleMeterRegistry();
+        lagMonitor = new ReplicaLagMonitor(replica, "SELECT lag_seconds, replayed_lsn FROM lag_probe", Duration.ofSeconds(5));
+        DataSource routing = new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, lagMonitor, meterRegistry));
+
+        jdbcTemplate = new JdbcTemplate(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReadConsistency.end();
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate template = new JdbcTemplate(h2);
+        template.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+        template.update("DELETE FROM marker");
+        template.update("INSERT INTO marker VALUES (?)", name);
+        return h2;
+    }
+
+    private String currentDatabase(TransactionTemplate template) {
+        return template.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM marker", String.class));
+    }
+
+    @Test
+    public void testReadOnlyTransactionsGoToReplica() {
+        lagMonitor.refresh();
+
+        assertEquals("routing-replica", currentDatabase(readOnly));
+        assertEquals("routing-primary", currentDatabase(readWrite));
+        assertEquals("routing-primary", jdbcTemplate.queryForObject("SELECT name FROM marker", String.class));
+        assertEquals(1.0, meterRegistry.counter("bankcards.datasource.connections", "pool", "replica").count());
+    }
+
+    @Test
+    public void testFallsBackToPrimaryWhenReplicaLags() {
+        assertEquals("routing-primary", currentDatabase(readOnly), "реплика еще не проверена");
+
+        replicaAdmin.update("UPDATE lag_probe SET lag_seconds = 30");
+        lagMonitor.refresh();
+        assertFalse(lagMonitor.isUsable());
+        assertEquals(30.0, lagMonitor.getLagSeconds());
+        assertEquals("routing-primary", currentDatabase(readOnly));
+
+        replicaAdmin.update("UPDATE lag_probe SET lag_seconds = 1");
+        lagMonitor.refresh();
+        assertEquals("routing-replica", currentDatabase(readOnly));
+
+        replicaAdmin.execute("DROP TABLE lag_probe");
+        lagMonitor.refresh();
+        assertTrue(Double.isNaN(lagMonitor.getLagSeconds()));
+        assertEquals("routing-primary", currentDatabase(readOnly));
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        lagMonitor.refresh();
+
+        ReadConsistency.begin("0/200");
+        assertEquals("routing-primary", currentDatabase(readOnly), "реплика не применила запись клиента");
+
+        replicaAdmin.update("UPDATE lag_probe SET replayed_lsn = '0/2A0'");
+        lagMonitor.refresh();
+        assertEquals("routing-replica", currentDatabase(readOnly));
+
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE marker SET name = name"));
+        assertTrue(ReadConsistency.current().hasPrimaryWrite());
+        assertEquals("routing-primary", currentDatabase(readOnly), "после записи в запросе чтение с основной БД");
+        assertEquals(2.0, meterRegistry.counter("bankcards.datasource.read-your-writes.fallbacks").count());
+    }
+
+    @Test
+    public void testParseToken() {
+        assertEquals(0x16B374D848L, ReadConsistency.parseToken("16/B374D848"));
+        assertEquals(0x100L, ReadConsistency.parseToken("0/100"));
+        assertEquals(Long.MAX_VALUE, ReadConsistency.parseToken("garbage"));
+        assertEquals(Long.MAX_VALUE, ReadConsistency.parseToken("1/FFFFFFFFF"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bankcards.monitoring;
+
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки количества SQL-запросов в тестах.
+ * Для MockMvc используются заголовки {@link QueryStatsResponseAdvice},
+ * для прямых вызовов сервисов и репозиториев — {@link QueryStats} текущего потока.
+ */
+public final class QueryCountAssertions {
+
+    private QueryCountAssertions() {}
+
+    public static void assertQueryCount(MvcResult result, int expected) {
+        assertEquals(expected, headerQueryCount(result),
+                "Неожиданное число SQL-запросов для " + handlerName(result));
+    }
+
+    public static void assertMaxQueryCount(MvcResult result, int max) {
+        int actual = headerQueryCount(result);
+        assertTrue(actual <= max,
+                "Ожидалось не более " + max + " SQL-запросов для " + handlerName(result) + ", выполнено " + actual);
+    }
+
+    public static <T> T assertQueryCount(int expected, Supplier<T> action) {
+        QueryStats stats = QueryStats.begin(0);
+        try {
+            T result = action.get();
+            assertEquals(expected, stats.getQueries(), "Неожиданное число SQL-запросов");
+            return result;
+        } finally {
+            QueryStats.end();
+        }
+    }
+
+    public static void assertQueryCount(int expected, Runnable action) {
+        assertQueryCount(expected, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private static int headerQueryCount(MvcResult result) {
+        String header = result.getResponse().getHeader(QueryStatsResponseAdvice.QUERY_COUNT_HEADER);
+        assertNotNull(header, "В ответе нет заголовка " + QueryStatsResponseAdvice.QUERY_COUNT_HEADER
+                + " (проверьте app.query-stats.expose-headers)");
+        return Integer.parseInt(header);
+    }
+
+    private static String handlerName(MvcResult result) {
+        return result.getHandler() != null ? result.getHandler().toString() : result.getRequest().getRequestURI();
+    }
+}
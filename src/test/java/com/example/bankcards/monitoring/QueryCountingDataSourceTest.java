@@ -0,0 +1,65 @@
+package com.example.bankcards.monitoring;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static com.example.bankcards.monitoring.QueryCountAssertions.assertQueryCount;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryCountingDataSourceTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:query-stats;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(new QueryCountingDataSource(h2));
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS items (id BIGINT PRIMARY KEY, name VARCHAR(50))");
+        jdbcTemplate.update("DELETE FROM items");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        QueryStats.end();
+    }
+
+    @Test
+    public void testCountsQueriesAndRows() {
+        QueryStats stats = QueryStats.begin(0);
+        jdbcTemplate.update("INSERT INTO items VALUES (1, 'a'), (2, 'b'), (3, 'c')");
+        jdbcTemplate.queryForList("SELECT name FROM items", String.class);
+
+        assertEquals(2, stats.getQueries());
+        assertEquals(6, stats.getRows());
+        assertTrue(stats.getNanos() > 0);
+    }
+
+    @Test
+    public void testRecordsCallSiteWhenBudgetExceeded() {
+        QueryStats stats = QueryStats.begin(1);
+        jdbcTemplate.queryForList("SELECT name FROM items", String.class);
+        assertFalse(stats.isBudgetExceeded());
+
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM items", Long.class);
+
+        assertTrue(stats.isBudgetExceeded());
+        assertEquals("SELECT COUNT(*) FROM items", stats.getBudgetExceededSql());
+        assertTrue(stats.getBudgetExceededCallSite().startsWith(QueryCountingDataSourceTest.class.getName()));
+    }
+
+    @Test
+    public void testNothingRecordedOutsideOfRequest() {
+        jdbcTemplate.queryForList("SELECT name FROM items", String.class);
+        assertNull(QueryStats.current());
+    }
+
+    @Test
+    public void testAssertQueryCountHelper() {
+        Long count = assertQueryCount(1, () -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM items", Long.class));
+        assertEquals(0L, count);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.bankcards.monitoring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryStatsInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueryStatsInterceptor interceptor = new QueryStatsInterceptor(meterRegistry, 10);
+
+    @AfterEach
+    public void tearDown() {
+        QueryStats.end();
+    }
+
+    @Test
+    public void testAsyncHandlerReleasesStatsOfRequestThread() throws Exception {
+        HandlerMethod handler = new HandlerMethod(new Object(), Object.class.getMethod("toString"));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/me/events");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, handler);
+        assertNotNull(QueryStats.current());
+        // поток возвращается в пул Tomcat без afterCompletion
+        interceptor.afterConcurrentHandlingStarted(request, response, handler);
+
+        assertNull(QueryStats.current());
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}
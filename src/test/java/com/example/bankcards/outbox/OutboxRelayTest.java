@@ -0,0 +1,137 @@
+package com.example.bankcards.outbox;
+
+import com.example.bankcards.TestDatabase;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Доставка outbox на реальной PostgreSQL. Все изменения идут через одно соединение в транзакции,
+ * которая откатывается после теста; менеджер транзакций ретранслятора заглушен, поэтому его транзакции
+ * ничего не фиксируют. Запускается при заданной BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class OutboxRelayTest {
+
+    private Connection connection;
+    private JdbcTemplate jdbc;
+    private final List<List<Long>> delivered = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private OutboxSink sink = events -> delivered.add(events.stream().map(OutboxEvent::id).toList());
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = TestDatabase.connect();
+        connection.setAutoCommit(false);
+        jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        jdbc.update("DELETE FROM outbox_events");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.rollback();
+        connection.close();
+    }
+
+    @Test
+    public void testDueEventsAreDeliveredInIndexOrderAndDeleted() {
+        insert(990000001L, "2000-01-03");
+        insert(990000002L, "2000-01-01");
+        insert(990000003L, "2000-01-02");
+        insert(990000004L, "2000-01-01");
+        insert(990000005L, "2999-01-01");
+
+        pollAndRun(relay(2));
+
+        assertEquals(List.of(List.of(990000002L, 990000004L), List.of(990000003L, 990000001L)), delivered);
+        assertEquals(List.of(990000005L), jdbc.queryForList("SELECT id FROM outbox_events", Long.class));
+    }
+
+    @Test
+    public void testRejectedBatchIsPostponed() {
+        insert(990000001L, "2000-01-01");
+        sink = events -> {
+            throw new IllegalStateException("webhook down");
+        };
+
+        pollAndRun(relay(2));
+
+        Map<String, Object> row = jdbc.queryForMap("SELECT attempts, last_error, " +
+                "extract(epoch FROM next_attempt_at - localtimestamp) AS delay FROM outbox_events WHERE id = ?",
+                990000001L);
+        assertEquals(1, ((Number) row.get("attempts")).intValue());
+        assertEquals("webhook down", row.get("last_error"));
+        assertEquals(5.0, ((Number) row.get("delay")).doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testWorkerStopsAfterPartialBatch() {
+        for (long id = 990000001L; id <= 990000005L; id++) {
+            insert(id, "2000-01-01");
+        }
+
+        pollAndRun(relay(2));
+
+        assertEquals(List.of(2, 2, 1), delivered.stream().map(List::size).toList());
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM outbox_events", Integer.class));
+    }
+
+    @Test
+    public void testBusyWorkersAreNotDuplicated() {
+        OutboxRelay relay = relay(2);
+        ReflectionTestUtils.setField(relay, "workers", 2);
+
+        relay.poll();
+        relay.poll();
+        assertEquals(2, scheduled.size());
+
+        scheduled.forEach(Runnable::run);
+        relay.poll();
+        assertEquals(4, scheduled.size());
+    }
+
+    private OutboxRelay relay(int batchSize) {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(connection, true);
+        OutboxRelay relay = new OutboxRelay(new JdbcTemplate(dataSource), new NamedParameterJdbcTemplate(dataSource),
+                new ShardMap(1), sink, (TaskExecutor) scheduled::add, transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relay, "batchSize", batchSize);
+        ReflectionTestUtils.setField(relay, "workers", 1);
+        ReflectionTestUtils.setField(relay, "maxBatchesPerPoll", 100);
+        ReflectionTestUtils.setField(relay, "retryDelayMs", 5000L);
+        return relay;
+    }
+
+    private void pollAndRun(OutboxRelay relay) {
+        relay.poll();
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private void insert(long id, String nextAttemptAt) {
+        jdbc.update("INSERT INTO outbox_events (id, aggregate_type, aggregate_id, event_type, payload, " +
+                "next_attempt_at) VALUES (?, 'CARD', 1, 'CARD_CREATED', '{}'::jsonb, CAST(? AS timestamp))",
+                id, nextAttemptAt);
+    }
+}
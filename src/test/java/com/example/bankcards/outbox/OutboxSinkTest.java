@@ -0,0 +1,91 @@
+package com.example.bankcards.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class OutboxSinkTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    public void testFileSinkAppendsOneLinePerEvent(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("events/outbox.jsonl");
+        FileOutboxSink sink = new FileOutboxSink(file, objectMapper);
+
+        sink.publish(List.of(event(1L), event(2L)));
+        sink.publish(List.of(event(3L)));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals(1L, first.get("id").asLong());
+        // payload пишется как вложенный документ, а не строка
+        assertEquals(100, first.get("payload").get("amount").asInt());
+        assertEquals(3L, objectMapper.readTree(lines.get(2)).get("id").asLong());
+    }
+
+    @Test
+    public void testWebhookSinkPostsBatchAndFailsOnErrorStatus() throws Exception {
+        AtomicInteger status = new AtomicInteger(200);
+        AtomicReference<String> body = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/events", exchange -> {
+            body.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            WebhookOutboxSink sink = new WebhookOutboxSink(
+                    URI.create("http://localhost:" + server.getAddress().getPort() + "/events"),
+                    Duration.ofSeconds(5), objectMapper);
+
+            sink.publish(List.of(event(1L), event(2L)));
+            JsonNode batch = objectMapper.readTree(body.get());
+            assertTrue(batch.isArray());
+            assertEquals(2, batch.size());
+            assertEquals(2L, batch.get(1).get("id").asLong());
+
+            status.set(500);
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> sink.publish(List.of(event(3L))));
+            assertEquals("Webhook outbox ответил 500", e.getMessage());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testInJvmSinkPublishesEachEvent() {
+        ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+        OutboxEvent first = event(1L);
+        OutboxEvent second = event(2L);
+
+        new InJvmOutboxSink(publisher).publish(List.of(first, second));
+
+        verify(publisher).publishEvent(first);
+        verify(publisher).publishEvent(second);
+    }
+
+    private static OutboxEvent event(long id) {
+        return new OutboxEvent(id, "CARD", 10L, "CARD_BALANCE_CHANGED", "{\"amount\": 100}",
+                LocalDateTime.of(2024, 1, 1, 12, 0));
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.bankcards.readmodel;
+
+import com.example.bankcards.TestDatabase;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.sharding.ShardMap;
+import com.example.bankcards.util.CardNumberAttributeConverter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Проекция карт в {@code user_card_summary} на реальной PostgreSQL. Все изменения идут через одно соединение
+ * в транзакции, которая откатывается после теста; пул модели чтения заменен очередью, которую тест
+ * выполняет сам. Запускается при заданной BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class CardSummaryProjectorTest {
+
+    private static final long USER_ID = 990000201L;
+    private static final long CARD = 990000201L;
+    private static final long DELETED_CARD = 990000202L;
+
+    private Connection connection;
+    private JdbcTemplate jdbc;
+    private NamedParameterJdbcTemplate namedJdbc;
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private CardSummaryProjector projector;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = TestDatabase.connect();
+        connection.setAutoCommit(false);
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(connection, true);
+        jdbc = spy(new JdbcTemplate(dataSource));
+        namedJdbc = spy(new NamedParameterJdbcTemplate(dataSource));
+
+        projector = projector(jdbc, namedJdbc, mock(PlatformTransactionManager.class), scheduled);
+
+        jdbc.update("INSERT INTO users (id, username, email, password) VALUES (?, 'summary-test', " +
+                "'summary-test@example.com', 'x')", USER_ID);
+        jdbc.update("INSERT INTO cards (id, user_id, card_number, card_holder_name, expiry_date, cvv, card_type, " +
+                "balance) VALUES (?, ?, ?, 'IVAN PETROV', DATE '2030-01-01', '000', 'DEBIT', 10.00)",
+                CARD, USER_ID, new CardNumberAttributeConverter().convertToDatabaseColumn("4000123412341234"));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.rollback();
+        connection.close();
+    }
+
+    @Test
+    public void testEventsForOneCardAreCoalescedAndApplied() {
+        projector.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.CREATED, CARD, USER_ID, "IVAN PETROV"));
+        jdbc.update("UPDATE cards SET balance = 25.00 WHERE id = ?", CARD);
+        projector.onCardBalanceChanged(new CardBalanceChangedEvent(CARD));
+
+        assertEquals(1, projector.pendingCount());
+        assertEquals(1, scheduled.size());
+        runScheduled();
+
+        Map<String, Object> row = summaryRow(CARD);
+        assertEquals("**** **** **** 1234", row.get("masked_number"));
+        assertEquals(0, new BigDecimal("25.00").compareTo((BigDecimal) row.get("balance")));
+        assertEquals(USER_ID, ((Number) row.get("user_id")).longValue());
+        assertEquals(0, projector.pendingCount());
+        assertEquals(0.0, projector.lagSeconds());
+    }
+
+    @Test
+    public void testDeletedCardRowIsRemoved() {
+        projector.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.CREATED, CARD, USER_ID, "IVAN PETROV"));
+        runScheduled();
+
+        jdbc.update("DELETE FROM cards WHERE id = ?", CARD);
+        projector.onCardChanged(CardChangedEvent.deleted(CARD, USER_ID));
+        runScheduled();
+
+        assertEquals(0, summaryCount(CARD));
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        doThrow(new DataAccessResourceFailureException("shard down")).doCallRealMethod()
+                .when(namedJdbc).query(startsWith("SELECT id, user_id"), anyMap(), any(RowMapper.class));
+
+        projector.onCardBalanceChanged(new CardBalanceChangedEvent(CARD));
+        runScheduled();
+        assertEquals(1, projector.pendingCount());
+        assertEquals(0, summaryCount(CARD));
+
+        projector.retryPending();
+        runScheduled();
+        assertEquals(0, projector.pendingCount());
+        assertEquals(1, summaryCount(CARD));
+    }
+
+    @Test
+    public void testRebuildProjectsCardsAndDropsStaleRows() {
+        jdbc.update("INSERT INTO user_card_summary (card_id, user_id, card_holder_name, expiry_date, card_type, " +
+                "balance, is_active, status, card_created_at, card_updated_at, projected_at) VALUES (?, ?, 'OLD', " +
+                "DATE '2030-01-01', 'DEBIT', 0, true, 'ACTIVE', now(), now(), TIMESTAMP '2000-01-01')",
+                DELETED_CARD, USER_ID);
+
+        assertTrue(projector.rebuild() >= 1);
+
+        assertEquals(1, summaryCount(CARD));
+        assertEquals(0, summaryCount(DELETED_CARD));
+    }
+
+    @Test
+    public void testChangeDuringRebuildIsReappliedAfterIt() {
+        doAnswer(invocation -> {
+            // событие пришло и применилось, пока пересборка читает карты: она может записать старое состояние
+            projector.onCardBalanceChanged(new CardBalanceChangedEvent(CARD));
+            runScheduled();
+            assertThrows(BusinessException.class, projector::rebuild);
+            return invocation.callRealMethod();
+        }).when(jdbc).queryForObject("SELECT localtimestamp", Timestamp.class);
+
+        projector.rebuild();
+
+        assertEquals(1, projector.pendingCount());
+        assertEquals(1, scheduled.size());
+    }
+
+    /**
+     * Проекция и изменение карты на разных соединениях с фиксацией: данные теста удаляются в конце.
+     */
+    @Test
+    public void testCardWriteWaitsUntilOlderStateIsProjected() throws Exception {
+        long userId = 990000211L;
+        long cardId = 990000211L;
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try (Connection projecting = TestDatabase.connect(); Connection writing = TestDatabase.connect()) {
+            SingleConnectionDataSource dataSource = new SingleConnectionDataSource(projecting, true);
+            JdbcTemplate committed = new JdbcTemplate(dataSource);
+            NamedParameterJdbcTemplate committedNamed = spy(new NamedParameterJdbcTemplate(dataSource));
+            List<Runnable> tasks = new ArrayList<>();
+            CardSummaryProjector concurrent = projector(committed, committedNamed,
+                    new DataSourceTransactionManager(dataSource), tasks);
+            committed.update("INSERT INTO users (id, username, email, password) VALUES (?, 'summary-race', " +
+                    "'summary-race@example.com', 'x')", userId);
+            committed.update("INSERT INTO cards (id, user_id, card_number, card_holder_name, expiry_date, cvv, " +
+                    "card_type, balance) VALUES (?, ?, ?, 'IVAN PETROV', DATE '2030-01-01', '000', 'DEBIT', 10.00)",
+                    cardId, userId, new CardNumberAttributeConverter().convertToDatabaseColumn("4000123412340211"));
+            CountDownLatch read = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> projection = null;
+            try {
+                doAnswer(invocation -> {
+                    Object rows = invocation.callRealMethod();
+                    read.countDown();
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                    return rows;
+                }).doCallRealMethod().when(committedNamed).query(startsWith("SELECT id, user_id"), anyMap(),
+                        any(RowMapper.class));
+
+                concurrent.onCardBalanceChanged(new CardBalanceChangedEvent(cardId));
+                projection = threads.submit(tasks.remove(0));
+                assertTrue(read.await(5, TimeUnit.SECONDS));
+                Future<Integer> write = threads.submit(() -> new JdbcTemplate(
+                        new SingleConnectionDataSource(writing, true))
+                        .update("UPDATE cards SET balance = 25.00 WHERE id = ?", cardId));
+
+                assertThrows(TimeoutException.class, () -> write.get(300, TimeUnit.MILLISECONDS));
+                release.countDown();
+                projection.get(5, TimeUnit.SECONDS);
+                assertEquals(1, write.get(5, TimeUnit.SECONDS));
+                assertEquals(0, new BigDecimal("10.00").compareTo(committed.queryForObject(
+                        "SELECT balance FROM user_card_summary WHERE card_id = ?", BigDecimal.class, cardId)));
+
+                concurrent.onCardBalanceChanged(new CardBalanceChangedEvent(cardId));
+                tasks.remove(0).run();
+                assertEquals(0, new BigDecimal("25.00").compareTo(committed.queryForObject(
+                        "SELECT balance FROM user_card_summary WHERE card_id = ?", BigDecimal.class, cardId)));
+            } finally {
+                // соединение проекции занято ее транзакцией, пока она не завершится
+                release.countDown();
+                if (projection != null) {
+                    projection.get(5, TimeUnit.SECONDS);
+                }
+                delete(committed, userId, cardId);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static void delete(JdbcTemplate committed, long userId, long cardId) {
+        committed.update("DELETE FROM user_card_summary WHERE card_id = ?", cardId);
+        committed.update("DELETE FROM cards WHERE id = ?", cardId);
+        committed.update("DELETE FROM users WHERE id = ?", userId);
+    }
+
+    private static CardSummaryProjector projector(JdbcTemplate jdbc, NamedParameterJdbcTemplate namedJdbc,
+                                                  PlatformTransactionManager transactionManager, List<Runnable> tasks) {
+        CardSummaryProjector projector = new CardSummaryProjector();
+        ReflectionTestUtils.setField(projector, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(projector, "namedJdbcTemplate", namedJdbc);
+        ReflectionTestUtils.setField(projector, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(projector, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(projector, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(projector, "readModelExecutor", (TaskExecutor) tasks::add);
+        ReflectionTestUtils.setField(projector, "enabled", true);
+        ReflectionTestUtils.setField(projector, "batchSize", 500);
+        projector.init();
+        return projector;
+    }
+
+    private void runScheduled() {
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private Map<String, Object> summaryRow(long cardId) {
+        return jdbc.queryForMap("SELECT * FROM user_card_summary WHERE card_id = ?", cardId);
+    }
+
+    private int summaryCount(long cardId) {
+        Integer count = jdbc.queryForObject("SELECT count(*) FROM user_card_summary WHERE card_id = ?",
+                Integer.class, cardId);
+        return count != null ? count : 0;
+    }
+}
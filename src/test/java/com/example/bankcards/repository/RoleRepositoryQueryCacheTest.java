@@ -0,0 +1,83 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.TestDatabase;
+import com.example.bankcards.config.HibernateCacheConfig;
+import com.example.bankcards.entity.Role;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import javax.sql.DataSource;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Запросы ролей по имени обслуживаются кэшем запросов Hibernate на реальной PostgreSQL
+ * с примененными миграциями. Запускается при заданной BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "app.cache.hibernate.statistics-enabled=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(HibernateCacheConfig.class)
+public class RoleRepositoryQueryCacheTest {
+
+    @TestConfiguration
+    static class Database {
+
+        @Bean
+        DataSource dataSource() {
+            return TestDatabase.dataSource();
+        }
+    }
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictQueryRegions();
+        statistics = sessionFactory.getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testFindByNameIsServedFromQueryCache() {
+        Role first = roleRepository.findByName("ROLE_USER").orElseThrow();
+        Role second = roleRepository.findByName("ROLE_USER").orElseThrow();
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(1, statistics.getQueryExecutionCount());
+        assertEquals(1, statistics.getQueryCacheMissCount());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+    }
+
+    @Test
+    public void testFindByNameInIsServedFromQueryCache() {
+        Set<String> names = Set.of("ROLE_USER", "ROLE_ADMIN");
+
+        assertEquals(2, roleRepository.findByNameIn(names).size());
+        assertEquals(2, roleRepository.findByNameIn(names).size());
+
+        assertEquals(1, statistics.getQueryExecutionCount());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пачечное удаление операций пользователя на реальной PostgreSQL. Данные создаются в транзакции,
+ * которая откатывается после теста. Запускается при заданной BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class TransactionBatchDeleteTest {
+
+    private static final long USER_ID = 990000001L;
+    private static final long OTHER_USER_ID = 990000002L;
+    private static final long CARD = 990000001L;
+    private static final long OTHER_CARD = 990000002L;
+
+    private Connection connection;
+    private NamedParameterJdbcTemplate jdbc;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = TestDatabase.connect();
+        connection.setAutoCommit(false);
+        jdbc = new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true));
+        insertUserWithCard(USER_ID, CARD);
+        insertUserWithCard(OTHER_USER_ID, OTHER_CARD);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.rollback();
+        connection.close();
+    }
+
+    @Test
+    public void selfTransfersDoNotShrinkBatches() {
+        // перевод самому себе попадает в обе ветви запроса и идет в них раньше входящих переводов
+        for (int i = 0; i < 3; i++) {
+            insertTransfer(CARD, CARD);
+        }
+        for (int i = 0; i < 3; i++) {
+            insertTransfer(OTHER_CARD, CARD);
+        }
+
+        List<Integer> chunks = new ArrayList<>();
+        int deleted;
+        do {
+            deleted = jdbc.update(TransactionRepository.DELETE_BATCH_BY_USER_SQL,
+                    Map.of("userId", USER_ID, "batchSize", 4));
+            chunks.add(deleted);
+        } while (deleted > 0);
+
+        assertEquals(List.of(4, 2, 0), chunks);
+        assertEquals(0, remaining());
+    }
+
+    private void insertUserWithCard(long userId, long cardId) {
+        jdbc.update("INSERT INTO users (id, username, email, password) VALUES (:id, :name, :email, 'x')",
+                Map.of("id", userId, "name", "batch-delete-" + userId, "email", "batch-delete-" + userId + "@example.com"));
+        jdbc.update("INSERT INTO cards (id, user_id, card_number, card_holder_name, expiry_date, cvv, card_type) " +
+                "VALUES (:id, :userId, :number, 'TEST', DATE '2030-01-01', '000', 'DEBIT')",
+                Map.of("id", cardId, "userId", userId, "number", "TEST-" + cardId));
+    }
+
+    private void insertTransfer(long fromCardId, long toCardId) {
+        jdbc.update("INSERT INTO transactions (from_card_id, to_card_id, amount, transaction_type, status) " +
+                "VALUES (:from, :to, 1, 'TRANSFER', 'COMPLETED')", Map.of("from", fromCardId, "to", toCardId));
+    }
+
+    private int remaining() {
+        Integer count = jdbc.queryForObject("SELECT count(*) FROM transactions WHERE from_card_id = :id " +
+                "OR to_card_id = :id", Map.of("id", CARD), Integer.class);
+        return count != null ? count : 0;
+    }
+}
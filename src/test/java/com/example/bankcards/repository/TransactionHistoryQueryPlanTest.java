@@ -0,0 +1,84 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.TestDatabase;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверяет план запросов истории карты на реальной PostgreSQL с примененными миграциями.
+ * Запускается только при заданной переменной окружения BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class TransactionHistoryQueryPlanTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void recentByCardUsesBoundedIndexScans() throws Exception {
+        JsonNode plan = explain(TransactionRepository.RECENT_BY_CARD_SQL
+                .replace(":cardId", "1")
+                .replace(":limit", "10"));
+
+        assertNoUnboundedSort(plan);
+        assertTrue(plan.toString().contains("\"Index Cond\":\"(from_card_id = 1)\""), plan.toString());
+        assertTrue(plan.toString().contains("\"Index Cond\":\"(to_card_id = 1)\""), plan.toString());
+    }
+
+    @Test
+    public void historyPageBeforeUsesBoundedIndexScans() throws Exception {
+        JsonNode plan = explain(TransactionRepository.HISTORY_PAGE_BEFORE_SQL
+                .replace(":cardId", "1")
+                .replace(":createdAt", "TIMESTAMP '2100-01-01 00:00:00'")
+                .replace(":id", "1000000")
+                .replace(":limit", "10"));
+
+        assertNoUnboundedSort(plan);
+    }
+
+    private JsonNode explain(String sql) throws Exception {
+        try (Connection connection = TestDatabase.connect()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            // На тестовой базе мало строк: без этого планировщик выберет seq scan независимо от индексов
+            jdbcTemplate.execute("SET enable_seqscan = off");
+            String json = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class);
+            return objectMapper.readTree(json).get(0).get("Plan");
+        }
+    }
+
+    /**
+     * Сортировка допустима только над уже ограниченными (Limit) ветвями;
+     * сортировка, под которой есть неограниченный проход по таблице, - регрессия плана.
+     */
+    private static void assertNoUnboundedSort(JsonNode node) {
+        if ("Sort".equals(node.path("Node Type").asText())) {
+            assertFalse(hasUnboundedScan(node), "Sort over unbounded scan: " + node);
+        }
+        for (JsonNode child : node.path("Plans")) {
+            assertNoUnboundedSort(child);
+        }
+    }
+
+    private static boolean hasUnboundedScan(JsonNode node) {
+        String type = node.path("Node Type").asText();
+        if ("Limit".equals(type)) {
+            return false;
+        }
+        if (type.endsWith("Scan") && node.has("Relation Name")) {
+            return true;
+        }
+        for (JsonNode child : node.path("Plans")) {
+            if (hasUnboundedScan(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.bankcards.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvertedIndexTest {
+
+    @Test
+    public void testInfixAndPrefixSearch() {
+        InvertedIndex index = InvertedIndex.build(Map.of(
+                1L, "Ivan Petrov",
+                2L, "Petr Ivanov",
+                3L, "Olga Smirnova"));
+
+        assertArrayEquals(new long[]{2, 1}, index.search("IVAN"));
+        assertArrayEquals(new long[]{1}, index.search("van pet"));
+        assertArrayEquals(new long[]{3}, index.search("mirn"));
+        assertArrayEquals(new long[0], index.search("xyz"));
+    }
+
+    @Test
+    public void testTrigramsMustBeContiguous() {
+        InvertedIndex index = InvertedIndex.build(Map.of(1L, "abcd bcde"));
+
+        assertArrayEquals(new long[]{1}, index.search("bcd"));
+        assertArrayEquals(new long[0], index.search("abcde"));
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        InvertedIndex index = InvertedIndex.build(Map.of(1L, "Ivan Petrov"));
+
+        index.put(5L, "Ivan Sidorov");
+        assertArrayEquals(new long[]{5, 1}, index.search("ivan"));
+
+        index.put(1L, "Anna Petrova");
+        assertArrayEquals(new long[]{5}, index.search("ivan"));
+        assertArrayEquals(new long[]{1}, index.search("anna"));
+
+        index.remove(5L);
+        assertArrayEquals(new long[0], index.search("ivan"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testIntersect() {
+        assertArrayEquals(new long[]{3, 7}, InvertedIndex.intersect(new long[]{1, 3, 5, 7}, new long[]{2, 3, 7, 9}));
+        assertArrayEquals(new long[0], InvertedIndex.intersect(new long[]{1}, new long[0]));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.bankcards.search;
+
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.sharding.ShardFanOut;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SearchIndexServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ShardFanOut shardFanOut;
+
+    @InjectMocks
+    private SearchIndexService service;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        lenient().when(shardFanOut.collect(any())).thenAnswer(invocation -> List.of(((Supplier<?>) invocation.getArgument(0)).get()));
+    }
+
+    @Test
+    public void testRebuildRequestedDuringBuildRunsOnceMoreAfterIt() throws Exception {
+        CountDownLatch inFirstBuild = new CountDownLatch(1);
+        CountDownLatch releaseFirstBuild = new CountDownLatch(1);
+        AtomicInteger cardScans = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (cardScans.incrementAndGet() == 1) {
+                inFirstBuild.countDown();
+                assertTrue(releaseFirstBuild.await(5, TimeUnit.SECONDS));
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT id, card_holder_name"), any(RowCallbackHandler.class));
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(service::rebuild);
+        assertTrue(inFirstBuild.await(5, TimeUnit.SECONDS));
+
+        // не ждет и не ломает текущую пересборку, а ставит повторную
+        service.rebuild();
+        service.onCardChanged(CardChangedEvent.deleted(1L, 1L));
+        releaseFirstBuild.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, cardScans.get());
+        assertTrue(service.isReady());
+    }
+
+    @Test
+    public void testFailedBuildKeepsApplyingChanges() {
+        service.rebuild();
+        doThrow(new IllegalStateException("shard down"))
+                .when(jdbcTemplate).query(startsWith("SELECT id, card_holder_name"), any(RowCallbackHandler.class));
+
+        assertThrows(IllegalStateException.class, service::invalidateAll);
+        service.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.CREATED, 5L, 1L, "IVAN PETROV"));
+
+        assertArrayEquals(new long[]{5}, service.searchCards("petrov").orElseThrow());
+    }
+
+    @Test
+    public void testSortedPageIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SearchIndexService.loadPage(new long[]{1, 2},
+                PageRequest.of(0, 10, Sort.by("createdAt")), ids -> List.<Long>of(), id -> id));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.cache.CacheInvalidation;
+import com.example.bankcards.event.CardChangedEvent;
+import com.example.bankcards.sharding.ShardFanOut;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CardOwnershipTest {
+
+    private static final String ALL_CARDS = "SELECT id, user_id FROM cards";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ShardFanOut shardFanOut;
+
+    @InjectMocks
+    private CardOwnership ownership;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(ownership, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(ownership, "meterRegistry", new SimpleMeterRegistry());
+        ownership.init();
+        lenient().when(shardFanOut.collect(any())).thenAnswer(invocation -> List.of(((Supplier<?>) invocation.getArgument(0)).get()));
+    }
+
+    @Test
+    public void testMissIsLoadedOnce() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT user_id"), eq(Long.class), eq(5L))).thenReturn(List.of(50L));
+
+        assertEquals(50L, ownership.ownerOf(5L));
+        assertEquals(50L, ownership.ownerOf(5L));
+
+        verify(jdbcTemplate, times(1)).queryForList(startsWith("SELECT user_id"), eq(Long.class), eq(5L));
+    }
+
+    @Test
+    public void testCardDeletedDuringReadIsNotReinserted() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT user_id"), eq(Long.class), eq(5L))).thenAnswer(invocation -> {
+            // строка прочитана до фиксации удаления, событие пришло до записи в отображение
+            ownership.onCardChanged(CardChangedEvent.deleted(5L, 50L));
+            return List.of(50L);
+        }).thenReturn(List.of());
+
+        assertEquals(50L, ownership.ownerOf(5L));
+        assertEquals(0, ownership.size());
+        assertEquals(-1, ownership.ownerOf(5L));
+    }
+
+    @Test
+    public void testRebuildRequestedDuringRebuildRunsOnceMoreAfterIt() throws Exception {
+        CountDownLatch inFirstBuild = new CountDownLatch(1);
+        CountDownLatch releaseFirstBuild = new CountDownLatch(1);
+        AtomicInteger scans = new AtomicInteger();
+        when(jdbcTemplate.query(eq(ALL_CARDS), any(RowMapper.class))).thenAnswer(invocation -> {
+            if (scans.incrementAndGet() == 1) {
+                inFirstBuild.countDown();
+                assertTrue(releaseFirstBuild.await(5, TimeUnit.SECONDS));
+                return List.of(new long[]{1, 10});
+            }
+            return List.of(new long[]{1, 10}, new long[]{2, 20}, new long[]{3, 30});
+        });
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(ownership::rebuild);
+        assertTrue(inFirstBuild.await(5, TimeUnit.SECONDS));
+
+        // не ждет и не запускает вторую пересборку параллельно, а ставит повторную
+        ownership.rebuild();
+        ownership.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.CREATED, 3L, 30L, "IVAN PETROV"));
+        releaseFirstBuild.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, scans.get());
+        assertEquals(3, ownership.size());
+        assertEquals(30L, ownership.ownerOf(3L));
+    }
+
+    @Test
+    public void testOnlyDeletionFromOtherNodeRemovesOwner() {
+        when(jdbcTemplate.query(eq(ALL_CARDS), any(RowMapper.class))).thenReturn(List.of(new long[]{1, 10}));
+        ownership.rebuild();
+
+        ownership.invalidate(CacheInvalidation.Entity.CARD_BALANCE, 1L);
+        ownership.invalidate(CacheInvalidation.Entity.CARD, 1L);
+        assertEquals(10L, ownership.ownerOf(1L));
+        assertEquals(0L, ReflectionTestUtils.getField(ownership, "removals"));
+
+        ownership.invalidate(CacheInvalidation.Entity.CARD_DELETED, 1L);
+        assertEquals(0, ownership.size());
+        verify(jdbcTemplate, never()).queryForList(startsWith("SELECT user_id"), eq(Long.class), anyLong());
+    }
+
+    @Test
+    public void testFailedRebuildKeepsApplyingChanges() {
+        when(jdbcTemplate.query(eq(ALL_CARDS), any(RowMapper.class)))
+                .thenReturn(List.of(new long[]{1, 10}))
+                .thenThrow(new IllegalStateException("shard down"));
+        ownership.rebuild();
+
+        assertThrows(IllegalStateException.class, ownership::invalidateAll);
+        ownership.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.CREATED, 2L, 20L, "IVAN PETROV"));
+        ownership.onCardChanged(CardChangedEvent.deleted(1L, 10L));
+
+        assertEquals(1, ownership.size());
+        assertEquals(20L, ownership.ownerOf(2L));
+        assertNull(ReflectionTestUtils.getField(ownership, "pendingDuringBuild"));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.controller.CardController;
+import com.example.bankcards.controller.TransactionController;
+import com.example.bankcards.event.CardChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.util.SimpleMethodInvocation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Стоимость проверки {@code @PreAuthorize} на горячих методах {@link CardController} и
+ * {@link TransactionController} без HTTP и БД: владельцы карт заранее загружены в {@link CardOwnership}.
+ * <p>
+ * {@code beanReference} - прежняя форма {@code @cardOwnership.owns(#id, authentication)}, которую SpEL
+ * не компилирует ни в одном режиме. Запуск - см. README_Security.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodSecurityBenchmark {
+
+    private static final int CARDS = 100_000;
+    private static final long OWNER_ID = 7;
+    private static final long CARD_ID = 8;
+    private static final String BEAN_REFERENCE_EXPRESSION =
+            "hasRole('ADMIN') or hasRole('USER') and @cardOwnership.owns(#id, authentication)";
+
+    @Param({"OFF", "IMMEDIATE"})
+    public SpelCompilerMode compilerMode;
+
+    private PreAuthorizeAuthorizationManager manager;
+    private CardSecurityExpressionHandler handler;
+    private Supplier<Authentication> owner;
+    private Supplier<Authentication> admin;
+    private MethodInvocation getCardById;
+    private MethodInvocation getCardHistory;
+    private ExpressionParser parser;
+    private Expression beanReference;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CardOwnership cardOwnership = new CardOwnership();
+        ReflectionTestUtils.setField(cardOwnership, "meterRegistry", new SimpleMeterRegistry());
+        cardOwnership.init();
+        for (long cardId = 1; cardId <= CARDS; cardId++) {
+            long userId = cardId == CARD_ID ? OWNER_ID : 1000 + cardId % 5000;
+            cardOwnership.onCardChanged(new CardChangedEvent(CardChangedEvent.Type.CREATED, cardId, userId, null));
+        }
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean("cardOwnership", CardOwnership.class, () -> cardOwnership);
+        context.refresh();
+        handler = new CardSecurityExpressionHandler(context.getBeanProvider(CardOwnership.class), compilerMode);
+        handler.setApplicationContext(context);
+        manager = new PreAuthorizeAuthorizationManager();
+        manager.setExpressionHandler(handler);
+
+        owner = authentication(OWNER_ID, "ROLE_USER");
+        admin = authentication(1L, "ROLE_ADMIN");
+        Method cardMethod = CardController.class.getMethod("getCardById", Long.class);
+        Method historyMethod = TransactionController.class.getMethod("getCardHistory", Long.class, String.class, Integer.class);
+        getCardById = new SimpleMethodInvocation(new CardController(), cardMethod, CARD_ID);
+        getCardHistory = new SimpleMethodInvocation(new TransactionController(), historyMethod, CARD_ID, null, null);
+        // тот же разборщик, что у обработчика
+        parser = new SpelExpressionParser(new SpelParserConfiguration(compilerMode, getClass().getClassLoader()));
+        beanReference = parser.parseExpression(BEAN_REFERENCE_EXPRESSION);
+
+        if (compilerMode != SpelCompilerMode.OFF) {
+            requireCompilable(cardMethod, getCardById);
+            requireCompilable(historyMethod, getCardHistory);
+        }
+    }
+
+    @Benchmark
+    public boolean cardGetByIdOwner() {
+        return manager.check(owner, getCardById).isGranted();
+    }
+
+    @Benchmark
+    public boolean cardGetByIdAdmin() {
+        return manager.check(admin, getCardById).isGranted();
+    }
+
+    @Benchmark
+    public boolean transactionHistoryOwner() {
+        return manager.check(owner, getCardHistory).isGranted();
+    }
+
+    @Benchmark
+    public boolean beanReferenceOwner() {
+        return ExpressionUtils.evaluateAsBoolean(beanReference, handler.createEvaluationContext(owner, getCardById));
+    }
+
+    /**
+     * Прогоняет выражение метода по обеим ветвям и проверяет, что SpEL смог его скомпилировать -
+     * иначе замер режима компиляции ничего не показывает.
+     */
+    private void requireCompilable(Method method, MethodInvocation invocation) {
+        String source = method.getAnnotation(PreAuthorize.class).value();
+        SpelExpression expression = (SpelExpression) parser.parseExpression(source);
+        ExpressionUtils.evaluateAsBoolean(expression, handler.createEvaluationContext(owner, invocation));
+        ExpressionUtils.evaluateAsBoolean(expression, handler.createEvaluationContext(admin, invocation));
+        if (!expression.compileExpression()) {
+            throw new IllegalStateException("Выражение не компилируется SpEL: " + source);
+        }
+    }
+
+    private static Supplier<Authentication> authentication(long userId, String role) {
+        List<SimpleGrantedAuthority> authorities = List.of(new SimpleGrantedAuthority(role));
+        UserPrincipal principal = new UserPrincipal(userId, "user" + userId, "", true, authorities);
+        Authentication authentication = UsernamePasswordAuthenticationToken.authenticated(principal, null, authorities);
+        return () -> authentication;
+    }
+}
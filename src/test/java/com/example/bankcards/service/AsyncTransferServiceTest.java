@@ -0,0 +1,219 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.TestDatabase;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.security.CardOwnership;
+import com.example.bankcards.sharding.ShardMap;
+import com.example.bankcards.util.CardNumberAttributeConverter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.mockito.InOrder;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Очередь асинхронных переводов на реальной PostgreSQL. Все изменения идут через одно соединение
+ * в транзакции, которая откатывается после теста; менеджер транзакций очереди заглушен, выполнение
+ * перевода ({@link TransactionService#executeQueuedTransfer}) подменено. Запускается при заданной
+ * BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class AsyncTransferServiceTest {
+
+    private static final long USER_ID = 990000301L;
+    private static final long FROM_CARD = 990000301L;
+    private static final long TO_CARD = 990000302L;
+    private static final long FIRST = 990000301L;
+    private static final long SECOND = 990000302L;
+
+    private Connection connection;
+    private JdbcTemplate jdbc;
+    private final TransactionService transactionService = mock(TransactionService.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final CardRepository cardRepository = mock(CardRepository.class);
+    private final CardOwnership cardOwnership = mock(CardOwnership.class);
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private AsyncTransferService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = TestDatabase.connect();
+        connection.setAutoCommit(false);
+        jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        jdbc.update("DELETE FROM transfer_queue");
+
+        meterRegistry = new SimpleMeterRegistry();
+        service = new AsyncTransferService(mock(PlatformTransactionManager.class), meterRegistry);
+        ReflectionTestUtils.setField(service, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(service, "cardOwnership", cardOwnership);
+        ReflectionTestUtils.setField(service, "cardRepository", cardRepository);
+        ReflectionTestUtils.setField(service, "transactionRepository", transactionRepository);
+        ReflectionTestUtils.setField(service, "transactionService", transactionService);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(service, "executor", (TaskExecutor) scheduled::add);
+        ReflectionTestUtils.setField(service, "workers", 1);
+        ReflectionTestUtils.setField(service, "maxQueueDepth", 10L);
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        ReflectionTestUtils.setField(service, "retryDelayMs", 1000L);
+        ReflectionTestUtils.setField(service, "maxTransfersPerPoll", 100);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.rollback();
+        connection.close();
+    }
+
+    @Test
+    public void testQueuedTransfersAreExecutedInOrderAndDeleted() {
+        enqueue(SECOND, "2000-01-01", 0);
+        enqueue(FIRST, "2000-01-02", 0);
+        enqueue(990000303L, "2999-01-01", 0);
+        when(transactionService.executeQueuedTransfer(anyLong()))
+                .thenReturn(TransactionStatus.COMPLETED, TransactionStatus.FAILED);
+
+        pollAndRun();
+
+        InOrder order = inOrder(transactionService);
+        order.verify(transactionService).executeQueuedTransfer(SECOND);
+        order.verify(transactionService).executeQueuedTransfer(FIRST);
+        verifyNoMoreInteractions(transactionService);
+        assertEquals(List.of(990000303L), jdbc.queryForList("SELECT transaction_id FROM transfer_queue", Long.class));
+        assertEquals(1, processed(TransactionStatus.COMPLETED));
+        assertEquals(1, processed(TransactionStatus.FAILED));
+    }
+
+    @Test
+    public void testLatencyUsesDatabaseClock() {
+        // часовой пояс сессии далек от пояса JVM: created_at и localtimestamp в нем оба
+        jdbc.execute("SET LOCAL TIME ZONE 'Pacific/Kiritimati'");
+        jdbc.update("INSERT INTO transfer_queue (transaction_id, created_at, next_attempt_at) " +
+                "VALUES (?, localtimestamp - interval '5 seconds', localtimestamp)", FIRST);
+        when(transactionService.executeQueuedTransfer(FIRST)).thenReturn(TransactionStatus.COMPLETED);
+
+        pollAndRun();
+
+        Timer latency = meterRegistry.timer("bankcards.transfers.async.latency");
+        assertEquals(1, latency.count());
+        assertTrue(latency.totalTime(TimeUnit.SECONDS) >= 5 && latency.totalTime(TimeUnit.SECONDS) < 60,
+                "задержка " + latency.totalTime(TimeUnit.SECONDS) + " с");
+    }
+
+    @Test
+    public void testFailedExecutionIsPostponedWithBackoff() {
+        enqueue(FIRST, "2000-01-01", 0);
+        when(transactionService.executeQueuedTransfer(FIRST)).thenThrow(new QueryTimeoutException("statement timeout"));
+
+        pollAndRun();
+        Map<String, Object> first = queueRow(FIRST);
+        jdbc.update("UPDATE transfer_queue SET next_attempt_at = TIMESTAMP '2000-01-01'");
+        pollAndRun();
+        Map<String, Object> second = queueRow(FIRST);
+
+        assertEquals(1, ((Number) first.get("attempts")).intValue());
+        assertEquals(1.0, ((Number) first.get("delay")).doubleValue(), 0.001);
+        assertTrue(((String) first.get("last_error")).contains("statement timeout"));
+        assertEquals(2, ((Number) second.get("attempts")).intValue());
+        assertEquals(2.0, ((Number) second.get("delay")).doubleValue(), 0.001);
+        assertEquals(2, meterRegistry.counter("bankcards.transfers.async.retries").count());
+    }
+
+    @Test
+    public void testTransferFailsAfterMaxAttempts() {
+        insertPendingTransaction(FIRST);
+        enqueue(FIRST, "2000-01-01", 2);
+        when(transactionService.executeQueuedTransfer(FIRST)).thenThrow(new QueryTimeoutException("statement timeout"));
+
+        pollAndRun();
+
+        // статус FAILED и события об отказе - TransactionServiceTest
+        verify(transactionService).failQueuedTransfer(FIRST);
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM transfer_queue", Integer.class));
+        assertEquals(1, processed(TransactionStatus.FAILED));
+    }
+
+    @Test
+    public void testSubmitIsRejectedWhenQueueIsFull() {
+        when(cardOwnership.ownerOf(anyLong())).thenReturn(USER_ID);
+        when(cardRepository.getReferenceById(anyLong())).thenReturn(new Card());
+        when(transactionRepository.save(any())).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setId(FIRST);
+            return transaction;
+        });
+        ReflectionTestUtils.setField(service, "maxQueueDepth", 2L);
+        enqueue(SECOND, "2999-01-01", 0);
+        service.poll();
+
+        Transaction accepted = service.submit(FROM_CARD, TO_CARD, new BigDecimal("10.00"), null);
+        BusinessException full = assertThrows(BusinessException.class,
+                () -> service.submit(FROM_CARD, TO_CARD, new BigDecimal("10.00"), null));
+
+        assertEquals(TransactionStatus.PENDING, accepted.getStatus());
+        assertEquals("TRANSFER_QUEUE_FULL", full.getErrorCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, full.getHttpStatus());
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM transfer_queue", Integer.class));
+        verify(transactionRepository, times(1)).save(any());
+    }
+
+    private void pollAndRun() {
+        service.poll();
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private void enqueue(long transactionId, String nextAttemptAt, int attempts) {
+        jdbc.update("INSERT INTO transfer_queue (transaction_id, attempts, next_attempt_at) " +
+                "VALUES (?, ?, CAST(? AS timestamp))", transactionId, attempts, nextAttemptAt);
+    }
+
+    private void insertPendingTransaction(long id) {
+        CardNumberAttributeConverter numbers = new CardNumberAttributeConverter();
+        jdbc.update("INSERT INTO users (id, username, email, password) VALUES (?, 'async-test', " +
+                "'async-test@example.com', 'x')", USER_ID);
+        for (long cardId : new long[]{FROM_CARD, TO_CARD}) {
+            jdbc.update("INSERT INTO cards (id, user_id, card_number, card_holder_name, expiry_date, cvv, " +
+                    "card_type, balance) VALUES (?, ?, ?, 'IVAN PETROV', DATE '2030-01-01', '000', 'DEBIT', 100.00)",
+                    cardId, USER_ID, numbers.convertToDatabaseColumn(String.format("4000123412%06d", cardId % 1000000)));
+        }
+        jdbc.update("INSERT INTO transactions (id, from_card_id, to_card_id, amount, transaction_type, status) " +
+                "VALUES (?, ?, ?, 10.00, 'TRANSFER', 'PENDING')", id, FROM_CARD, TO_CARD);
+    }
+
+    private Map<String, Object> queueRow(long transactionId) {
+        return jdbc.queryForMap("SELECT attempts, last_error, " +
+                "extract(epoch FROM next_attempt_at - localtimestamp) AS delay FROM transfer_queue " +
+                "WHERE transaction_id = ?", transactionId);
+    }
+
+    private double processed(TransactionStatus status) {
+        return meterRegistry.counter("bankcards.transfers.async.processed", "status", status.name()).count();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkDeletionServiceTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private BulkDeletionService service;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "batchSize", 4);
+    }
+
+    @Test
+    public void testPartialChunkDoesNotStopDeletion() {
+        when(transactionRepository.deleteBatchByUserId(7L, 4)).thenReturn(4, 1, 3, 0);
+        when(cardRepository.findIdsByUserId(7L)).thenReturn(List.of(70L));
+
+        assertEquals(8, service.deleteUser(7L));
+
+        verify(transactionRepository, times(4)).deleteBatchByUserId(7L, 4);
+        verify(userRepository).deleteRowById(7L);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.TestDatabase;
+import com.example.bankcards.dto.BulkTransferLine;
+import com.example.bankcards.dto.BulkTransferResponse;
+import com.example.bankcards.dto.BulkTransferResponse.Status;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.TransactionBatchCompletedEvent;
+import com.example.bankcards.event.TransactionCompletedEvent;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.outbox.OutboxWriter;
+import com.example.bankcards.sharding.ShardMap;
+import com.example.bankcards.util.CardNumberAttributeConverter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Массовый перевод на реальной PostgreSQL. Все изменения идут через одно соединение в транзакции,
+ * которая откатывается после теста; менеджер транзакций заглушен. Запускается при заданной
+ * BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class BulkTransferServiceTest {
+
+    private static final long SENDER = 990000401L;
+    private static final long RECIPIENT = 990000402L;
+    private static final long FROM_CARD = 990000401L;
+    private static final long TO_CARD = 990000402L;
+    private static final long SECOND_TO_CARD = 990000403L;
+    private static final long INACTIVE_CARD = 990000404L;
+    private static final long OTHER_CARD = 990000405L;
+    private static final long MISSING_CARD = 990000499L;
+
+    private Connection connection;
+    private JdbcTemplate jdbc;
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private BulkTransferService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = TestDatabase.connect();
+        connection.setAutoCommit(false);
+        jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+
+        OutboxWriter outboxWriter = new OutboxWriter();
+        ReflectionTestUtils.setField(outboxWriter, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(outboxWriter, "enabled", true);
+
+        service = new BulkTransferService(mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(service, "outboxWriter", outboxWriter);
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "maxLines", 100);
+
+        insertUser(SENDER, "bulk-sender");
+        insertUser(RECIPIENT, "bulk-recipient");
+        insertCard(FROM_CARD, SENDER, "100.00", true);
+        insertCard(TO_CARD, RECIPIENT, "0.00", true);
+        insertCard(SECOND_TO_CARD, RECIPIENT, "0.00", true);
+        insertCard(INACTIVE_CARD, RECIPIENT, "0.00", false);
+        insertCard(OTHER_CARD, RECIPIENT, "0.00", true);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.rollback();
+        connection.close();
+    }
+
+    @Test
+    public void testAcceptedLinesAreTransferredAndRejectedLinesReported() {
+        BulkTransferResponse response = service.transfer(FROM_CARD, List.of(
+                line(TO_CARD, "30.00", null),
+                line(INACTIVE_CARD, "5.00", null),
+                line(TO_CARD, "10.00", "Премия"),
+                line(MISSING_CARD, "5.00", null),
+                line(SECOND_TO_CARD, "-1", null),
+                line(FROM_CARD, "5.00", null),
+                line(SECOND_TO_CARD, "0.001", null)), "Зарплата");
+
+        assertEquals(2, response.getCompleted());
+        assertEquals(5, response.getRejected());
+        assertEquals(0, new BigDecimal("40.00").compareTo(response.getTotalAmount()));
+        assertEquals(List.of(2, 4, 5, 6, 7), errorLines(response));
+        assertEquals(List.of(Status.CARD_INACTIVE, Status.CARD_NOT_FOUND, Status.INVALID_AMOUNT, Status.SAME_CARD,
+                Status.INVALID_AMOUNT), errorStatuses(response));
+
+        assertBalance(FROM_CARD, "60.00");
+        assertBalance(TO_CARD, "40.00");
+        assertBalance(SECOND_TO_CARD, "0.00");
+        assertEquals(List.of("Зарплата", "Премия"), jdbc.queryForList("SELECT description FROM transactions " +
+                "WHERE from_card_id = ? AND status = 'COMPLETED' ORDER BY amount DESC", String.class, FROM_CARD));
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM outbox_events o JOIN transactions t " +
+                "ON o.aggregate_id = t.id WHERE o.event_type = 'TRANSFER_COMPLETED' AND t.from_card_id = ?",
+                Integer.class, FROM_CARD));
+
+        ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(List.of(FROM_CARD, TO_CARD), ((CardBalanceChangedEvent) events.getAllValues().get(0)).getCardIds());
+        List<TransactionCompletedEvent> completed =
+                ((TransactionBatchCompletedEvent) events.getAllValues().get(1)).getTransactions();
+        assertEquals(2, completed.size());
+        for (TransactionCompletedEvent transaction : completed) {
+            assertNotNull(transaction.getTransactionId());
+            assertNotNull(transaction.getCreatedAt());
+            assertEquals("TRANSFER", transaction.getType());
+            assertEquals(FROM_CARD, transaction.getFromCardId());
+            assertEquals(SENDER, transaction.getFromUserId());
+            assertEquals(TO_CARD, transaction.getToCardId());
+            assertEquals(RECIPIENT, transaction.getToUserId());
+        }
+    }
+
+    @Test
+    public void testInsufficientFundsTransfersNothing() {
+        BusinessException error = assertThrows(BusinessException.class, () -> service.transfer(FROM_CARD, List.of(
+                line(TO_CARD, "60.00", null),
+                line(SECOND_TO_CARD, "50.00", null)), null));
+
+        assertEquals("INSUFFICIENT_FUNDS", error.getErrorCode());
+        assertBalance(FROM_CARD, "100.00");
+        assertBalance(TO_CARD, "0.00");
+        assertBalance(SECOND_TO_CARD, "0.00");
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM transactions WHERE from_card_id = ?",
+                Integer.class, FROM_CARD));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    public void testSenderAndRecipientCardsAreLockedBeforeChecks() {
+        BulkTransferResponse response = service.transfer(FROM_CARD, List.of(
+                line(INACTIVE_CARD, "5.00", null),
+                line(MISSING_CARD, "5.00", null)), null);
+
+        assertEquals(0, response.getCompleted());
+        assertEquals(2, response.getRejected());
+        assertEquals(List.of(FROM_CARD, INACTIVE_CARD), lockedCards());
+    }
+
+    @Test
+    public void testInsufficientFundsKeepsCardsLockedUntilRollback() {
+        assertThrows(BusinessException.class, () -> service.transfer(FROM_CARD, List.of(
+                line(TO_CARD, "60.00", null),
+                line(SECOND_TO_CARD, "50.00", null)), null));
+
+        assertEquals(List.of(FROM_CARD, TO_CARD, SECOND_TO_CARD), lockedCards());
+    }
+
+    @Test
+    public void testCsvErrorsReportFileLineNumbers() {
+        String body = "toCardId,amount,description\r\n" +
+                TO_CARD + ",10.00\r\n" +
+                "abc,5.00\r\n" +
+                SECOND_TO_CARD + ",1.005\r\n" +
+                INACTIVE_CARD + ",1.00,\"Аванс, март\"\r\n\r\n";
+
+        BulkTransferResponse withHeader = service.transferCsv(FROM_CARD, body, null);
+        BulkTransferResponse withoutHeader = service.transferCsv(FROM_CARD, body.substring(body.indexOf('\n') + 1), null);
+
+        assertEquals(1, withHeader.getCompleted());
+        assertEquals(List.of(3, 4, 5), errorLines(withHeader));
+        assertEquals(List.of(Status.INVALID_LINE, Status.INVALID_AMOUNT, Status.CARD_INACTIVE),
+                errorStatuses(withHeader));
+        assertEquals(List.of(2, 3, 4), errorLines(withoutHeader));
+        assertBalance(TO_CARD, "20.00");
+    }
+
+    @Test
+    public void testCsvHeaderIsRecognisedByColumnNames() {
+        BulkTransferService.CsvLines header = service.parseCsv("\uFEFF\"ToCardId\", AMOUNT\n" + TO_CARD + ",1.00\n");
+        BulkTransferService.CsvLines bomData = service.parseCsv("\uFEFF" + TO_CARD + ",1.00\n");
+
+        assertEquals(2, header.firstLine());
+        assertEquals(1, header.lines().size());
+        assertEquals(1, bomData.firstLine());
+        assertEquals(TO_CARD, bomData.lines().get(0).getToCardId());
+
+        BulkTransferResponse response = service.transferCsv(FROM_CARD, "x123,10\n" + TO_CARD + ",1.00\n", null);
+
+        assertEquals(1, response.getCompleted());
+        assertEquals(List.of(1), errorLines(response));
+        assertEquals(List.of(Status.INVALID_LINE), errorStatuses(response));
+    }
+
+    /**
+     * Строки, заблокированные текущей транзакцией, но не измененные ею: у них xmax - ее номер.
+     */
+    private List<Long> lockedCards() {
+        return jdbc.queryForList("SELECT id FROM cards WHERE id BETWEEN ? AND ? " +
+                "AND xmax::text::bigint = txid_current() ORDER BY id", Long.class, FROM_CARD, OTHER_CARD);
+    }
+
+    private static List<Integer> errorLines(BulkTransferResponse response) {
+        return response.getErrors().stream().map(BulkTransferResponse.LineError::getLine).toList();
+    }
+
+    private static List<Status> errorStatuses(BulkTransferResponse response) {
+        return response.getErrors().stream().map(BulkTransferResponse.LineError::getStatus).toList();
+    }
+
+    private void assertBalance(long cardId, String expected) {
+        BigDecimal balance = jdbc.queryForObject("SELECT balance FROM cards WHERE id = ?", BigDecimal.class, cardId);
+        assertEquals(0, new BigDecimal(expected).compareTo(balance), "баланс карты " + cardId + ": " + balance);
+    }
+
+    private static BulkTransferLine line(long toCardId, String amount, String description) {
+        return new BulkTransferLine(toCardId, new BigDecimal(amount), description);
+    }
+
+    private void insertUser(long id, String username) {
+        jdbc.update("INSERT INTO users (id, username, email, password) VALUES (?, ?, ?, 'x')",
+                id, username, username + "@example.com");
+    }
+
+    private void insertCard(long id, long userId, String balance, boolean active) {
+        CardNumberAttributeConverter numbers = new CardNumberAttributeConverter();
+        jdbc.update("INSERT INTO cards (id, user_id, card_number, card_holder_name, expiry_date, cvv, card_type, " +
+                        "balance, is_active) VALUES (?, ?, ?, 'IVAN PETROV', DATE '2030-01-01', '000', 'DEBIT', ?, ?)",
+                id, userId, numbers.convertToDatabaseColumn(String.format("4000123412%06d", id % 1000000)),
+                new BigDecimal(balance), active);
+    }
+}
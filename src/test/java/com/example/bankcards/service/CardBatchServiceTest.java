@@ -0,0 +1,90 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.cache.CardSnapshot;
+import com.example.bankcards.cache.CardSnapshotCache;
+import com.example.bankcards.dto.CardBatchResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CardBatchServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    @Mock
+    private CardSnapshotCache cardSnapshotCache;
+
+    @InjectMocks
+    private CardBatchService service;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "maxIds", 5);
+    }
+
+    @Test
+    public void testMixedResultsForUser() {
+        when(cardSnapshotCache.getAll(List.of(1L, 2L, 3L))).thenReturn(Map.of(1L, card(1L, USER_ID), 2L, card(2L, 8L)));
+
+        CardBatchResponse<BigDecimal> response = service.resolve(Arrays.asList(1L, 2L, 3L, 0L, 1L, null), USER_ID,
+                false, CardSnapshot::balance);
+
+        assertEquals(List.of(1L, 2L, 3L, 0L), response.getResults().stream().limit(4).map(CardBatchResponse.Item::getId).toList());
+        assertEquals(List.of(CardBatchResponse.Status.OK, CardBatchResponse.Status.FORBIDDEN,
+                        CardBatchResponse.Status.FORBIDDEN, CardBatchResponse.Status.INVALID_ID,
+                        CardBatchResponse.Status.INVALID_ID),
+                response.getResults().stream().map(CardBatchResponse.Item::getStatus).toList());
+        assertEquals(new BigDecimal("10.00"), response.getResults().get(0).getData());
+        assertNull(response.getResults().get(1).getData());
+    }
+
+    @Test
+    public void testAdminSeesOtherUsersCardsAndNotFound() {
+        when(cardSnapshotCache.getAll(List.of(2L, 3L))).thenReturn(Map.of(2L, card(2L, 8L)));
+
+        CardBatchResponse<Long> response = service.resolve(List.of(2L, 3L), USER_ID, true, CardSnapshot::userId);
+
+        assertEquals(CardBatchResponse.Status.OK, response.getResults().get(0).getStatus());
+        assertEquals(8L, response.getResults().get(0).getData());
+        assertEquals(CardBatchResponse.Status.NOT_FOUND, response.getResults().get(1).getStatus());
+    }
+
+    @Test
+    public void testOnlyInvalidIdsSkipCache() {
+        CardBatchResponse<Long> response = service.resolve(List.of(-1L, 0L), USER_ID, false, CardSnapshot::id);
+
+        assertEquals(2, response.getResults().size());
+        verifyNoInteractions(cardSnapshotCache);
+    }
+
+    @Test
+    public void testLimitCountsUniqueIds() {
+        List<Long> repeated = LongStream.rangeClosed(1, 10).map(i -> (i % 5) + 1).boxed().toList();
+        when(cardSnapshotCache.getAll(anyCollection())).thenReturn(Map.of());
+
+        assertEquals(5, service.resolve(repeated, USER_ID, true, CardSnapshot::id).getResults().size());
+        assertThrows(IllegalArgumentException.class, () -> service.resolve(
+                LongStream.rangeClosed(1, 6).boxed().toList(), USER_ID, true, CardSnapshot::id));
+        assertThrows(IllegalArgumentException.class, () -> service.resolve(List.of(), USER_ID, true, CardSnapshot::id));
+    }
+
+    private static CardSnapshot card(Long id, Long userId) {
+        return new CardSnapshot(id, userId, "4000000000000000", "IVAN PETROV", null, null, null,
+                new BigDecimal("10.00"), true, null, null);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.repository.CardRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CardServiceTest {
+
+    private static final long CARD_ID = 5L;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private CardService service;
+
+    @Test
+    public void testDepositReadsBalanceUnderLock() {
+        Card card = card("100.00");
+        when(cardRepository.findById(CARD_ID)).thenReturn(Optional.of(card));
+        when(cardRepository.save(card)).thenReturn(card);
+
+        service.deposit(CARD_ID, new BigDecimal("25.00"));
+
+        InOrder order = inOrder(cardRepository);
+        order.verify(cardRepository).lockByIds(List.of(CARD_ID));
+        order.verify(cardRepository).findById(CARD_ID);
+        assertEquals(new BigDecimal("125.00"), card.getBalance());
+        verify(eventPublisher).publishEvent(any(CardBalanceChangedEvent.class));
+    }
+
+    @Test
+    public void testWithdrawChecksBalanceUnderLock() {
+        Card card = card("10.00");
+        when(cardRepository.findById(CARD_ID)).thenReturn(Optional.of(card));
+
+        assertThrows(IllegalStateException.class, () -> service.withdraw(CARD_ID, new BigDecimal("25.00")));
+
+        InOrder order = inOrder(cardRepository);
+        order.verify(cardRepository).lockByIds(List.of(CARD_ID));
+        order.verify(cardRepository).findById(CARD_ID);
+        verify(cardRepository, never()).save(any());
+    }
+
+    private static Card card(String balance) {
+        Card card = new Card();
+        card.setId(CARD_ID);
+        card.setIsActive(true);
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+}
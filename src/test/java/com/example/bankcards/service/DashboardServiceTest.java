@@ -0,0 +1,228 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardSummaryDto;
+import com.example.bankcards.dto.DashboardDto;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransactionMapper;
+import com.example.bankcards.dto.UserDto;
+import com.example.bankcards.dto.UserMapper;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.readmodel.CardSummaryReader;
+import com.example.bankcards.sharding.ShardMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DashboardServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private TransactionService transactionService;
+
+    @Mock
+    private UserMapper userMapper;
+
+    @Mock
+    private CardSummaryReader cardSummaryReader;
+
+    @Mock
+    private TransactionMapper transactionMapper;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPoolTaskExecutor executor;
+    private SimpleMeterRegistry meterRegistry;
+    private DashboardService service;
+
+    @BeforeEach
+    public void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(8);
+        executor.initialize();
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+
+        service = new DashboardService(transactionManager);
+        ReflectionTestUtils.setField(service, "userService", userService);
+        ReflectionTestUtils.setField(service, "cardService", cardService);
+        ReflectionTestUtils.setField(service, "transactionService", transactionService);
+        ReflectionTestUtils.setField(service, "userMapper", userMapper);
+        ReflectionTestUtils.setField(service, "cardSummaryReader", cardSummaryReader);
+        ReflectionTestUtils.setField(service, "transactionMapper", transactionMapper);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "dashboardExecutor", executor);
+        ReflectionTestUtils.setField(service, "recentTransactions", 5);
+        ReflectionTestUtils.setField(service, "profileBudgetMs", 2000L);
+        ReflectionTestUtils.setField(service, "cardsBudgetMs", 2000L);
+        ReflectionTestUtils.setField(service, "cardCountsBudgetMs", 2000L);
+        ReflectionTestUtils.setField(service, "recentTransactionsBudgetMs", 2000L);
+
+        User user = new User();
+        lenient().when(userService.findById(USER_ID)).thenReturn(Optional.of(user));
+        lenient().when(userMapper.toDto(user)).thenReturn(new UserDto());
+        lenient().when(cardSummaryReader.findByUser(USER_ID)).thenReturn(List.of(card(1L), card(2L)));
+        lenient().when(cardService.getUserCardsCount(USER_ID)).thenReturn(2L);
+        lenient().when(cardService.getActiveUserCardsCount(USER_ID)).thenReturn(1L);
+        lenient().when(transactionService.findLastTransactionsByCard(anyLong(), eq(5))).thenReturn(List.of(new Transaction()));
+        lenient().when(transactionMapper.toDto(any())).thenReturn(new TransactionDto());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAllPartsLoaded() {
+        DashboardDto dashboard = service.getDashboard(USER_ID);
+
+        assertTrue(dashboard.isComplete());
+        assertNotNull(dashboard.getProfile());
+        assertEquals(2, dashboard.getCards().size());
+        assertEquals(2L, dashboard.getCardCounts().getTotal());
+        assertEquals(List.of(1L, 2L), List.copyOf(dashboard.getRecentTransactions().keySet()));
+        assertEquals(List.of(DashboardService.PROFILE, DashboardService.CARDS, DashboardService.CARD_COUNTS,
+                DashboardService.RECENT_TRANSACTIONS), List.copyOf(dashboard.getParts().keySet()));
+        dashboard.getParts().values().forEach(part -> assertEquals(DashboardDto.PartStatus.OK, part.getStatus()));
+        // каждая часть в своей транзакции с таймаутом запроса не больше ее бюджета
+        statementTimeouts().forEach(timeout -> assertTrue(timeout > 0 && timeout <= 2000, "таймаут " + timeout));
+        assertEquals(1, meterRegistry.counter("bankcards.dashboard.parts", "part", DashboardService.CARDS,
+                "status", "OK").count());
+    }
+
+    @Test
+    public void testSlowPartTimesOutWithinItsBudget() {
+        ReflectionTestUtils.setField(service, "cardCountsBudgetMs", 100L);
+        when(cardService.getUserCardsCount(USER_ID)).thenAnswer(invocation -> awaitRelease(2L));
+
+        long start = System.nanoTime();
+        DashboardDto dashboard = service.getDashboard(USER_ID);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+        assertFalse(dashboard.isComplete());
+        assertNull(dashboard.getCardCounts());
+        assertEquals(DashboardDto.PartStatus.TIMEOUT, dashboard.getParts().get(DashboardService.CARD_COUNTS).getStatus());
+        assertEquals(DashboardDto.PartStatus.OK, dashboard.getParts().get(DashboardService.CARDS).getStatus());
+        assertEquals(2, dashboard.getRecentTransactions().size());
+    }
+
+    @Test
+    public void testLateStartedPartGetsOnlyRemainingBudget() {
+        when(cardSummaryReader.findByUser(USER_ID)).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return List.of(card(1L), card(2L));
+        });
+
+        DashboardDto dashboard = service.getDashboard(USER_ID);
+
+        assertTrue(dashboard.isComplete());
+        // последние операции запрошены после карт: до срока оставалось не больше 1700 мс
+        assertEquals(2, statementTimeouts().stream().filter(timeout -> timeout <= 1700).count());
+    }
+
+    @Test
+    public void testRejectedCardsSkipRecentTransactions() {
+        AtomicInteger submitted = new AtomicInteger();
+        TaskExecutor rejectsCards = task -> {
+            if (submitted.incrementAndGet() == 2) {
+                throw new TaskRejectedException("queue full");
+            }
+            executor.execute(task);
+        };
+        ReflectionTestUtils.setField(service, "dashboardExecutor", rejectsCards);
+
+        DashboardDto dashboard = service.getDashboard(USER_ID);
+
+        assertEquals(DashboardDto.PartStatus.REJECTED, dashboard.getParts().get(DashboardService.CARDS).getStatus());
+        assertEquals(DashboardDto.PartStatus.SKIPPED,
+                dashboard.getParts().get(DashboardService.RECENT_TRANSACTIONS).getStatus());
+        assertEquals(DashboardDto.PartStatus.OK, dashboard.getParts().get(DashboardService.PROFILE).getStatus());
+        assertNull(dashboard.getRecentTransactions());
+        verifyNoInteractions(transactionService);
+    }
+
+    @Test
+    public void testSlowCardMakesRecentTransactionsPartial() {
+        ReflectionTestUtils.setField(service, "recentTransactionsBudgetMs", 300L);
+        when(transactionService.findLastTransactionsByCard(2L, 5)).thenAnswer(invocation -> awaitRelease(List.of()));
+
+        DashboardDto dashboard = service.getDashboard(USER_ID);
+
+        DashboardDto.Part recent = dashboard.getParts().get(DashboardService.RECENT_TRANSACTIONS);
+        assertEquals(DashboardDto.PartStatus.PARTIAL, recent.getStatus());
+        assertTrue(recent.getError().startsWith("Нет данных по 1 из 2 карт"));
+        assertEquals(List.of(1L), List.copyOf(dashboard.getRecentTransactions().keySet()));
+        assertFalse(dashboard.isComplete());
+    }
+
+    @Test
+    public void testMissingUserFailsOnlyProfile() {
+        when(userService.findById(USER_ID)).thenReturn(Optional.empty());
+
+        DashboardDto dashboard = service.getDashboard(USER_ID);
+
+        DashboardDto.Part profile = dashboard.getParts().get(DashboardService.PROFILE);
+        assertEquals(DashboardDto.PartStatus.FAILED, profile.getStatus());
+        assertEquals("Пользователь не найден с ID: " + USER_ID, profile.getError());
+        assertEquals(DashboardDto.PartStatus.OK, dashboard.getParts().get(DashboardService.CARDS).getStatus());
+    }
+
+    private List<Long> statementTimeouts() {
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(5)).execute(statements.capture());
+        return statements.getAllValues().stream()
+                .map(sql -> Long.parseLong(sql.substring("SET LOCAL statement_timeout = ".length())))
+                .toList();
+    }
+
+    private <T> T awaitRelease(T value) throws InterruptedException {
+        release.await(5, TimeUnit.SECONDS);
+        return value;
+    }
+
+    private static CardSummaryDto card(Long id) {
+        CardSummaryDto card = new CardSummaryDto();
+        card.setId(id);
+        return card;
+    }
+}
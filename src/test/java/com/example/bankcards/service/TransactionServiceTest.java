@@ -0,0 +1,153 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionStatus;
+import com.example.bankcards.entity.TransactionType;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.event.TransactionFailedEvent;
+import com.example.bankcards.outbox.OutboxWriter;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TransactionServiceTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private OutboxWriter outboxWriter;
+
+    @InjectMocks
+    private TransactionService service;
+
+    @Test
+    public void testPaymentReadsBalanceUnderLock() {
+        Card card = card(5L, "100.00");
+        when(cardRepository.findById(5L)).thenReturn(Optional.of(card));
+        when(transactionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Transaction payment = service.createPaymentTransaction(5L, new BigDecimal("40.00"), null);
+
+        InOrder order = inOrder(cardRepository);
+        order.verify(cardRepository).lockByIds(List.of(5L));
+        order.verify(cardRepository).findById(5L);
+        assertEquals(TransactionStatus.COMPLETED, payment.getStatus());
+        assertEquals(new BigDecimal("60.00"), card.getBalance());
+    }
+
+    @Test
+    public void testConfirmLocksCardsOfTransaction() {
+        Transaction transfer = new Transaction(card(7L, "100.00"), card(3L, "0.00"), new BigDecimal("10.00"),
+                TransactionType.TRANSFER, "Перевод");
+        transfer.setStatus(TransactionStatus.PENDING);
+        when(transactionRepository.findById(1L)).thenReturn(Optional.of(transfer));
+
+        service.confirmTransaction(1L);
+
+        verify(cardRepository).lockByIds(List.of(7L, 3L));
+        assertEquals(new BigDecimal("90.00"), transfer.getFromCard().getBalance());
+        assertEquals(new BigDecimal("10.00"), transfer.getToCard().getBalance());
+    }
+
+    @Test
+    public void testRefundMarksOriginalBeforeMovingMoney() {
+        Transaction transfer = new Transaction(card(7L, "90.00"), card(3L, "10.00"), new BigDecimal("10.00"),
+                TransactionType.TRANSFER, "Перевод");
+        transfer.setStatus(TransactionStatus.COMPLETED);
+        when(transactionRepository.findById(1L)).thenReturn(Optional.of(transfer));
+        when(transactionRepository.markRefunded(1L)).thenReturn(1);
+        when(transactionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Transaction refund = service.refundTransaction(1L, null);
+
+        InOrder order = inOrder(transactionRepository, cardRepository);
+        order.verify(transactionRepository).markRefunded(1L);
+        order.verify(cardRepository).lockByIds(List.of(3L, 7L));
+        assertEquals(TransactionStatus.COMPLETED, refund.getStatus());
+        assertEquals(new BigDecimal("100.00"), transfer.getFromCard().getBalance());
+    }
+
+    @Test
+    public void testRefundOfAlreadyRefundedTransactionMovesNoMoney() {
+        Transaction transfer = new Transaction(card(7L, "90.00"), card(3L, "10.00"), new BigDecimal("10.00"),
+                TransactionType.TRANSFER, "Перевод");
+        transfer.setStatus(TransactionStatus.COMPLETED);
+        when(transactionRepository.findById(1L)).thenReturn(Optional.of(transfer));
+        // одновременный возврат уже перевел операцию в REFUNDED
+        when(transactionRepository.markRefunded(1L)).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> service.refundTransaction(1L, null));
+
+        verify(transactionRepository, never()).save(any());
+        verifyNoInteractions(cardRepository);
+        assertEquals(new BigDecimal("90.00"), transfer.getFromCard().getBalance());
+    }
+
+    @Test
+    public void testQueuedTransferRejectIsPublished() {
+        Transaction transfer = new Transaction(card(7L, "5.00"), card(3L, "0.00"), new BigDecimal("10.00"),
+                TransactionType.TRANSFER, "Перевод");
+        transfer.setId(1L);
+        when(transactionRepository.findById(1L)).thenReturn(Optional.of(transfer));
+
+        assertEquals(TransactionStatus.FAILED, service.executeQueuedTransfer(1L));
+
+        assertEquals(TransactionStatus.FAILED, transfer.getStatus());
+        verify(transactionRepository).save(transfer);
+        verify(outboxWriter).transactionFailed(transfer);
+        ArgumentCaptor<TransactionFailedEvent> event = ArgumentCaptor.forClass(TransactionFailedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(1L, event.getValue().getTransactionId());
+        assertEquals(70L, event.getValue().getFromUserId());
+        assertEquals(new BigDecimal("5.00"), transfer.getFromCard().getBalance());
+    }
+
+    @Test
+    public void testFailQueuedTransferSkipsFinishedTransaction() {
+        Transaction transfer = new Transaction(card(7L, "100.00"), card(3L, "0.00"), new BigDecimal("10.00"),
+                TransactionType.TRANSFER, "Перевод");
+        transfer.setStatus(TransactionStatus.COMPLETED);
+        when(transactionRepository.findById(1L)).thenReturn(Optional.of(transfer));
+
+        assertFalse(service.failQueuedTransfer(1L));
+        assertFalse(service.failQueuedTransfer(2L));
+
+        assertEquals(TransactionStatus.COMPLETED, transfer.getStatus());
+        verifyNoInteractions(outboxWriter, eventPublisher);
+    }
+
+    private static Card card(Long id, String balance) {
+        User user = new User();
+        user.setId(id * 10);
+        Card card = new Card();
+        card.setId(id);
+        card.setUser(user);
+        card.setIsActive(true);
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.TestDatabase;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.outbox.OutboxWriter;
+import com.example.bankcards.sharding.ShardMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Сага межшардового перевода на реальной PostgreSQL. Оба шарда - одна база: у карт разный остаток
+ * от деления на 2, поэтому шаги саги идут по тем же путям, что и между разными базами.
+ * Запускается при заданной BANKCARDS_TEST_DB_URL, см. {@link TestDatabase}.
+ */
+@EnabledIfEnvironmentVariable(named = "BANKCARDS_TEST_DB_URL", matches = ".+")
+public class TransferServiceSagaTest {
+
+    private static final long SENDER = 990000101L;
+    private static final long RECIPIENT = 990000102L;
+    private static final BigDecimal AMOUNT = new BigDecimal("30.00");
+
+    private JdbcTemplate jdbc;
+    private TransferService service;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = TestDatabase.dataSource();
+        jdbc = spy(new JdbcTemplate(dataSource));
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.findById(anyLong())).thenReturn(Optional.of(new Transaction()));
+
+        service = new TransferService(new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(service, "shardMap", new ShardMap(2));
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(service, "transactionService", transactionService);
+        ReflectionTestUtils.setField(service, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(service, "outboxWriter", mock(OutboxWriter.class));
+        ReflectionTestUtils.setField(service, "recoveryDelaySeconds", 0L);
+        ReflectionTestUtils.setField(service, "recoveryBatchSize", 100);
+
+        cleanUp();
+        for (long id : new long[]{SENDER, RECIPIENT}) {
+            jdbc.update("INSERT INTO users (id, username, email, password) VALUES (?, ?, ?, 'x')",
+                    id, "saga-" + id, "saga-" + id + "@example.com");
+            jdbc.update("INSERT INTO cards (id, user_id, card_number, card_holder_name, expiry_date, cvv, card_type, " +
+                    "balance) VALUES (?, ?, ?, 'TEST', DATE '2030-01-01', '000', 'DEBIT', ?)",
+                    id, id, "SAGA-" + id, id == SENDER ? new BigDecimal("100.00") : BigDecimal.ZERO);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cleanUp();
+    }
+
+    @Test
+    public void testRepeatedCreditIsIgnored() {
+        service.transfer(SENDER, RECIPIENT, AMOUNT, null);
+        assertEquals("COMPLETED", sagaStatus());
+
+        // сбой после зачисления: восстановление повторяет зачисление для той же саги
+        jdbc.update("UPDATE transfer_sagas SET status = 'DEBITED' WHERE from_card_id = ?", SENDER);
+        service.recoverStuckSagas();
+
+        assertEquals("COMPLETED", sagaStatus());
+        assertBalance(SENDER, "70.00");
+        assertBalance(RECIPIENT, "30.00");
+        assertEquals(1, count("SELECT count(*) FROM transfer_saga_credits c JOIN transfer_sagas s ON s.id = c.saga_id " +
+                "WHERE s.from_card_id = ?"));
+        assertEquals(2, count("SELECT count(*) FROM transactions WHERE from_card_id = ?"));
+    }
+
+    @Test
+    public void testDebitedSagaIsCompletedByRecovery() {
+        recipientShardUnavailableOnce();
+
+        service.transfer(SENDER, RECIPIENT, AMOUNT, null);
+        assertEquals("DEBITED", sagaStatus());
+        assertBalance(SENDER, "70.00");
+        assertBalance(RECIPIENT, "0.00");
+
+        service.recoverStuckSagas();
+
+        assertEquals("COMPLETED", sagaStatus());
+        assertBalance(RECIPIENT, "30.00");
+        assertEquals(0, count("SELECT count(*) FROM transactions WHERE from_card_id = ? AND status <> 'COMPLETED'"));
+    }
+
+    @Test
+    public void testInactiveRecipientIsCompensated() {
+        recipientShardUnavailableOnce();
+        service.transfer(SENDER, RECIPIENT, AMOUNT, null);
+        jdbc.update("UPDATE cards SET is_active = false WHERE id = ?", RECIPIENT);
+
+        service.recoverStuckSagas();
+
+        assertEquals("COMPENSATED", sagaStatus());
+        assertBalance(SENDER, "100.00");
+        assertBalance(RECIPIENT, "0.00");
+        assertEquals(1, count("SELECT count(*) FROM transactions WHERE from_card_id = ? AND status = 'FAILED'"));
+        assertEquals(0, count("SELECT count(*) FROM transfer_saga_credits c JOIN transfer_sagas s ON s.id = c.saga_id " +
+                "WHERE s.from_card_id = ?"));
+    }
+
+    @Test
+    public void testInactiveRecipientIsRejectedBeforeDebit() {
+        jdbc.update("UPDATE cards SET is_active = false WHERE id = ?", RECIPIENT);
+
+        assertThrows(IllegalStateException.class, () -> service.transfer(SENDER, RECIPIENT, AMOUNT, null));
+
+        assertBalance(SENDER, "100.00");
+        assertEquals(0, count("SELECT count(*) FROM transfer_sagas WHERE from_card_id = ?"));
+    }
+
+    private void recipientShardUnavailableOnce() {
+        doThrow(new CannotGetJdbcConnectionException("shard down")).doCallRealMethod()
+                .when(jdbc).update(startsWith("INSERT INTO transfer_saga_credits"), any(Object[].class));
+    }
+
+    private String sagaStatus() {
+        return jdbc.queryForObject("SELECT status FROM transfer_sagas WHERE from_card_id = ?", String.class, SENDER);
+    }
+
+    private void assertBalance(long cardId, String expected) {
+        assertEquals(new BigDecimal(expected),
+                jdbc.queryForObject("SELECT balance FROM cards WHERE id = ?", BigDecimal.class, cardId));
+    }
+
+    private int count(String sql) {
+        Integer count = jdbc.queryForObject(sql, Integer.class, SENDER);
+        return count != null ? count : 0;
+    }
+
+    private void cleanUp() {
+        jdbc.update("DELETE FROM transfer_saga_credits WHERE saga_id IN " +
+                "(SELECT id FROM transfer_sagas WHERE from_card_id = ?)", SENDER);
+        jdbc.update("DELETE FROM transfer_sagas WHERE from_card_id = ?", SENDER);
+        jdbc.update("DELETE FROM transactions WHERE from_card_id IN (?, ?) OR to_card_id IN (?, ?)",
+                SENDER, RECIPIENT, SENDER, RECIPIENT);
+        jdbc.update("DELETE FROM cards WHERE id IN (?, ?)", SENDER, RECIPIENT);
+        jdbc.update("DELETE FROM users WHERE id IN (?, ?)", SENDER, RECIPIENT);
+    }
+}
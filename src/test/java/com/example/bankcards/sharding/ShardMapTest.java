@@ -0,0 +1,61 @@
+package com.example.bankcards.sharding;
+
+import com.example.bankcards.entity.Card;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardMapTest {
+
+    @Test
+    public void testShardOf() {
+        ShardMap single = new ShardMap(false, List.of("jdbc:postgresql://localhost:5434/bankcards"));
+        assertEquals(1, single.shardCount());
+        assertFalse(single.isSharded());
+        assertEquals(0, single.shardOf(17));
+
+        ShardMap three = new ShardMap(true, List.of("a", "b"));
+        assertEquals(3, three.shardCount());
+        assertEquals(List.of(0, 1, 2), three.shards());
+        assertEquals(2, three.shardOf(17));
+        assertEquals(0, three.shardOf(3));
+    }
+
+    @Test
+    public void testAlignedStart() {
+        assertEquals(3, ShardSchemaInitializer.alignedStart(0, 0, 3));
+        assertEquals(1, ShardSchemaInitializer.alignedStart(0, 1, 3));
+        assertEquals(11, ShardSchemaInitializer.alignedStart(10, 2, 3));
+        assertEquals(13, ShardSchemaInitializer.alignedStart(10, 1, 3));
+        assertEquals(12, ShardSchemaInitializer.alignedStart(11, 0, 3));
+    }
+
+    @Test
+    public void testMergePagesBySort() {
+        Pageable secondPage = PageRequest.of(1, 2, Sort.by("balance").descending());
+        Page<Card> shard0 = new PageImpl<>(List.of(card(1, "90"), card(4, "50"), card(7, "10")),
+                PageRequest.of(0, 4), 3);
+        Page<Card> shard1 = new PageImpl<>(List.of(card(2, "80"), card(5, "70"), card(8, "60"), card(11, "40")),
+                PageRequest.of(0, 4), 6);
+
+        Page<Card> merged = ShardFanOut.merge(List.of(shard0, shard1), secondPage);
+
+        assertEquals(9, merged.getTotalElements());
+        assertEquals(List.of(5L, 8L), merged.getContent().stream().map(Card::getId).toList());
+    }
+
+    private static Card card(long id, String balance) {
+        Card card = new Card();
+        card.setId(id);
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.bankcards.sse;
+
+import com.example.bankcards.cache.InMemoryInvalidationTransport;
+import com.example.bankcards.cache.InvalidationTransport;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
+import com.example.bankcards.entity.TransactionType;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.event.CardBalanceChangedEvent;
+import com.example.bankcards.event.TransactionBatchCompletedEvent;
+import com.example.bankcards.event.TransactionCompletedEvent;
+import com.example.bankcards.event.TransactionFailedEvent;
+import com.example.bankcards.exception.BusinessException;
+import com.example.bankcards.security.CardOwnership;
+import com.example.bankcards.sharding.ShardMap;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserEventHubTest {
+
+    private static final long USER = 1L;
+    private static final long OTHER_USER = 2L;
+
+    private final CardOwnership cardOwnership = mock(CardOwnership.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final List<RecordingEmitter> emitters = new CopyOnWriteArrayList<>();
+    private ThreadPoolTaskExecutor sendPool;
+
+    @AfterEach
+    public void tearDown() {
+        emitters.forEach(RecordingEmitter::release);
+        if (sendPool != null) {
+            sendPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReconnectReplaysMissedEvents() {
+        UserEventHub hub = hub(Runnable::run, null);
+        RecordingEmitter first = subscribe(hub, USER, null);
+        hub.onTransactionCompleted(transfer(11L, USER, OTHER_USER));
+        String seen = first.lastId();
+        hub.onTransactionCompleted(transfer(12L, USER, OTHER_USER));
+        hub.onTransactionCompleted(transfer(13L, OTHER_USER, USER));
+
+        RecordingEmitter second = subscribe(hub, USER, seen);
+
+        assertEquals(List.of("connected", UserEventHub.TRANSACTION, UserEventHub.TRANSACTION), second.kinds());
+        assertTrue(second.sent.get(1).contains("transactionId=12"));
+        assertTrue(second.sent.get(2).contains("transactionId=13"));
+        assertEquals(2, hub.connectionCount());
+    }
+
+    @Test
+    public void testReconnectAfterBufferExpiredGetsResync() {
+        UserEventHub hub = hub(Runnable::run, null);
+        RecordingEmitter first = subscribe(hub, USER, null);
+        hub.onTransactionCompleted(transfer(11L, USER, OTHER_USER));
+        String seen = first.lastId();
+
+        // соединение закрыто, буфер удален по сроку хранения, событие без буфера не сохранилось
+        first.failing = true;
+        hub.onTransactionCompleted(transfer(12L, USER, OTHER_USER));
+        assertEquals(0, hub.connectionCount());
+        ReflectionTestUtils.setField(hub, "replayTtlMs", -1L);
+        hub.heartbeat();
+        subscribe(hub, OTHER_USER, null);
+        hub.onTransactionCompleted(transfer(13L, USER, OTHER_USER));
+
+        RecordingEmitter second = subscribe(hub, USER, seen);
+        RecordingEmitter foreign = subscribe(hub, USER, "previous-run-1");
+
+        assertEquals(List.of("connected", UserEventHub.RESYNC), second.kinds());
+        assertEquals(List.of("connected", UserEventHub.RESYNC), foreign.kinds());
+    }
+
+    @Test
+    public void testConnectionLimits() {
+        UserEventHub hub = hub(Runnable::run, null);
+        ReflectionTestUtils.setField(hub, "maxConnectionsPerUser", 2);
+        ReflectionTestUtils.setField(hub, "maxConnections", 3);
+        subscribe(hub, USER, null);
+        subscribe(hub, USER, null);
+
+        BusinessException perUser = assertThrows(BusinessException.class, () -> hub.subscribe(USER, null));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, perUser.getHttpStatus());
+        subscribe(hub, OTHER_USER, null);
+        BusinessException total = assertThrows(BusinessException.class, () -> hub.subscribe(OTHER_USER, null));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, total.getHttpStatus());
+        assertEquals(3, hub.connectionCount());
+    }
+
+    @Test
+    public void testSlowClientDoesNotDelayOtherUsers() throws Exception {
+        UserEventHub hub = hub(pool(), null);
+        RecordingEmitter slow = subscribe(hub, USER, null);
+        RecordingEmitter fast = subscribe(hub, OTHER_USER, null);
+        awaitSent(slow, 1);
+        slow.block = new CountDownLatch(1);
+
+        hub.onTransactionCompleted(transfer(11L, USER, OTHER_USER));
+
+        awaitSent(fast, 2);
+        assertEquals(List.of("connected", UserEventHub.TRANSACTION), fast.kinds());
+        assertEquals(1, slow.sent.size());
+        slow.release();
+        awaitSent(slow, 2);
+    }
+
+    @Test
+    public void testClientThatFallsBehindIsDisconnected() throws Exception {
+        UserEventHub hub = hub(pool(), null);
+        ReflectionTestUtils.setField(hub, "sendQueueSize", 4);
+        RecordingEmitter slow = subscribe(hub, USER, null);
+        awaitSent(slow, 1);
+        slow.block = new CountDownLatch(1);
+
+        for (long id = 1; id <= 6; id++) {
+            hub.onTransactionCompleted(transfer(id, USER, OTHER_USER));
+        }
+
+        assertTrue(slow.completed);
+        assertEquals(0, hub.connectionCount());
+    }
+
+    @Test
+    public void testFanOutDeliversEventsCommittedOnAnotherNode() {
+        InMemoryInvalidationTransport channel = new InMemoryInvalidationTransport();
+        UserEventHub origin = hub(Runnable::run, channel);
+        UserEventHub other = hub(Runnable::run, channel);
+        origin.startFanOut();
+        other.startFanOut();
+        when(cardOwnership.ownerOf(20L)).thenReturn(OTHER_USER);
+        when(jdbcTemplate.queryForList(anyString(), eq(BigDecimal.class), eq(20L)))
+                .thenReturn(List.of(new BigDecimal("110.50")));
+        RecordingEmitter recipient = subscribe(other, OTHER_USER, null);
+
+        origin.onTransactionCompleted(transfer(11L, USER, OTHER_USER));
+        origin.onCardBalanceChanged(new CardBalanceChangedEvent(List.of(10L, 20L)));
+
+        assertEquals(List.of("connected", UserEventHub.TRANSACTION, UserEventHub.BALANCE), recipient.kinds());
+        UserEventMessage.TransactionData data = (UserEventMessage.TransactionData) recipient.data.get(1);
+        assertEquals(11L, data.transactionId());
+        assertEquals("COMPLETED", data.status());
+        assertEquals(new BigDecimal("10.50"), data.amount());
+        assertTrue(recipient.sent.get(2).contains("balance=110.50"));
+    }
+
+    @Test
+    public void testFailedTransferIsDeliveredOnlyToSender() {
+        UserEventHub hub = hub(Runnable::run, null);
+        RecordingEmitter sender = subscribe(hub, USER, null);
+        RecordingEmitter recipient = subscribe(hub, OTHER_USER, null);
+        Transaction transaction = new Transaction(card(USER * 10, USER), card(OTHER_USER * 10, OTHER_USER),
+                new BigDecimal("10.50"), TransactionType.TRANSFER, "Перевод");
+        transaction.setId(31L);
+
+        hub.onTransactionFailed(new TransactionFailedEvent(transaction));
+
+        assertEquals(List.of("connected", UserEventHub.TRANSACTION), sender.kinds());
+        UserEventMessage.TransactionData data = (UserEventMessage.TransactionData) sender.data.get(1);
+        assertEquals(31L, data.transactionId());
+        assertEquals("FAILED", data.status());
+        assertEquals(List.of("connected"), recipient.kinds());
+    }
+
+    @Test
+    public void testBatchIsDeliveredToSubscribedOwners() {
+        UserEventHub hub = hub(Runnable::run, null);
+        RecordingEmitter recipient = subscribe(hub, OTHER_USER, null);
+
+        hub.onTransactionBatchCompleted(new TransactionBatchCompletedEvent(List.of(
+                bulkTransfer(21L, "Зарплата"), bulkTransfer(22L, "Премия"))));
+
+        assertEquals(List.of("connected", UserEventHub.TRANSACTION, UserEventHub.TRANSACTION), recipient.kinds());
+        assertEquals(22L, ((UserEventMessage.TransactionData) recipient.data.get(2)).transactionId());
+    }
+
+    @Test
+    public void testBatchFanOutIsSplitIntoBoundedMessages() {
+        List<String> payloads = new ArrayList<>();
+        InMemoryInvalidationTransport channel = new InMemoryInvalidationTransport();
+        channel.start(payloads::add, () -> {
+        });
+        UserEventHub origin = hub(Runnable::run, channel);
+        UserEventHub other = hub(Runnable::run, channel);
+        origin.startFanOut();
+        other.startFanOut();
+        RecordingEmitter recipient = subscribe(other, OTHER_USER, null);
+        List<TransactionCompletedEvent> batch = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            batch.add(bulkTransfer(id, "Д".repeat(255)));
+        }
+
+        origin.onTransactionBatchCompleted(new TransactionBatchCompletedEvent(batch));
+
+        assertTrue(payloads.size() > 1);
+        assertTrue(payloads.stream().allMatch(payload -> payload.getBytes(StandardCharsets.UTF_8).length < 8000));
+        assertEquals(41, recipient.kinds().size());
+        assertEquals(40L, ((UserEventMessage.TransactionData) recipient.data.get(40)).transactionId());
+    }
+
+    @Test
+    public void testResubscribedChannelSendsResync() {
+        AtomicReference<Runnable> onResubscribed = new AtomicReference<>();
+        InvalidationTransport channel = mock(InvalidationTransport.class);
+        doAnswer(invocation -> {
+            onResubscribed.set(invocation.getArgument(1));
+            return null;
+        }).when(channel).start(any(), any());
+        UserEventHub hub = hub(Runnable::run, channel);
+        hub.startFanOut();
+        RecordingEmitter connected = subscribe(hub, USER, null);
+
+        onResubscribed.get().run();
+
+        assertEquals(List.of("connected", UserEventHub.RESYNC), connected.kinds());
+    }
+
+    private UserEventHub hub(TaskExecutor sendExecutor, InvalidationTransport fanOut) {
+        UserEventHub hub = new UserEventHub() {
+            @Override
+            SseEmitter createEmitter() {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+        ReflectionTestUtils.setField(hub, "cardOwnership", cardOwnership);
+        ReflectionTestUtils.setField(hub, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(hub, "shardMap", new ShardMap(1));
+        ReflectionTestUtils.setField(hub, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(hub, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(hub, "sseExecutor", (TaskExecutor) Runnable::run);
+        ReflectionTestUtils.setField(hub, "sseSendExecutor", sendExecutor);
+        ReflectionTestUtils.setField(hub, "fanOut", fanOut);
+        ReflectionTestUtils.setField(hub, "timeoutMs", 60000L);
+        ReflectionTestUtils.setField(hub, "maxConnections", 100);
+        ReflectionTestUtils.setField(hub, "maxConnectionsPerUser", 5);
+        ReflectionTestUtils.setField(hub, "replaySize", 2);
+        ReflectionTestUtils.setField(hub, "replayTtlMs", 60000L);
+        ReflectionTestUtils.setField(hub, "retryMs", 3000L);
+        ReflectionTestUtils.setField(hub, "sendQueueSize", 16);
+        hub.init();
+        return hub;
+    }
+
+    private ThreadPoolTaskExecutor pool() {
+        sendPool = new ThreadPoolTaskExecutor();
+        sendPool.setCorePoolSize(2);
+        sendPool.setMaxPoolSize(2);
+        sendPool.initialize();
+        return sendPool;
+    }
+
+    private static RecordingEmitter subscribe(UserEventHub hub, long userId, String lastEventId) {
+        return (RecordingEmitter) hub.subscribe(userId, lastEventId);
+    }
+
+    private static void awaitSent(RecordingEmitter emitter, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (emitter.sent.size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "отправлено " + emitter.sent);
+            Thread.sleep(5);
+        }
+    }
+
+    private static TransactionCompletedEvent transfer(long id, long fromUser, long toUser) {
+        Transaction transaction = new Transaction(card(fromUser * 10, fromUser), card(toUser * 10, toUser),
+                new BigDecimal("10.50"), TransactionType.TRANSFER, "Перевод");
+        transaction.setId(id);
+        transaction.setCurrency("RUB");
+        transaction.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        return new TransactionCompletedEvent(transaction);
+    }
+
+    private static TransactionCompletedEvent bulkTransfer(long id, String description) {
+        return new TransactionCompletedEvent(id, "TRANSFER", USER * 10, USER, OTHER_USER * 10, OTHER_USER,
+                new BigDecimal("100.00"), "RUB", description, LocalDateTime.of(2024, 1, 1, 12, 0));
+    }
+
+    private static Card card(long id, long userId) {
+        User user = new User();
+        user.setId(userId);
+        Card card = new Card();
+        card.setId(id);
+        card.setUser(user);
+        return card;
+    }
+
+    /**
+     * Запоминает отправленные события вместо записи в ответ; может зависнуть или падать, как медленный
+     * или отключившийся клиент.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private static final Pattern EVENT = Pattern.compile("event:(\\S+)");
+        private static final Pattern COMMENT = Pattern.compile("(?m)^:(\\S+)");
+        private static final Pattern ID = Pattern.compile("id:(\\S+)");
+
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private final List<Object> data = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch block;
+        private volatile boolean failing;
+        private volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            CountDownLatch latch = block;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            StringBuilder text = new StringBuilder();
+            Object payload = null;
+            for (DataWithMediaType part : builder.build()) {
+                text.append(part.getData());
+                if (!(part.getData() instanceof String)) {
+                    payload = part.getData();
+                }
+            }
+            data.add(payload != null ? payload : "");
+            sent.add(text.toString());
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        private void release() {
+            CountDownLatch latch = block;
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+        private List<String> kinds() {
+            List<String> kinds = new ArrayList<>();
+            for (String text : sent) {
+                Matcher event = EVENT.matcher(text);
+                Matcher comment = COMMENT.matcher(text);
+                kinds.add(event.find() ? event.group(1) : comment.find() ? comment.group(1) : text);
+            }
+            return kinds;
+        }
+
+        private String lastId() {
+            Matcher id = ID.matcher(sent.get(sent.size() - 1));
+            assertTrue(id.find());
+            return id.group(1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchPolicyTest {
+
+    private SearchPolicy searchPolicy;
+
+    @BeforeEach
+    public void setUp() {
+        searchPolicy = new SearchPolicy();
+        ReflectionTestUtils.setField(searchPolicy, "minLength", 3);
+        ReflectionTestUtils.setField(searchPolicy, "maxResults", 50);
+    }
+
+    @Test
+    public void testPatternIsLoweredAndEscaped() {
+        assertEquals("%ivan%", searchPolicy.toContainsPattern("  IVAN "));
+        assertEquals("%50\\%\\_off\\\\%", searchPolicy.toContainsPattern("50%_off\\"));
+    }
+
+    @Test
+    public void testShortTermRejected() {
+        assertThrows(IllegalArgumentException.class, () -> searchPolicy.toContainsPattern("ab"));
+        assertThrows(IllegalArgumentException.class, () -> searchPolicy.toContainsPattern(null));
+    }
+
+    @Test
+    public void testExactCardNumber() {
+        assertEquals("4111111111111111", searchPolicy.toExactCardNumber("4111 1111-1111 1111"));
+        assertNull(searchPolicy.toExactCardNumber("1111"));
+        assertNull(searchPolicy.toExactCardNumber("Ivan Petrov"));
+    }
+
+    @Test
+    public void testPageSizeCapped() {
+        Pageable capped = searchPolicy.limit(PageRequest.of(2, 500));
+        assertEquals(50, capped.getPageSize());
+        assertEquals(2, capped.getPageNumber());
+        assertEquals(10, searchPolicy.limit(PageRequest.of(0, 10)).getPageSize());
+    }
+}